@@ -19,15 +19,24 @@ package org.apache.helix.webapp.resources;
  * under the License.
  */
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import org.apache.helix.PropertyKey;
 import org.apache.helix.PropertyType;
 import org.apache.helix.manager.zk.ZkClient;
+import org.apache.helix.util.StatusUpdateLog;
+import org.apache.helix.util.StatusUpdateLogReader;
 import org.apache.helix.webapp.RestAdminApplication;
 import org.apache.log4j.Logger;
 import org.codehaus.jackson.JsonGenerationException;
 import org.codehaus.jackson.map.JsonMappingException;
 import org.restlet.Context;
+import org.restlet.data.Form;
 import org.restlet.data.MediaType;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
@@ -39,6 +48,12 @@ import org.restlet.resource.Variant;
 public class StatusUpdatesResource extends Resource {
   private final static Logger LOG = Logger.getLogger(StatusUpdatesResource.class);
 
+  public static final String SOURCE = "source";
+  public static final String LOCAL_SOURCE = "local";
+  public static final String POSITION = "position";
+  public static final String LIMIT = "limit";
+  public static final int DEFAULT_LIMIT = 100;
+
   public StatusUpdatesResource(Context context, Request request, Response response) {
     super(context, request, response);
     getVariants().add(new Variant(MediaType.TEXT_PLAIN));
@@ -71,7 +86,12 @@ public class StatusUpdatesResource extends Resource {
     try {
       String clusterName = (String) getRequest().getAttributes().get("clusterName");
       String instanceName = (String) getRequest().getAttributes().get("instanceName");
-      presentation = getInstanceErrorsRepresentation(clusterName, instanceName);
+      Form form = getRequest().getResourceRef().getQueryAsForm();
+      if (LOCAL_SOURCE.equalsIgnoreCase(form.getFirstValue(SOURCE))) {
+        presentation = getLocalStatusUpdatesRepresentation(clusterName, instanceName, form);
+      } else {
+        presentation = getInstanceErrorsRepresentation(clusterName, instanceName);
+      }
     } catch (Exception e) {
       String error = ClusterRepresentationUtil.getErrorAsJsonStringFromException(e);
       presentation = new StringRepresentation(error, MediaType.APPLICATION_JSON);
@@ -98,4 +118,40 @@ public class StatusUpdatesResource extends Resource {
     return representation;
   }
 
+  /**
+   * Page through the status updates an instance wrote to the local status update log
+   * on this host
+   */
+  StringRepresentation getLocalStatusUpdatesRepresentation(String clusterName,
+      String instanceName, Form form) throws JsonGenerationException, JsonMappingException,
+      IOException {
+    String positionStr = form.getFirstValue(POSITION);
+    String limitStr = form.getFirstValue(LIMIT);
+    long position = positionStr == null ? 0 : Long.parseLong(positionStr);
+    int limit = limitStr == null ? DEFAULT_LIMIT : Integer.parseInt(limitStr);
+
+    // the same per-instance directory the participant writes to
+    File logDir =
+        StatusUpdateLog.getInstanceDir(StatusUpdateLog.getDefaultBaseDir(), clusterName,
+            instanceName);
+    String pathPrefix =
+        new PropertyKey.Builder(clusterName).instances().getPath() + "/" + instanceName + "/";
+    StatusUpdateLogReader.Page page =
+        new StatusUpdateLogReader(logDir).read(pathPrefix, position, limit);
+
+    List<Map<String, Object>> entries = new ArrayList<Map<String, Object>>();
+    for (StatusUpdateLogReader.Entry entry : page.getEntries()) {
+      Map<String, Object> entryMap = new HashMap<String, Object>();
+      entryMap.put("path", entry.getPath());
+      entryMap.put("timestamp", entry.getTimestamp());
+      entryMap.put("record", entry.getRecord());
+      entries.add(entryMap);
+    }
+    Map<String, Object> result = new HashMap<String, Object>();
+    result.put("entries", entries);
+    result.put("nextPosition", page.getNextPosition());
+
+    return new StringRepresentation(ClusterRepresentationUtil.ObjectToJson(result),
+        MediaType.APPLICATION_JSON);
+  }
 }
@@ -104,6 +104,21 @@ public interface BaseDataAccessor<T> {
    */
   boolean[] setChildren(List<String> paths, List<T> records, int options);
 
+  /**
+   * can set multiple children under a parent node with version check. This will use async api
+   * for better performance. A child is created only if its expected version is -1
+   * @param paths the paths to the children ZNodes
+   * @param records List of data with which to overwrite the corresponding ZNodes
+   * @param expectVersions the expected version of each child, -1 means match any version
+   * @param stats if not null, filled with the Stat of each child after the write, null if the
+   *          write failed
+   * @param options Set the type of ZNode see the valid values in {@link AccessOption}
+   * @return For each child: true if the data was set, false otherwise (e.g. if the version
+   *         mismatches)
+   */
+  boolean[] setChildren(List<String> paths, List<T> records, int[] expectVersions,
+      List<Stat> stats, int options);
+
   /**
    * Can update multiple nodes using async api for better performance. If a child does not
    * exist it will create it.
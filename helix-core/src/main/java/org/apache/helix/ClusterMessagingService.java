@@ -26,6 +26,8 @@ import org.apache.helix.messaging.AsyncCallback;
 import org.apache.helix.messaging.handling.MessageHandlerFactory;
 import org.apache.helix.model.Message;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 /**
  * Provides the ability to <br>
  * <li>Send message to a specific component in the cluster[ participant, controller,
@@ -108,6 +110,21 @@ public interface ClusterMessagingService {
   int sendAndWait(Criteria receipientCriteria, Message message, AsyncCallback callbackOnReply,
       int timeOut, int retryCount);
 
+  /**
+   * This will send the message to all instances matching the criteria and return
+   * without waiting for replies. The returned future completes with the replies once
+   * every message sent is replied, or with the replies received so far when the timeout
+   * expires. If no message is sent, it completes immediately with no replies.
+   * @see #send(Criteria, Message, AsyncCallback, int, int)
+   * @param receipientCriteria
+   * @param message
+   * @param timeOut time to wait for replies, the future does not time out if not positive
+   * @param retryCount
+   * @return future of the replies
+   */
+  ListenableFuture<List<Message>> sendAsync(Criteria receipientCriteria, Message message,
+      int timeOut, int retryCount);
+
   /**
    * This will register a message handler factory to create handlers for
    * message. In case client code defines its own message type, it can define a
@@ -59,6 +59,15 @@ public interface HelixDataAccessor {
    */
   <T extends HelixProperty> boolean updateProperty(PropertyKey key, T value);
 
+  /**
+   * Updates multiple properties, each using newvalue.merge(oldvalue). Current-state updates
+   * are written together.
+   * @param keys
+   * @param values
+   * @return array where true means the property was updated and false means it was not
+   */
+  <T extends HelixProperty> boolean[] updateProperty(List<PropertyKey> keys, List<T> values);
+
   /**
    * Return the property value, it must be refer to a single Helix Property. i.e
    * PropertyKey.isLeaf() must return true.
@@ -22,8 +22,10 @@ package org.apache.helix.controller;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicReference;
@@ -43,9 +45,12 @@ import org.apache.helix.ZNRecord;
 import org.apache.helix.NotificationContext.Type;
 import org.apache.helix.PropertyKey.Builder;
 import org.apache.helix.controller.pipeline.Pipeline;
+import org.apache.helix.controller.pipeline.PipelineExecutor;
 import org.apache.helix.controller.pipeline.PipelineRegistry;
+import org.apache.helix.controller.pipeline.Stage;
 import org.apache.helix.controller.stages.BestPossibleStateCalcStage;
 import org.apache.helix.controller.stages.ClusterEvent;
+import org.apache.helix.controller.stages.ClusterEventBlockingQueue;
 import org.apache.helix.controller.stages.CompatibilityCheckStage;
 import org.apache.helix.controller.stages.CurrentStateComputationStage;
 import org.apache.helix.controller.stages.ExternalViewComputeStage;
@@ -55,6 +60,7 @@ import org.apache.helix.controller.stages.MessageThrottleStage;
 import org.apache.helix.controller.stages.ReadClusterDataStage;
 import org.apache.helix.controller.stages.RebalanceIdealStateStage;
 import org.apache.helix.controller.stages.ResourceComputationStage;
+import org.apache.helix.controller.stages.ResourceFingerprintStage;
 import org.apache.helix.controller.stages.TaskAssignmentStage;
 import org.apache.helix.model.CurrentState;
 import org.apache.helix.model.ExternalView;
@@ -65,6 +71,7 @@ import org.apache.helix.model.LiveInstance;
 import org.apache.helix.model.Message;
 import org.apache.helix.model.PauseSignal;
 import org.apache.helix.monitoring.mbeans.ClusterStatusMonitor;
+import org.apache.helix.monitoring.mbeans.HelixStageLatencyMonitor;
 import org.apache.log4j.Logger;
 
 /**
@@ -88,11 +95,22 @@ public class GenericHelixController implements ConfigChangeListener, IdealStateC
   volatile boolean init = false;
   private final PipelineRegistry _registry;
 
+  /**
+   * Runs the stages of the pipelines for an event, independent stages concurrently
+   */
+  private final PipelineExecutor _pipelineExecutor;
+
   final AtomicReference<Map<String, LiveInstance>> _lastSeenInstances;
   final AtomicReference<Map<String, LiveInstance>> _lastSeenSessions;
 
   ClusterStatusMonitor _clusterStatusMonitor;
 
+  /**
+   * latency monitors of the stages in the pipelines, keyed by stage name
+   */
+  final Map<String, HelixStageLatencyMonitor> _stageLatencyMonitorMap =
+      new HashMap<String, HelixStageLatencyMonitor>();
+
   /**
    * The _paused flag is checked by function handleEvent(), while if the flag is set
    * handleEvent() will be no-op. Other event handling logic keeps the same when the flag
@@ -107,6 +125,19 @@ public class GenericHelixController implements ConfigChangeListener, IdealStateC
   Timer _rebalanceTimer = null;
   int _timerPeriod = Integer.MAX_VALUE;
 
+  /**
+   * Events from zk callbacks are queued and handled by a dedicated pipeline thread, so that
+   * a burst of events of the same type is covered by a single pipeline run
+   */
+  final ClusterEventBlockingQueue _eventQueue;
+  ClusterEventProcessor _eventThread = null;
+
+  /**
+   * Start time of the last leadership acquisition, until the first pipeline run as leader
+   * completes; 0 otherwise
+   */
+  volatile long _leadershipAcquisitionStartTime = 0;
+
   /**
    * Default constructor that creates a default pipeline registry. This is sufficient in
    * most cases, but if there is a some thing specific needed use another constructor
@@ -133,7 +164,31 @@ public class GenericHelixController implements ConfigChangeListener, IdealStateC
       List<ZNRecord> dummy = new ArrayList<ZNRecord>();
       event.addAttribute("eventData", dummy);
       // Should be able to process
-      handleEvent(event);
+      enqueueEvent(event);
+    }
+  }
+
+  class ClusterEventProcessor extends Thread {
+    public ClusterEventProcessor() {
+      super("GenericHelixController-event_process");
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      logger.info("START ClusterEventProcessor thread");
+      while (!isInterrupted()) {
+        try {
+          ClusterEvent event = _eventQueue.take();
+          handleEvent(event);
+        } catch (InterruptedException e) {
+          logger.info("ClusterEventProcessor interrupted");
+          interrupt();
+        } catch (Throwable t) {
+          logger.error("ClusterEventProcessor failed while running the controller pipeline", t);
+        }
+      }
+      logger.info("END ClusterEventProcessor thread");
     }
   }
 
@@ -181,6 +236,7 @@ public class GenericHelixController implements ConfigChangeListener, IdealStateC
       Pipeline rebalancePipeline = new Pipeline();
       rebalancePipeline.addStage(new ResourceComputationStage());
       rebalancePipeline.addStage(new CurrentStateComputationStage());
+      rebalancePipeline.addStage(new ResourceFingerprintStage());
       rebalancePipeline.addStage(new RebalanceIdealStateStage());
       rebalancePipeline.addStage(new BestPossibleStateCalcStage());
       rebalancePipeline.addStage(new MessageGenerationPhase());
@@ -207,6 +263,16 @@ public class GenericHelixController implements ConfigChangeListener, IdealStateC
       registry.register("resume", dataRefresh, rebalancePipeline, externalViewPipeline);
       registry
           .register("periodicalRebalance", dataRefresh, rebalancePipeline, externalViewPipeline);
+      registry.register("leadershipChange", dataRefresh, liveInstancePipeline, rebalancePipeline,
+          externalViewPipeline);
+
+      // a standby controller only keeps its cluster data cache up to date
+      registry.registerStandby("idealStateChange", dataRefresh);
+      registry.registerStandby("currentStateChange", dataRefresh);
+      registry.registerStandby("configChange", dataRefresh);
+      registry.registerStandby("liveInstanceChange", dataRefresh);
+      registry.registerStandby("messageChange", dataRefresh);
+      registry.registerStandby("periodicalRebalance", dataRefresh);
 
       // health stats pipeline
       // Pipeline healthStatsAggregationPipeline = new Pipeline();
@@ -222,8 +288,109 @@ public class GenericHelixController implements ConfigChangeListener, IdealStateC
   public GenericHelixController(PipelineRegistry registry) {
     _paused = false;
     _registry = registry;
+    _pipelineExecutor = new PipelineExecutor();
     _lastSeenInstances = new AtomicReference<Map<String, LiveInstance>>();
     _lastSeenSessions = new AtomicReference<Map<String, LiveInstance>>();
+    _eventQueue = new ClusterEventBlockingQueue();
+  }
+
+  /**
+   * Put an event into the event queue. The event processor thread is started on demand.
+   * @param event
+   */
+  void enqueueEvent(ClusterEvent event) {
+    synchronized (_eventQueue) {
+      if (_eventThread == null) {
+        _eventThread = new ClusterEventProcessor();
+        _eventThread.start();
+      }
+    }
+    _eventQueue.put(event);
+  }
+
+  /**
+   * Called when this controller becomes the leader of the cluster. Runs the pipelines for a
+   * "leadershipChange" event, since listeners registered while standby don't get an INIT
+   * callback again. The time from acquisitionStartTime to the end of that run is reported as
+   * the leadership acquisition latency.
+   * @param manager
+   * @param acquisitionStartTime when the controller started to acquire leadership
+   */
+  public void onLeadershipAcquired(HelixManager manager, long acquisitionStartTime) {
+    _leadershipAcquisitionStartTime = acquisitionStartTime;
+    NotificationContext changeContext = new NotificationContext(manager);
+    changeContext.setType(NotificationContext.Type.CALLBACK);
+    ClusterEvent event = new ClusterEvent("leadershipChange");
+    event.addAttribute("helixmanager", manager);
+    event.addAttribute("changeContext", changeContext);
+    event.addAttribute("eventData", new ArrayList<ZNRecord>());
+    enqueueEvent(event);
+  }
+
+  /**
+   * Stop the event processor thread and drop all pending events
+   */
+  public void shutdown() {
+    synchronized (_eventQueue) {
+      if (_eventThread != null) {
+        _eventThread.interrupt();
+        _eventThread = null;
+      }
+    }
+    _eventQueue.clear();
+
+    synchronized (this) {
+      stopRebalancingTimer();
+      if (_clusterStatusMonitor != null) {
+        _clusterStatusMonitor.reset();
+        _clusterStatusMonitor = null;
+      }
+      resetStageLatencyMonitors();
+    }
+    _pipelineExecutor.shutdown();
+    releaseStages();
+  }
+
+  /**
+   * Release resources held by the stages of all registered pipelines, e.g. thread pools and
+   * cached rebalancers. A stage shared by several pipelines is released once.
+   */
+  private void releaseStages() {
+    Set<Stage> released = new HashSet<Stage>();
+    for (Pipeline pipeline : _registry.getAllPipelines()) {
+      for (Stage stage : pipeline.getStages()) {
+        if (released.add(stage)) {
+          try {
+            stage.release();
+          } catch (Exception e) {
+            logger.error("Exception while releasing stage: " + stage.getStageName(), e);
+          }
+        }
+      }
+    }
+  }
+
+  private void registerStageLatencyMonitors(String clusterName, List<Pipeline> pipelines) {
+    for (Pipeline pipeline : pipelines) {
+      for (Stage stage : pipeline.getStages()) {
+        String stgName = stage.getStageName();
+        if (!_stageLatencyMonitorMap.containsKey(stgName)) {
+          try {
+            _stageLatencyMonitorMap.put(stgName, new HelixStageLatencyMonitor(clusterName,
+                stgName));
+          } catch (Exception e) {
+            logger.error("Couldn't create StageLatencyMonitor mbean for stage: " + stgName, e);
+          }
+        }
+      }
+    }
+  }
+
+  private void resetStageLatencyMonitors() {
+    for (HelixStageLatencyMonitor stgLatencyMonitor : _stageLatencyMonitorMap.values()) {
+      stgLatencyMonitor.reset();
+    }
+    _stageLatencyMonitorMap.clear();
   }
 
   /**
@@ -238,22 +405,36 @@ public class GenericHelixController implements ConfigChangeListener, IdealStateC
       return;
     }
 
+    NotificationContext context = null;
+    if (event.getAttribute("changeContext") != null) {
+      context = (NotificationContext) (event.getAttribute("changeContext"));
+    }
+
     if (!manager.isLeader()) {
-      logger.error("Cluster manager: " + manager.getInstanceName()
-          + " is not leader. Pipeline will not be invoked");
+      List<Pipeline> standbyPipelines = _registry.getStandbyPipelinesForEvent(event.getName());
+      if (standbyPipelines.isEmpty()) {
+        logger.error("Cluster manager: " + manager.getInstanceName()
+            + " is not leader. Pipeline will not be invoked");
+        return;
+      }
+      if (context == null || context.getType() != Type.FINALIZE) {
+        try {
+          _pipelineExecutor.execute(standbyPipelines, event);
+        } catch (Exception e) {
+          logger.error("Exception while executing standby pipelines for event: "
+              + event.getName(), e);
+        }
+      }
       return;
     }
 
     if (_paused) {
       logger.info("Cluster is paused. Ignoring the event:" + event.getName());
+      // no rebalance runs while paused, so there is no acquisition latency to report
+      _leadershipAcquisitionStartTime = 0;
       return;
     }
 
-    NotificationContext context = null;
-    if (event.getAttribute("changeContext") != null) {
-      context = (NotificationContext) (event.getAttribute("changeContext"));
-    }
-
     // Initialize _clusterStatusMonitor
     if (context != null) {
       if (context.getType() == Type.FINALIZE) {
@@ -261,8 +442,10 @@ public class GenericHelixController implements ConfigChangeListener, IdealStateC
           _clusterStatusMonitor.reset();
           _clusterStatusMonitor = null;
         }
+        resetStageLatencyMonitors();
 
         stopRebalancingTimer();
+        _leadershipAcquisitionStartTime = 0;
         logger.info("Get FINALIZE notification, skip the pipeline. Event :" + event.getName());
         return;
       } else {
@@ -271,6 +454,8 @@ public class GenericHelixController implements ConfigChangeListener, IdealStateC
         }
 
         event.addAttribute("clusterStatusMonitor", _clusterStatusMonitor);
+        _clusterStatusMonitor.setEventQueueCounters(_eventQueue.size(),
+            _eventQueue.getEnqueuedCount(), _eventQueue.getCoalescedCount());
       }
     }
 
@@ -280,14 +465,27 @@ public class GenericHelixController implements ConfigChangeListener, IdealStateC
       return;
     }
 
-    for (Pipeline pipeline : pipelines) {
-      try {
-        pipeline.handle(event);
-        pipeline.finish();
-      } catch (Exception e) {
-        logger.error("Exception while executing pipeline: " + pipeline
-            + ". Will not continue to next pipeline", e);
-        break;
+    if (context != null) {
+      registerStageLatencyMonitors(manager.getClusterName(), pipelines);
+      event.addAttribute("HelixStageLatencyMonitorMap", _stageLatencyMonitorMap);
+    }
+
+    try {
+      _pipelineExecutor.execute(pipelines, event);
+    } catch (Exception e) {
+      logger.error("Exception while executing pipelines for event: " + event.getName()
+          + ". Will not continue to next stage", e);
+      return;
+    }
+
+    long acquisitionStartTime = _leadershipAcquisitionStartTime;
+    if (acquisitionStartTime > 0) {
+      _leadershipAcquisitionStartTime = 0;
+      long latency = System.currentTimeMillis() - acquisitionStartTime;
+      logger.info(manager.getInstanceName() + " completed first pipeline run as leader of cluster: "
+          + manager.getClusterName() + ", " + latency + "ms after leadership acquisition started");
+      if (_clusterStatusMonitor != null) {
+        _clusterStatusMonitor.setLeadershipAcquisitionLatency(latency);
       }
     }
   }
@@ -316,7 +514,7 @@ public class GenericHelixController implements ConfigChangeListener, IdealStateC
     event.addAttribute("instanceName", instanceName);
     event.addAttribute("changeContext", changeContext);
     event.addAttribute("eventData", statesInfo);
-    handleEvent(event);
+    enqueueEvent(event);
     logger.info("END: GenericClusterController.onStateChange()");
   }
 
@@ -340,7 +538,7 @@ public class GenericHelixController implements ConfigChangeListener, IdealStateC
     event.addAttribute("instanceName", instanceName);
     event.addAttribute("changeContext", changeContext);
     event.addAttribute("eventData", messages);
-    handleEvent(event);
+    enqueueEvent(event);
 
     if (_clusterStatusMonitor != null && messages != null) {
       _clusterStatusMonitor.addMessageQueueSize(instanceName, messages.size());
@@ -374,7 +572,7 @@ public class GenericHelixController implements ConfigChangeListener, IdealStateC
     event.addAttribute("helixmanager", changeContext.getManager());
     event.addAttribute("changeContext", changeContext);
     event.addAttribute("eventData", liveInstances);
-    handleEvent(event);
+    enqueueEvent(event);
     logger.info("END: Generic GenericClusterController.onLiveInstanceChange()");
   }
 
@@ -400,7 +598,7 @@ public class GenericHelixController implements ConfigChangeListener, IdealStateC
     event.addAttribute("helixmanager", changeContext.getManager());
     event.addAttribute("changeContext", changeContext);
     event.addAttribute("eventData", idealStates);
-    handleEvent(event);
+    enqueueEvent(event);
 
     if (changeContext.getType() != Type.FINALIZE) {
       checkRebalancingTimer(changeContext.getManager(), idealStates);
@@ -416,7 +614,7 @@ public class GenericHelixController implements ConfigChangeListener, IdealStateC
     event.addAttribute("changeContext", changeContext);
     event.addAttribute("helixmanager", changeContext.getManager());
     event.addAttribute("eventData", configs);
-    handleEvent(event);
+    enqueueEvent(event);
     logger.info("END: GenericClusterController.onConfigChange()");
   }
 
@@ -459,7 +657,7 @@ public class GenericHelixController implements ConfigChangeListener, IdealStateC
         event.addAttribute("changeContext", changeContext);
         event.addAttribute("helixmanager", changeContext.getManager());
         event.addAttribute("eventData", pauseSignal);
-        handleEvent(event);
+        enqueueEvent(event);
       } else {
         _paused = false;
       }
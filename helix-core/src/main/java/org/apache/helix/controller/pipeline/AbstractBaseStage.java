@@ -51,6 +51,24 @@ public class AbstractBaseStage implements Stage {
 
   }
 
+  /**
+   * Names of the event attributes this stage reads, used by {@link PipelineExecutor} to run
+   * independent stages concurrently
+   * @return attribute names, or null if undeclared, in which case the stage runs in isolation
+   *         after all earlier stages and before all later stages
+   */
+  public String[] getInputAttributes() {
+    return null;
+  }
+
+  /**
+   * Names of the event attributes, or other state shared by stages, this stage writes
+   * @return attribute names, or null if undeclared
+   */
+  public String[] getOutputAttributes() {
+    return null;
+  }
+
   @Override
   public String getStageName() {
     // default stage name will be the class name
@@ -59,13 +77,26 @@ public class AbstractBaseStage implements Stage {
   }
 
   public void addLatencyToMonitor(ClusterEvent event, long latency) {
+    HelixStageLatencyMonitor stgLatencyMonitor = getLatencyMonitor(event);
+    if (stgLatencyMonitor != null) {
+      stgLatencyMonitor.addStgLatency(latency);
+    }
+  }
+
+  public void addBatchWriteToMonitor(ClusterEvent event, long latency, int writeCount,
+      int failedCount) {
+    HelixStageLatencyMonitor stgLatencyMonitor = getLatencyMonitor(event);
+    if (stgLatencyMonitor != null) {
+      stgLatencyMonitor.addBatchWrite(latency, writeCount, failedCount);
+    }
+  }
+
+  private HelixStageLatencyMonitor getLatencyMonitor(ClusterEvent event) {
     Map<String, HelixStageLatencyMonitor> stgLatencyMonitorMap =
         event.getAttribute("HelixStageLatencyMonitorMap");
     if (stgLatencyMonitorMap != null) {
-      if (stgLatencyMonitorMap.containsKey(getStageName())) {
-        HelixStageLatencyMonitor stgLatencyMonitor = stgLatencyMonitorMap.get(getStageName());
-        stgLatencyMonitor.addStgLatency(latency);
-      }
+      return stgLatencyMonitorMap.get(getStageName());
     }
+    return null;
   }
 }
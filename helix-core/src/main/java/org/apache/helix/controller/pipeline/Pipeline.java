@@ -21,8 +21,10 @@ package org.apache.helix.controller.pipeline;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.helix.controller.stages.ClusterEvent;
+import org.apache.helix.monitoring.mbeans.HelixStageLatencyMonitor;
 import org.apache.log4j.Logger;
 
 public class Pipeline {
@@ -44,9 +46,29 @@ public class Pipeline {
       return;
     }
     for (Stage stage : _stages) {
-      stage.preProcess();
-      stage.process(event);
-      stage.postProcess();
+      handleStage(stage, event);
+    }
+  }
+
+  /**
+   * Run a stage on an event and record its latency
+   * @param stage
+   * @param event
+   * @throws Exception
+   */
+  static void handleStage(Stage stage, ClusterEvent event) throws Exception {
+    Map<String, HelixStageLatencyMonitor> stgLatencyMonitorMap =
+        event.getAttribute("HelixStageLatencyMonitorMap");
+    long startTime = System.currentTimeMillis();
+    stage.preProcess();
+    stage.process(event);
+    stage.postProcess();
+
+    if (stgLatencyMonitorMap != null) {
+      HelixStageLatencyMonitor stgLatencyMonitor = stgLatencyMonitorMap.get(stage.getStageName());
+      if (stgLatencyMonitor != null) {
+        stgLatencyMonitor.addStgLatency(System.currentTimeMillis() - startTime);
+      }
     }
   }
 
@@ -0,0 +1,230 @@
+package org.apache.helix.controller.pipeline;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.helix.controller.stages.ClusterEvent;
+import org.apache.log4j.Logger;
+
+/**
+ * Runs the stages of a list of pipelines as a dependency graph. A stage depends on an earlier
+ * stage if one writes an attribute the other reads or writes, as declared by
+ * {@link AbstractBaseStage#getInputAttributes()} and
+ * {@link AbstractBaseStage#getOutputAttributes()}; stages that don't declare their attributes
+ * depend on all earlier stages and all later stages depend on them. Stages whose dependencies
+ * are done run concurrently on a pool of {@value #PIPELINE_THREADS} threads (default 2). A pool
+ * size of 1 runs the pipelines one after another in the calling thread.
+ */
+public class PipelineExecutor {
+  private static final Logger logger = Logger.getLogger(PipelineExecutor.class.getName());
+
+  public static final String PIPELINE_THREADS = "helixcontroller.pipelineThreads";
+
+  private final int _threadpoolSize;
+  private ExecutorService _executor = null;
+
+  public PipelineExecutor() {
+    this(Integer.parseInt(System.getProperty(PIPELINE_THREADS, "2")));
+  }
+
+  /**
+   * @param threadpoolSize number of threads running stages concurrently
+   */
+  public PipelineExecutor(int threadpoolSize) {
+    _threadpoolSize = threadpoolSize;
+  }
+
+  /**
+   * Run the stages of the pipelines on an event. Once a stage fails, no further stage is
+   * started; stages already running are waited for.
+   * @param pipelines
+   * @param event
+   * @throws Exception the exception of the first failed stage
+   */
+  public void execute(List<Pipeline> pipelines, ClusterEvent event) throws Exception {
+    if (_threadpoolSize <= 1) {
+      for (Pipeline pipeline : pipelines) {
+        pipeline.handle(event);
+        pipeline.finish();
+      }
+      return;
+    }
+
+    List<Stage> stages = new ArrayList<Stage>();
+    for (Pipeline pipeline : pipelines) {
+      if (pipeline.getStages() != null) {
+        stages.addAll(pipeline.getStages());
+      }
+    }
+    List<List<Integer>> dependents = computeDependents(stages);
+    int[] dependencyCounts = new int[stages.size()];
+    for (List<Integer> stageDependents : dependents) {
+      for (int dependent : stageDependents) {
+        dependencyCounts[dependent]++;
+      }
+    }
+
+    CompletionService<Integer> completionService =
+        new ExecutorCompletionService<Integer>(getExecutor());
+    int running = 0;
+    for (int i = 0; i < stages.size(); i++) {
+      if (dependencyCounts[i] == 0) {
+        submit(completionService, stages, i, event);
+        running++;
+      }
+    }
+
+    Exception failure = null;
+    while (running > 0) {
+      int done;
+      try {
+        done = completionService.take().get();
+      } catch (ExecutionException e) {
+        running--;
+        if (failure == null) {
+          failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+        continue;
+      }
+      running--;
+      if (failure != null) {
+        continue;
+      }
+      for (int dependent : dependents.get(done)) {
+        if (--dependencyCounts[dependent] == 0) {
+          submit(completionService, stages, dependent, event);
+          running++;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+
+    for (Pipeline pipeline : pipelines) {
+      pipeline.finish();
+    }
+  }
+
+  /**
+   * Stop the worker threads
+   */
+  public synchronized void shutdown() {
+    if (_executor != null) {
+      _executor.shutdown();
+      _executor = null;
+    }
+  }
+
+  /**
+   * @param stages stages in pipeline order
+   * @return for each stage, the later stages that depend on it
+   */
+  static List<List<Integer>> computeDependents(List<Stage> stages) {
+    int size = stages.size();
+    List<Set<String>> inputs = new ArrayList<Set<String>>(size);
+    List<Set<String>> outputs = new ArrayList<Set<String>>(size);
+    for (Stage stage : stages) {
+      String[] stageInputs = null;
+      String[] stageOutputs = null;
+      if (stage instanceof AbstractBaseStage) {
+        stageInputs = ((AbstractBaseStage) stage).getInputAttributes();
+        stageOutputs = ((AbstractBaseStage) stage).getOutputAttributes();
+      }
+      if (stageInputs == null || stageOutputs == null) {
+        inputs.add(null);
+        outputs.add(null);
+      } else {
+        inputs.add(new HashSet<String>(Arrays.asList(stageInputs)));
+        outputs.add(new HashSet<String>(Arrays.asList(stageOutputs)));
+      }
+    }
+
+    List<List<Integer>> dependents = new ArrayList<List<Integer>>(size);
+    for (int i = 0; i < size; i++) {
+      List<Integer> stageDependents = new ArrayList<Integer>();
+      for (int j = i + 1; j < size; j++) {
+        if (stages.get(i) == stages.get(j) || inputs.get(i) == null || inputs.get(j) == null
+            || intersects(outputs.get(i), inputs.get(j))
+            || intersects(outputs.get(i), outputs.get(j))
+            || intersects(inputs.get(i), outputs.get(j))) {
+          stageDependents.add(j);
+        }
+      }
+      dependents.add(stageDependents);
+    }
+    return dependents;
+  }
+
+  private static boolean intersects(Set<String> set1, Set<String> set2) {
+    for (String name : set1) {
+      if (set2.contains(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void submit(CompletionService<Integer> completionService,
+      final List<Stage> stages, final int index, final ClusterEvent event) {
+    completionService.submit(new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        Stage stage = stages.get(index);
+        try {
+          Pipeline.handleStage(stage, event);
+        } catch (Exception e) {
+          logger.error("Exception while executing stage: " + stage.getStageName(), e);
+          throw e;
+        }
+        return index;
+      }
+    });
+  }
+
+  private synchronized ExecutorService getExecutor() {
+    if (_executor == null) {
+      _executor = Executors.newFixedThreadPool(_threadpoolSize, new ThreadFactory() {
+        final AtomicInteger _threadNumber = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "PipelineExecutor-" + _threadNumber.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return _executor;
+  }
+}
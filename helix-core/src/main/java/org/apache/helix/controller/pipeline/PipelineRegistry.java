@@ -22,14 +22,23 @@ package org.apache.helix.controller.pipeline;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class PipelineRegistry {
   Map<String, List<Pipeline>> _map;
 
+  /**
+   * pipelines run by a controller that is not the leader, e.g. to keep its cluster data
+   * cache up to date
+   */
+  Map<String, List<Pipeline>> _standbyMap;
+
   public PipelineRegistry() {
     _map = new HashMap<String, List<Pipeline>>();
+    _standbyMap = new HashMap<String, List<Pipeline>>();
   }
 
   public void register(String eventName, Pipeline... pipelines) {
@@ -48,4 +57,40 @@ public class PipelineRegistry {
     }
     return Collections.emptyList();
   }
+
+  /**
+   * Register pipelines to run on an event while the controller is standby
+   * @param eventName
+   * @param pipelines
+   */
+  public void registerStandby(String eventName, Pipeline... pipelines) {
+    if (!_standbyMap.containsKey(eventName)) {
+      _standbyMap.put(eventName, new ArrayList<Pipeline>());
+    }
+    List<Pipeline> list = _standbyMap.get(eventName);
+    for (Pipeline pipeline : pipelines) {
+      list.add(pipeline);
+    }
+  }
+
+  public List<Pipeline> getStandbyPipelinesForEvent(String eventName) {
+    if (_standbyMap.containsKey(eventName)) {
+      return _standbyMap.get(eventName);
+    }
+    return Collections.emptyList();
+  }
+
+  /**
+   * @return all registered pipelines, leader and standby, each listed once
+   */
+  public Set<Pipeline> getAllPipelines() {
+    Set<Pipeline> pipelines = new LinkedHashSet<Pipeline>();
+    for (List<Pipeline> list : _map.values()) {
+      pipelines.addAll(list);
+    }
+    for (List<Pipeline> list : _standbyMap.values()) {
+      pipelines.addAll(list);
+    }
+    return pipelines;
+  }
 }
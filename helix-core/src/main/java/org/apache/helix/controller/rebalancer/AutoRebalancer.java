@@ -88,9 +88,9 @@ public class AutoRebalancer implements Rebalancer {
     // If there are nodes tagged with resource name, use only those nodes
     Set<String> taggedNodes = new HashSet<String>();
     if (currentIdealState.getInstanceGroupTag() != null) {
-      for (String instanceName : liveNodes) {
-        if (clusterData.getInstanceConfigMap().get(instanceName)
-            .containsTag(currentIdealState.getInstanceGroupTag())) {
+      for (String instanceName : clusterData.getInstancesWithTag(currentIdealState
+          .getInstanceGroupTag())) {
+        if (liveInstance.containsKey(instanceName)) {
           taggedNodes.add(instanceName);
         }
       }
@@ -0,0 +1,77 @@
+package org.apache.helix.controller.rebalancer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.helix.HelixManager;
+import org.apache.helix.util.HelixUtil;
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps one initialized instance per user-defined rebalancer class, so that rebalancers are
+ * not loaded by reflection and re-initialized on every pipeline run. All cached instances are
+ * dropped when the HelixManager changes, e.g. after a new controller takes leadership.<br/>
+ * A cached rebalancer may be used for several resources of the same pipeline run, so callers
+ * computing resources in parallel should synchronize on the returned instance.
+ */
+public class RebalancerRegistry {
+  private static final Logger LOG = Logger.getLogger(RebalancerRegistry.class);
+
+  private final Map<String, Rebalancer> _rebalancerMap = new HashMap<String, Rebalancer>();
+  private HelixManager _manager = null;
+
+  /**
+   * Get the rebalancer of a given class, creating and initializing it if necessary
+   * @param rebalancerClassName
+   * @param manager
+   * @return rebalancer instance, or null if the class cannot be instantiated
+   */
+  public synchronized Rebalancer getRebalancer(String rebalancerClassName, HelixManager manager) {
+    if (manager != _manager) {
+      _rebalancerMap.clear();
+      _manager = manager;
+    }
+
+    Rebalancer rebalancer = _rebalancerMap.get(rebalancerClassName);
+    if (rebalancer == null) {
+      try {
+        rebalancer =
+            (Rebalancer) (HelixUtil.loadClass(getClass(), rebalancerClassName).newInstance());
+        rebalancer.init(manager);
+        _rebalancerMap.put(rebalancerClassName, rebalancer);
+        LOG.info("Created rebalancer: " + rebalancerClassName);
+      } catch (Exception e) {
+        LOG.warn("Exception while creating custom rebalancer class:" + rebalancerClassName, e);
+        return null;
+      }
+    }
+    return rebalancer;
+  }
+
+  /**
+   * Drop all cached rebalancers
+   */
+  public synchronized void clear() {
+    _rebalancerMap.clear();
+    _manager = null;
+  }
+}
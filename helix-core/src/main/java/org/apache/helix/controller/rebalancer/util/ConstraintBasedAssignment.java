@@ -22,7 +22,6 @@ package org.apache.helix.controller.rebalancer.util;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -105,9 +104,12 @@ public class ConstraintBasedAssignment {
       String num = stateModelDef.getNumInstancesPerState(state);
       int stateCount = -1;
       if ("N".equals(num)) {
-        Set<String> liveAndEnabled = new HashSet<String>(liveInstancesMap.keySet());
-        liveAndEnabled.removeAll(disabledInstancesForPartition);
-        stateCount = liveAndEnabled.size();
+        stateCount = 0;
+        for (String instanceName : cache.getEnabledLiveInstances()) {
+          if (!disabledInstancesForPartition.contains(instanceName)) {
+            stateCount++;
+          }
+        }
       } else if ("R".equals(num)) {
         stateCount = instancePreferenceList.size();
       } else {
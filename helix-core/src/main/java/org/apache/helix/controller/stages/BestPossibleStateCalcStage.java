@@ -19,7 +19,15 @@ package org.apache.helix.controller.stages;
  * under the License.
  */
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.helix.HelixManager;
 import org.apache.helix.controller.pipeline.AbstractBaseStage;
@@ -27,22 +35,63 @@ import org.apache.helix.controller.pipeline.StageException;
 import org.apache.helix.controller.rebalancer.AutoRebalancer;
 import org.apache.helix.controller.rebalancer.CustomRebalancer;
 import org.apache.helix.controller.rebalancer.Rebalancer;
+import org.apache.helix.controller.rebalancer.RebalancerRegistry;
 import org.apache.helix.controller.rebalancer.SemiAutoRebalancer;
 import org.apache.helix.model.IdealState;
 import org.apache.helix.model.IdealState.RebalanceMode;
 import org.apache.helix.model.Partition;
 import org.apache.helix.model.Resource;
 import org.apache.helix.model.ResourceAssignment;
-import org.apache.helix.util.HelixUtil;
 import org.apache.log4j.Logger;
 
 /**
  * For partition compute best possible (instance,state) pair based on
- * IdealState,StateModel,LiveInstance
+ * IdealState,StateModel,LiveInstance<br/>
+ * Resources are computed in parallel on a pool of
+ * {@value #BEST_POSSIBLE_CALC_THREADS} threads (default to the number of processors).
+ * A pool size of 1 computes all resources in the pipeline thread.
  */
 public class BestPossibleStateCalcStage extends AbstractBaseStage {
   private static final Logger logger = Logger.getLogger(BestPossibleStateCalcStage.class.getName());
 
+  public static final String BEST_POSSIBLE_CALC_THREADS = "helixcontroller.bestPossibleCalcThreads";
+
+  private final int _threadpoolSize;
+  private final RebalancerRegistry _rebalancerRegistry;
+  private ExecutorService _executor = null;
+
+  // fingerprints and output of the last run, used to skip resources whose inputs didn't change
+  private Map<String, ResourceFingerprint> _lastFingerprints = null;
+  private BestPossibleStateOutput _lastOutput = null;
+
+  public BestPossibleStateCalcStage() {
+    this(Integer.parseInt(System.getProperty(BEST_POSSIBLE_CALC_THREADS, ""
+        + Runtime.getRuntime().availableProcessors())));
+  }
+
+  /**
+   * @param threadpoolSize number of threads computing resources in parallel
+   */
+  public BestPossibleStateCalcStage(int threadpoolSize) {
+    _threadpoolSize = threadpoolSize;
+    _rebalancerRegistry = new RebalancerRegistry();
+  }
+
+  @Override
+  public String[] getInputAttributes() {
+    return new String[] {
+        "helixmanager", "ClusterDataCache", AttributeName.RESOURCES.toString(),
+        AttributeName.CURRENT_STATE.toString(), AttributeName.RESOURCE_FINGERPRINTS.toString()
+    };
+  }
+
+  @Override
+  public String[] getOutputAttributes() {
+    return new String[] {
+        AttributeName.BEST_POSSIBLE_STATE.toString()
+    };
+  }
+
   @Override
   public void process(ClusterEvent event) throws Exception {
     long startTime = System.currentTimeMillis();
@@ -66,65 +115,143 @@ public class BestPossibleStateCalcStage extends AbstractBaseStage {
     logger.info("END BestPossibleStateCalcStage.process(). took: " + (endTime - startTime) + " ms");
   }
 
-  private BestPossibleStateOutput compute(ClusterEvent event, Map<String, Resource> resourceMap,
-      CurrentStateOutput currentStateOutput) {
+  @Override
+  public synchronized void release() {
+    if (_executor != null) {
+      _executor.shutdown();
+      _executor = null;
+    }
+    _rebalancerRegistry.clear();
+    _lastFingerprints = null;
+    _lastOutput = null;
+  }
+
+  private synchronized ExecutorService getExecutor() {
+    if (_executor == null) {
+      _executor = Executors.newFixedThreadPool(_threadpoolSize, new ThreadFactory() {
+        final AtomicInteger _threadNumber = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "BestPossibleStateCalc-" + _threadNumber.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return _executor;
+  }
+
+  private BestPossibleStateOutput compute(final ClusterEvent event,
+      Map<String, Resource> resourceMap, final CurrentStateOutput currentStateOutput)
+      throws Exception {
     // for each ideal state
     // read the state model def
     // for each resource
     // get the preference list
     // for each instanceName check if its alive then assign a state
-    ClusterDataCache cache = event.getAttribute("ClusterDataCache");
+    final BestPossibleStateOutput output = new BestPossibleStateOutput();
+    Map<String, ResourceFingerprint> fingerprints =
+        event.getAttribute(AttributeName.RESOURCE_FINGERPRINTS.toString());
 
-    BestPossibleStateOutput output = new BestPossibleStateOutput();
+    List<Resource> resourcesToCompute = new ArrayList<Resource>();
+    for (Resource resource : resourceMap.values()) {
+      String resourceName = resource.getResourceName();
+      if (fingerprints != null && _lastFingerprints != null
+          && fingerprints.get(resourceName) != null
+          && fingerprints.get(resourceName).equals(_lastFingerprints.get(resourceName))
+          && _lastOutput.getStateMap().containsKey(resourceName)) {
+        output.setResourceMap(resourceName, _lastOutput.getResourceMap(resourceName));
+      } else {
+        resourcesToCompute.add(resource);
+      }
+    }
+    logger.debug("Compute best possible states for " + resourcesToCompute.size() + " out of "
+        + resourceMap.size() + " resources");
 
-    for (String resourceName : resourceMap.keySet()) {
-      logger.debug("Processing resource:" + resourceName);
+    // clear before computing, so a failed run is never reused
+    _lastFingerprints = null;
+    _lastOutput = null;
 
-      Resource resource = resourceMap.get(resourceName);
-      // Ideal state may be gone. In that case we need to get the state model name
-      // from the current state
-      IdealState idealState = cache.getIdealState(resourceName);
+    if (_threadpoolSize <= 1 || resourcesToCompute.size() <= 1) {
+      for (Resource resource : resourcesToCompute) {
+        computeResource(event, resource, currentStateOutput, output);
+      }
+    } else {
+      List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+      for (final Resource resource : resourcesToCompute) {
+        tasks.add(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            computeResource(event, resource, currentStateOutput, output);
+            return null;
+          }
+        });
+      }
 
-      if (idealState == null) {
-        // if ideal state is deleted, use an empty one
-        logger.info("resource:" + resourceName + " does not exist anymore");
-        idealState = new IdealState(resourceName);
+      List<Future<Object>> futures = getExecutor().invokeAll(tasks);
+      for (Future<Object> future : futures) {
+        // propagate exceptions from rebalancers
+        future.get();
       }
+    }
 
-      Rebalancer rebalancer = null;
-      if (idealState.getRebalanceMode() == RebalanceMode.USER_DEFINED
-          && idealState.getRebalancerClassName() != null) {
-        String rebalancerClassName = idealState.getRebalancerClassName();
-        logger
-            .info("resource " + resourceName + " use idealStateRebalancer " + rebalancerClassName);
-        try {
-          rebalancer =
-              (Rebalancer) (HelixUtil.loadClass(getClass(), rebalancerClassName).newInstance());
-        } catch (Exception e) {
-          logger.warn("Exception while invoking custom rebalancer class:" + rebalancerClassName, e);
-        }
+    _lastFingerprints = fingerprints;
+    _lastOutput = output;
+    return output;
+  }
+
+  private void computeResource(ClusterEvent event, Resource resource,
+      CurrentStateOutput currentStateOutput, BestPossibleStateOutput output) {
+    ClusterDataCache cache = event.getAttribute("ClusterDataCache");
+    HelixManager manager = event.getAttribute("helixmanager");
+
+    String resourceName = resource.getResourceName();
+    logger.debug("Processing resource:" + resourceName);
+
+    // Ideal state may be gone. In that case we need to get the state model name
+    // from the current state
+    IdealState idealState = cache.getIdealState(resourceName);
+
+    if (idealState == null) {
+      // if ideal state is deleted, use an empty one
+      logger.info("resource:" + resourceName + " does not exist anymore");
+      idealState = new IdealState(resourceName);
+    }
+
+    Rebalancer rebalancer = null;
+    if (idealState.getRebalanceMode() == RebalanceMode.USER_DEFINED
+        && idealState.getRebalancerClassName() != null) {
+      String rebalancerClassName = idealState.getRebalancerClassName();
+      logger.info("resource " + resourceName + " use idealStateRebalancer " + rebalancerClassName);
+      rebalancer = _rebalancerRegistry.getRebalancer(rebalancerClassName, manager);
+    }
+
+    ResourceAssignment partitionStateAssignment;
+    if (rebalancer != null) {
+      // user-defined rebalancers are shared and may not be thread-safe
+      synchronized (rebalancer) {
+        partitionStateAssignment =
+            rebalancer.computeResourceMapping(resource, idealState, currentStateOutput, cache);
       }
-      if (rebalancer == null) {
-        if (idealState.getRebalanceMode() == RebalanceMode.FULL_AUTO) {
-          rebalancer = new AutoRebalancer();
-        } else if (idealState.getRebalanceMode() == RebalanceMode.SEMI_AUTO) {
-          rebalancer = new SemiAutoRebalancer();
-        } else {
-          rebalancer = new CustomRebalancer();
-        }
+    } else {
+      if (idealState.getRebalanceMode() == RebalanceMode.FULL_AUTO) {
+        rebalancer = new AutoRebalancer();
+      } else if (idealState.getRebalanceMode() == RebalanceMode.SEMI_AUTO) {
+        rebalancer = new SemiAutoRebalancer();
+      } else {
+        rebalancer = new CustomRebalancer();
       }
-
-      HelixManager manager = event.getAttribute("helixmanager");
       rebalancer.init(manager);
-      ResourceAssignment partitionStateAssignment =
+      partitionStateAssignment =
           rebalancer.computeResourceMapping(resource, idealState, currentStateOutput, cache);
-      if (partitionStateAssignment != null) {
-        for (Partition partition : resource.getPartitions()) {
-          Map<String, String> newStateMap = partitionStateAssignment.getReplicaMap(partition);
-          output.setState(resourceName, partition, newStateMap);
-        }
+    }
+
+    if (partitionStateAssignment != null) {
+      for (Partition partition : resource.getPartitions()) {
+        Map<String, String> newStateMap = partitionStateAssignment.getReplicaMap(partition);
+        output.setState(resourceName, partition, newStateMap);
       }
     }
-    return output;
   }
 }
@@ -22,26 +22,43 @@ package org.apache.helix.controller.stages;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.helix.model.Partition;
 
+/**
+ * Output of BestPossibleStateCalcStage. Different resources may be set concurrently, while
+ * the partitions of one resource are expected to be set by a single thread.
+ */
 public class BestPossibleStateOutput {
   // resource->partition->instance->state
-  Map<String, Map<Partition, Map<String, String>>> _dataMap;
+  ConcurrentMap<String, Map<Partition, Map<String, String>>> _dataMap;
 
   public BestPossibleStateOutput() {
-    _dataMap = new HashMap<String, Map<Partition, Map<String, String>>>();
+    _dataMap = new ConcurrentHashMap<String, Map<Partition, Map<String, String>>>();
   }
 
   public void setState(String resourceName, Partition resource,
       Map<String, String> bestInstanceStateMappingForResource) {
-    if (!_dataMap.containsKey(resourceName)) {
-      _dataMap.put(resourceName, new HashMap<Partition, Map<String, String>>());
-    }
     Map<Partition, Map<String, String>> map = _dataMap.get(resourceName);
+    if (map == null) {
+      _dataMap.putIfAbsent(resourceName, new HashMap<Partition, Map<String, String>>());
+      map = _dataMap.get(resourceName);
+    }
     map.put(resource, bestInstanceStateMappingForResource);
   }
 
+  /**
+   * Set the states of all partitions of a resource
+   * @param resourceName
+   * @param partitionStateMap partition->instance->state
+   */
+  public void setResourceMap(String resourceName,
+      Map<Partition, Map<String, String>> partitionStateMap) {
+    _dataMap.put(resourceName, partitionStateMap);
+  }
+
   public Map<String, String> getInstanceStateMap(String resourceName, Partition resource) {
     Map<Partition, Map<String, String>> map = _dataMap.get(resourceName);
     if (map != null) {
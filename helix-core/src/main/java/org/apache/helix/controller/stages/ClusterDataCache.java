@@ -19,13 +19,20 @@ package org.apache.helix.controller.stages;
  * under the License.
  */
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.helix.BaseDataAccessor;
 import org.apache.helix.HelixDataAccessor;
+import org.apache.helix.HelixProperty;
+import org.apache.helix.PropertyKey;
+import org.apache.helix.ZNRecord;
 import org.apache.helix.HelixConstants.StateModelToken;
 import org.apache.helix.PropertyKey.Builder;
 import org.apache.helix.model.ClusterConstraints;
@@ -37,6 +44,7 @@ import org.apache.helix.model.Message;
 import org.apache.helix.model.StateModelDefinition;
 import org.apache.helix.model.ClusterConstraints.ConstraintType;
 import org.apache.log4j.Logger;
+import org.apache.zookeeper.data.Stat;
 
 /**
  * Reads the data from the cluster using data accessor. This output ClusterData which
@@ -52,6 +60,13 @@ public class ClusterDataCache {
   Map<String, Map<String, Map<String, CurrentState>>> _currentStateMap;
   Map<String, Map<String, Message>> _messageMap;
 
+  // indexes derived from the maps above, rebuilt on each refresh
+  private Set<String> _disabledInstanceSet = Collections.emptySet();
+  private Map<String, Set<String>> _disabledInstancesByPartition = Collections.emptyMap();
+  private Map<String, Set<String>> _instancesByTag = Collections.emptyMap();
+  private Map<String, String> _sessionIdMap = Collections.emptyMap();
+  private Set<String> _enabledLiveInstances = Collections.emptySet();
+
   // Map<String, Map<String, HealthStat>> _healthStatMap;
   // private HealthStat _globalStats; // DON'T THINK I WILL USE THIS ANYMORE
   // private PersistentStats _persistentStats;
@@ -60,6 +75,27 @@ public class ClusterDataCache {
 
   private static final Logger LOG = Logger.getLogger(ClusterDataCache.class.getName());
 
+  /**
+   * In incremental mode, the records read by the last refresh are kept per parent path, and
+   * only children whose znode version changed are re-fetched
+   */
+  private final boolean _incremental;
+  private Map<String, Map<String, HelixProperty>> _snapshot;
+  private Map<String, Map<String, HelixProperty>> _nextSnapshot;
+
+  public ClusterDataCache() {
+    this(false);
+  }
+
+  /**
+   * @param incremental if true, refresh() only re-reads znodes whose version changed
+   *          since the previous refresh
+   */
+  public ClusterDataCache(boolean incremental) {
+    _incremental = incremental;
+    _snapshot = Collections.emptyMap();
+  }
+
   /**
    * This refreshes the cluster data by re-fetching the data from zookeeper in
    * an efficient way
@@ -67,21 +103,23 @@ public class ClusterDataCache {
    * @return
    */
   public boolean refresh(HelixDataAccessor accessor) {
+    _nextSnapshot = new HashMap<String, Map<String, HelixProperty>>();
+
     Builder keyBuilder = accessor.keyBuilder();
-    _idealStateMap = accessor.getChildValuesMap(keyBuilder.idealStates());
-    _liveInstanceMap = accessor.getChildValuesMap(keyBuilder.liveInstances());
+    _idealStateMap = getChildValuesMap(accessor, keyBuilder.idealStates());
+    _liveInstanceMap = getChildValuesMap(accessor, keyBuilder.liveInstances());
 
     for (LiveInstance instance : _liveInstanceMap.values()) {
       LOG.trace("live instance: " + instance.getInstanceName() + " " + instance.getSessionId());
     }
 
-    _stateModelDefMap = accessor.getChildValuesMap(keyBuilder.stateModelDefs());
-    _instanceConfigMap = accessor.getChildValuesMap(keyBuilder.instanceConfigs());
-    _constraintMap = accessor.getChildValuesMap(keyBuilder.constraints());
+    _stateModelDefMap = getChildValuesMap(accessor, keyBuilder.stateModelDefs());
+    _instanceConfigMap = getChildValuesMap(accessor, keyBuilder.instanceConfigs());
+    _constraintMap = getChildValuesMap(accessor, keyBuilder.constraints());
 
     Map<String, Map<String, Message>> msgMap = new HashMap<String, Map<String, Message>>();
     for (String instanceName : _liveInstanceMap.keySet()) {
-      Map<String, Message> map = accessor.getChildValuesMap(keyBuilder.messages(instanceName));
+      Map<String, Message> map = getChildValuesMap(accessor, keyBuilder.messages(instanceName));
       msgMap.put(instanceName, map);
     }
     _messageMap = Collections.unmodifiableMap(msgMap);
@@ -96,7 +134,7 @@ public class ClusterDataCache {
       }
       Map<String, Map<String, CurrentState>> curStateMap = allCurStateMap.get(instanceName);
       Map<String, CurrentState> map =
-          accessor.getChildValuesMap(keyBuilder.currentStates(instanceName, sessionId));
+          getChildValuesMap(accessor, keyBuilder.currentStates(instanceName, sessionId));
       curStateMap.put(sessionId, map);
     }
 
@@ -105,9 +143,167 @@ public class ClusterDataCache {
     }
     _currentStateMap = Collections.unmodifiableMap(allCurStateMap);
 
+    buildIndexes();
+
+    // drop records of paths not visited in this refresh, e.g. expired sessions
+    _snapshot = _nextSnapshot;
+    _nextSnapshot = null;
     return true;
   }
 
+  /**
+   * Build the lookup indexes over instance configs and live instances, so that rebalancers and
+   * stages don't scan all instances for each resource or partition
+   */
+  private void buildIndexes() {
+    Set<String> disabledInstanceSet = new HashSet<String>();
+    Map<String, Set<String>> disabledInstancesByPartition = new HashMap<String, Set<String>>();
+    Map<String, Set<String>> instancesByTag = new HashMap<String, Set<String>>();
+    for (Map.Entry<String, InstanceConfig> entry : _instanceConfigMap.entrySet()) {
+      String instanceName = entry.getKey();
+      InstanceConfig config = entry.getValue();
+      if (config.getInstanceEnabled() == false) {
+        disabledInstanceSet.add(instanceName);
+      }
+      List<String> disabledPartitions = config.getDisabledPartitions();
+      if (disabledPartitions != null) {
+        for (String partition : disabledPartitions) {
+          Set<String> instances = disabledInstancesByPartition.get(partition);
+          if (instances == null) {
+            instances = new HashSet<String>();
+            disabledInstancesByPartition.put(partition, instances);
+          }
+          instances.add(instanceName);
+        }
+      }
+      for (String tag : config.getTags()) {
+        Set<String> instances = instancesByTag.get(tag);
+        if (instances == null) {
+          instances = new HashSet<String>();
+          instancesByTag.put(tag, instances);
+        }
+        instances.add(instanceName);
+      }
+    }
+
+    // instances disabled for a partition also include all disabled instances
+    for (Map.Entry<String, Set<String>> entry : disabledInstancesByPartition.entrySet()) {
+      Set<String> instances = entry.getValue();
+      instances.addAll(disabledInstanceSet);
+      entry.setValue(Collections.unmodifiableSet(instances));
+    }
+    for (Map.Entry<String, Set<String>> entry : instancesByTag.entrySet()) {
+      entry.setValue(Collections.unmodifiableSet(entry.getValue()));
+    }
+
+    Map<String, String> sessionIdMap = new HashMap<String, String>();
+    Set<String> enabledLiveInstances = new HashSet<String>();
+    for (LiveInstance liveInstance : _liveInstanceMap.values()) {
+      String instanceName = liveInstance.getInstanceName();
+      sessionIdMap.put(instanceName, liveInstance.getSessionId());
+      if (!disabledInstanceSet.contains(instanceName)) {
+        enabledLiveInstances.add(instanceName);
+      }
+    }
+
+    _disabledInstanceSet = Collections.unmodifiableSet(disabledInstanceSet);
+    _disabledInstancesByPartition = disabledInstancesByPartition;
+    _instancesByTag = instancesByTag;
+    _sessionIdMap = Collections.unmodifiableMap(sessionIdMap);
+    _enabledLiveInstances = Collections.unmodifiableSet(enabledLiveInstances);
+  }
+
+  /**
+   * Read all children of a parent key. In incremental mode, only child names and stats are
+   * read; a child is re-fetched only if it is new, or its version or creation time differs
+   * from the record read by the previous refresh. Bucketized records are always re-fetched
+   * since updates to their buckets do not change the version of the parent znode.
+   * @param accessor
+   * @param parentKey
+   * @return map of child id to value
+   */
+  <T extends HelixProperty> Map<String, T> getChildValuesMap(HelixDataAccessor accessor,
+      PropertyKey parentKey) {
+    BaseDataAccessor<ZNRecord> baseAccessor = accessor.getBaseDataAccessor();
+    if (!_incremental || baseAccessor == null) {
+      return accessor.getChildValuesMap(parentKey);
+    }
+
+    String parentPath = parentKey.getPath();
+    Map<String, HelixProperty> lastChildren = _snapshot.get(parentPath);
+    Map<String, HelixProperty> curChildren = new HashMap<String, HelixProperty>();
+    _nextSnapshot.put(parentPath, curChildren);
+
+    if (lastChildren == null) {
+      // first read of this path
+      Map<String, T> childValuesMap = accessor.getChildValuesMap(parentKey);
+      curChildren.putAll(childValuesMap);
+      return childValuesMap;
+    }
+
+    List<String> childNames = accessor.getChildNames(parentKey);
+    if (childNames == null || childNames.isEmpty()) {
+      return new HashMap<String, T>();
+    }
+
+    List<String> paths = new ArrayList<String>();
+    for (String childName : childNames) {
+      paths.add(parentPath + "/" + childName);
+    }
+    Stat[] stats = baseAccessor.getStats(paths, 0);
+
+    List<PropertyKey> reloadKeys = new ArrayList<PropertyKey>();
+    for (int i = 0; i < childNames.size(); i++) {
+      String childName = childNames.get(i);
+      Stat stat = stats[i];
+      if (stat == null) {
+        // removed after we read child names
+        continue;
+      }
+
+      HelixProperty lastValue = lastChildren.get(childName);
+      if (lastValue != null && lastValue.getBucketSize() == 0
+          && lastValue.getRecord().getVersion() == stat.getVersion()
+          && lastValue.getRecord().getCreationTime() == stat.getCtime()) {
+        curChildren.put(childName, lastValue);
+      } else {
+        reloadKeys.add(getChildKey(parentKey, childName));
+      }
+    }
+
+    if (!reloadKeys.isEmpty()) {
+      List<HelixProperty> reloadValues = accessor.getProperty(reloadKeys);
+      for (int i = 0; i < reloadKeys.size(); i++) {
+        HelixProperty value = reloadValues.get(i);
+        if (value != null) {
+          String[] params = reloadKeys.get(i).getParams();
+          curChildren.put(params[params.length - 1], value);
+        }
+      }
+    }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("refresh " + parentPath + ", children: " + curChildren.size() + ", re-fetched: "
+          + reloadKeys.size());
+    }
+
+    Map<String, T> childValuesMap = new HashMap<String, T>();
+    for (HelixProperty value : curChildren.values()) {
+      @SuppressWarnings("unchecked")
+      T t = (T) value;
+      childValuesMap.put(value.getId(), t);
+    }
+    return childValuesMap;
+  }
+
+  private static PropertyKey getChildKey(PropertyKey parentKey, String childName) {
+    String[] parentParams = parentKey.getParams();
+    String[] params = Arrays.copyOf(parentParams, parentParams.length + 1);
+    params[parentParams.length] = childName;
+    return new PropertyKey(parentKey.getType(), parentKey.getConfigScope(),
+        parentKey.getTypeClass(), params);
+  }
+
   /**
    * Retrieves the idealstates for all resources
    * @return
@@ -211,18 +407,51 @@ public class ClusterDataCache {
    * Some partitions might be disabled on specific nodes.
    * This method allows one to fetch the set of nodes where a given partition is disabled
    * @param partition
-   * @return
+   * @return read-only set of instances that are disabled, or have the partition disabled
    */
   public Set<String> getDisabledInstancesForPartition(String partition) {
-    Set<String> disabledInstancesSet = new HashSet<String>();
-    for (String instance : _instanceConfigMap.keySet()) {
-      InstanceConfig config = _instanceConfigMap.get(instance);
-      if (config.getInstanceEnabled() == false
-          || config.getInstanceEnabledForPartition(partition) == false) {
-        disabledInstancesSet.add(instance);
-      }
+    Set<String> disabledInstancesSet = _disabledInstancesByPartition.get(partition);
+    if (disabledInstancesSet != null) {
+      return disabledInstancesSet;
     }
-    return disabledInstancesSet;
+    return _disabledInstanceSet;
+  }
+
+  /**
+   * Returns the instances that are disabled as a whole
+   * @return read-only set of instance names
+   */
+  public Set<String> getDisabledInstances() {
+    return _disabledInstanceSet;
+  }
+
+  /**
+   * Returns the instances, live or not, that have a given tag
+   * @param tag
+   * @return read-only set of instance names, empty if no instance has the tag
+   */
+  public Set<String> getInstancesWithTag(String tag) {
+    Set<String> instances = _instancesByTag.get(tag);
+    if (instances != null) {
+      return instances;
+    }
+    return Collections.emptySet();
+  }
+
+  /**
+   * Returns the session id of each live instance
+   * @return read-only map of instance name to session id
+   */
+  public Map<String, String> getSessionIdMap() {
+    return _sessionIdMap;
+  }
+
+  /**
+   * Returns the live instances that are not disabled
+   * @return read-only set of instance names
+   */
+  public Set<String> getEnabledLiveInstances() {
+    return _enabledLiveInstances;
   }
 
   /**
@@ -19,8 +19,8 @@ package org.apache.helix.controller.stages;
  * under the License.
  */
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 
@@ -31,7 +31,8 @@ public class ClusterEvent {
 
   public ClusterEvent(String name) {
     _eventName = name;
-    _eventAttributeMap = new HashMap<String, Object>();
+    // stages of an event may run concurrently
+    _eventAttributeMap = new ConcurrentHashMap<String, Object>();
   }
 
   public void addAttribute(String attrName, Object attrValue) {
@@ -40,7 +41,11 @@ public class ClusterEvent {
       logger.trace(" attribute value:" + attrValue);
     }
 
-    _eventAttributeMap.put(attrName, attrValue);
+    if (attrValue == null) {
+      _eventAttributeMap.remove(attrName);
+    } else {
+      _eventAttributeMap.put(attrName, attrValue);
+    }
   }
 
   public String getName() {
@@ -0,0 +1,117 @@
+package org.apache.helix.controller.stages;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.helix.NotificationContext;
+import org.apache.log4j.Logger;
+
+/**
+ * A blocking queue of cluster events that collapses pending events of the same type.
+ * Since every pipeline run re-reads the whole cluster, a single run of the latest event
+ * covers all pending events of the same name. A coalesced event moves to the tail of the
+ * queue, so it is never handled before an event that was enqueued ahead of it. INIT and
+ * FINALIZE events are never coalesced so that handler initialization and cleanup are
+ * always seen by the controller.
+ */
+public class ClusterEventBlockingQueue {
+  private static final Logger LOG = Logger.getLogger(ClusterEventBlockingQueue.class);
+
+  private final Map<String, ClusterEvent> _eventMap;
+  private long _seq = 0;
+  private long _enqueuedCount = 0;
+  private long _coalescedCount = 0;
+
+  public ClusterEventBlockingQueue() {
+    _eventMap = new LinkedHashMap<String, ClusterEvent>();
+  }
+
+  /**
+   * Add an event to the queue. If an event of the same name is already pending, it is
+   * replaced by the new one
+   * @param event
+   */
+  public synchronized void put(ClusterEvent event) {
+    _enqueuedCount++;
+
+    if (isCoalescible(event)) {
+      String key = event.getName();
+      if (_eventMap.remove(key) != null) {
+        _coalescedCount++;
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Coalesce event: " + key);
+        }
+      }
+      _eventMap.put(key, event);
+    } else {
+      _eventMap.put(event.getName() + "_" + (_seq++), event);
+    }
+    notifyAll();
+  }
+
+  /**
+   * Remove and return the head of the queue, waiting if no event is pending
+   * @return head of the queue
+   * @throws InterruptedException
+   */
+  public synchronized ClusterEvent take() throws InterruptedException {
+    while (_eventMap.isEmpty()) {
+      wait();
+    }
+    Iterator<Map.Entry<String, ClusterEvent>> iter = _eventMap.entrySet().iterator();
+    ClusterEvent event = iter.next().getValue();
+    iter.remove();
+    return event;
+  }
+
+  public synchronized int size() {
+    return _eventMap.size();
+  }
+
+  public synchronized void clear() {
+    _eventMap.clear();
+  }
+
+  /**
+   * @return total number of events put into the queue
+   */
+  public synchronized long getEnqueuedCount() {
+    return _enqueuedCount;
+  }
+
+  /**
+   * @return number of events merged into an already pending event
+   */
+  public synchronized long getCoalescedCount() {
+    return _coalescedCount;
+  }
+
+  private static boolean isCoalescible(ClusterEvent event) {
+    NotificationContext context = event.getAttribute("changeContext");
+    if (context == null) {
+      return true;
+    }
+    NotificationContext.Type type = context.getType();
+    return type != NotificationContext.Type.INIT && type != NotificationContext.Type.FINALIZE;
+  }
+}
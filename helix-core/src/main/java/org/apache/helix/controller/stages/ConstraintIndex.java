@@ -0,0 +1,391 @@
+package org.apache.helix.controller.stages;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.helix.model.ClusterConstraints;
+import org.apache.helix.model.ClusterConstraints.ConstraintAttribute;
+import org.apache.helix.model.ClusterConstraints.ConstraintValue;
+import org.apache.helix.model.ConstraintItem;
+import org.apache.helix.model.Message;
+import org.apache.log4j.Logger;
+
+/**
+ * Compiled form of {@link ClusterConstraints} used to throttle messages. Constraint items are
+ * bucketed per attribute by literal value, while items whose value is a regular expression
+ * are kept apart and only evaluated once per distinct attribute value. The items matching an
+ * attribute value are memoized, so matching a message costs a few map lookups no matter how
+ * many constraints there are. Selection follows the same rules as
+ * {@link MessageThrottleStage#selectConstraints(java.util.Set, Map)}, using specificity and
+ * order computed up front, and throttle counters are keyed by attribute value ids instead of
+ * strings.
+ */
+public class ConstraintIndex {
+  private static final Logger LOG = Logger.getLogger(ConstraintIndex.class);
+
+  private static final ConstraintAttribute[] ATTRIBUTES = ConstraintAttribute.values();
+
+  // memoized values of an attribute are dropped at the start of a run above this count
+  static final int MAX_MEMOIZED_VALUES = 10000;
+
+  /**
+   * Key of a throttle counter: the attributes of the selected constraint item, and the ids of the
+   * message's values of these attributes
+   */
+  public static final class CounterKey {
+    final int _mask;
+    final int[] _valueIds;
+    final int _hashCode;
+
+    CounterKey(int mask, int[] valueIds) {
+      _mask = mask;
+      _valueIds = valueIds;
+      _hashCode = 31 * mask + Arrays.hashCode(valueIds);
+    }
+
+    @Override
+    public int hashCode() {
+      return _hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof CounterKey)) {
+        return false;
+      }
+      CounterKey that = (CounterKey) obj;
+      return _mask == that._mask && Arrays.equals(_valueIds, that._valueIds);
+    }
+  }
+
+  /**
+   * A distinct value of an attribute, with the ids of the items that match it
+   */
+  private static final class AttributeValue {
+    final int _id;
+    final int[] _itemIds;
+
+    AttributeValue(int id, int[] itemIds) {
+      _id = id;
+      _itemIds = itemIds;
+    }
+  }
+
+  private final ClusterConstraints _constraints;
+
+  // items ordered by constraint id, skipping those with CONSTRAINT_VALUE=ANY
+  private final ConstraintItem[] _items;
+  private final int[] _itemValues;
+  private final int[] _itemMasks;
+  private final int[] _itemAttributeCounts;
+
+  // _moreSpecific[i][j] is true if item i is at least as specific as item j
+  private final boolean[][] _moreSpecific;
+
+  // rank of each item in alphabetic order of its string form
+  private final int[] _itemRanks;
+
+  // per attribute ordinal: literal value -> item ids, and item ids of regular expressions
+  private final List<Map<String, List<Integer>>> _literalItems;
+  private final List<List<Integer>> _regexItems;
+
+  // per attribute ordinal: memoized attribute values
+  private final List<Map<String, AttributeValue>> _attributeValues;
+
+  // scratch space for matching a message
+  private final int[] _matchCounts;
+  private final int[] _matchStamps;
+  private int _stamp = 0;
+
+  public ConstraintIndex(ClusterConstraints constraints) {
+    _constraints = constraints;
+
+    List<ConstraintItem> items = new ArrayList<ConstraintItem>();
+    Map<String, ConstraintItem> sortedItems =
+        new TreeMap<String, ConstraintItem>(constraints.getConstraintItems());
+    for (ConstraintItem item : sortedItems.values()) {
+      // don't select constraints with CONSTRAINT_VALUE=ANY
+      if (!ConstraintValue.ANY.toString().equals(item.getConstraintValue())) {
+        items.add(item);
+      }
+    }
+    int size = items.size();
+    _items = items.toArray(new ConstraintItem[size]);
+    _itemValues = new int[size];
+    _itemMasks = new int[size];
+    _itemAttributeCounts = new int[size];
+
+    _literalItems = new ArrayList<Map<String, List<Integer>>>();
+    _regexItems = new ArrayList<List<Integer>>();
+    _attributeValues = new ArrayList<Map<String, AttributeValue>>();
+    for (int i = 0; i < ATTRIBUTES.length; i++) {
+      _literalItems.add(new HashMap<String, List<Integer>>());
+      _regexItems.add(new ArrayList<Integer>());
+      _attributeValues.add(new HashMap<String, AttributeValue>());
+    }
+
+    for (int i = 0; i < size; i++) {
+      ConstraintItem item = _items[i];
+      _itemValues[i] = parseConstraintValue(item.getConstraintValue());
+      for (Map.Entry<ConstraintAttribute, String> entry : item.getAttributes().entrySet()) {
+        int ordinal = entry.getKey().ordinal();
+        String value = entry.getValue();
+        _itemMasks[i] |= (1 << ordinal);
+        _itemAttributeCounts[i]++;
+        if (isLiteral(value)) {
+          Map<String, List<Integer>> literalItems = _literalItems.get(ordinal);
+          if (!literalItems.containsKey(value)) {
+            literalItems.put(value, new ArrayList<Integer>());
+          }
+          literalItems.get(value).add(i);
+        } else {
+          _regexItems.get(ordinal).add(i);
+        }
+      }
+    }
+
+    // only items with the same attributes are ever compared
+    _moreSpecific = new boolean[size][size];
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        if (_itemMasks[i] == _itemMasks[j]) {
+          _moreSpecific[i][j] = _items[j].match(_items[i].getAttributes());
+        }
+      }
+    }
+
+    Integer[] order = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return _items[o1].toString().compareTo(_items[o2].toString());
+      }
+    });
+    _itemRanks = new int[size];
+    for (int rank = 0; rank < size; rank++) {
+      _itemRanks[order[rank]] = rank;
+    }
+
+    _matchCounts = new int[size];
+    _matchStamps = new int[size];
+  }
+
+  /**
+   * @return the constraints this index is compiled from
+   */
+  public ClusterConstraints getConstraints() {
+    return _constraints;
+  }
+
+  /**
+   * Prepare for the messages of a new pipeline run. Attribute value ids only need to be
+   * stable within a run, so the memoized values of an attribute are dropped once there are
+   * too many, e.g. after many resources or instances came and went.
+   */
+  public void startRun() {
+    for (Map<String, AttributeValue> attrValues : _attributeValues) {
+      if (attrValues.size() > MAX_MEMOIZED_VALUES) {
+        attrValues.clear();
+      }
+    }
+  }
+
+  /**
+   * @return number of attribute values memoized so far
+   */
+  int getMemoizedValueCount() {
+    int count = 0;
+    for (Map<String, AttributeValue> attrValues : _attributeValues) {
+      count += attrValues.size();
+    }
+    return count;
+  }
+
+  /**
+   * Count a message against the constraints it matches
+   * @param message
+   * @param counters throttle counters, shared by all messages of a pipeline run
+   * @param needThrottle
+   * @return true if the message exceeds any of the selected constraints and needs throttle
+   */
+  public boolean throttle(Message message, Map<CounterKey, int[]> counters, boolean needThrottle) {
+    if (_items.length == 0) {
+      return false;
+    }
+
+    Map<ConstraintAttribute, String> msgAttr = ClusterConstraints.toConstraintAttributes(message);
+    int[] valueIds = new int[ATTRIBUTES.length];
+    Arrays.fill(valueIds, -1);
+
+    // count for each item the number of its attributes the message matches
+    _stamp++;
+    List<Integer> matches = new ArrayList<Integer>();
+    for (Map.Entry<ConstraintAttribute, String> entry : msgAttr.entrySet()) {
+      if (entry.getValue() == null) {
+        continue;
+      }
+      int ordinal = entry.getKey().ordinal();
+      AttributeValue attrValue = getAttributeValue(ordinal, entry.getValue());
+      valueIds[ordinal] = attrValue._id;
+      for (int itemId : attrValue._itemIds) {
+        if (_matchStamps[itemId] != _stamp) {
+          _matchStamps[itemId] = _stamp;
+          _matchCounts[itemId] = 0;
+        }
+        if (++_matchCounts[itemId] == _itemAttributeCounts[itemId]) {
+          matches.add(itemId);
+        }
+      }
+    }
+
+    // select one item per attribute set
+    Map<Integer, Integer> selected = new HashMap<Integer, Integer>();
+    for (int itemId : matches) {
+      Integer mask = _itemMasks[itemId];
+      Integer existingId = selected.get(mask);
+      if (existingId == null || isPreferred(itemId, existingId)) {
+        selected.put(mask, itemId);
+      }
+    }
+
+    boolean msgThrottled = false;
+    for (Map.Entry<Integer, Integer> entry : selected.entrySet()) {
+      int mask = entry.getKey();
+      int itemId = entry.getValue();
+      int[] keyValueIds = new int[Integer.bitCount(mask)];
+      int k = 0;
+      for (int ordinal = 0; ordinal < ATTRIBUTES.length; ordinal++) {
+        if ((mask & (1 << ordinal)) != 0) {
+          keyValueIds[k++] = valueIds[ordinal];
+        }
+      }
+
+      CounterKey key = new CounterKey(mask, keyValueIds);
+      int[] counter = counters.get(key);
+      if (counter == null) {
+        counter = new int[] {
+          _itemValues[itemId]
+        };
+        counters.put(key, counter);
+      }
+      int value = --counter[0];
+
+      if (needThrottle && value < 0) {
+        msgThrottled = true;
+
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("message: " + message + " is throttled by constraint: " + _items[itemId]);
+        }
+      }
+    }
+    return msgThrottled;
+  }
+
+  /**
+   * same rules as {@link MessageThrottleStage#selectConstraints(java.util.Set, Map)}
+   */
+  private boolean isPreferred(int itemId, int existingId) {
+    if (_moreSpecific[itemId][existingId]) {
+      // item is more specific than existingItem
+      return true;
+    }
+    if (_moreSpecific[existingId][itemId]) {
+      return false;
+    }
+    // existingItem and item are of incomparable specificity
+    if (_itemValues[itemId] != _itemValues[existingId]) {
+      return _itemValues[itemId] < _itemValues[existingId];
+    }
+    return _itemRanks[itemId] < _itemRanks[existingId];
+  }
+
+  private AttributeValue getAttributeValue(int ordinal, String value) {
+    Map<String, AttributeValue> attrValues = _attributeValues.get(ordinal);
+    AttributeValue attrValue = attrValues.get(value);
+    if (attrValue == null) {
+      List<Integer> itemIds = new ArrayList<Integer>();
+      List<Integer> literalItems = _literalItems.get(ordinal).get(value);
+      if (literalItems != null) {
+        itemIds.addAll(literalItems);
+      }
+      for (int itemId : _regexItems.get(ordinal)) {
+        if (value.matches(_items[itemId].getAttributeValue(ATTRIBUTES[ordinal]))) {
+          itemIds.add(itemId);
+        }
+      }
+
+      int[] ids = new int[itemIds.size()];
+      for (int i = 0; i < ids.length; i++) {
+        ids[i] = itemIds.get(i);
+      }
+      attrValue = new AttributeValue(attrValues.size(), ids);
+      attrValues.put(value, attrValue);
+    }
+    return attrValue;
+  }
+
+  private static boolean isLiteral(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      if (".*+?[](){}|^$\\".indexOf(value.charAt(i)) >= 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param valueStr constraint value, a number or {@link ConstraintValue#ANY}
+   * @return the number, or {@link Integer#MAX_VALUE} for ANY or invalid values
+   */
+  static int parseConstraintValue(String valueStr) {
+    int value = Integer.MAX_VALUE;
+
+    try {
+      ConstraintValue valueToken = ConstraintValue.valueOf(valueStr);
+      switch (valueToken) {
+      case ANY:
+        value = Integer.MAX_VALUE;
+        break;
+      default:
+        LOG.error("Invalid constraintValue token:" + valueStr + ". Use default value:"
+            + Integer.MAX_VALUE);
+        break;
+      }
+    } catch (Exception e) {
+      try {
+        value = Integer.parseInt(valueStr);
+      } catch (NumberFormatException ne) {
+        LOG.error("Invalid constraintValue string:" + valueStr + ". Use default value:"
+            + Integer.MAX_VALUE);
+      }
+    }
+    return value;
+  }
+}
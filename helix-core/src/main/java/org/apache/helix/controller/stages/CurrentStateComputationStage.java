@@ -29,6 +29,7 @@ import org.apache.helix.model.LiveInstance;
 import org.apache.helix.model.Message;
 import org.apache.helix.model.Partition;
 import org.apache.helix.model.Resource;
+import org.apache.helix.model.StateModelDefinition;
 import org.apache.helix.model.Message.MessageType;
 
 /**
@@ -37,6 +38,20 @@ import org.apache.helix.model.Message.MessageType;
  * previous State [ResourceComputationStage]
  */
 public class CurrentStateComputationStage extends AbstractBaseStage {
+  @Override
+  public String[] getInputAttributes() {
+    return new String[] {
+        "ClusterDataCache", AttributeName.RESOURCES.toString()
+    };
+  }
+
+  @Override
+  public String[] getOutputAttributes() {
+    return new String[] {
+        AttributeName.CURRENT_STATE.toString()
+    };
+  }
+
   @Override
   public void process(ClusterEvent event) throws Exception {
     ClusterDataCache cache = event.getAttribute("ClusterDataCache");
@@ -50,6 +65,52 @@ public class CurrentStateComputationStage extends AbstractBaseStage {
     Map<String, LiveInstance> liveInstances = cache.getLiveInstances();
     CurrentStateOutput currentStateOutput = new CurrentStateOutput();
 
+    // number the states of each resource in the priority order of its state model
+    for (Resource resource : resourceMap.values()) {
+      StateModelDefinition stateModelDef = cache.getStateModelDef(resource.getStateModelDefRef());
+      if (stateModelDef != null) {
+        currentStateOutput.setStateModelDefinition(stateModelDef);
+      }
+    }
+
+    // current states before pending states, so a resource has its state model set before the
+    // first of its states is numbered
+    for (LiveInstance instance : liveInstances.values()) {
+      String instanceName = instance.getInstanceName();
+
+      String clientSessionId = instance.getSessionId();
+      Map<String, CurrentState> currentStateMap =
+          cache.getCurrentState(instanceName, clientSessionId);
+      for (CurrentState currentState : currentStateMap.values()) {
+
+        if (!instance.getSessionId().equals(currentState.getSessionId())) {
+          continue;
+        }
+        String resourceName = currentState.getResourceName();
+        String stateModelDefName = currentState.getStateModelDefRef();
+        Resource resource = resourceMap.get(resourceName);
+        if (resource == null) {
+          continue;
+        }
+        if (stateModelDefName != null) {
+          currentStateOutput.setResourceStateModelDef(resourceName, stateModelDefName);
+        }
+
+        currentStateOutput.setBucketSize(resourceName, currentState.getBucketSize());
+
+        Map<String, String> partitionStateMap = currentState.getPartitionStateMap();
+        for (String partitionName : partitionStateMap.keySet()) {
+          Partition partition = resource.getPartition(partitionName);
+          if (partition != null) {
+            currentStateOutput.setCurrentState(resourceName, partition, instanceName,
+                currentState.getState(partitionName));
+
+          } else {
+            // log
+          }
+        }
+      }
+    }
     for (LiveInstance instance : liveInstances.values()) {
       String instanceName = instance.getInstanceName();
       Map<String, Message> instanceMessages = cache.getMessages(instanceName);
@@ -91,42 +152,6 @@ public class CurrentStateComputationStage extends AbstractBaseStage {
         }
       }
     }
-    for (LiveInstance instance : liveInstances.values()) {
-      String instanceName = instance.getInstanceName();
-
-      String clientSessionId = instance.getSessionId();
-      Map<String, CurrentState> currentStateMap =
-          cache.getCurrentState(instanceName, clientSessionId);
-      for (CurrentState currentState : currentStateMap.values()) {
-
-        if (!instance.getSessionId().equals(currentState.getSessionId())) {
-          continue;
-        }
-        String resourceName = currentState.getResourceName();
-        String stateModelDefName = currentState.getStateModelDefRef();
-        Resource resource = resourceMap.get(resourceName);
-        if (resource == null) {
-          continue;
-        }
-        if (stateModelDefName != null) {
-          currentStateOutput.setResourceStateModelDef(resourceName, stateModelDefName);
-        }
-
-        currentStateOutput.setBucketSize(resourceName, currentState.getBucketSize());
-
-        Map<String, String> partitionStateMap = currentState.getPartitionStateMap();
-        for (String partitionName : partitionStateMap.keySet()) {
-          Partition partition = resource.getPartition(partitionName);
-          if (partition != null) {
-            currentStateOutput.setCurrentState(resourceName, partition, instanceName,
-                currentState.getState(partitionName));
-
-          } else {
-            // log
-          }
-        }
-      }
-    }
     event.addAttribute(AttributeName.CURRENT_STATE.toString(), currentStateOutput);
   }
 }
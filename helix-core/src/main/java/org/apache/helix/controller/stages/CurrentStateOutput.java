@@ -19,25 +19,49 @@ package org.apache.helix.controller.stages;
  * under the License.
  */
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
-import org.apache.helix.model.CurrentState;
 import org.apache.helix.model.Partition;
+import org.apache.helix.model.StateModelDefinition;
 
+/**
+ * Current and pending states of all partitions. Instances, resources and partitions get dense int
+ * ids and states get byte ordinals of the resource's state model, so the state of a partition
+ * replica is one slot of a primitive array. The map getters return read-only views over the
+ * arrays.
+ */
 public class CurrentStateOutput {
-  private final Map<String, Map<Partition, Map<String, String>>> _currentStateMap;
-  private final Map<String, Map<Partition, Map<String, String>>> _pendingStateMap;
+  private final NameIdMap _instanceIds;
+  private final NameIdMap _resourceIds;
+  private final List<ResourceStates> _resourceStates;
   private final Map<String, String> _resourceStateModelMap;
-  private final Map<String, CurrentState> _curStateMetaMap;
+  private final Map<String, StateModelDefinition> _stateModelDefMap;
 
   public CurrentStateOutput() {
-    _currentStateMap = new HashMap<String, Map<Partition, Map<String, String>>>();
-    _pendingStateMap = new HashMap<String, Map<Partition, Map<String, String>>>();
+    _instanceIds = new NameIdMap();
+    _resourceIds = new NameIdMap();
+    _resourceStates = new ArrayList<ResourceStates>();
     _resourceStateModelMap = new HashMap<String, String>();
-    _curStateMetaMap = new HashMap<String, CurrentState>();
+    _stateModelDefMap = new HashMap<String, StateModelDefinition>();
+  }
 
+  /**
+   * Register a state model definition, so resources of the state model number its states in
+   * priority order. Must be called before any state of such resources is set
+   * @param stateModelDef
+   */
+  public void setStateModelDefinition(StateModelDefinition stateModelDef) {
+    _stateModelDefMap.put(stateModelDef.getId(), stateModelDef);
   }
 
   public void setResourceStateModelDef(String resourceName, String stateModelDefName) {
@@ -49,44 +73,51 @@ public class CurrentStateOutput {
   }
 
   public void setBucketSize(String resource, int bucketSize) {
-    CurrentState curStateMeta = _curStateMetaMap.get(resource);
-    if (curStateMeta == null) {
-      curStateMeta = new CurrentState(resource);
-      _curStateMetaMap.put(resource, curStateMeta);
-    }
-    curStateMeta.setBucketSize(bucketSize);
+    getOrAddResourceStates(resource)._bucketSize = bucketSize;
   }
 
   public int getBucketSize(String resource) {
-    int bucketSize = 0;
-    CurrentState curStateMeta = _curStateMetaMap.get(resource);
-    if (curStateMeta != null) {
-      bucketSize = curStateMeta.getBucketSize();
-    }
-
-    return bucketSize;
+    ResourceStates resourceStates = getResourceStates(resource);
+    return resourceStates == null ? 0 : resourceStates._bucketSize;
   }
 
   public void setCurrentState(String resourceName, Partition partition, String instanceName,
       String state) {
-    if (!_currentStateMap.containsKey(resourceName)) {
-      _currentStateMap.put(resourceName, new HashMap<Partition, Map<String, String>>());
-    }
-    if (!_currentStateMap.get(resourceName).containsKey(partition)) {
-      _currentStateMap.get(resourceName).put(partition, new HashMap<String, String>());
-    }
-    _currentStateMap.get(resourceName).get(partition).put(instanceName, state);
+    setState(resourceName, partition, instanceName, state, false);
   }
 
   public void setPendingState(String resourceName, Partition partition, String instanceName,
       String state) {
-    if (!_pendingStateMap.containsKey(resourceName)) {
-      _pendingStateMap.put(resourceName, new HashMap<Partition, Map<String, String>>());
-    }
-    if (!_pendingStateMap.get(resourceName).containsKey(partition)) {
-      _pendingStateMap.get(resourceName).put(partition, new HashMap<String, String>());
+    setState(resourceName, partition, instanceName, state, true);
+  }
+
+  private void setState(String resourceName, Partition partition, String instanceName,
+      String state, boolean pending) {
+    ResourceStates resourceStates = getOrAddResourceStates(resourceName);
+    PartitionStates partitionStates = resourceStates.getOrAddPartitionStates(partition);
+    byte ordinal = resourceStates._stateOrdinals.getOrAddOrdinal(state);
+    partitionStates.set(_instanceIds.getOrAddId(instanceName), ordinal, pending);
+  }
+
+  private ResourceStates getResourceStates(String resourceName) {
+    int resourceId = _resourceIds.getId(resourceName);
+    return resourceId < 0 ? null : _resourceStates.get(resourceId);
+  }
+
+  private ResourceStates getOrAddResourceStates(String resourceName) {
+    int resourceId = _resourceIds.getOrAddId(resourceName);
+    if (resourceId == _resourceStates.size()) {
+      String stateModelDefName = _resourceStateModelMap.get(resourceName);
+      StateModelDefinition stateModelDef =
+          stateModelDefName == null ? null : _stateModelDefMap.get(stateModelDefName);
+      _resourceStates.add(new ResourceStates(new StateOrdinals(stateModelDef)));
     }
-    _pendingStateMap.get(resourceName).get(partition).put(instanceName, state);
+    return _resourceStates.get(resourceId);
+  }
+
+  private PartitionStates getPartitionStates(String resourceName, Partition partition) {
+    ResourceStates resourceStates = getResourceStates(resourceName);
+    return resourceStates == null ? null : resourceStates.getPartitionStates(partition);
   }
 
   /**
@@ -97,14 +128,7 @@ public class CurrentStateOutput {
    * @return
    */
   public String getCurrentState(String resourceName, Partition partition, String instanceName) {
-    Map<Partition, Map<String, String>> map = _currentStateMap.get(resourceName);
-    if (map != null) {
-      Map<String, String> instanceStateMap = map.get(partition);
-      if (instanceStateMap != null) {
-        return instanceStateMap.get(instanceName);
-      }
-    }
-    return null;
+    return getState(resourceName, partition, instanceName, false);
   }
 
   /**
@@ -115,14 +139,21 @@ public class CurrentStateOutput {
    * @return
    */
   public String getPendingState(String resourceName, Partition partition, String instanceName) {
-    Map<Partition, Map<String, String>> map = _pendingStateMap.get(resourceName);
-    if (map != null) {
-      Map<String, String> instanceStateMap = map.get(partition);
-      if (instanceStateMap != null) {
-        return instanceStateMap.get(instanceName);
-      }
+    return getState(resourceName, partition, instanceName, true);
+  }
+
+  private String getState(String resourceName, Partition partition, String instanceName,
+      boolean pending) {
+    ResourceStates resourceStates = getResourceStates(resourceName);
+    if (resourceStates == null) {
+      return null;
+    }
+    PartitionStates partitionStates = resourceStates.getPartitionStates(partition);
+    int instanceId = _instanceIds.getId(instanceName);
+    if (partitionStates == null || instanceId < 0) {
+      return null;
     }
-    return null;
+    return resourceStates._stateOrdinals.getState(partitionStates.get(instanceId, pending));
   }
 
   /**
@@ -132,13 +163,7 @@ public class CurrentStateOutput {
    * @return
    */
   public Map<String, String> getCurrentStateMap(String resourceName, Partition partition) {
-    if (_currentStateMap.containsKey(resourceName)) {
-      Map<Partition, Map<String, String>> map = _currentStateMap.get(resourceName);
-      if (map.containsKey(partition)) {
-        return map.get(partition);
-      }
-    }
-    return Collections.emptyMap();
+    return getStateMap(resourceName, partition, false);
   }
 
   /**
@@ -148,10 +173,16 @@ public class CurrentStateOutput {
    * @return
    */
   public Map<String, String> getPendingStateMap(String resourceName, Partition partition) {
-    if (_pendingStateMap.containsKey(resourceName)) {
-      Map<Partition, Map<String, String>> map = _pendingStateMap.get(resourceName);
-      if (map.containsKey(partition)) {
-        return map.get(partition);
+    return getStateMap(resourceName, partition, true);
+  }
+
+  private Map<String, String> getStateMap(String resourceName, Partition partition,
+      boolean pending) {
+    ResourceStates resourceStates = getResourceStates(resourceName);
+    if (resourceStates != null) {
+      PartitionStates partitionStates = resourceStates.getPartitionStates(partition);
+      if (partitionStates != null && partitionStates.size(pending) > 0) {
+        return new StateMapView(resourceStates._stateOrdinals, partitionStates, pending);
       }
     }
     return Collections.emptyMap();
@@ -159,11 +190,208 @@ public class CurrentStateOutput {
 
   @Override
   public String toString() {
+    Map<String, Map<Partition, Map<String, String>>> currentStateMap =
+        new HashMap<String, Map<Partition, Map<String, String>>>();
+    Map<String, Map<Partition, Map<String, String>>> pendingStateMap =
+        new HashMap<String, Map<Partition, Map<String, String>>>();
+    for (int resourceId = 0; resourceId < _resourceStates.size(); resourceId++) {
+      String resourceName = _resourceIds.getName(resourceId);
+      ResourceStates resourceStates = _resourceStates.get(resourceId);
+      for (int partitionId = 0; partitionId < resourceStates._partitions.size(); partitionId++) {
+        Partition partition = resourceStates._partitions.get(partitionId);
+        PartitionStates partitionStates = resourceStates._partitionStates.get(partitionId);
+        addStateMap(currentStateMap, resourceName, partition, resourceStates, partitionStates,
+            false);
+        addStateMap(pendingStateMap, resourceName, partition, resourceStates, partitionStates,
+            true);
+      }
+    }
     StringBuilder sb = new StringBuilder();
-    sb.append("current state= ").append(_currentStateMap);
-    sb.append(", pending state= ").append(_pendingStateMap);
+    sb.append("current state= ").append(currentStateMap);
+    sb.append(", pending state= ").append(pendingStateMap);
     return sb.toString();
 
   }
 
+  private void addStateMap(Map<String, Map<Partition, Map<String, String>>> map,
+      String resourceName, Partition partition, ResourceStates resourceStates,
+      PartitionStates partitionStates, boolean pending) {
+    if (partitionStates.size(pending) == 0) {
+      return;
+    }
+    if (!map.containsKey(resourceName)) {
+      map.put(resourceName, new HashMap<Partition, Map<String, String>>());
+    }
+    map.get(resourceName).put(partition,
+        new HashMap<String, String>(new StateMapView(resourceStates._stateOrdinals,
+            partitionStates, pending)));
+  }
+
+  /**
+   * states of the partitions of one resource, indexed by partition id
+   */
+  static class ResourceStates {
+    final StateOrdinals _stateOrdinals;
+    final NameIdMap _partitionIds = new NameIdMap();
+    final List<Partition> _partitions = new ArrayList<Partition>();
+    final List<PartitionStates> _partitionStates = new ArrayList<PartitionStates>();
+    int _bucketSize = 0;
+
+    ResourceStates(StateOrdinals stateOrdinals) {
+      _stateOrdinals = stateOrdinals;
+    }
+
+    PartitionStates getPartitionStates(Partition partition) {
+      int partitionId = _partitionIds.getId(partition.getPartitionName());
+      return partitionId < 0 ? null : _partitionStates.get(partitionId);
+    }
+
+    PartitionStates getOrAddPartitionStates(Partition partition) {
+      int partitionId = _partitionIds.getOrAddId(partition.getPartitionName());
+      if (partitionId == _partitionStates.size()) {
+        _partitions.add(partition);
+        _partitionStates.add(new PartitionStates());
+      }
+      return _partitionStates.get(partitionId);
+    }
+  }
+
+  /**
+   * current and pending state ordinals of the replicas of one partition, indexed by slot. a
+   * partition has a few replicas, so slots are found by a linear scan of the instance ids
+   */
+  static class PartitionStates {
+    int[] _instanceIds = new int[3];
+    byte[] _currentStates = new byte[3];
+    byte[] _pendingStates = new byte[3];
+    int _slots = 0;
+
+    int slotOf(int instanceId) {
+      for (int i = 0; i < _slots; i++) {
+        if (_instanceIds[i] == instanceId) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    void set(int instanceId, byte ordinal, boolean pending) {
+      int slot = slotOf(instanceId);
+      if (slot < 0) {
+        if (_slots == _instanceIds.length) {
+          int capacity = _slots * 2;
+          _instanceIds = Arrays.copyOf(_instanceIds, capacity);
+          _currentStates = Arrays.copyOf(_currentStates, capacity);
+          _pendingStates = Arrays.copyOf(_pendingStates, capacity);
+        }
+        slot = _slots++;
+        _instanceIds[slot] = instanceId;
+        _currentStates[slot] = StateOrdinals.NONE;
+        _pendingStates[slot] = StateOrdinals.NONE;
+      }
+      (pending ? _pendingStates : _currentStates)[slot] = ordinal;
+    }
+
+    byte get(int instanceId, boolean pending) {
+      int slot = slotOf(instanceId);
+      return slot < 0 ? StateOrdinals.NONE : (pending ? _pendingStates : _currentStates)[slot];
+    }
+
+    int size(boolean pending) {
+      byte[] states = pending ? _pendingStates : _currentStates;
+      int size = 0;
+      for (int i = 0; i < _slots; i++) {
+        if (states[i] != StateOrdinals.NONE) {
+          size++;
+        }
+      }
+      return size;
+    }
+  }
+
+  /**
+   * read-only instance->state map view over the current or pending states of a partition
+   */
+  class StateMapView extends AbstractMap<String, String> {
+    final StateOrdinals _stateOrdinals;
+    final PartitionStates _partitionStates;
+    final boolean _pending;
+
+    StateMapView(StateOrdinals stateOrdinals, PartitionStates partitionStates, boolean pending) {
+      _stateOrdinals = stateOrdinals;
+      _partitionStates = partitionStates;
+      _pending = pending;
+    }
+
+    private byte[] states() {
+      return _pending ? _partitionStates._pendingStates : _partitionStates._currentStates;
+    }
+
+    @Override
+    public String get(Object key) {
+      int slot = slotOf(key);
+      return slot < 0 ? null : _stateOrdinals.getState(states()[slot]);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return slotOf(key) >= 0;
+    }
+
+    private int slotOf(Object key) {
+      if (!(key instanceof String)) {
+        return -1;
+      }
+      int instanceId = _instanceIds.getId((String) key);
+      int slot = instanceId < 0 ? -1 : _partitionStates.slotOf(instanceId);
+      return slot < 0 || states()[slot] == StateOrdinals.NONE ? -1 : slot;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+      return new AbstractSet<Map.Entry<String, String>>() {
+        @Override
+        public Iterator<Map.Entry<String, String>> iterator() {
+          return new Iterator<Map.Entry<String, String>>() {
+            int _next = advance(0);
+
+            private int advance(int slot) {
+              byte[] states = states();
+              while (slot < _partitionStates._slots && states[slot] == StateOrdinals.NONE) {
+                slot++;
+              }
+              return slot;
+            }
+
+            @Override
+            public boolean hasNext() {
+              return _next < _partitionStates._slots;
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+              if (!hasNext()) {
+                throw new NoSuchElementException();
+              }
+              int slot = _next;
+              _next = advance(slot + 1);
+              return new SimpleImmutableEntry<String, String>(
+                  _instanceIds.getName(_partitionStates._instanceIds[slot]),
+                  _stateOrdinals.getState(states()[slot]));
+            }
+
+            @Override
+            public void remove() {
+              throw new UnsupportedOperationException();
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return _partitionStates.size(_pending);
+        }
+      };
+    }
+  }
 }
@@ -20,12 +20,15 @@ package org.apache.helix.controller.stages;
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
+import org.apache.helix.AccessOption;
+import org.apache.helix.BaseDataAccessor;
 import org.apache.helix.HelixDataAccessor;
 import org.apache.helix.HelixDefinedState;
 import org.apache.helix.HelixManager;
@@ -47,10 +50,41 @@ import org.apache.helix.model.Resource;
 import org.apache.helix.model.StatusUpdate;
 import org.apache.helix.monitoring.mbeans.ClusterStatusMonitor;
 import org.apache.log4j.Logger;
+import org.apache.zookeeper.data.Stat;
 
+/**
+ * Compute external views from current states and write the changed ones. External views
+ * written by this stage are remembered together with their znode versions, so on the next run
+ * only views whose version changed behind our back are re-read from zookeeper. Writes of
+ * non-bucketized views are version-checked against the view we compared with; on conflict the
+ * view is re-read and compared again.
+ */
 public class ExternalViewComputeStage extends AbstractBaseStage {
   private static Logger log = Logger.getLogger(ExternalViewComputeStage.class);
 
+  /**
+   * number of attempts to write an external view that keeps failing on version conflict
+   */
+  static final int MAX_WRITE_ATTEMPTS = 2;
+
+  /**
+   * last known non-bucketized external views, with version and creation time in the record
+   */
+  private final Map<String, ExternalView> _lastExtViews = new HashMap<String, ExternalView>();
+
+  @Override
+  public String[] getInputAttributes() {
+    return new String[] {
+        "helixmanager", "clusterStatusMonitor", "ClusterDataCache",
+        AttributeName.RESOURCES.toString(), AttributeName.CURRENT_STATE.toString()
+    };
+  }
+
+  @Override
+  public String[] getOutputAttributes() {
+    return new String[0];
+  }
+
   @Override
   public void process(ClusterEvent event) throws Exception {
     long startTime = System.currentTimeMillis();
@@ -74,8 +108,7 @@ public class ExternalViewComputeStage extends AbstractBaseStage {
     List<ExternalView> newExtViews = new ArrayList<ExternalView>();
     List<PropertyKey> keys = new ArrayList<PropertyKey>();
 
-    Map<String, ExternalView> curExtViews =
-        dataAccessor.getChildValuesMap(keyBuilder.externalViews());
+    Map<String, ExternalView> curExtViews = readExternalViews(dataAccessor);
 
     for (String resourceName : resourceMap.keySet()) {
       ExternalView view = new ExternalView(resourceName);
@@ -139,13 +172,14 @@ public class ExternalViewComputeStage extends AbstractBaseStage {
 
     // add/update external-views
     if (newExtViews.size() > 0) {
-      dataAccessor.setChildren(keys, newExtViews);
+      writeExternalViews(dataAccessor, keys, newExtViews, curExtViews);
     }
 
     // remove dead external-views
     for (String resourceName : curExtViews.keySet()) {
       if (!resourceMap.keySet().contains(resourceName)) {
         dataAccessor.removeProperty(keyBuilder.externalView(resourceName));
+        _lastExtViews.remove(resourceName);
       }
     }
 
@@ -153,6 +187,173 @@ public class ExternalViewComputeStage extends AbstractBaseStage {
     log.info("END ExternalViewComputeStage.process(). took: " + (endTime - startTime) + " ms");
   }
 
+  /**
+   * Read current external views, re-reading only those whose znode version differs from the
+   * last known one
+   * @param accessor
+   * @return map of resource name to external view
+   */
+  Map<String, ExternalView> readExternalViews(HelixDataAccessor accessor) {
+    PropertyKey.Builder keyBuilder = accessor.keyBuilder();
+    BaseDataAccessor<ZNRecord> baseAccessor = accessor.getBaseDataAccessor();
+    if (baseAccessor == null) {
+      _lastExtViews.clear();
+      return accessor.getChildValuesMap(keyBuilder.externalViews());
+    }
+
+    List<String> childNames = accessor.getChildNames(keyBuilder.externalViews());
+    List<String> paths = new ArrayList<String>();
+    for (String childName : childNames) {
+      paths.add(keyBuilder.externalView(childName).getPath());
+    }
+    Stat[] stats = baseAccessor.getStats(paths, 0);
+
+    Map<String, ExternalView> extViews = new HashMap<String, ExternalView>();
+    List<PropertyKey> reloadKeys = new ArrayList<PropertyKey>();
+    for (int i = 0; i < childNames.size(); i++) {
+      String childName = childNames.get(i);
+      Stat stat = stats[i];
+      if (stat == null) {
+        // removed since we read the child names
+        continue;
+      }
+
+      ExternalView lastView = _lastExtViews.get(childName);
+      if (lastView != null && isSameZNode(lastView.getRecord(), stat)) {
+        extViews.put(childName, lastView);
+      } else {
+        reloadKeys.add(keyBuilder.externalView(childName));
+      }
+    }
+
+    if (reloadKeys.size() > 0) {
+      List<ExternalView> reloadViews = accessor.getProperty(reloadKeys);
+      for (ExternalView view : reloadViews) {
+        if (view != null) {
+          extViews.put(view.getResourceName(), view);
+        }
+      }
+      if (log.isDebugEnabled()) {
+        log.debug("Re-read " + reloadKeys.size() + " of " + childNames.size()
+            + " external views");
+      }
+    }
+
+    _lastExtViews.clear();
+    for (ExternalView view : extViews.values()) {
+      if (view.getBucketSize() == 0) {
+        _lastExtViews.put(view.getResourceName(), view);
+      }
+    }
+    return extViews;
+  }
+
+  /**
+   * Write changed external views. Non-bucketized views are written with a version check against
+   * the view they were compared to
+   */
+  void writeExternalViews(HelixDataAccessor accessor, List<PropertyKey> keys,
+      List<ExternalView> newExtViews, Map<String, ExternalView> curExtViews) {
+    BaseDataAccessor<ZNRecord> baseAccessor = accessor.getBaseDataAccessor();
+    if (baseAccessor == null) {
+      accessor.setChildren(keys, newExtViews);
+      return;
+    }
+
+    List<PropertyKey> bucketizedKeys = new ArrayList<PropertyKey>();
+    List<ExternalView> bucketizedViews = new ArrayList<ExternalView>();
+    List<ExternalView> views = new ArrayList<ExternalView>();
+    for (int i = 0; i < keys.size(); i++) {
+      ExternalView view = newExtViews.get(i);
+      ExternalView curView = curExtViews.get(view.getResourceName());
+      if (view.getBucketSize() > 0 || (curView != null && curView.getBucketSize() > 0)) {
+        bucketizedKeys.add(keys.get(i));
+        bucketizedViews.add(view);
+      } else {
+        views.add(view);
+      }
+    }
+
+    if (bucketizedViews.size() > 0) {
+      accessor.setChildren(bucketizedKeys, bucketizedViews);
+    }
+
+    PropertyKey.Builder keyBuilder = accessor.keyBuilder();
+    for (int attempt = 1; views.size() > 0; attempt++) {
+      List<String> paths = new ArrayList<String>();
+      List<ZNRecord> records = new ArrayList<ZNRecord>();
+      int[] expectVersions = new int[views.size()];
+      for (int i = 0; i < views.size(); i++) {
+        ExternalView view = views.get(i);
+        ExternalView curView = curExtViews.get(view.getResourceName());
+        paths.add(keyBuilder.externalView(view.getResourceName()).getPath());
+        records.add(view.getRecord());
+        expectVersions[i] = (curView == null ? -1 : curView.getRecord().getVersion());
+      }
+
+      List<Stat> stats = new ArrayList<Stat>();
+      boolean[] success =
+          baseAccessor.setChildren(paths, records, expectVersions, stats, AccessOption.PERSISTENT);
+
+      List<PropertyKey> conflictKeys = new ArrayList<PropertyKey>();
+      List<ExternalView> conflictViews = new ArrayList<ExternalView>();
+      for (int i = 0; i < views.size(); i++) {
+        ExternalView view = views.get(i);
+        Stat stat = (i < stats.size() ? stats.get(i) : null);
+        if (success[i] && stat != null) {
+          view.getRecord().setVersion(stat.getVersion());
+          // creation time is not known for a node we just created, take it on next read
+          view.getRecord().setCreationTime(stat.getCtime());
+          _lastExtViews.put(view.getResourceName(), view);
+        } else {
+          _lastExtViews.remove(view.getResourceName());
+          if (!success[i]) {
+            conflictKeys.add(keyBuilder.externalView(view.getResourceName()));
+            conflictViews.add(view);
+          }
+        }
+      }
+
+      if (conflictViews.isEmpty()) {
+        break;
+      }
+      if (attempt >= MAX_WRITE_ATTEMPTS) {
+        log.warn("Fail to write external views: " + conflictKeys + ", after " + attempt
+            + " attempts");
+        break;
+      }
+
+      // re-read conflicting views and only write those that still differ
+      List<ExternalView> reloadViews = accessor.getProperty(conflictKeys);
+      views = new ArrayList<ExternalView>();
+      for (int i = 0; i < conflictViews.size(); i++) {
+        ExternalView view = conflictViews.get(i);
+        ExternalView curView = reloadViews.get(i);
+        if (curView == null) {
+          curExtViews.remove(view.getResourceName());
+        } else {
+          curExtViews.put(view.getResourceName(), curView);
+        }
+        if (curView != null && curView.getBucketSize() > 0) {
+          accessor.setChildren(Arrays.asList(conflictKeys.get(i)), Arrays.asList(view));
+        } else if (curView == null || !curView.getRecord().equals(view.getRecord())) {
+          views.add(view);
+        }
+      }
+    }
+  }
+
+  private static boolean isSameZNode(ZNRecord record, Stat stat) {
+    if (record.getVersion() != stat.getVersion()) {
+      return false;
+    }
+    if (record.getCreationTime() == 0) {
+      record.setCreationTime(stat.getCtime());
+      return true;
+    }
+    return record.getCreationTime() == stat.getCtime();
+  }
+
   private void updateScheduledTaskStatus(ExternalView ev, HelixManager manager,
       IdealState taskQueueIdealState) {
     HelixDataAccessor accessor = manager.getHelixDataAccessor();
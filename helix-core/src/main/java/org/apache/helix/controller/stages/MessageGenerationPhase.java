@@ -20,6 +20,7 @@ package org.apache.helix.controller.stages;
  */
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -29,8 +30,8 @@ import org.apache.helix.HelixManager;
 import org.apache.helix.controller.pipeline.AbstractBaseStage;
 import org.apache.helix.controller.pipeline.StageException;
 import org.apache.helix.manager.zk.DefaultSchedulerMessageHandlerFactory;
+import org.apache.helix.model.CompiledStateModel;
 import org.apache.helix.model.IdealState;
-import org.apache.helix.model.LiveInstance;
 import org.apache.helix.model.Message;
 import org.apache.helix.model.Partition;
 import org.apache.helix.model.Resource;
@@ -45,6 +46,26 @@ import org.apache.log4j.Logger;
 public class MessageGenerationPhase extends AbstractBaseStage {
   private static Logger logger = Logger.getLogger(MessageGenerationPhase.class);
 
+  // fingerprints of resources that needed no message in the last run
+  private Map<String, ResourceFingerprint> _noMessageFingerprints =
+      new HashMap<String, ResourceFingerprint>();
+
+  @Override
+  public String[] getInputAttributes() {
+    return new String[] {
+        "helixmanager", "ClusterDataCache", AttributeName.RESOURCES.toString(),
+        AttributeName.CURRENT_STATE.toString(), AttributeName.BEST_POSSIBLE_STATE.toString(),
+        AttributeName.RESOURCE_FINGERPRINTS.toString()
+    };
+  }
+
+  @Override
+  public String[] getOutputAttributes() {
+    return new String[] {
+        AttributeName.MESSAGES_ALL.toString()
+    };
+  }
+
   @Override
   public void process(ClusterEvent event) throws Exception {
     HelixManager manager = event.getAttribute("helixmanager");
@@ -60,28 +81,38 @@ public class MessageGenerationPhase extends AbstractBaseStage {
           + ". Requires HelixManager|DataCache|RESOURCES|CURRENT_STATE|BEST_POSSIBLE_STATE");
     }
 
-    Map<String, LiveInstance> liveInstances = cache.getLiveInstances();
-    Map<String, String> sessionIdMap = new HashMap<String, String>();
-
-    for (LiveInstance liveInstance : liveInstances.values()) {
-      sessionIdMap.put(liveInstance.getInstanceName(), liveInstance.getSessionId());
-    }
+    Map<String, String> sessionIdMap = cache.getSessionIdMap();
     MessageGenerationOutput output = new MessageGenerationOutput();
+    Map<String, ResourceFingerprint> fingerprints =
+        event.getAttribute(AttributeName.RESOURCE_FINGERPRINTS.toString());
+    Map<String, ResourceFingerprint> noMessageFingerprints =
+        new HashMap<String, ResourceFingerprint>();
 
     for (String resourceName : resourceMap.keySet()) {
       Resource resource = resourceMap.get(resourceName);
       int bucketSize = resource.getBucketSize();
 
+      // inputs unchanged since the last run which needed no message, so nothing to generate
+      ResourceFingerprint fingerprint =
+          (fingerprints == null ? null : fingerprints.get(resourceName));
+      if (fingerprint != null && fingerprint.equals(_noMessageFingerprints.get(resourceName))) {
+        noMessageFingerprints.put(resourceName, fingerprint);
+        continue;
+      }
+      boolean hasMessage = false;
+
       StateModelDefinition stateModelDef = cache.getStateModelDef(resource.getStateModelDefRef());
+      CompiledStateModel stateModel = stateModelDef.getCompiledStateModel();
+      int priorityStateCount = stateModel.getPriorityStateCount();
 
       for (Partition partition : resource.getPartitions()) {
         Map<String, String> instanceStateMap =
             bestPossibleStateOutput.getInstanceStateMap(resourceName, partition);
 
         // we should generate message based on the desired-state priority
-        // so keep generated messages in a temp map keyed by state
+        // so keep generated messages in a temp list indexed by state ordinal
         // desired-state->list of generated-messages
-        Map<String, List<Message>> messageMap = new HashMap<String, List<Message>>();
+        List<List<Message>> messageLists = null;
 
         for (String instanceName : instanceStateMap.keySet()) {
           String desiredState = instanceStateMap.get(instanceName);
@@ -99,7 +130,10 @@ public class MessageGenerationPhase extends AbstractBaseStage {
           String pendingState =
               currentStateOutput.getPendingState(resourceName, partition, instanceName);
 
-          String nextState = stateModelDef.getNextStateForTransition(currentState, desiredState);
+          int desiredStateOrdinal = stateModel.getOrdinal(desiredState);
+          String nextState =
+              stateModel.getState(stateModel.getNextState(stateModel.getOrdinal(currentState),
+                  desiredStateOrdinal));
           if (nextState == null) {
             logger.error("Unable to find a next state for partition: "
                 + partition.getPartitionName() + " from stateModelDefinition"
@@ -162,25 +196,43 @@ public class MessageGenerationPhase extends AbstractBaseStage {
             }
             message.getRecord().setSimpleField("ClusterEventName", event.getName());
             // output.addMessage(resourceName, partition, message);
-            if (!messageMap.containsKey(desiredState)) {
-              messageMap.put(desiredState, new ArrayList<Message>());
+            // messages to a state not in the priority list are not sent
+            if (desiredStateOrdinal < priorityStateCount) {
+              if (messageLists == null) {
+                messageLists =
+                    new ArrayList<List<Message>>(Collections.<List<Message>> nCopies(
+                        priorityStateCount, null));
+              }
+              List<Message> messageList = messageLists.get(desiredStateOrdinal);
+              if (messageList == null) {
+                messageList = new ArrayList<Message>();
+                messageLists.set(desiredStateOrdinal, messageList);
+              }
+              messageList.add(message);
             }
-            messageMap.get(desiredState).add(message);
           }
         }
 
-        // add generated messages to output according to state priority
-        List<String> statesPriorityList = stateModelDef.getStatesPriorityList();
-        for (String state : statesPriorityList) {
-          if (messageMap.containsKey(state)) {
-            for (Message message : messageMap.get(state)) {
-              output.addMessage(resourceName, partition, message);
+        // add generated messages to output according to state priority, which is the order
+        // of state ordinals
+        if (messageLists != null) {
+          for (List<Message> messageList : messageLists) {
+            if (messageList != null) {
+              for (Message message : messageList) {
+                output.addMessage(resourceName, partition, message);
+                hasMessage = true;
+              }
             }
           }
         }
 
       } // end of for-each-partition
+
+      if (fingerprint != null && !hasMessage) {
+        noMessageFingerprints.put(resourceName, fingerprint);
+      }
     }
+    _noMessageFingerprints = noMessageFingerprints;
     event.addAttribute(AttributeName.MESSAGES_ALL.toString(), output);
   }
 
@@ -20,14 +20,16 @@ package org.apache.helix.controller.stages;
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 import org.apache.helix.controller.pipeline.AbstractBaseStage;
 import org.apache.helix.controller.pipeline.StageException;
+import org.apache.helix.model.CompiledStateModel;
 import org.apache.helix.model.IdealState;
 import org.apache.helix.model.LiveInstance;
 import org.apache.helix.model.Message;
@@ -73,6 +75,21 @@ public class MessageSelectionStage extends AbstractBaseStage {
     }
   }
 
+  @Override
+  public String[] getInputAttributes() {
+    return new String[] {
+        "ClusterDataCache", AttributeName.RESOURCES.toString(),
+        AttributeName.CURRENT_STATE.toString(), AttributeName.MESSAGES_ALL.toString()
+    };
+  }
+
+  @Override
+  public String[] getOutputAttributes() {
+    return new String[] {
+        AttributeName.MESSAGES_SELECTED.toString()
+    };
+  }
+
   @Override
   public void process(ClusterEvent event) throws Exception {
     ClusterDataCache cache = event.getAttribute("ClusterDataCache");
@@ -88,29 +105,66 @@ public class MessageSelectionStage extends AbstractBaseStage {
     }
 
     MessageSelectionStageOutput output = new MessageSelectionStageOutput();
+    Map<String, LiveInstance> liveInstances = cache.getLiveInstances();
 
     for (String resourceName : resourceMap.keySet()) {
       Resource resource = resourceMap.get(resourceName);
       StateModelDefinition stateModelDef = cache.getStateModelDef(resource.getStateModelDefRef());
+      CompiledStateModel stateModel = stateModelDef.getCompiledStateModel();
 
-      Map<String, Integer> stateTransitionPriorities = getStateTransitionPriorityMap(stateModelDef);
       IdealState idealState = cache.getIdealState(resourceName);
-      Map<String, Bounds> stateConstraints =
-          computeStateConstraints(stateModelDef, idealState, cache);
+      int[] upperBounds = computeStateUpperBounds(stateModel, idealState, cache);
 
       for (Partition partition : resource.getPartitions()) {
         List<Message> messages = messageGenOutput.getMessages(resourceName, partition);
         List<Message> selectedMessages =
-            selectMessages(cache.getLiveInstances(),
+            selectMessages(liveInstances,
                 currentStateOutput.getCurrentStateMap(resourceName, partition),
                 currentStateOutput.getPendingStateMap(resourceName, partition), messages,
-                stateConstraints, stateTransitionPriorities, stateModelDef.getInitialState());
+                stateModel, null, upperBounds);
         output.addMessages(resourceName, partition, selectedMessages);
       }
     }
     event.addAttribute(AttributeName.MESSAGES_SELECTED.toString(), output);
   }
 
+  /**
+   * Select messages with state constraints and transition priorities given as maps
+   * @see #selectMessages(Map, Map, Map, List, CompiledStateModel, int[], int[])
+   * @param stateConstraints
+   *          : STATE -> bound (lower:upper)
+   * @param stateTransitionPriorities
+   *          : FROME_STATE-TO_STATE -> priority
+   */
+  List<Message> selectMessages(Map<String, LiveInstance> liveInstances,
+      Map<String, String> currentStates, Map<String, String> pendingStates, List<Message> messages,
+      Map<String, Bounds> stateConstraints, final Map<String, Integer> stateTransitionPriorities,
+      String initialState) {
+    // transitions sorted by priority
+    List<String> transitionPriorityList =
+        new ArrayList<String>(stateTransitionPriorities.keySet());
+    Collections.sort(transitionPriorityList, new Comparator<String>() {
+      @Override
+      public int compare(String o1, String o2) {
+        return stateTransitionPriorities.get(o1).compareTo(stateTransitionPriorities.get(o2));
+      }
+    });
+    CompiledStateModel stateModel =
+        new CompiledStateModel(new ArrayList<String>(stateConstraints.keySet()), initialState,
+            null, transitionPriorityList, null);
+
+    int[] lowerBounds = new int[stateModel.getStateCount()];
+    int[] upperBounds = new int[stateModel.getStateCount()];
+    Arrays.fill(upperBounds, CompiledStateModel.UNBOUNDED);
+    for (String state : stateConstraints.keySet()) {
+      int ordinal = stateModel.getOrdinal(state);
+      lowerBounds[ordinal] = stateConstraints.get(state).getLowerBound();
+      upperBounds[ordinal] = stateConstraints.get(state).getUpperBound();
+    }
+    return selectMessages(liveInstances, currentStates, pendingStates, messages, stateModel,
+        lowerBounds, upperBounds);
+  }
+
   // TODO: This method deserves its own class. The class should not understand helix but
   // just be
   // able to solve the problem using the algo. I think the method is following that but if
@@ -120,26 +174,29 @@ public class MessageSelectionStage extends AbstractBaseStage {
    * group messages by state transition and sorted by priority 3) from highest priority to
    * lowest, for each message group with the same transition add message one by one and
    * make sure state constraint is not violated update state lower/upper-bounds when a new
-   * message is selected
+   * message is selected. States are counted in arrays indexed by state ordinals
    * @param currentStates
    * @param pendingStates
    * @param messages
-   * @param stateConstraints
-   *          : STATE -> bound (lower:upper)
-   * @param stateTransitionPriorities
-   *          : FROME_STATE-TO_STATE -> priority
+   * @param stateModel
+   *          : state ordinals and transition priorities
+   * @param lowerBounds
+   *          : state ordinal -> lower bound, null for all 0
+   * @param upperBounds
+   *          : state ordinal -> upper bound, {@link CompiledStateModel#UNBOUNDED} if the state
+   *          has no constraint
    * @return: selected messages
    */
   List<Message> selectMessages(Map<String, LiveInstance> liveInstances,
       Map<String, String> currentStates, Map<String, String> pendingStates, List<Message> messages,
-      Map<String, Bounds> stateConstraints, final Map<String, Integer> stateTransitionPriorities,
-      String initialState) {
+      CompiledStateModel stateModel, int[] lowerBounds, int[] upperBounds) {
     if (messages == null || messages.isEmpty()) {
       return Collections.emptyList();
     }
 
     List<Message> selectedMessages = new ArrayList<Message>();
-    Map<String, Bounds> bounds = new HashMap<String, Bounds>();
+    StateCounts bounds = new StateCounts(stateModel);
+    String initialState = stateModel.getState(stateModel.getInitialState());
 
     // count currentState, if no currentState, count as in initialState
     for (String instance : liveInstances.keySet()) {
@@ -148,135 +205,148 @@ public class MessageSelectionStage extends AbstractBaseStage {
         state = currentStates.get(instance);
       }
 
-      if (!bounds.containsKey(state)) {
-        bounds.put(state, new Bounds(0, 0));
-      }
-      bounds.get(state).increaseLowerBound();
-      bounds.get(state).increaseUpperBound();
+      int ordinal = bounds.getOrAddOrdinal(state);
+      bounds._lower[ordinal]++;
+      bounds._upper[ordinal]++;
     }
 
     // count pendingStates
     for (String instance : pendingStates.keySet()) {
-      String state = pendingStates.get(instance);
-      if (!bounds.containsKey(state)) {
-        bounds.put(state, new Bounds(0, 0));
-      }
+      int ordinal = bounds.getOrAddOrdinal(pendingStates.get(instance));
       // TODO: add lower bound, need to refactor pendingState to include fromState also
-      bounds.get(state).increaseUpperBound();
+      bounds._upper[ordinal]++;
     }
 
-    // group messages based on state transition priority
-    Map<Integer, List<Message>> messagesGroupByStateTransitPriority =
-        new TreeMap<Integer, List<Message>>();
-    for (Message message : messages) {
-      String fromState = message.getFromState();
-      String toState = message.getToState();
-      String transition = fromState + "-" + toState;
-      int priority = Integer.MAX_VALUE;
-
-      if (stateTransitionPriorities.containsKey(transition)) {
-        priority = stateTransitionPriorities.get(transition);
-      }
-
-      if (!messagesGroupByStateTransitPriority.containsKey(priority)) {
-        messagesGroupByStateTransitPriority.put(priority, new ArrayList<Message>());
-      }
-      messagesGroupByStateTransitPriority.get(priority).add(message);
+    // sort messages by state transition priority, keeping the message order within a priority
+    long[] sortKeys = new long[messages.size()];
+    for (int i = 0; i < messages.size(); i++) {
+      Message message = messages.get(i);
+      int priority =
+          stateModel.getTransitionPriority(stateModel.getOrdinal(message.getFromState()),
+              stateModel.getOrdinal(message.getToState()));
+      sortKeys[i] = ((long) priority << 32) | i;
     }
+    Arrays.sort(sortKeys);
 
     // select messages
-    for (List<Message> messageList : messagesGroupByStateTransitPriority.values()) {
-      for (Message message : messageList) {
-        String fromState = message.getFromState();
-        String toState = message.getToState();
+    for (long sortKey : sortKeys) {
+      Message message = messages.get((int) sortKey);
+      String fromState = message.getFromState();
+      String toState = message.getToState();
 
-        if (!bounds.containsKey(fromState)) {
-          LOG.error("Message's fromState is not in currentState. message: " + message);
+      int from = bounds.getOrdinal(fromState);
+      if (from == CompiledStateModel.NONE) {
+        LOG.error("Message's fromState is not in currentState. message: " + message);
+        continue;
+      }
+      int to = bounds.getOrAddOrdinal(toState);
+
+      // check lower bound of fromState
+      if (isConstrained(from, upperBounds)) {
+        int newLowerBound = bounds._lower[from] - 1;
+        if (newLowerBound < 0) {
+          LOG.error("Number of currentState in " + fromState
+              + " is less than number of messages transiting from " + fromState);
           continue;
         }
 
-        if (!bounds.containsKey(toState)) {
-          bounds.put(toState, new Bounds(0, 0));
-        }
-
-        // check lower bound of fromState
-        if (stateConstraints.containsKey(fromState)) {
-          int newLowerBound = bounds.get(fromState).getLowerBound() - 1;
-          if (newLowerBound < 0) {
-            LOG.error("Number of currentState in " + fromState
-                + " is less than number of messages transiting from " + fromState);
-            continue;
-          }
-
-          if (newLowerBound < stateConstraints.get(fromState).getLowerBound()) {
-            continue;
-          }
+        if (lowerBounds != null && newLowerBound < lowerBounds[from]) {
+          continue;
         }
+      }
 
-        // check upper bound of toState
-        if (stateConstraints.containsKey(toState)) {
-          int newUpperBound = bounds.get(toState).getUpperBound() + 1;
-          if (newUpperBound > stateConstraints.get(toState).getUpperBound()) {
-            continue;
-          }
+      // check upper bound of toState
+      if (isConstrained(to, upperBounds)) {
+        int newUpperBound = bounds._upper[to] + 1;
+        if (newUpperBound > upperBounds[to]) {
+          continue;
         }
-
-        selectedMessages.add(message);
-        bounds.get(fromState).increaseLowerBound();
-        bounds.get(toState).increaseUpperBound();
       }
+
+      selectedMessages.add(message);
+      bounds._lower[from]++;
+      bounds._upper[to]++;
     }
 
     return selectedMessages;
   }
 
+  private static boolean isConstrained(int state, int[] upperBounds) {
+    return state < upperBounds.length && upperBounds[state] != CompiledStateModel.UNBOUNDED;
+  }
+
   /**
-   * TODO: This code is duplicate in multiple places. Can we do it in to one place in the
-   * beginning and compute the stateConstraint instance once and re use at other places.
-   * Each IdealState must have a constraint object associated with it
+   * lower/upper bound counts of states indexed by state ordinals. states unknown to the state
+   * model get ordinals after the model's states. a state is counted only once it has an ordinal
+   * here
    */
-  private Map<String, Bounds> computeStateConstraints(StateModelDefinition stateModelDefinition,
-      IdealState idealState, ClusterDataCache cache) {
-    Map<String, Bounds> stateConstraints = new HashMap<String, Bounds>();
-
-    List<String> statePriorityList = stateModelDefinition.getStatesPriorityList();
-    for (String state : statePriorityList) {
-      String numInstancesPerState = stateModelDefinition.getNumInstancesPerState(state);
-      int max = -1;
-      if ("N".equals(numInstancesPerState)) {
-        max = cache.getLiveInstances().size();
-      } else if ("R".equals(numInstancesPerState)) {
-        // idealState is null when resource has been dropped,
-        // R can't be evaluated and ignore state constraints
-        if (idealState != null) {
-          max = cache.getReplicas(idealState.getResourceName());
-        }
-      } else {
-        try {
-          max = Integer.parseInt(numInstancesPerState);
-        } catch (Exception e) {
-          // use -1
-        }
-      }
+  static class StateCounts {
+    final CompiledStateModel _stateModel;
+    boolean[] _counted;
+    int[] _lower;
+    int[] _upper;
+    Map<String, Integer> _otherOrdinals = null;
+
+    StateCounts(CompiledStateModel stateModel) {
+      _stateModel = stateModel;
+      _counted = new boolean[stateModel.getStateCount()];
+      _lower = new int[stateModel.getStateCount()];
+      _upper = new int[stateModel.getStateCount()];
+    }
 
-      if (max > -1) {
-        // if state has no constraint, will not put in map
-        stateConstraints.put(state, new Bounds(0, max));
+    private int getAnyOrdinal(String state) {
+      int ordinal = state == null ? CompiledStateModel.NONE : _stateModel.getOrdinal(state);
+      if (ordinal == CompiledStateModel.NONE && _otherOrdinals != null
+          && _otherOrdinals.containsKey(state)) {
+        ordinal = _otherOrdinals.get(state);
       }
+      return ordinal;
     }
 
-    return stateConstraints;
-  }
+    /**
+     * @return ordinal of a counted state, or NONE
+     */
+    int getOrdinal(String state) {
+      int ordinal = getAnyOrdinal(state);
+      return ordinal != CompiledStateModel.NONE && _counted[ordinal] ? ordinal
+          : CompiledStateModel.NONE;
+    }
 
-  // TODO: if state transition priority is not provided then use lexicographical sorting
-  // so that behavior is consistent
-  private Map<String, Integer> getStateTransitionPriorityMap(StateModelDefinition stateModelDef) {
-    Map<String, Integer> stateTransitionPriorities = new HashMap<String, Integer>();
-    List<String> stateTransitionPriorityList = stateModelDef.getStateTransitionPriorityList();
-    for (int i = 0; i < stateTransitionPriorityList.size(); i++) {
-      stateTransitionPriorities.put(stateTransitionPriorityList.get(i), i);
+    int getOrAddOrdinal(String state) {
+      int ordinal = getAnyOrdinal(state);
+      if (ordinal == CompiledStateModel.NONE) {
+        if (_otherOrdinals == null) {
+          _otherOrdinals = new HashMap<String, Integer>();
+        }
+        ordinal = _counted.length;
+        _otherOrdinals.put(state, ordinal);
+        _counted = Arrays.copyOf(_counted, ordinal + 1);
+        _lower = Arrays.copyOf(_lower, ordinal + 1);
+        _upper = Arrays.copyOf(_upper, ordinal + 1);
+      }
+      _counted[ordinal] = true;
+      return ordinal;
     }
+  }
 
-    return stateTransitionPriorities;
+  /**
+   * TODO: This code is duplicate in multiple places. Can we do it in to one place in the
+   * beginning and compute the stateConstraint instance once and re use at other places.
+   * Each IdealState must have a constraint object associated with it
+   */
+  private int[] computeStateUpperBounds(CompiledStateModel stateModel, IdealState idealState,
+      ClusterDataCache cache) {
+    // idealState is null when resource has been dropped,
+    // R can't be evaluated and ignore state constraints
+    int replicas =
+        idealState == null ? CompiledStateModel.UNBOUNDED : cache.getReplicas(idealState
+            .getResourceName());
+    int liveInstanceCount = cache.getLiveInstances().size();
+
+    int[] upperBounds = new int[stateModel.getStateCount()];
+    for (int state = 0; state < upperBounds.length; state++) {
+      upperBounds[state] = stateModel.getUpperBound(state, liveInstanceCount, replicas);
+    }
+    return upperBounds;
   }
 }
@@ -41,29 +41,13 @@ import org.apache.log4j.Logger;
 public class MessageThrottleStage extends AbstractBaseStage {
   private static final Logger LOG = Logger.getLogger(MessageThrottleStage.class.getName());
 
+  /**
+   * index of the message constraints, rebuilt only when the constraints change
+   */
+  private ConstraintIndex _constraintIndex = null;
+
   int valueOf(String valueStr) {
-    int value = Integer.MAX_VALUE;
-
-    try {
-      ConstraintValue valueToken = ConstraintValue.valueOf(valueStr);
-      switch (valueToken) {
-      case ANY:
-        value = Integer.MAX_VALUE;
-        break;
-      default:
-        LOG.error("Invalid constraintValue token:" + valueStr + ". Use default value:"
-            + Integer.MAX_VALUE);
-        break;
-      }
-    } catch (Exception e) {
-      try {
-        value = Integer.parseInt(valueStr);
-      } catch (NumberFormatException ne) {
-        LOG.error("Invalid constraintValue string:" + valueStr + ". Use default value:"
-            + Integer.MAX_VALUE);
-      }
-    }
-    return value;
+    return ConstraintIndex.parseConstraintValue(valueStr);
   }
 
   /**
@@ -110,6 +94,21 @@ public class MessageThrottleStage extends AbstractBaseStage {
     return new HashSet<ConstraintItem>(selectedItems.values());
   }
 
+  @Override
+  public String[] getInputAttributes() {
+    return new String[] {
+        "ClusterDataCache", AttributeName.RESOURCES.toString(),
+        AttributeName.MESSAGES_SELECTED.toString()
+    };
+  }
+
+  @Override
+  public String[] getOutputAttributes() {
+    return new String[] {
+        AttributeName.MESSAGES_THROTTLE.toString()
+    };
+  }
+
   @Override
   public void process(ClusterEvent event) throws Exception {
     ClusterDataCache cache = event.getAttribute("ClusterDataCache");
@@ -125,13 +124,21 @@ public class MessageThrottleStage extends AbstractBaseStage {
     MessageThrottleStageOutput output = new MessageThrottleStageOutput();
 
     ClusterConstraints constraint = cache.getConstraint(ConstraintType.MESSAGE_CONSTRAINT);
-    Map<String, Integer> throttleCounterMap = new HashMap<String, Integer>();
+    Map<ConstraintIndex.CounterKey, int[]> throttleCounterMap =
+        new HashMap<ConstraintIndex.CounterKey, int[]>();
+
+    if (constraint == null) {
+      _constraintIndex = null;
+    } else {
+      if (_constraintIndex == null || _constraintIndex.getConstraints() != constraint) {
+        _constraintIndex = new ConstraintIndex(constraint);
+      }
+      _constraintIndex.startRun();
 
-    if (constraint != null) {
       // go through all pending messages, they should be counted but not throttled
       for (String instance : cache.getLiveInstances().keySet()) {
-        throttle(throttleCounterMap, constraint, new ArrayList<Message>(cache.getMessages(instance)
-            .values()), false);
+        throttle(throttleCounterMap, _constraintIndex, new ArrayList<Message>(cache.getMessages(
+            instance).values()), false);
       }
     }
 
@@ -142,7 +149,7 @@ public class MessageThrottleStage extends AbstractBaseStage {
       for (Partition partition : resource.getPartitions()) {
         List<Message> messages = msgSelectionOutput.getMessages(resourceName, partition);
         if (constraint != null && messages != null && messages.size() > 0) {
-          messages = throttle(throttleCounterMap, constraint, messages, true);
+          messages = throttle(throttleCounterMap, _constraintIndex, messages, true);
         }
         output.addMessages(resourceName, partition, messages);
       }
@@ -151,36 +158,12 @@ public class MessageThrottleStage extends AbstractBaseStage {
     event.addAttribute(AttributeName.MESSAGES_THROTTLE.toString(), output);
   }
 
-  private List<Message> throttle(Map<String, Integer> throttleMap, ClusterConstraints constraint,
-      List<Message> messages, final boolean needThrottle) {
+  private List<Message> throttle(Map<ConstraintIndex.CounterKey, int[]> throttleMap,
+      ConstraintIndex constraintIndex, List<Message> messages, final boolean needThrottle) {
 
     List<Message> throttleOutputMsgs = new ArrayList<Message>();
     for (Message message : messages) {
-      Map<ConstraintAttribute, String> msgAttr = ClusterConstraints.toConstraintAttributes(message);
-
-      Set<ConstraintItem> matches = constraint.match(msgAttr);
-      matches = selectConstraints(matches, msgAttr);
-
-      boolean msgThrottled = false;
-      for (ConstraintItem item : matches) {
-        String key = item.filter(msgAttr).toString();
-        if (!throttleMap.containsKey(key)) {
-          throttleMap.put(key, valueOf(item.getConstraintValue()));
-        }
-        int value = throttleMap.get(key);
-        throttleMap.put(key, --value);
-
-        if (needThrottle && value < 0) {
-          msgThrottled = true;
-
-          if (LOG.isDebugEnabled()) {
-            // TODO: printout constraint item that throttles the message
-            LOG.debug("message: " + message + " is throttled by constraint: " + item);
-          }
-        }
-      }
-
-      if (!msgThrottled) {
+      if (!constraintIndex.throttle(message, throttleMap, needThrottle)) {
         throttleOutputMsgs.add(message);
       }
     }
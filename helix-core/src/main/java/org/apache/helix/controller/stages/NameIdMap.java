@@ -0,0 +1,65 @@
+package org.apache.helix.controller.stages;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns dense int ids, in the order of first use, to names such as instances, resources and
+ * partitions. Not thread-safe for writes; concurrent reads are safe once writes are done.
+ */
+final class NameIdMap {
+  private final Map<String, Integer> _ids = new HashMap<String, Integer>();
+  private final List<String> _names = new ArrayList<String>();
+
+  /**
+   * @param name
+   * @return id of the name, or -1 if it has none
+   */
+  int getId(String name) {
+    Integer id = _ids.get(name);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * @param name
+   * @return id of the name, assigning the next id if it has none
+   */
+  int getOrAddId(String name) {
+    Integer id = _ids.get(name);
+    if (id == null) {
+      id = _names.size();
+      _ids.put(name, id);
+      _names.add(name);
+    }
+    return id;
+  }
+
+  String getName(int id) {
+    return _names.get(id);
+  }
+
+  int size() {
+    return _names.size();
+  }
+}
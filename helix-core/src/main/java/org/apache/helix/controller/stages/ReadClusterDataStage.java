@@ -32,7 +32,21 @@ public class ReadClusterDataStage extends AbstractBaseStage {
   ClusterDataCache _cache;
 
   public ReadClusterDataStage() {
-    _cache = new ClusterDataCache();
+    _cache = new ClusterDataCache(true);
+  }
+
+  @Override
+  public String[] getInputAttributes() {
+    return new String[] {
+        "helixmanager", "clusterStatusMonitor"
+    };
+  }
+
+  @Override
+  public String[] getOutputAttributes() {
+    return new String[] {
+        "ClusterDataCache"
+    };
   }
 
   @Override
@@ -50,12 +64,9 @@ public class ReadClusterDataStage extends AbstractBaseStage {
     ClusterStatusMonitor clusterStatusMonitor =
         (ClusterStatusMonitor) event.getAttribute("clusterStatusMonitor");
     if (clusterStatusMonitor != null) {
-      int disabledInstances = 0;
+      int disabledInstances = _cache.getDisabledInstances().size();
       int disabledPartitions = 0;
       for (InstanceConfig config : _cache._instanceConfigMap.values()) {
-        if (config.getInstanceEnabled() == false) {
-          disabledInstances++;
-        }
         if (config.getDisabledPartitions() != null) {
           disabledPartitions += config.getDisabledPartitions().size();
         }
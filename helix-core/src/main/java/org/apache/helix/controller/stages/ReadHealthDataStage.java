@@ -35,8 +35,6 @@ public class ReadHealthDataStage extends AbstractBaseStage {
 
   @Override
   public void process(ClusterEvent event) throws Exception {
-    long startTime = System.currentTimeMillis();
-
     HelixManager manager = event.getAttribute("helixmanager");
     if (manager == null) {
       throw new StageException("HelixManager attribute value is null");
@@ -46,8 +44,5 @@ public class ReadHealthDataStage extends AbstractBaseStage {
     _cache.refresh(accessor);
 
     event.addAttribute("HealthDataCache", _cache);
-
-    long processLatency = System.currentTimeMillis() - startTime;
-    addLatencyToMonitor(event, processLatency);
   }
 }
@@ -19,17 +19,21 @@ package org.apache.helix.controller.stages;
  * under the License.
  */
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.apache.helix.HelixManager;
+import org.apache.helix.ZNRecord;
 import org.apache.helix.controller.pipeline.AbstractBaseStage;
 import org.apache.helix.controller.rebalancer.Rebalancer;
+import org.apache.helix.controller.rebalancer.RebalancerRegistry;
 import org.apache.helix.model.IdealState;
 import org.apache.helix.model.IdealState.RebalanceMode;
 import org.apache.helix.model.Resource;
 import org.apache.helix.model.ResourceAssignment;
-import org.apache.helix.util.HelixUtil;
 import org.apache.log4j.Logger;
 
 /**
@@ -40,6 +44,23 @@ import org.apache.log4j.Logger;
 public class RebalanceIdealStateStage extends AbstractBaseStage {
   private static final Logger LOG = Logger.getLogger(RebalanceIdealStateStage.class.getName());
 
+  private final RebalancerRegistry _rebalancerRegistry = new RebalancerRegistry();
+
+  @Override
+  public String[] getInputAttributes() {
+    return new String[] {
+        "helixmanager", "ClusterDataCache", AttributeName.CURRENT_STATE.toString()
+    };
+  }
+
+  @Override
+  public String[] getOutputAttributes() {
+    // updates the cached idealstates of resources with user-defined rebalancers
+    return new String[] {
+        "ClusterDataCache"
+    };
+  }
+
   @Override
   public void process(ClusterEvent event) throws Exception {
     HelixManager manager = event.getAttribute("helixmanager");
@@ -55,19 +76,23 @@ public class RebalanceIdealStateStage extends AbstractBaseStage {
           && currentIdealState.getRebalancerClassName() != null) {
         String rebalancerClassName = currentIdealState.getRebalancerClassName();
         LOG.info("resource " + resourceName + " use idealStateRebalancer " + rebalancerClassName);
+        Rebalancer balancer = _rebalancerRegistry.getRebalancer(rebalancerClassName, manager);
+        if (balancer == null) {
+          LOG.error("Fail to load custom rebalancer class:" + rebalancerClassName);
+          continue;
+        }
         try {
-          Rebalancer balancer =
-              (Rebalancer) (HelixUtil.loadClass(getClass(), rebalancerClassName).newInstance());
-          balancer.init(manager);
           Resource resource = new Resource(resourceName);
           for (String partitionName : currentIdealState.getPartitionSet()) {
             resource.addPartition(partitionName);
           }
+          // rebalance on a copy, the cached idealstate may be reused by the next refresh
+          IdealState updatedIdealState = copyIdealState(currentIdealState);
           ResourceAssignment resourceAssignment =
-              balancer.computeResourceMapping(resource, currentIdealState, currentStateOutput,
+              balancer.computeResourceMapping(resource, updatedIdealState, currentStateOutput,
                   cache);
-          currentIdealState.updateFromAssignment(resourceAssignment);
-          updatedIdealStates.put(resourceName, currentIdealState);
+          updatedIdealState.updateFromAssignment(resourceAssignment);
+          updatedIdealStates.put(resourceName, updatedIdealState);
         } catch (Exception e) {
           LOG.error("Exception while invoking custom rebalancer class:" + rebalancerClassName, e);
         }
@@ -77,4 +102,22 @@ public class RebalanceIdealStateStage extends AbstractBaseStage {
       cache.getIdealStates().putAll(updatedIdealStates);
     }
   }
+
+  @Override
+  public void release() {
+    _rebalancerRegistry.clear();
+  }
+
+  private static IdealState copyIdealState(IdealState idealState) {
+    ZNRecord record = new ZNRecord(idealState.getRecord());
+    for (Map.Entry<String, Map<String, String>> entry : idealState.getRecord().getMapFields()
+        .entrySet()) {
+      record.setMapField(entry.getKey(), new TreeMap<String, String>(entry.getValue()));
+    }
+    for (Map.Entry<String, List<String>> entry : idealState.getRecord().getListFields()
+        .entrySet()) {
+      record.setListField(entry.getKey(), new ArrayList<String>(entry.getValue()));
+    }
+    return new IdealState(record);
+  }
 }
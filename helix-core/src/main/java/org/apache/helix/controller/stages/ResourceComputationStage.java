@@ -40,6 +40,20 @@ import org.apache.log4j.Logger;
 public class ResourceComputationStage extends AbstractBaseStage {
   private static Logger LOG = Logger.getLogger(ResourceComputationStage.class);
 
+  @Override
+  public String[] getInputAttributes() {
+    return new String[] {
+        "ClusterDataCache"
+    };
+  }
+
+  @Override
+  public String[] getOutputAttributes() {
+    return new String[] {
+        AttributeName.RESOURCES.toString()
+    };
+  }
+
   @Override
   public void process(ClusterEvent event) throws Exception {
     ClusterDataCache cache = event.getAttribute("ClusterDataCache");
@@ -0,0 +1,70 @@
+package org.apache.helix.controller.stages;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Identifies the inputs that the rebalance stages read for one resource: idealstate, state
+ * model definition, live instances and their configs, current states and pending messages
+ * of the resource. The incremental ClusterDataCache hands out the same objects as long as the
+ * underlying znodes don't change, so two fingerprints are equal iff they refer to the same
+ * input objects in the same order.
+ */
+public class ResourceFingerprint {
+  private final List<Object> _inputs = new ArrayList<Object>();
+  private int _hashCode = 1;
+
+  public void addInput(Object input) {
+    _inputs.add(input);
+    _hashCode = 31 * _hashCode + System.identityHashCode(input);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof ResourceFingerprint)) {
+      return false;
+    }
+    ResourceFingerprint that = (ResourceFingerprint) obj;
+    if (_hashCode != that._hashCode || _inputs.size() != that._inputs.size()) {
+      return false;
+    }
+    for (int i = 0; i < _inputs.size(); i++) {
+      if (_inputs.get(i) != that._inputs.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    return _hashCode;
+  }
+
+  @Override
+  public String toString() {
+    return "inputs: " + _inputs.size() + ", hash: " + _hashCode;
+  }
+}
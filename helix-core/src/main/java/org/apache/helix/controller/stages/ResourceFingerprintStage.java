@@ -0,0 +1,122 @@
+package org.apache.helix.controller.stages;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.helix.controller.pipeline.AbstractBaseStage;
+import org.apache.helix.controller.pipeline.StageException;
+import org.apache.helix.model.CurrentState;
+import org.apache.helix.model.IdealState;
+import org.apache.helix.model.IdealState.RebalanceMode;
+import org.apache.helix.model.LiveInstance;
+import org.apache.helix.model.Message;
+import org.apache.helix.model.Resource;
+import org.apache.log4j.Logger;
+
+/**
+ * Computes a {@link ResourceFingerprint} for each resource, so that the following stages can
+ * reuse the outputs of the previous pipeline run for resources whose inputs didn't change.
+ * Resources with a user-defined rebalancer get no fingerprint since the rebalancer may read
+ * any data, so they are always recomputed.
+ */
+public class ResourceFingerprintStage extends AbstractBaseStage {
+  private static final Logger LOG = Logger.getLogger(ResourceFingerprintStage.class);
+
+  @Override
+  public String[] getInputAttributes() {
+    return new String[] {
+        "ClusterDataCache", AttributeName.RESOURCES.toString()
+    };
+  }
+
+  @Override
+  public String[] getOutputAttributes() {
+    return new String[] {
+        AttributeName.RESOURCE_FINGERPRINTS.toString()
+    };
+  }
+
+  @Override
+  public void process(ClusterEvent event) throws Exception {
+    ClusterDataCache cache = event.getAttribute("ClusterDataCache");
+    Map<String, Resource> resourceMap = event.getAttribute(AttributeName.RESOURCES.toString());
+
+    if (cache == null || resourceMap == null) {
+      throw new StageException("Missing attributes in event:" + event
+          + ". Requires DataCache|RESOURCES");
+    }
+
+    // sort to get a stable order of inputs across runs
+    Map<String, LiveInstance> liveInstances = new TreeMap<String, LiveInstance>(
+        cache.getLiveInstances());
+
+    // group pending messages by resource
+    Map<String, List<Message>> resourceMessages = new HashMap<String, List<Message>>();
+    for (String instanceName : liveInstances.keySet()) {
+      Map<String, Message> messages = new TreeMap<String, Message>(cache.getMessages(instanceName));
+      for (Message message : messages.values()) {
+        String resourceName = message.getResourceName();
+        if (!resourceMessages.containsKey(resourceName)) {
+          resourceMessages.put(resourceName, new ArrayList<Message>());
+        }
+        resourceMessages.get(resourceName).add(message);
+      }
+    }
+
+    Map<String, ResourceFingerprint> fingerprints = new HashMap<String, ResourceFingerprint>();
+    for (String resourceName : resourceMap.keySet()) {
+      Resource resource = resourceMap.get(resourceName);
+      IdealState idealState = cache.getIdealState(resourceName);
+      if (idealState != null && idealState.getRebalanceMode() == RebalanceMode.USER_DEFINED) {
+        continue;
+      }
+
+      ResourceFingerprint fingerprint = new ResourceFingerprint();
+      fingerprint.addInput(idealState);
+      fingerprint.addInput(cache.getStateModelDef(resource.getStateModelDefRef()));
+      for (LiveInstance liveInstance : liveInstances.values()) {
+        String instanceName = liveInstance.getInstanceName();
+        fingerprint.addInput(liveInstance);
+        fingerprint.addInput(cache.getInstanceConfigMap().get(instanceName));
+        Map<String, CurrentState> currentStates =
+            cache.getCurrentState(instanceName, liveInstance.getSessionId());
+        fingerprint.addInput(currentStates == null ? null : currentStates.get(resourceName));
+      }
+      List<Message> messages = resourceMessages.get(resourceName);
+      if (messages != null) {
+        for (Message message : messages) {
+          fingerprint.addInput(message);
+        }
+      }
+      fingerprints.put(resourceName, fingerprint);
+    }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Computed fingerprints for " + fingerprints.size() + " out of "
+          + resourceMap.size() + " resources");
+    }
+    event.addAttribute(AttributeName.RESOURCE_FINGERPRINTS.toString(), fingerprints);
+  }
+}
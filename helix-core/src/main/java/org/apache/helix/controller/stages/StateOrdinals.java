@@ -0,0 +1,92 @@
+package org.apache.helix.controller.stages;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.helix.HelixException;
+import org.apache.helix.model.StateModelDefinition;
+
+/**
+ * Byte ordinals of the states of a state model. The states of the definition get the ordinals of
+ * its {@link org.apache.helix.model.CompiledStateModel}; any other state seen is appended. Not
+ * thread-safe for writes; concurrent reads are safe once writes are done.
+ */
+public final class StateOrdinals {
+  public static final byte NONE = -1;
+
+  private final Map<String, Byte> _ordinals = new HashMap<String, Byte>();
+  private final List<String> _states = new ArrayList<String>();
+
+  public StateOrdinals() {
+  }
+
+  /**
+   * @param stateModelDef states of the definition get the first ordinals. may be null
+   */
+  public StateOrdinals(StateModelDefinition stateModelDef) {
+    if (stateModelDef != null) {
+      for (String state : stateModelDef.getCompiledStateModel().getStates()) {
+        getOrAddOrdinal(state);
+      }
+    }
+  }
+
+  /**
+   * @param state
+   * @return ordinal of the state, or {@link #NONE} if the state has none
+   */
+  public byte getOrdinal(String state) {
+    Byte ordinal = _ordinals.get(state);
+    return ordinal == null ? NONE : ordinal;
+  }
+
+  /**
+   * @param state
+   * @return ordinal of the state, assigning the next ordinal if it has none
+   */
+  public byte getOrAddOrdinal(String state) {
+    Byte ordinal = _ordinals.get(state);
+    if (ordinal == null) {
+      if (_states.size() > Byte.MAX_VALUE) {
+        throw new HelixException("Too many states, fail to add state: " + state);
+      }
+      ordinal = (byte) _states.size();
+      _ordinals.put(state, ordinal);
+      _states.add(state);
+    }
+    return ordinal;
+  }
+
+  /**
+   * @param ordinal
+   * @return state of the ordinal, or null for {@link #NONE}
+   */
+  public String getState(byte ordinal) {
+    return ordinal == NONE ? null : _states.get(ordinal);
+  }
+
+  public int size() {
+    return _states.size();
+  }
+}
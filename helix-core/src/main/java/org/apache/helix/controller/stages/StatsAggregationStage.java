@@ -249,7 +249,6 @@ public class StatsAggregationStage extends AbstractBaseStage {
     logger.info("done logging alerts: " + (System.currentTimeMillis() - logAlertStartTime));
 
     long processLatency = System.currentTimeMillis() - startTime;
-    addLatencyToMonitor(event, processLatency);
     logger.info("process end: " + processLatency);
   }
 
@@ -41,6 +41,19 @@ import org.apache.log4j.Logger;
 public class TaskAssignmentStage extends AbstractBaseStage {
   private static Logger logger = Logger.getLogger(TaskAssignmentStage.class);
 
+  @Override
+  public String[] getInputAttributes() {
+    return new String[] {
+        "helixmanager", "ClusterDataCache", AttributeName.RESOURCES.toString(),
+        AttributeName.MESSAGES_THROTTLE.toString()
+    };
+  }
+
+  @Override
+  public String[] getOutputAttributes() {
+    return new String[0];
+  }
+
   @Override
   public void process(ClusterEvent event) throws Exception {
     long startTime = System.currentTimeMillis();
@@ -72,7 +85,12 @@ public class TaskAssignmentStage extends AbstractBaseStage {
     List<Message> outputMessages =
         batchMessage(dataAccessor.keyBuilder(), messagesToSend, resourceMap, liveInstanceMap,
             manager.getProperties());
-    sendMessages(dataAccessor, outputMessages);
+    long sendStartTime = System.currentTimeMillis();
+    int failedCount = createMessages(dataAccessor, outputMessages);
+    if (outputMessages.size() > 0) {
+      addBatchWriteToMonitor(event, System.currentTimeMillis() - sendStartTime,
+          outputMessages.size(), failedCount);
+    }
 
     long endTime = System.currentTimeMillis();
     logger.info("END TaskAssignmentStage.process(). took: " + (endTime - startTime) + " ms");
@@ -123,8 +141,16 @@ public class TaskAssignmentStage extends AbstractBaseStage {
   }
 
   protected void sendMessages(HelixDataAccessor dataAccessor, List<Message> messages) {
+    createMessages(dataAccessor, messages);
+  }
+
+  /**
+   * Write messages in one async batch
+   * @return number of messages that failed to be written
+   */
+  private int createMessages(HelixDataAccessor dataAccessor, List<Message> messages) {
     if (messages == null || messages.isEmpty()) {
-      return;
+      return 0;
     }
 
     Builder keyBuilder = dataAccessor.keyBuilder();
@@ -143,6 +169,17 @@ public class TaskAssignmentStage extends AbstractBaseStage {
       keys.add(keyBuilder.message(message.getTgtName(), message.getId()));
     }
 
-    dataAccessor.createChildren(keys, new ArrayList<Message>(messages));
+    boolean[] success = dataAccessor.createChildren(keys, new ArrayList<Message>(messages));
+    int failedCount = 0;
+    if (success != null) {
+      for (int i = 0; i < success.length; i++) {
+        if (!success[i]) {
+          failedCount++;
+          logger.error("Fail to send message " + messages.get(i).getMsgId() + " to "
+              + messages.get(i).getTgtName());
+        }
+      }
+    }
+    return failedCount;
   }
 }
@@ -61,6 +61,7 @@ import org.apache.helix.messaging.DefaultMessagingService;
 import org.apache.helix.model.HelixConfigScope.ConfigScopeProperty;
 import org.apache.helix.participant.StateMachineEngine;
 import org.apache.helix.store.zk.ZkHelixPropertyStore;
+import org.apache.helix.util.StatusUpdateUtil;
 import org.apache.log4j.Logger;
 import org.apache.zookeeper.Watcher.Event.EventType;
 import org.apache.zookeeper.Watcher.Event.KeeperState;
@@ -221,6 +222,9 @@ public abstract class AbstractManager implements HelixManager, IZkStateListener
       // TODO reset user defined handlers only
       resetHandlers();
 
+      // write out status updates still buffered by the sink
+      StatusUpdateUtil.getDefaultSink().flush();
+
       _dataAccessor.shutdown();
 
       doDisconnect();
@@ -594,8 +598,7 @@ public abstract class AbstractManager implements HelixManager, IZkStateListener
   }
 
   void createClient() throws Exception {
-    PathBasedZkSerializer zkSerializer =
-        ChainedPathZkSerializer.builder(new ZNRecordStreamingSerializer()).build();
+    PathBasedZkSerializer zkSerializer = ZNRecordBinarySerializer.createZkSerializer(_clusterName);
 
     _zkclient =
         new ZkClient(_zkAddress, _sessionTimeout, ZkClient.DEFAULT_CONNECTION_TIMEOUT, zkSerializer);
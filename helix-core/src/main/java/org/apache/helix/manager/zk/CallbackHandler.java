@@ -28,15 +28,18 @@ import static org.apache.helix.HelixConstants.ChangeType.MESSAGE;
 import static org.apache.helix.HelixConstants.ChangeType.MESSAGES_CONTROLLER;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.I0Itec.zkclient.IZkChildListener;
 import org.I0Itec.zkclient.IZkDataListener;
 import org.I0Itec.zkclient.exception.ZkNoNodeException;
-import org.apache.helix.BaseDataAccessor;
 import org.apache.helix.ConfigChangeListener;
 import org.apache.helix.ControllerChangeListener;
 import org.apache.helix.CurrentStateChangeListener;
@@ -100,6 +103,20 @@ public class CallbackHandler implements IZkChildListener, IZkDataListener
    */
   private List<NotificationContext.Type> _expectTypes = nextNotificationType.get(Type.FINALIZE);
 
+  /**
+   * child paths, including children of bucketized children, that have data-change subscribed.
+   * zkclient re-installs the watch of a subscribed path on every data-change, so these are not
+   * subscribed again on callbacks
+   */
+  private final Set<String> _watchedPaths = Collections
+      .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  /**
+   * watched child paths that are bucketized and have child-change subscribed
+   */
+  private final Set<String> _bucketizedPaths = Collections
+      .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
   public CallbackHandler(HelixManager manager, ZkClient client, PropertyKey propertyKey,
       Object listener, EventType[] eventTypes, ChangeType changeType) {
     if (listener == null) {
@@ -268,57 +285,118 @@ public class CallbackHandler implements IZkChildListener, IZkDataListener
       subscribeChildChange(path, context);
     }
 
-    if (watchChild) {
-      try {
-        switch (_changeType) {
-        case CURRENT_STATE:
-        case IDEAL_STATE:
-        case EXTERNAL_VIEW: {
-          // check if bucketized
-          BaseDataAccessor<ZNRecord> baseAccessor = new ZkBaseDataAccessor<ZNRecord>(_zkClient);
-          List<ZNRecord> records = baseAccessor.getChildren(path, null, 0);
-          for (ZNRecord record : records) {
-            HelixProperty property = new HelixProperty(record);
-            String childPath = path + "/" + record.getId();
-
-            int bucketSize = property.getBucketSize();
-            if (bucketSize > 0) {
-              // subscribe both data-change and child-change on bucketized parent node
-              // data-change gives a delete-callback which is used to remove watch
-              subscribeChildChange(childPath, context);
-              subscribeDataChange(childPath, context);
-
-              // subscribe data-change on bucketized child
-              List<String> bucketizedChildNames = _zkClient.getChildren(childPath);
-              if (bucketizedChildNames != null) {
-                for (String bucketizedChildName : bucketizedChildNames) {
-                  String bucketizedChildPath = childPath + "/" + bucketizedChildName;
-                  subscribeDataChange(bucketizedChildPath, context);
-                }
-              }
-            } else {
-              subscribeDataChange(childPath, context);
-            }
+    if (!watchChild) {
+      return;
+    }
+
+    if (context.getType() == NotificationContext.Type.FINALIZE) {
+      for (String bucketizedPath : _bucketizedPaths) {
+        subscribeChildChange(bucketizedPath, context);
+      }
+      for (String watchedPath : _watchedPaths) {
+        subscribeDataChange(watchedPath, context);
+      }
+      _bucketizedPaths.clear();
+      _watchedPaths.clear();
+      return;
+    }
+
+    // subscribe only new children and unsubscribe removed ones
+    Set<String> childPaths = new HashSet<String>();
+    try {
+      List<String> childNames = _zkClient.getChildren(path);
+      for (String childName : childNames) {
+        String childPath = path + "/" + childName;
+        childPaths.add(childPath);
+        if (!_watchedPaths.contains(childPath)) {
+          if (isBucketized(childPath)) {
+            // subscribe both data-change and child-change on bucketized parent node
+            // data-change gives a delete-callback which is used to remove watch
+            _bucketizedPaths.add(childPath);
+            subscribeChildChange(childPath, context);
           }
-          break;
+          subscribeDataChange(childPath, context);
+          _watchedPaths.add(childPath);
         }
-        default: {
-          List<String> childNames = _zkClient.getChildren(path);
-          if (childNames != null) {
-            for (String childName : childNames) {
-              String childPath = path + "/" + childName;
-              subscribeDataChange(childPath, context);
+
+        if (_bucketizedPaths.contains(childPath)) {
+          // subscribe data-change on new bucketized child
+          try {
+            for (String bucketizedChildName : _zkClient.getChildren(childPath)) {
+              String bucketizedChildPath = childPath + "/" + bucketizedChildName;
+              childPaths.add(bucketizedChildPath);
+              if (!_watchedPaths.contains(bucketizedChildPath)) {
+                subscribeDataChange(bucketizedChildPath, context);
+                _watchedPaths.add(bucketizedChildPath);
+              }
             }
+          } catch (ZkNoNodeException e) {
+            // bucketized parent removed, unsubscribed below
           }
-          break;
         }
+      }
+    } catch (ZkNoNodeException e) {
+      logger.warn("fail to subscribe child/data change. path: " + path + ", listener: "
+          + _listener, e);
+    }
+
+    NotificationContext unsubscribeContext = new NotificationContext(_manager);
+    unsubscribeContext.setType(NotificationContext.Type.FINALIZE);
+    for (String watchedPath : _watchedPaths) {
+      if (!childPaths.contains(watchedPath)) {
+        if (_bucketizedPaths.remove(watchedPath)) {
+          subscribeChildChange(watchedPath, unsubscribeContext);
         }
-      } catch (ZkNoNodeException e) {
-        logger.warn("fail to subscribe child/data change. path: " + path + ", listener: "
-            + _listener, e);
+        subscribeDataChange(watchedPath, unsubscribeContext);
+        _watchedPaths.remove(watchedPath);
       }
     }
+  }
+
+  /**
+   * Check if a new child is bucketized. Only current-states, ideal-states, and external-views
+   * can be bucketized, and the bucket size is kept in the record of the bucketized parent node
+   */
+  private boolean isBucketized(String childPath) {
+    if (!canBeBucketized()) {
+      return false;
+    }
+    ZNRecord record = _zkClient.readData(childPath, true);
+    return record != null && new HelixProperty(record).getBucketSize() > 0;
+  }
+
+  private boolean canBeBucketized() {
+    switch (_changeType) {
+    case CURRENT_STATE:
+    case IDEAL_STATE:
+    case EXTERNAL_VIEW:
+      return true;
+    default:
+      return false;
+    }
+  }
 
+  /**
+   * Re-check if a watched child is bucketized when its data changes, since the bucket size is
+   * a field of the record and can be set or cleared after the child is created. The child-change
+   * watch of the child follows, and the following invoke() subscribes or unsubscribes its
+   * bucketized children
+   */
+  private void updateBucketized(String childPath, Object data) {
+    if (!canBeBucketized() || !_watchedPaths.contains(childPath)
+        || childPath.lastIndexOf('/') != _path.length()) {
+      return;
+    }
+    boolean bucketized =
+        data instanceof ZNRecord && new HelixProperty((ZNRecord) data).getBucketSize() > 0;
+    NotificationContext context = new NotificationContext(_manager);
+    if (bucketized && _bucketizedPaths.add(childPath)) {
+      context.setType(NotificationContext.Type.CALLBACK);
+      subscribeChildChange(childPath, context);
+    } else if (!bucketized && _bucketizedPaths.remove(childPath)) {
+      context.setType(NotificationContext.Type.FINALIZE);
+      subscribeChildChange(childPath, context);
+    }
   }
 
   public EventType[] getEventTypes() {
@@ -346,6 +424,7 @@ public class CallbackHandler implements IZkChildListener, IZkDataListener
     try {
       updateNotificationTime(System.nanoTime());
       if (dataPath != null && dataPath.startsWith(_path)) {
+        updateBucketized(dataPath, data);
         NotificationContext changeContext = new NotificationContext(_manager);
         changeContext.setType(NotificationContext.Type.CALLBACK);
         invoke(changeContext);
@@ -365,6 +444,8 @@ public class CallbackHandler implements IZkChildListener, IZkDataListener
         logger.info(_manager.getInstanceName() + " unsubscribe data-change. path: " + dataPath
             + ", listener: " + _listener);
         _zkClient.unsubscribeDataChanges(dataPath, this);
+        _watchedPaths.remove(dataPath);
+        _bucketizedPaths.remove(dataPath);
 
         // only needed for bucketized parent, but OK if we don't have child-change
         // watch on the bucketized parent path
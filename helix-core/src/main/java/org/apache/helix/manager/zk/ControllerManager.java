@@ -138,6 +138,7 @@ public class ControllerManager extends AbstractManager {
     if (_leaderElectionHandler != null) {
       _leaderElectionHandler.reset();
     }
+    _controller.shutdown();
   }
 
   @Override
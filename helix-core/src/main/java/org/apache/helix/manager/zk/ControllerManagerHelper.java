@@ -84,6 +84,23 @@ public class ControllerManagerHelper {
     }
   }
 
+  /**
+   * Register the data listeners of the generic-controller on a standby controller, so that its
+   * cluster data cache is kept up to date without running the rebalance pipeline
+   * @param controller
+   */
+  public void addStandbyListenersToController(GenericHelixController controller) {
+    try {
+      _manager.addConfigChangeListener(controller);
+      _manager.addLiveInstanceChangeListener(controller);
+      _manager.addIdealStateChangeListener(controller);
+    } catch (ZkInterruptedException e) {
+      LOG.warn("zk connection is interrupted during addStandbyListenersToController(). " + e);
+    } catch (Exception e) {
+      LOG.error("Error when adding standby listeners to controller", e);
+    }
+  }
+
   public void removeListenersFromController(GenericHelixController controller) {
     PropertyKey.Builder keyBuilder = new PropertyKey.Builder(_manager.getClusterName());
     /**
@@ -0,0 +1,326 @@
+package org.apache.helix.manager.zk;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.I0Itec.zkclient.DataUpdater;
+import org.apache.helix.BaseDataAccessor;
+import org.apache.helix.ZNRecord;
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * Write-behind buffer for current-state updates of a participant. An update committed while
+ * nothing else is pending is written right away; updates committed while a write is in
+ * progress are collected, up to a count limit, and written together next (group commit).
+ * All updates of the same current-state znode in a batch are merged, in the order they were
+ * committed, and written with one version-checked set. A positive window makes the buffer
+ * also wait that long for more updates before each write. A commit returns once its update
+ * is written, so callers may still remove a message right after updating the current state.
+ */
+public class CurrentStateWriteBuffer {
+  private static final Logger LOG = Logger.getLogger(CurrentStateWriteBuffer.class);
+
+  public static final String WINDOW_MS = "helixmanager.currentStateBuffer.windowMs";
+  public static final String MAX_BATCH_SIZE = "helixmanager.currentStateBuffer.maxBatchSize";
+  public static final long DEFAULT_WINDOW_MS = 0;
+  public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+  // the flusher thread exits after being idle for this long and is restarted on demand
+  private static final long IDLE_MS = 1000;
+
+  static class Entry {
+    final String _path;
+    final ZNRecord _record;
+    final int _options;
+    final CountDownLatch _done = new CountDownLatch(1);
+    volatile boolean _success = false;
+
+    Entry(String path, ZNRecord record, int options) {
+      _path = path;
+      _record = record;
+      _options = options;
+    }
+  }
+
+  private final BaseDataAccessor<ZNRecord> _accessor;
+  private final long _windowMs;
+  private final int _maxBatchSize;
+  private final BlockingQueue<Entry> _queue = new LinkedBlockingQueue<Entry>();
+  private Thread _flusher = null;
+
+  private final AtomicLong _commitCount = new AtomicLong(0);
+  private final AtomicLong _writeCount = new AtomicLong(0);
+  private final AtomicLong _conflictCount = new AtomicLong(0);
+
+  public CurrentStateWriteBuffer(BaseDataAccessor<ZNRecord> accessor) {
+    this(accessor, getWindowMs(), Integer.getInteger(MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_SIZE));
+  }
+
+  public CurrentStateWriteBuffer(BaseDataAccessor<ZNRecord> accessor, long windowMs,
+      int maxBatchSize) {
+    _accessor = accessor;
+    _windowMs = windowMs;
+    _maxBatchSize = Math.max(1, maxBatchSize);
+  }
+
+  /**
+   * @return configured collect window in milliseconds, 0 to only batch the updates that
+   *         arrive while a write is in progress, negative if the buffer is disabled
+   */
+  public static long getWindowMs() {
+    return Long.getLong(WINDOW_MS, DEFAULT_WINDOW_MS);
+  }
+
+  /**
+   * Merge an update into a current-state znode and wait until it is written
+   * @param options see {@link org.apache.helix.AccessOption}
+   * @param path current-state znode path
+   * @param record the data to be merged in
+   * @return true if successful, false otherwise
+   */
+  public boolean commit(int options, String path, ZNRecord record) {
+    return commit(options, Collections.singletonList(path), Collections.singletonList(record))[0];
+  }
+
+  /**
+   * Merge updates into current-state znodes and wait until all are written. The updates are
+   * queued together, so they are written in the same batch unless it is full.
+   * @param options see {@link org.apache.helix.AccessOption}
+   * @param paths current-state znode paths
+   * @param records the data to be merged in, one per path
+   * @return array where true means the update of the path was written
+   */
+  public boolean[] commit(int options, List<String> paths, List<ZNRecord> records) {
+    List<Entry> entries = new ArrayList<Entry>();
+    for (int i = 0; i < paths.size(); i++) {
+      entries.add(new Entry(paths.get(i), records.get(i), options));
+    }
+    _commitCount.addAndGet(entries.size());
+    synchronized (this) {
+      _queue.addAll(entries);
+      if (_flusher == null) {
+        _flusher = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            runFlusher();
+          }
+        }, "CurrentStateWriteBufferFlusher");
+        _flusher.setDaemon(true);
+        _flusher.start();
+      }
+    }
+
+    // queued updates are written anyway, so keep waiting to report their outcome
+    boolean interrupted = false;
+    boolean[] success = new boolean[entries.size()];
+    for (int i = 0; i < entries.size(); i++) {
+      Entry entry = entries.get(i);
+      while (true) {
+        try {
+          entry._done.await();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      success[i] = entry._success;
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    return success;
+  }
+
+  private void runFlusher() {
+    while (true) {
+      List<Entry> batch = new ArrayList<Entry>();
+      try {
+        Entry first = _queue.poll(IDLE_MS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          synchronized (this) {
+            if (_queue.isEmpty()) {
+              _flusher = null;
+              return;
+            }
+          }
+          continue;
+        }
+        batch.add(first);
+
+        // collect the updates already queued, and with a window the ones arriving before it
+        // closes, until the batch is full
+        long deadline = System.currentTimeMillis() + _windowMs;
+        while (batch.size() < _maxBatchSize) {
+          long remaining = deadline - System.currentTimeMillis();
+          Entry entry =
+              remaining > 0 ? _queue.poll(remaining, TimeUnit.MILLISECONDS) : _queue.poll();
+          if (entry == null) {
+            break;
+          }
+          batch.add(entry);
+        }
+      } catch (InterruptedException e) {
+        LOG.warn("CurrentStateWriteBufferFlusher interrupted");
+      }
+
+      if (batch.isEmpty()) {
+        continue;
+      }
+
+      try {
+        flushBatch(batch);
+      } catch (Exception e) {
+        LOG.error("Fail to write current-state updates", e);
+      } finally {
+        for (Entry entry : batch) {
+          entry._done.countDown();
+        }
+      }
+    }
+  }
+
+  /**
+   * Write one merged update per current-state znode
+   */
+  void flushBatch(List<Entry> batch) {
+    // group by path, keeping commit order within each path
+    Map<String, List<Entry>> entriesByPath = new LinkedHashMap<String, List<Entry>>();
+    for (Entry entry : batch) {
+      List<Entry> entries = entriesByPath.get(entry._path);
+      if (entries == null) {
+        entries = new ArrayList<Entry>();
+        entriesByPath.put(entry._path, entries);
+      }
+      entries.add(entry);
+    }
+
+    List<String> paths = new ArrayList<String>(entriesByPath.keySet());
+    List<Stat> stats = new ArrayList<Stat>();
+    List<ZNRecord> curRecords = null;
+    try {
+      curRecords = _accessor.get(paths, stats, 0);
+    } catch (Exception e) {
+      LOG.warn("Fail to read current-states, will update them one by one", e);
+    }
+
+    if (curRecords == null || curRecords.size() != paths.size()) {
+      for (String path : paths) {
+        update(entriesByPath.get(path));
+      }
+      return;
+    }
+
+    // current-states of a participant are written with the same options
+    int options = batch.get(0)._options;
+    List<ZNRecord> mergedRecords = new ArrayList<ZNRecord>();
+    int[] expectVersions = new int[paths.size()];
+    for (int i = 0; i < paths.size(); i++) {
+      ZNRecord curRecord = curRecords.get(i);
+      Stat stat = i < stats.size() ? stats.get(i) : null;
+      expectVersions[i] = (curRecord == null || stat == null) ? -1 : stat.getVersion();
+      mergedRecords.add(merge(curRecord, entriesByPath.get(paths.get(i))));
+    }
+
+    boolean[] success = _accessor.setChildren(paths, mergedRecords, expectVersions, null, options);
+    for (int i = 0; i < paths.size(); i++) {
+      List<Entry> entries = entriesByPath.get(paths.get(i));
+      if (success != null && i < success.length && success[i]) {
+        _writeCount.incrementAndGet();
+        for (Entry entry : entries) {
+          entry._success = true;
+        }
+      } else {
+        // changed since we read it, fall back to a read-modify-write of this znode
+        _conflictCount.incrementAndGet();
+        update(entries);
+      }
+    }
+  }
+
+  private void update(final List<Entry> entries) {
+    String path = entries.get(0)._path;
+    boolean success = false;
+    try {
+      success = _accessor.update(path, new DataUpdater<ZNRecord>() {
+        @Override
+        public ZNRecord update(ZNRecord currentData) {
+          return merge(currentData, entries);
+        }
+      }, entries.get(0)._options);
+    } catch (Exception e) {
+      LOG.error("Fail to update current-state " + path, e);
+    }
+
+    if (success) {
+      _writeCount.incrementAndGet();
+    }
+    for (Entry entry : entries) {
+      entry._success = success;
+    }
+  }
+
+  private static ZNRecord merge(ZNRecord curRecord, List<Entry> entries) {
+    ZNRecord merged;
+    int start;
+    if (curRecord == null) {
+      merged = new ZNRecord(entries.get(0)._record);
+      start = 1;
+    } else {
+      merged = new ZNRecord(curRecord);
+      start = 0;
+    }
+    for (int i = start; i < entries.size(); i++) {
+      merged.merge(entries.get(i)._record);
+    }
+    return merged;
+  }
+
+  /**
+   * @return number of updates committed
+   */
+  public long getCommitCount() {
+    return _commitCount.get();
+  }
+
+  /**
+   * @return number of znode writes issued for the committed updates
+   */
+  public long getWriteCount() {
+    return _writeCount.get();
+  }
+
+  /**
+   * @return number of merged writes rejected by the version check
+   */
+  public long getConflictCount() {
+    return _conflictCount.get();
+  }
+}
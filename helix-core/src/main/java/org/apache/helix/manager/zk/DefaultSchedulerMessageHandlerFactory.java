@@ -108,6 +108,8 @@ public class DefaultSchedulerMessageHandlerFactory implements MessageHandlerFact
 
       HelixDataAccessor accessor = manager.getHelixDataAccessor();
       Builder keyBuilder = accessor.keyBuilder();
+      // the summary rewrites the task status, so write out records still buffered first
+      StatusUpdateUtil.getDefaultSink().flush();
       ZNRecord statusUpdate =
           accessor.getProperty(
               keyBuilder.controllerTaskStatus(MessageType.SCHEDULER_MSG.toString(),
@@ -219,7 +221,7 @@ public class DefaultSchedulerMessageHandlerFactory implements MessageHandlerFact
         }
       }
       // Record the number of messages sent into scheduler message status updates
-
+      StatusUpdateUtil.getDefaultSink().flush();
       ZNRecord statusUpdate =
           accessor.getProperty(
               keyBuilder.controllerTaskStatus(MessageType.SCHEDULER_MSG.toString(),
@@ -325,6 +327,7 @@ public class DefaultSchedulerMessageHandlerFactory implements MessageHandlerFact
       Map<String, String> sendSummary = new HashMap<String, String>();
       sendSummary.put("MessageCount", "" + nMsgsSent);
 
+      StatusUpdateUtil.getDefaultSink().flush();
       ZNRecord statusUpdate =
           accessor.getProperty(
               keyBuilder.controllerTaskStatus(MessageType.SCHEDULER_MSG.toString(),
@@ -163,6 +163,7 @@ public class DistributedControllerManager extends AbstractManager {
     if (_leaderElectionHandler != null) {
       _leaderElectionHandler.reset();
     }
+    _controller.shutdown();
   }
 
   @Override
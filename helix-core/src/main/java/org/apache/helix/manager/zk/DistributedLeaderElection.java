@@ -35,17 +35,23 @@ import org.apache.helix.model.LiveInstance;
 import org.apache.log4j.Logger;
 
 /**
- * do distributed leader election
+ * do distributed leader election. Unless {@value #WARM_STANDBY} is set to false, a controller
+ * that loses the election stays a warm standby: it watches the cluster data and keeps its
+ * cluster data cache up to date, so that it can rebalance right after acquiring leadership
  */
 public class DistributedLeaderElection implements ControllerChangeListener {
   private static Logger LOG = Logger.getLogger(DistributedLeaderElection.class);
 
+  public static final String WARM_STANDBY = "helixcontroller.warmStandby";
+
   final AbstractManager _manager;
   final GenericHelixController _controller;
+  final boolean _warmStandby;
 
   public DistributedLeaderElection(AbstractManager manager, GenericHelixController controller) {
     _manager = manager;
     _controller = controller;
+    _warmStandby = Boolean.parseBoolean(System.getProperty(WARM_STANDBY, "true"));
   }
 
   /**
@@ -74,6 +80,7 @@ public class DistributedLeaderElection implements ControllerChangeListener {
           || changeContext.getType().equals(NotificationContext.Type.CALLBACK)) {
         LOG.info(_manager.getInstanceName() + " is trying to acquire leadership for cluster: "
             + _manager.getClusterName());
+        long startTime = System.currentTimeMillis();
         HelixDataAccessor accessor = manager.getHelixDataAccessor();
         Builder keyBuilder = accessor.keyBuilder();
 
@@ -87,8 +94,18 @@ public class DistributedLeaderElection implements ControllerChangeListener {
             _manager._baseDataAccessor.reset();
             controllerHelper.addListenersToController(_controller);
             controllerHelper.startControllerTimerTasks();
+            if (_warmStandby) {
+              // listeners added while standby get no INIT callback, so trigger the first run
+              _controller.onLeadershipAcquired(manager, startTime);
+            }
           }
         }
+
+        if (_warmStandby && !manager.isLeader()) {
+          LOG.info(_manager.getInstanceName() + " is standby controller for cluster: "
+              + _manager.getClusterName());
+          controllerHelper.addStandbyListenersToController(_controller);
+        }
       } else if (changeContext.getType().equals(NotificationContext.Type.FINALIZE)) {
         LOG.info(_manager.getInstanceName() + " reqlinquish leadership for cluster: "
             + _manager.getClusterName());
@@ -57,6 +57,7 @@ public class ZKHelixDataAccessor implements HelixDataAccessor, ControllerChangeL
   private final Builder _propertyKeyBuilder;
   ZkPropertyTransferClient _zkPropertyTransferClient = null;
   private final GroupCommit _groupCommit = new GroupCommit();
+  private final CurrentStateWriteBuffer _currentStateBuffer;
   String _zkPropertyTransferSvcUrl = null;
 
   public ZKHelixDataAccessor(String clusterName, BaseDataAccessor<ZNRecord> baseDataAccessor) {
@@ -69,6 +70,15 @@ public class ZKHelixDataAccessor implements HelixDataAccessor, ControllerChangeL
     _instanceType = instanceType;
     _baseDataAccessor = baseDataAccessor;
     _propertyKeyBuilder = new PropertyKey.Builder(_clusterName);
+
+    // coalesce current-state updates of participants
+    if ((instanceType == InstanceType.PARTICIPANT
+        || instanceType == InstanceType.CONTROLLER_PARTICIPANT)
+        && CurrentStateWriteBuffer.getWindowMs() >= 0) {
+      _currentStateBuffer = new CurrentStateWriteBuffer(baseDataAccessor);
+    } else {
+      _currentStateBuffer = null;
+    }
   }
 
   @Override
@@ -141,7 +151,11 @@ public class ZKHelixDataAccessor implements HelixDataAccessor, ControllerChangeL
     boolean success = false;
     switch (type) {
     case CURRENTSTATES:
-      success = _groupCommit.commit(_baseDataAccessor, options, path, value.getRecord());
+      if (_currentStateBuffer != null) {
+        success = _currentStateBuffer.commit(options, path, value.getRecord());
+      } else {
+        success = _groupCommit.commit(_baseDataAccessor, options, path, value.getRecord());
+      }
       break;
     default:
       if (type.usePropertyTransferServer()) {
@@ -163,6 +177,44 @@ public class ZKHelixDataAccessor implements HelixDataAccessor, ControllerChangeL
     return success;
   }
 
+  @Override
+  public <T extends HelixProperty> boolean[] updateProperty(List<PropertyKey> keys, List<T> values) {
+    boolean[] success = new boolean[keys.size()];
+    List<Integer> curStateIndexes = new ArrayList<Integer>();
+    for (int i = 0; i < keys.size(); i++) {
+      if (keys.get(i).getType() == PropertyType.CURRENTSTATES) {
+        curStateIndexes.add(i);
+      } else {
+        success[i] = updateProperty(keys.get(i), values.get(i));
+      }
+    }
+    if (curStateIndexes.isEmpty()) {
+      return success;
+    }
+
+    // write current-states the same way as single updates, but in one batch
+    int options = constructOptions(PropertyType.CURRENTSTATES);
+    List<String> paths = new ArrayList<String>();
+    List<ZNRecord> records = new ArrayList<ZNRecord>();
+    List<DataUpdater<ZNRecord>> updaters = new ArrayList<DataUpdater<ZNRecord>>();
+    for (int i : curStateIndexes) {
+      paths.add(keys.get(i).getPath());
+      records.add(values.get(i).getRecord());
+      updaters.add(new ZNRecordUpdater(values.get(i).getRecord()));
+    }
+    boolean[] curStateSuccess;
+    if (_currentStateBuffer != null) {
+      curStateSuccess = _currentStateBuffer.commit(options, paths, records);
+    } else {
+      curStateSuccess = _baseDataAccessor.updateChildren(paths, updaters, options);
+    }
+    for (int j = 0; j < curStateIndexes.size(); j++) {
+      success[curStateIndexes.get(j)] =
+          curStateSuccess != null && j < curStateSuccess.length && curStateSuccess[j];
+    }
+    return success;
+  }
+
   @Override
   public <T extends HelixProperty> List<T> getProperty(List<PropertyKey> keys) {
     if (keys == null || keys.size() == 0) {
@@ -176,12 +228,19 @@ public class ZKHelixDataAccessor implements HelixDataAccessor, ControllerChangeL
     for (PropertyKey key : keys) {
       paths.add(key.getPath());
     }
-    List<ZNRecord> children = _baseDataAccessor.get(paths, null, 0);
+    List<Stat> stats = new ArrayList<Stat>();
+    List<ZNRecord> children = _baseDataAccessor.get(paths, stats, 0);
 
     // check if bucketized
     for (int i = 0; i < keys.size(); i++) {
       PropertyKey key = keys.get(i);
       ZNRecord record = children.get(i);
+      Stat stat = (i < stats.size() ? stats.get(i) : null);
+      if (record != null && stat != null) {
+        record.setVersion(stat.getVersion());
+        record.setCreationTime(stat.getCtime());
+        record.setModifiedTime(stat.getMtime());
+      }
 
       PropertyType type = key.getType();
       String path = key.getPath();
@@ -298,9 +357,17 @@ public class ZKHelixDataAccessor implements HelixDataAccessor, ControllerChangeL
     int options = constructOptions(type);
     List<T> childValues = new ArrayList<T>();
 
-    List<ZNRecord> children = _baseDataAccessor.getChildren(parentPath, null, options);
+    List<Stat> stats = new ArrayList<Stat>();
+    List<ZNRecord> children = _baseDataAccessor.getChildren(parentPath, stats, options);
     if (children != null) {
-      for (ZNRecord record : children) {
+      for (int i = 0; i < children.size(); i++) {
+        ZNRecord record = children.get(i);
+        Stat stat = (i < stats.size() ? stats.get(i) : null);
+        if (record != null && stat != null) {
+          record.setVersion(stat.getVersion());
+          record.setCreationTime(stat.getCtime());
+          record.setModifiedTime(stat.getMtime());
+        }
         switch (type) {
         case CURRENTSTATES:
         case IDEALSTATES:
@@ -83,6 +83,7 @@ import org.apache.helix.participant.HelixStateMachineEngine;
 import org.apache.helix.participant.StateMachineEngine;
 import org.apache.helix.participant.statemachine.ScheduledTaskStateModelFactory;
 import org.apache.helix.store.zk.ZkHelixPropertyStore;
+import org.apache.helix.util.StatusUpdateUtil;
 import org.apache.log4j.Logger;
 import org.apache.zookeeper.Watcher.Event.EventType;
 import org.apache.zookeeper.Watcher.Event.KeeperState;
@@ -415,6 +416,9 @@ public class ZKHelixManager implements HelixManager {
     _messagingService.getExecutor().shutdown();
     resetHandlers();
 
+    // write out status updates still buffered by the sink
+    StatusUpdateUtil.getDefaultSink().flush();
+
     _helixAccessor.shutdown();
 
     if (_leaderElectionHandler != null) {
@@ -513,8 +517,7 @@ public class ZKHelixManager implements HelixManager {
   private void createClient(String zkServers) throws Exception {
     // by default use ZNRecordStreamingSerializer except for paths within the property
     // store which expects raw byte[] serialization/deserialization
-    PathBasedZkSerializer zkSerializer =
-        ChainedPathZkSerializer.builder(new ZNRecordStreamingSerializer()).build();
+    PathBasedZkSerializer zkSerializer = ZNRecordBinarySerializer.createZkSerializer(_clusterName);
 
     _zkClient = new ZkClient(zkServers, _sessionTimeout, CONNECTIONTIMEOUT, zkSerializer);
 
@@ -0,0 +1,329 @@
+package org.apache.helix.manager.zk;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.I0Itec.zkclient.exception.ZkMarshallingError;
+import org.I0Itec.zkclient.serialize.ZkSerializer;
+import org.apache.helix.HelixException;
+import org.apache.helix.ZNRecord;
+import org.apache.log4j.Logger;
+
+/**
+ * Compact binary serializer for ZNRecord. All strings of a record are written once to a
+ * dictionary and simple/list/map fields refer to them by index. Indexes, sizes and lengths are
+ * written as varints. Data is prefixed with {@link #MAGIC}, which lets the json serializers
+ * recognize and read binary data, and lets this serializer fall back to json for data written
+ * before a path was switched to binary.
+ */
+public class ZNRecordBinarySerializer implements ZkSerializer {
+  private static Logger LOG = Logger.getLogger(ZNRecordBinarySerializer.class);
+
+  /**
+   * header of binary serialized data: a zero byte, which never starts json, followed by "ZNB"
+   * and the format version
+   */
+  static final byte[] MAGIC = new byte[] {
+      0, 'Z', 'N', 'B', 1
+  };
+
+  /**
+   * system property of comma separated paths, relative to the cluster root, under which the
+   * helix managers write znodes in binary, e.g. "EXTERNALVIEW,INSTANCES"
+   */
+  public static final String BINARY_PATHS = "helixmanager.binarySerializerPaths";
+
+  private static final String CHARSET = "UTF-8";
+
+  private static final ZNRecordStreamingSerializer JSON_SERIALIZER =
+      new ZNRecordStreamingSerializer();
+
+  private static int getListFieldBound(ZNRecord record) {
+    int max = Integer.MAX_VALUE;
+    if (record.getSimpleFields().containsKey(ZNRecord.LIST_FIELD_BOUND)) {
+      String maxStr = record.getSimpleField(ZNRecord.LIST_FIELD_BOUND);
+      try {
+        max = Integer.parseInt(maxStr);
+      } catch (Exception e) {
+        LOG.error("IllegalNumberFormat for list field bound: " + maxStr);
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Create the serializer used by helix managers: json by default, and binary for the cluster
+   * paths listed in {@link #BINARY_PATHS}
+   * @param clusterName
+   * @return path based serializer
+   */
+  static PathBasedZkSerializer createZkSerializer(String clusterName) {
+    ChainedPathZkSerializer.Builder builder =
+        ChainedPathZkSerializer.builder(new ZNRecordStreamingSerializer());
+    String binaryPaths = System.getProperty(BINARY_PATHS);
+    if (binaryPaths != null) {
+      ZNRecordBinarySerializer binarySerializer = new ZNRecordBinarySerializer();
+      for (String path : binaryPaths.split(",")) {
+        path = path.trim();
+        if (path.length() > 0) {
+          builder.serialize("/" + clusterName + "/" + path, binarySerializer);
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * @param bytes
+   * @return true if bytes are written by this serializer
+   */
+  public static boolean isBinary(byte[] bytes) {
+    if (bytes == null || bytes.length < MAGIC.length) {
+      return false;
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (bytes[i] != MAGIC[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public byte[] serialize(Object data) throws ZkMarshallingError {
+    if (!(data instanceof ZNRecord)) {
+      // null is NOT an instance of any class
+      LOG.error("Input object must be of type ZNRecord but it is " + data
+          + ". Will not write to zk");
+      throw new HelixException("Input object is not of type ZNRecord (was " + data + ")");
+    }
+
+    // apply retention policy on list field
+    ZNRecord record = (ZNRecord) data;
+    int max = getListFieldBound(record);
+    if (max < Integer.MAX_VALUE) {
+      Map<String, List<String>> listMap = record.getListFields();
+      for (String key : listMap.keySet()) {
+        List<String> list = listMap.get(key);
+        if (list.size() > max) {
+          listMap.put(key, list.subList(0, max));
+        }
+      }
+    }
+
+    Map<String, Integer> dictionary = new LinkedHashMap<String, Integer>();
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    writeRef(body, dictionary, record.getId());
+
+    Map<String, String> simpleFields = record.getSimpleFields();
+    writeVarInt(body, simpleFields.size());
+    for (Map.Entry<String, String> entry : simpleFields.entrySet()) {
+      writeRef(body, dictionary, entry.getKey());
+      writeRef(body, dictionary, entry.getValue());
+    }
+
+    Map<String, List<String>> listFields = record.getListFields();
+    writeVarInt(body, listFields.size());
+    for (Map.Entry<String, List<String>> entry : listFields.entrySet()) {
+      writeRef(body, dictionary, entry.getKey());
+      List<String> list = entry.getValue();
+      if (list == null) {
+        list = new ArrayList<String>();
+      }
+      writeVarInt(body, list.size());
+      for (String value : list) {
+        writeRef(body, dictionary, value);
+      }
+    }
+
+    Map<String, Map<String, String>> mapFields = record.getMapFields();
+    writeVarInt(body, mapFields.size());
+    for (Map.Entry<String, Map<String, String>> entry : mapFields.entrySet()) {
+      writeRef(body, dictionary, entry.getKey());
+      Map<String, String> map = entry.getValue();
+      if (map == null) {
+        map = new TreeMap<String, String>();
+      }
+      writeVarInt(body, map.size());
+      for (Map.Entry<String, String> mapEntry : map.entrySet()) {
+        writeRef(body, dictionary, mapEntry.getKey());
+        writeRef(body, dictionary, mapEntry.getValue());
+      }
+    }
+
+    byte[] rawPayload = record.getRawPayload();
+    if (rawPayload != null && rawPayload.length > 0) {
+      writeVarInt(body, rawPayload.length);
+      body.write(rawPayload, 0, rawPayload.length);
+    } else {
+      writeVarInt(body, 0);
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(body.size() + dictionary.size() * 8);
+    out.write(MAGIC, 0, MAGIC.length);
+    writeVarInt(out, dictionary.size());
+    for (String str : dictionary.keySet()) {
+      byte[] strBytes = toBytes(str);
+      writeVarInt(out, strBytes.length);
+      out.write(strBytes, 0, strBytes.length);
+    }
+    byte[] bodyBytes = body.toByteArray();
+    out.write(bodyBytes, 0, bodyBytes.length);
+
+    byte[] bytes = out.toByteArray();
+    if (bytes.length > ZNRecord.SIZE_LIMIT) {
+      LOG.error("Data size larger than 1M, ZNRecord.id: " + record.getId()
+          + ". Will not write to zk");
+      throw new HelixException("Data size larger than 1M, ZNRecord.id: " + record.getId());
+    }
+    return bytes;
+  }
+
+  @Override
+  public Object deserialize(byte[] bytes) throws ZkMarshallingError {
+    if (bytes == null || bytes.length == 0) {
+      // reading a parent/null node
+      return null;
+    }
+
+    if (!isBinary(bytes)) {
+      // written before the path is switched to binary serialization
+      return JSON_SERIALIZER.deserialize(bytes);
+    }
+
+    try {
+      int[] pos = new int[] {
+        MAGIC.length
+      };
+
+      int dictionarySize = readVarInt(bytes, pos);
+      String[] dictionary = new String[dictionarySize];
+      for (int i = 0; i < dictionarySize; i++) {
+        int length = readVarInt(bytes, pos);
+        dictionary[i] = new String(bytes, pos[0], length, CHARSET);
+        pos[0] += length;
+      }
+
+      ZNRecord record = new ZNRecord(readRef(bytes, pos, dictionary));
+
+      int simpleFieldsSize = readVarInt(bytes, pos);
+      for (int i = 0; i < simpleFieldsSize; i++) {
+        String key = readRef(bytes, pos, dictionary);
+        record.setSimpleField(key, readRef(bytes, pos, dictionary));
+      }
+
+      int listFieldsSize = readVarInt(bytes, pos);
+      for (int i = 0; i < listFieldsSize; i++) {
+        String key = readRef(bytes, pos, dictionary);
+        int size = readVarInt(bytes, pos);
+        List<String> list = new ArrayList<String>(size);
+        for (int j = 0; j < size; j++) {
+          list.add(readRef(bytes, pos, dictionary));
+        }
+        record.setListField(key, list);
+      }
+
+      int mapFieldsSize = readVarInt(bytes, pos);
+      for (int i = 0; i < mapFieldsSize; i++) {
+        String key = readRef(bytes, pos, dictionary);
+        int size = readVarInt(bytes, pos);
+        Map<String, String> map = new TreeMap<String, String>();
+        for (int j = 0; j < size; j++) {
+          String mapKey = readRef(bytes, pos, dictionary);
+          map.put(mapKey, readRef(bytes, pos, dictionary));
+        }
+        record.setMapField(key, map);
+      }
+
+      int payloadLength = readVarInt(bytes, pos);
+      if (payloadLength > 0) {
+        byte[] rawPayload = new byte[payloadLength];
+        System.arraycopy(bytes, pos[0], rawPayload, 0, payloadLength);
+        record.setRawPayload(rawPayload);
+      }
+      return record;
+    } catch (Exception e) {
+      LOG.error("Exception during deserialization of binary data, length: " + bytes.length, e);
+      return null;
+    }
+  }
+
+  /**
+   * write index + 1 of the string in the dictionary, or 0 for null
+   */
+  private static void writeRef(ByteArrayOutputStream out, Map<String, Integer> dictionary,
+      String str) {
+    if (str == null) {
+      writeVarInt(out, 0);
+      return;
+    }
+    Integer index = dictionary.get(str);
+    if (index == null) {
+      index = dictionary.size();
+      dictionary.put(str, index);
+    }
+    writeVarInt(out, index + 1);
+  }
+
+  private static String readRef(byte[] bytes, int[] pos, String[] dictionary) {
+    int ref = readVarInt(bytes, pos);
+    return ref == 0 ? null : dictionary[ref - 1];
+  }
+
+  static void writeVarInt(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  static int readVarInt(byte[] bytes, int[] pos) {
+    int value = 0;
+    int shift = 0;
+    while (true) {
+      byte b = bytes[pos[0]++];
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+      shift += 7;
+      if (shift > 28) {
+        throw new IllegalArgumentException("Malformed varint at position: " + (pos[0] - 1));
+      }
+    }
+  }
+
+  private static byte[] toBytes(String str) {
+    try {
+      return str.getBytes(CHARSET);
+    } catch (UnsupportedEncodingException e) {
+      throw new HelixException(e);
+    }
+  }
+}
@@ -20,7 +20,7 @@ package org.apache.helix.manager.zk;
  */
 
 import java.io.ByteArrayInputStream;
-import java.io.StringWriter;
+import java.io.ByteArrayOutputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -35,6 +35,50 @@ import org.codehaus.jackson.map.SerializationConfig;
 public class ZNRecordSerializer implements ZkSerializer {
   private static Logger logger = Logger.getLogger(ZNRecordSerializer.class);
 
+  // object mappers are thread-safe once configured, so share them
+  private static final ObjectMapper INDENT_MAPPER = createSerializeMapper(true);
+  private static final ObjectMapper COMPACT_MAPPER = createSerializeMapper(false);
+  private static final ObjectMapper DESERIALIZE_MAPPER = createDeserializeMapper();
+
+  private final ObjectMapper _mapper;
+
+  /**
+   * Create a serializer that writes indented json
+   */
+  public ZNRecordSerializer() {
+    this(true);
+  }
+
+  /**
+   * Create a serializer
+   * @param indentOutput true to write indented json, false to write json without whitespace
+   */
+  public ZNRecordSerializer(boolean indentOutput) {
+    _mapper = indentOutput ? INDENT_MAPPER : COMPACT_MAPPER;
+  }
+
+  private static ObjectMapper createSerializeMapper(boolean indentOutput) {
+    ObjectMapper mapper = new ObjectMapper();
+    SerializationConfig serializationConfig = mapper.getSerializationConfig();
+    serializationConfig.set(SerializationConfig.Feature.INDENT_OUTPUT, indentOutput);
+    serializationConfig.set(SerializationConfig.Feature.AUTO_DETECT_FIELDS, true);
+    serializationConfig.set(SerializationConfig.Feature.CAN_OVERRIDE_ACCESS_MODIFIERS, true);
+    return mapper;
+  }
+
+  private static ObjectMapper createDeserializeMapper() {
+    ObjectMapper mapper = new ObjectMapper();
+    DeserializationConfig deserializationConfig = mapper.getDeserializationConfig();
+    deserializationConfig.set(DeserializationConfig.Feature.AUTO_DETECT_FIELDS, true);
+    deserializationConfig.set(DeserializationConfig.Feature.AUTO_DETECT_SETTERS, true);
+    deserializationConfig.set(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, true);
+    return mapper;
+  }
+
+  private static String head(byte[] bytes) {
+    return new String(bytes, 0, Math.min(bytes.length, 1024));
+  }
+
   private static int getListFieldBound(ZNRecord record) {
     int max = Integer.MAX_VALUE;
     if (record.getSimpleFields().containsKey(ZNRecord.LIST_FIELD_BOUND)) {
@@ -72,26 +116,22 @@ public class ZNRecordSerializer implements ZkSerializer {
     }
 
     // do serialization
-    ObjectMapper mapper = new ObjectMapper();
-    SerializationConfig serializationConfig = mapper.getSerializationConfig();
-    serializationConfig.set(SerializationConfig.Feature.INDENT_OUTPUT, true);
-    serializationConfig.set(SerializationConfig.Feature.AUTO_DETECT_FIELDS, true);
-    serializationConfig.set(SerializationConfig.Feature.CAN_OVERRIDE_ACCESS_MODIFIERS, true);
-    StringWriter sw = new StringWriter();
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
     try {
-      mapper.writeValue(sw, data);
+      _mapper.writeValue(baos, data);
     } catch (Exception e) {
       logger.error("Exception during data serialization. Will not write to zk. Data (first 1k): "
-          + sw.toString().substring(0, 1024), e);
+          + head(baos.toByteArray()), e);
       throw new HelixException(e);
     }
 
-    if (sw.toString().getBytes().length > ZNRecord.SIZE_LIMIT) {
+    byte[] bytes = baos.toByteArray();
+    if (bytes.length > ZNRecord.SIZE_LIMIT) {
       logger.error("Data size larger than 1M, ZNRecord.id: " + record.getId()
-          + ". Will not write to zk. Data (first 1k): " + sw.toString().substring(0, 1024));
+          + ". Will not write to zk. Data (first 1k): " + head(bytes));
       throw new HelixException("Data size larger than 1M, ZNRecord.id: " + record.getId());
     }
-    return sw.toString().getBytes();
+    return bytes;
   }
 
   @Override
@@ -101,15 +141,14 @@ public class ZNRecordSerializer implements ZkSerializer {
       return null;
     }
 
-    ObjectMapper mapper = new ObjectMapper();
-    ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
+    if (ZNRecordBinarySerializer.isBinary(bytes)
+        || ZNRecordStreamingSerializer.isCompressed(bytes)) {
+      return new ZNRecordStreamingSerializer().deserialize(bytes);
+    }
 
-    DeserializationConfig deserializationConfig = mapper.getDeserializationConfig();
-    deserializationConfig.set(DeserializationConfig.Feature.AUTO_DETECT_FIELDS, true);
-    deserializationConfig.set(DeserializationConfig.Feature.AUTO_DETECT_SETTERS, true);
-    deserializationConfig.set(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, true);
+    ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
     try {
-      ZNRecord zn = mapper.readValue(bais, ZNRecord.class);
+      ZNRecord zn = DESERIALIZE_MAPPER.readValue(bais, ZNRecord.class);
       return zn;
     } catch (Exception e) {
       logger.error("Exception during deserialization of bytes: " + new String(bytes), e);
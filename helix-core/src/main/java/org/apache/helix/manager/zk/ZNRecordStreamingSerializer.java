@@ -20,17 +20,21 @@ package org.apache.helix.manager.zk;
  */
 
 import java.io.ByteArrayInputStream;
-import java.io.StringWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.I0Itec.zkclient.exception.ZkMarshallingError;
 import org.I0Itec.zkclient.serialize.ZkSerializer;
 import org.apache.helix.HelixException;
 import org.apache.helix.ZNRecord;
 import org.apache.log4j.Logger;
+import org.codehaus.jackson.JsonEncoding;
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.JsonParser;
@@ -38,9 +42,40 @@ import org.codehaus.jackson.JsonToken;
 
 import com.noelios.restlet.util.Base64;
 
+/**
+ * Streaming json serializer for ZNRecord. Records whose json is larger than the compress
+ * threshold are written gzip compressed. Compressed data is recognized on read by the gzip
+ * magic header, which never starts json, so compressed and uncompressed records can coexist.
+ */
 public class ZNRecordStreamingSerializer implements ZkSerializer {
   private static Logger LOG = Logger.getLogger(ZNRecordStreamingSerializer.class);
 
+  /**
+   * system property of the json size in bytes above which records are compressed. Default to
+   * {@link ZNRecord#SIZE_LIMIT} so only records that would not fit in a znode are compressed
+   */
+  public static final String COMPRESS_THRESHOLD = "zk.serializer.compressThreshold";
+
+  private final int _compressThreshold;
+
+  public ZNRecordStreamingSerializer() {
+    this(Integer.parseInt(System.getProperty(COMPRESS_THRESHOLD, "" + ZNRecord.SIZE_LIMIT)));
+  }
+
+  /**
+   * @param compressThreshold json size in bytes above which records are compressed
+   */
+  public ZNRecordStreamingSerializer(int compressThreshold) {
+    _compressThreshold = compressThreshold;
+  }
+
+  // json factory is thread-safe, so share it
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private static String head(byte[] bytes) {
+    return new String(bytes, 0, Math.min(bytes.length, 1024));
+  }
+
   private static int getListFieldBound(ZNRecord record) {
     int max = Integer.MAX_VALUE;
     if (record.getSimpleFields().containsKey(ZNRecord.LIST_FIELD_BOUND)) {
@@ -76,10 +111,9 @@ public class ZNRecordStreamingSerializer implements ZkSerializer {
       }
     }
 
-    StringWriter sw = new StringWriter();
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
     try {
-      JsonFactory f = new JsonFactory();
-      JsonGenerator g = f.createJsonGenerator(sw);
+      JsonGenerator g = JSON_FACTORY.createJsonGenerator(baos, JsonEncoding.UTF8);
 
       g.writeStartObject();
 
@@ -151,18 +185,29 @@ public class ZNRecordStreamingSerializer implements ZkSerializer {
       g.close();
     } catch (Exception e) {
       LOG.error("Exception during data serialization. Will not write to zk. Data (first 1k): "
-          + sw.toString().substring(0, 1024), e);
+          + head(baos.toByteArray()), e);
       throw new HelixException(e);
     }
 
+    byte[] bytes = baos.toByteArray();
+    if (bytes.length > _compressThreshold) {
+      try {
+        bytes = compress(bytes);
+      } catch (IOException e) {
+        LOG.error("Exception during data compression. Will not write to zk. ZNRecord.id: "
+            + record.getId(), e);
+        throw new HelixException(e);
+      }
+    }
+
     // check size
-    if (sw.toString().getBytes().length > ZNRecord.SIZE_LIMIT) {
+    if (bytes.length > ZNRecord.SIZE_LIMIT) {
       LOG.error("Data size larger than 1M, ZNRecord.id: " + record.getId()
-          + ". Will not write to zk. Data (first 1k): " + sw.toString().substring(0, 1024));
+          + ". Will not write to zk. Data (first 1k): " + head(bytes));
       throw new HelixException("Data size larger than 1M, ZNRecord.id: " + record.getId());
     }
 
-    return sw.toString().getBytes();
+    return bytes;
   }
 
   @Override
@@ -172,12 +217,24 @@ public class ZNRecordStreamingSerializer implements ZkSerializer {
       return null;
     }
 
+    if (isCompressed(bytes)) {
+      try {
+        bytes = decompress(bytes);
+      } catch (IOException e) {
+        LOG.error("Exception during decompression of bytes, length: " + bytes.length, e);
+        return null;
+      }
+    }
+
+    if (ZNRecordBinarySerializer.isBinary(bytes)) {
+      return new ZNRecordBinarySerializer().deserialize(bytes);
+    }
+
     ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
     ZNRecord record = null;
 
     try {
-      JsonFactory f = new JsonFactory();
-      JsonParser jp = f.createJsonParser(bais);
+      JsonParser jp = JSON_FACTORY.createJsonParser(bais);
 
       jp.nextToken(); // will return JsonToken.START_OBJECT (verify?)
       while (jp.nextToken() != JsonToken.END_OBJECT) {
@@ -232,6 +289,41 @@ public class ZNRecordStreamingSerializer implements ZkSerializer {
     return record;
   }
 
+  /**
+   * @param bytes
+   * @return true if bytes start with the gzip magic header
+   */
+  public static boolean isCompressed(byte[] bytes) {
+    return bytes != null && bytes.length >= 2 && bytes[0] == (byte) GZIPInputStream.GZIP_MAGIC
+        && bytes[1] == (byte) (GZIPInputStream.GZIP_MAGIC >> 8);
+  }
+
+  static byte[] compress(byte[] bytes) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length / 4);
+    GZIPOutputStream gzip = new GZIPOutputStream(baos);
+    try {
+      gzip.write(bytes);
+    } finally {
+      gzip.close();
+    }
+    return baos.toByteArray();
+  }
+
+  static byte[] decompress(byte[] bytes) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length * 4);
+    GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(bytes));
+    try {
+      byte[] buf = new byte[4096];
+      int len;
+      while ((len = gzip.read(buf)) > 0) {
+        baos.write(buf, 0, len);
+      }
+    } finally {
+      gzip.close();
+    }
+    return baos.toByteArray();
+  }
+
   public static void main(String[] args) {
     ZNRecord record = new ZNRecord("record");
     final int recordSize = 10;
@@ -611,7 +611,16 @@ public class ZkBaseDataAccessor<T> implements BaseDataAccessor<T> {
    */
   @Override
   public boolean[] setChildren(List<String> paths, List<T> records, int options) {
-    return set(paths, records, null, null, options);
+    return set(paths, records, null, null, null, options);
+  }
+
+  /**
+   * async set with version check
+   */
+  @Override
+  public boolean[] setChildren(List<String> paths, List<T> records, int[] expectVersions,
+      List<Stat> stats, int options) {
+    return set(paths, records, expectVersions, null, stats, options);
   }
 
   /**
@@ -619,13 +628,24 @@ public class ZkBaseDataAccessor<T> implements BaseDataAccessor<T> {
    */
   boolean[] set(List<String> paths, List<T> records, List<List<String>> pathsCreated,
       List<Stat> stats, int options) {
+    return set(paths, records, null, pathsCreated, stats, options);
+  }
+
+  /**
+   * async set, give up on error other than NoNode. if expectVersions is not null, a path is
+   * set only if its version matches and is created on NoNode only if its expected version is -1
+   */
+  boolean[] set(List<String> paths, List<T> records, int[] expectVersions,
+      List<List<String>> pathsCreated, List<Stat> stats, int options) {
     if (paths == null || paths.size() == 0) {
       return new boolean[0];
     }
 
     if ((records != null && records.size() != paths.size())
-        || (pathsCreated != null && pathsCreated.size() != paths.size())) {
-      throw new IllegalArgumentException("paths, records, and pathsCreated should be of same size");
+        || (pathsCreated != null && pathsCreated.size() != paths.size())
+        || (expectVersions != null && expectVersions.length != paths.size())) {
+      throw new IllegalArgumentException(
+          "paths, records, expectVersions, and pathsCreated should be of same size");
     }
 
     boolean[] success = new boolean[paths.size()];
@@ -656,7 +676,8 @@ public class ZkBaseDataAccessor<T> implements BaseDataAccessor<T> {
           String path = paths.get(i);
           T record = records.get(i);
           cbList[i] = new SetDataCallbackHandler();
-          _zkClient.asyncSetData(path, record, -1, cbList[i]);
+          int expectVersion = (expectVersions == null ? -1 : expectVersions[i]);
+          _zkClient.asyncSetData(path, record, expectVersion, cbList[i]);
 
         }
 
@@ -672,8 +693,12 @@ public class ZkBaseDataAccessor<T> implements BaseDataAccessor<T> {
             needSet[i] = false;
             break;
           case NONODE:
-            // if fail on NoNode, try create the node
-            failOnNoNode = true;
+            // if fail on NoNode, try create the node unless a specific version is expected
+            if (expectVersions != null && expectVersions[i] != -1) {
+              needSet[i] = false;
+            } else {
+              failOnNoNode = true;
+            }
             break;
           default:
             // if fail on error other than NoNode, give up
@@ -718,9 +743,9 @@ public class ZkBaseDataAccessor<T> implements BaseDataAccessor<T> {
         Code rc = Code.get(cb.getRc());
         if (rc == Code.OK) {
           success[i] = true;
-        } else if (rc == Code.NONODE) {
+        } else if (rc == Code.NONODE && createCbList != null) {
           CreateCallbackHandler createCb = createCbList[i];
-          if (Code.get(createCb.getRc()) == Code.OK) {
+          if (createCb != null && Code.get(createCb.getRc()) == Code.OK) {
             success[i] = true;
           }
         }
@@ -474,6 +474,41 @@ public class ZkCacheBaseDataAccessor<T> implements HelixPropertyStore<T> {
     return _baseAccessor.setChildren(serverPaths, records, options);
   }
 
+  @Override
+  public boolean[] setChildren(List<String> paths, List<T> records, int[] expectVersions,
+      List<Stat> stats, int options) {
+    final int size = paths.size();
+    List<String> serverPaths = prependChroot(paths);
+
+    Cache<T> cache = getCache(serverPaths);
+    if (cache != null) {
+      try {
+        cache.lockWrite();
+        List<Stat> setStats = new ArrayList<Stat>();
+        List<List<String>> pathsCreatedList =
+            new ArrayList<List<String>>(Collections.<List<String>> nCopies(size, null));
+        boolean[] success =
+            _baseAccessor.set(serverPaths, records, expectVersions, pathsCreatedList, setStats,
+                options);
+
+        for (int i = 0; i < size; i++) {
+          updateCache(cache, pathsCreatedList.get(i), success[i], serverPaths.get(i),
+              records.get(i), setStats.get(i));
+        }
+
+        if (stats != null) {
+          stats.clear();
+          stats.addAll(setStats);
+        }
+        return success;
+      } finally {
+        cache.unlockWrite();
+      }
+    }
+
+    return _baseAccessor.setChildren(serverPaths, records, expectVersions, stats, options);
+  }
+
   @Override
   public boolean[] updateChildren(List<String> paths, List<DataUpdater<T>> updaters, int options) {
     final int size = paths.size();
@@ -22,8 +22,13 @@ package org.apache.helix.messaging;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.helix.model.Message;
 import org.apache.log4j.Logger;
@@ -31,9 +36,38 @@ import org.apache.log4j.Logger;
 public abstract class AsyncCallback {
 
   private static Logger _logger = Logger.getLogger(AsyncCallback.class);
+
+  // one thread runs the timeouts of all callbacks
+  private static final ScheduledThreadPoolExecutor TIMEOUT_SCHEDULER =
+      new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "AsyncCallbackTimeout");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  // runs onTimeOut() of the callbacks, so a slow callback does not delay other timeouts
+  private static final ExecutorService TIMEOUT_EXECUTOR = Executors
+      .newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "AsyncCallbackTimeoutHandler");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  // cancelled timeouts stay in the scheduler queue until purged
+  private static final int PURGE_INTERVAL = 1000;
+  private static final AtomicInteger CANCELLED_COUNT = new AtomicInteger(0);
+
   long _startTimeStamp = 0;
   protected long _timeout = -1;
-  Timer _timer = null;
+  ScheduledFuture<?> _timeoutFuture = null;
+  // invoked after the callback times out, e.g. to unregister it
+  Runnable _timeoutListener = null;
   List<Message> _messagesSent;
   protected final List<Message> _messageReplied = new ArrayList<Message>();
   boolean _timedOut = false;
@@ -81,9 +115,7 @@ public abstract class AsyncCallback {
       }
     }
     if (isDone()) {
-      if (_timer != null) {
-        _timer.cancel();
-      }
+      cancelTimer();
       notifyAll();
     }
   }
@@ -104,13 +136,21 @@ public abstract class AsyncCallback {
     _messagesSent = generatedMessage;
   }
 
-  final void startTimer() {
-    if (_timer == null && _timeout > 0) {
+  final synchronized void startTimer() {
+    if (_timeoutFuture == null && _timeout > 0) {
       if (_startTimeStamp == 0) {
         _startTimeStamp = new Date().getTime();
       }
-      _timer = new Timer(true);
-      _timer.schedule(new TimeoutTask(this), _timeout);
+      _timeoutFuture =
+          TIMEOUT_SCHEDULER.schedule(new TimeoutTask(this), _timeout, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void cancelTimer() {
+    if (_timeoutFuture != null && _timeoutFuture.cancel(false)) {
+      if (CANCELLED_COUNT.incrementAndGet() % PURGE_INTERVAL == 0) {
+        TIMEOUT_SCHEDULER.purge();
+      }
     }
   }
 
@@ -118,7 +158,7 @@ public abstract class AsyncCallback {
 
   public abstract void onReplyMessage(Message message);
 
-  class TimeoutTask extends TimerTask {
+  class TimeoutTask implements Runnable {
     AsyncCallback _callback;
 
     public TimeoutTask(AsyncCallback asyncCallback) {
@@ -127,19 +167,36 @@ public abstract class AsyncCallback {
 
     @Override
     public void run() {
-      try {
-        synchronized (_callback) {
+      final boolean timedOut;
+      synchronized (_callback) {
+        timedOut = _callback._messagesSent == null || !_callback.isDone();
+        if (timedOut) {
           _callback._timedOut = true;
           _callback.notifyAll();
-          _callback.onTimeOut();
-        }
-      } catch (Exception e) {
-        _logger.error(e);
-      } finally {
-        if (_timer != null) {
-          _timer.cancel();
         }
       }
+
+      // hand off to the executor and call back without holding the callback lock
+      TIMEOUT_EXECUTOR.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            if (timedOut) {
+              _callback.onTimeOut();
+            }
+          } catch (Exception e) {
+            _logger.error(e);
+          } finally {
+            if (_callback._timeoutListener != null) {
+              try {
+                _callback._timeoutListener.run();
+              } catch (Exception e) {
+                _logger.error(e);
+              }
+            }
+          }
+        }
+      });
     }
   }
 
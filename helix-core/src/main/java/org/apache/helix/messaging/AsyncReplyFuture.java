@@ -0,0 +1,164 @@
+package org.apache.helix.messaging;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.helix.model.Message;
+import org.apache.log4j.Logger;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Future of the replies to messages sent with
+ * {@link org.apache.helix.ClusterMessagingService#sendAsync}. It completes with all replies
+ * once every message is replied, or with the replies received so far when the timeout
+ * fires; {@link #isTimedOut()} tells the two apart. Listeners run when it completes.
+ */
+public class AsyncReplyFuture implements ListenableFuture<List<Message>> {
+  private static final Logger LOG = Logger.getLogger(AsyncReplyFuture.class);
+
+  private final AsyncCallback _callback = new AsyncCallback() {
+    @Override
+    public void onReplyMessage(Message message) {
+      if (isDone()) {
+        complete(false);
+      }
+    }
+
+    @Override
+    public void onTimeOut() {
+      complete(true);
+    }
+  };
+
+  private final List<Runnable> _listeners = new ArrayList<Runnable>();
+  private List<Message> _replies = null;
+  private boolean _timedOut = false;
+
+  AsyncCallback getCallback() {
+    return _callback;
+  }
+
+  /**
+   * Complete the future, called by the callback or when no message was sent
+   */
+  void complete(boolean timedOut) {
+    List<Runnable> listeners;
+    // copy the replies before taking the future lock, since onReply holds the callback lock
+    // when it calls complete()
+    List<Message> replies;
+    synchronized (_callback) {
+      replies = new ArrayList<Message>(_callback.getMessageReplied());
+    }
+    synchronized (this) {
+      if (_replies != null) {
+        return;
+      }
+      _replies = Collections.unmodifiableList(replies);
+      _timedOut = timedOut;
+      notifyAll();
+      listeners = new ArrayList<Runnable>(_listeners);
+      _listeners.clear();
+    }
+    for (Runnable listener : listeners) {
+      runListener(listener);
+    }
+  }
+
+  private static void runListener(Runnable listener) {
+    try {
+      listener.run();
+    } catch (Exception e) {
+      LOG.error("Exception in listener of reply future", e);
+    }
+  }
+
+  @Override
+  public void addListener(final Runnable listener, final Executor executor) {
+    Runnable task = new Runnable() {
+      @Override
+      public void run() {
+        executor.execute(listener);
+      }
+    };
+    synchronized (this) {
+      if (_replies == null) {
+        _listeners.add(task);
+        return;
+      }
+    }
+    runListener(task);
+  }
+
+  /**
+   * Replies can not be cancelled once the messages are sent
+   * @return false
+   */
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    return false;
+  }
+
+  @Override
+  public boolean isCancelled() {
+    return false;
+  }
+
+  @Override
+  public synchronized boolean isDone() {
+    return _replies != null;
+  }
+
+  /**
+   * @return true if the future completed because the timeout fired
+   */
+  public synchronized boolean isTimedOut() {
+    return _timedOut;
+  }
+
+  @Override
+  public synchronized List<Message> get() throws InterruptedException, ExecutionException {
+    while (_replies == null) {
+      wait();
+    }
+    return _replies;
+  }
+
+  @Override
+  public synchronized List<Message> get(long timeout, TimeUnit unit) throws InterruptedException,
+      ExecutionException, TimeoutException {
+    long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+    while (_replies == null) {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        throw new TimeoutException("Timed out waiting for replies");
+      }
+      wait(remaining);
+    }
+    return _replies;
+  }
+}
@@ -20,79 +20,208 @@ package org.apache.helix.messaging;
  */
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.helix.Criteria;
+import org.apache.helix.Criteria.DataSource;
+import org.apache.helix.ExternalViewChangeListener;
+import org.apache.helix.HelixDataAccessor;
 import org.apache.helix.HelixManager;
-import org.apache.helix.josql.ClusterJosqlQueryProcessor;
-import org.apache.helix.josql.ZNRecordRow;
+import org.apache.helix.HelixProperty;
+import org.apache.helix.IdealStateChangeListener;
+import org.apache.helix.InstanceType;
+import org.apache.helix.LiveInstanceChangeListener;
+import org.apache.helix.NotificationContext;
+import org.apache.helix.PropertyKey;
+import org.apache.helix.PropertyKey.Builder;
+import org.apache.helix.model.ExternalView;
+import org.apache.helix.model.IdealState;
+import org.apache.helix.model.LiveInstance;
 import org.apache.log4j.Logger;
 
-public class CriteriaEvaluator {
+/**
+ * Evaluates message recipient {@link Criteria} against a {@link CriteriaIndex} of external views
+ * or ideal states. For a connected controller or spectator, the first evaluation of a data
+ * source subscribes to its changes and to live-instance changes, and later evaluations are
+ * answered from the index kept up to date by the callbacks. Other managers, e.g. participants,
+ * read the records from zookeeper on each evaluation, as they do until the index is ready,
+ * e.g. before the INIT callback or after a FINALIZE.
+ */
+public class CriteriaEvaluator implements ExternalViewChangeListener, IdealStateChangeListener,
+    LiveInstanceChangeListener {
   private static Logger logger = Logger.getLogger(CriteriaEvaluator.class);
 
+  /**
+   * system property: set to true or false to subscribe to changes, or read from zookeeper on
+   * every evaluation, for any manager type. If not set, only controllers and spectators subscribe
+   */
+  public static final String WATCH_ENABLED = "helixmanager.criteriaEvaluator.watch";
+
+  // null if not set, then decided by the instance type of the manager
+  private final Boolean _watchEnabled;
+  private final AtomicBoolean _externalViewWatched = new AtomicBoolean(false);
+  private final AtomicBoolean _idealStateWatched = new AtomicBoolean(false);
+  private final AtomicBoolean _liveInstanceWatched = new AtomicBoolean(false);
+
+  // null if not subscribed or not ready
+  private volatile CriteriaIndex _externalViewIndex = null;
+  private volatile CriteriaIndex _idealStateIndex = null;
+  private volatile Set<String> _liveInstances = null;
+  private volatile HelixManager _watchedManager = null;
+
+  public CriteriaEvaluator() {
+    String watchEnabled = System.getProperty(WATCH_ENABLED);
+    _watchEnabled = watchEnabled == null ? null : Boolean.valueOf(watchEnabled);
+  }
+
+  boolean isWatchEnabled(HelixManager manager) {
+    if (_watchEnabled != null) {
+      return _watchEnabled;
+    }
+    InstanceType type = manager == null ? null : manager.getInstanceType();
+    return type == InstanceType.CONTROLLER || type == InstanceType.SPECTATOR;
+  }
+
   public List<Map<String, String>> evaluateCriteria(Criteria recipientCriteria, HelixManager manager) {
-    List<Map<String, String>> selected = new ArrayList<Map<String, String>>();
-
-    String queryFields =
-        (!recipientCriteria.getInstanceName().equals("") ? " " + ZNRecordRow.MAP_SUBKEY : " ''")
-            + ","
-            + (!recipientCriteria.getResource().equals("") ? " " + ZNRecordRow.ZNRECORD_ID : " ''")
-            + ","
-            + (!recipientCriteria.getPartition().equals("") ? " " + ZNRecordRow.MAP_KEY : " ''")
-            + ","
-            + (!recipientCriteria.getPartitionState().equals("") ? " " + ZNRecordRow.MAP_VALUE
-                : " '' ");
-
-    String matchCondition =
-        ZNRecordRow.MAP_SUBKEY
-            + " LIKE '"
-            + (!recipientCriteria.getInstanceName().equals("") ? (recipientCriteria
-                .getInstanceName() + "'") : "%' ")
-            + " AND "
-            + ZNRecordRow.ZNRECORD_ID
-            + " LIKE '"
-            + (!recipientCriteria.getResource().equals("") ? (recipientCriteria.getResource() + "'")
-                : "%' ")
-            + " AND "
-            + ZNRecordRow.MAP_KEY
-            + " LIKE '"
-            + (!recipientCriteria.getPartition().equals("") ? (recipientCriteria.getPartition() + "'")
-                : "%' ")
-            + " AND "
-            + ZNRecordRow.MAP_VALUE
-            + " LIKE '"
-            + (!recipientCriteria.getPartitionState().equals("") ? (recipientCriteria
-                .getPartitionState() + "'") : "%' ") + " AND " + ZNRecordRow.MAP_SUBKEY
-            + " IN ((SELECT [*]id FROM :LIVEINSTANCES))";
-
-    String queryTarget =
-        recipientCriteria.getDataSource().toString() + ClusterJosqlQueryProcessor.FLATTABLE;
-
-    String josql =
-        "SELECT DISTINCT " + queryFields + " FROM " + queryTarget + " WHERE " + matchCondition;
-    ClusterJosqlQueryProcessor p = new ClusterJosqlQueryProcessor(manager);
-    List<Object> result = new ArrayList<Object>();
+    DataSource dataSource = recipientCriteria.getDataSource();
+    if (isWatchEnabled(manager)) {
+      watch(dataSource, manager);
+    }
+
+    CriteriaIndex index = null;
+    Set<String> liveInstances = null;
+    if (manager == _watchedManager) {
+      index = dataSource == DataSource.IDEALSTATES ? _idealStateIndex : _externalViewIndex;
+      liveInstances = _liveInstances;
+    }
+
+    if (index == null || liveInstances == null) {
+      try {
+        index = readIndex(recipientCriteria, manager);
+        liveInstances = readLiveInstances(manager);
+      } catch (Exception e) {
+        logger.error("Fail to read " + dataSource + " for criteria: " + recipientCriteria, e);
+        return new ArrayList<Map<String, String>>();
+      }
+    }
+
+    List<Map<String, String>> selected = index.select(recipientCriteria, liveInstances);
+    if (logger.isDebugEnabled()) {
+      logger.debug("Criteria " + recipientCriteria + " matched " + selected.size() + " rows");
+    }
+    return selected;
+  }
+
+  /**
+   * Subscribe to changes of the data source and live instances if not subscribed yet. This must
+   * not hold any lock of the evaluator since the callbacks run with the manager locked
+   */
+  void watch(DataSource dataSource, HelixManager manager) {
+    if (manager == null || !manager.isConnected()) {
+      return;
+    }
+    if (_watchedManager == null) {
+      synchronized (this) {
+        if (_watchedManager == null) {
+          _watchedManager = manager;
+        }
+      }
+    }
+    if (manager != _watchedManager) {
+      return;
+    }
+
     try {
-      logger.info("JOSQL query: " + josql);
-      result = p.runJoSqlQuery(josql, null, null);
+      if (_liveInstanceWatched.compareAndSet(false, true)) {
+        manager.addLiveInstanceChangeListener(this);
+      }
+      if (dataSource == DataSource.IDEALSTATES) {
+        if (_idealStateWatched.compareAndSet(false, true)) {
+          manager.addIdealStateChangeListener(this);
+        }
+      } else if (_externalViewWatched.compareAndSet(false, true)) {
+        manager.addExternalViewChangeListener(this);
+      }
     } catch (Exception e) {
-      logger.error("", e);
-      return selected;
+      logger.warn("Fail to subscribe to " + dataSource + " changes, read from zookeeper instead",
+          e);
     }
+  }
+
+  CriteriaIndex readIndex(Criteria criteria, HelixManager manager) {
+    HelixDataAccessor accessor = manager.getHelixDataAccessor();
+    Builder keyBuilder = accessor.keyBuilder();
+    boolean idealStates = criteria.getDataSource() == DataSource.IDEALSTATES;
+    String resource = criteria.getResource();
 
-    for (Object o : result) {
-      Map<String, String> resultRow = new HashMap<String, String>();
-      List<Object> row = (List<Object>) o;
-      resultRow.put("instanceName", (String) (row.get(0)));
-      resultRow.put("resourceName", (String) (row.get(1)));
-      resultRow.put("partitionName", (String) (row.get(2)));
-      resultRow.put("partitionState", (String) (row.get(3)));
-      selected.add(resultRow);
+    List<HelixProperty> properties;
+    if (resource != null && !resource.equals("") && resource.indexOf('%') < 0) {
+      // only read the resource the criteria is for
+      PropertyKey key =
+          idealStates ? keyBuilder.idealStates(resource) : keyBuilder.externalView(resource);
+      HelixProperty property = accessor.getProperty(key);
+      properties =
+          property == null ? Collections.<HelixProperty> emptyList() : Collections
+              .singletonList(property);
+    } else {
+      properties =
+          accessor.getChildValues(idealStates ? keyBuilder.idealStates() : keyBuilder
+              .externalViews());
     }
-    logger.info("JOSQL query return " + selected.size() + " rows");
-    return selected;
+    return CriteriaIndex.build(properties, null);
+  }
+
+  Set<String> readLiveInstances(HelixManager manager) {
+    HelixDataAccessor accessor = manager.getHelixDataAccessor();
+    List<LiveInstance> liveInstances =
+        accessor.getChildValues(accessor.keyBuilder().liveInstances());
+    return toInstanceNames(liveInstances);
+  }
+
+  private static Set<String> toInstanceNames(List<LiveInstance> liveInstances) {
+    Set<String> instanceNames = new HashSet<String>();
+    if (liveInstances != null) {
+      for (LiveInstance liveInstance : liveInstances) {
+        instanceNames.add(liveInstance.getId());
+      }
+    }
+    return instanceNames;
+  }
+
+  @Override
+  public void onExternalViewChange(List<ExternalView> externalViewList,
+      NotificationContext changeContext) {
+    if (changeContext.getType() == NotificationContext.Type.FINALIZE) {
+      _externalViewIndex = null;
+      _externalViewWatched.set(false);
+      return;
+    }
+    _externalViewIndex = CriteriaIndex.build(externalViewList, _externalViewIndex);
+  }
+
+  @Override
+  public void onIdealStateChange(List<IdealState> idealState, NotificationContext changeContext) {
+    if (changeContext.getType() == NotificationContext.Type.FINALIZE) {
+      _idealStateIndex = null;
+      _idealStateWatched.set(false);
+      return;
+    }
+    _idealStateIndex = CriteriaIndex.build(idealState, _idealStateIndex);
+  }
+
+  @Override
+  public void onLiveInstanceChange(List<LiveInstance> liveInstances,
+      NotificationContext changeContext) {
+    if (changeContext.getType() == NotificationContext.Type.FINALIZE) {
+      _liveInstances = null;
+      _liveInstanceWatched.set(false);
+      return;
+    }
+    _liveInstances = Collections.unmodifiableSet(toInstanceNames(liveInstances));
   }
 }
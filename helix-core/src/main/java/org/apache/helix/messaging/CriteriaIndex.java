@@ -0,0 +1,230 @@
+package org.apache.helix.messaging;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import org.apache.helix.Criteria;
+import org.apache.helix.HelixProperty;
+import org.apache.helix.ZNRecord;
+
+/**
+ * Immutable routing index of resource -> partition -> state -> instances, built from the map
+ * fields of external views or ideal states. It answers a {@link Criteria} by looking up the
+ * fields given literally and scanning only the levels matched by a '%' wildcard.
+ */
+class CriteriaIndex {
+  static final String INSTANCE_NAME = "instanceName";
+  static final String RESOURCE_NAME = "resourceName";
+  static final String PARTITION_NAME = "partitionName";
+  static final String PARTITION_STATE = "partitionState";
+
+  static final CriteriaIndex EMPTY = new CriteriaIndex(
+      Collections.<String, ResourceEntry> emptyMap());
+
+  /**
+   * index of one resource, kept with the znode version it was built from so an unchanged
+   * resource can be reused when the index is rebuilt
+   */
+  static class ResourceEntry {
+    final int _version;
+    final long _modifiedTime;
+    final Map<String, Map<String, Set<String>>> _partitions;
+
+    ResourceEntry(ZNRecord record) {
+      _version = record.getVersion();
+      _modifiedTime = record.getModifiedTime();
+      _partitions = new HashMap<String, Map<String, Set<String>>>();
+      for (String partition : record.getMapFields().keySet()) {
+        Map<String, String> instanceStateMap = record.getMapField(partition);
+        if (instanceStateMap == null) {
+          continue;
+        }
+        Map<String, Set<String>> stateMap = new HashMap<String, Set<String>>();
+        for (Map.Entry<String, String> entry : instanceStateMap.entrySet()) {
+          String state = entry.getValue() == null ? "" : entry.getValue();
+          Set<String> instances = stateMap.get(state);
+          if (instances == null) {
+            instances = new TreeSet<String>();
+            stateMap.put(state, instances);
+          }
+          instances.add(entry.getKey());
+        }
+        _partitions.put(partition, stateMap);
+      }
+    }
+
+    boolean isBuiltFrom(ZNRecord record) {
+      // version is -1 if the record was not read from zookeeper
+      return _version >= 0 && _version == record.getVersion()
+          && _modifiedTime == record.getModifiedTime();
+    }
+  }
+
+  private final Map<String, ResourceEntry> _resources;
+
+  private CriteriaIndex(Map<String, ResourceEntry> resources) {
+    _resources = resources;
+  }
+
+  /**
+   * Build the index of the given external views or ideal states
+   * @param properties
+   * @param previous index built from an earlier read, entries of unchanged resources are reused.
+   *          may be null
+   * @return index
+   */
+  static CriteriaIndex build(Collection<? extends HelixProperty> properties,
+      CriteriaIndex previous) {
+    Map<String, ResourceEntry> resources = new HashMap<String, ResourceEntry>();
+    if (properties != null) {
+      for (HelixProperty property : properties) {
+        if (property == null) {
+          continue;
+        }
+        ZNRecord record = property.getRecord();
+        ResourceEntry entry = previous == null ? null : previous._resources.get(record.getId());
+        if (entry == null || !entry.isBuiltFrom(record)) {
+          entry = new ResourceEntry(record);
+        }
+        resources.put(record.getId(), entry);
+      }
+    }
+    return new CriteriaIndex(resources);
+  }
+
+  int size() {
+    return _resources.size();
+  }
+
+  /**
+   * Select the distinct (instance, resource, partition, state) rows matching the criteria on a
+   * live instance. Like the JoSQL query this replaces, a field left empty in the criteria matches
+   * anything and is returned as ""
+   * @param criteria
+   * @param liveInstances
+   * @return list of rows keyed by instanceName, resourceName, partitionName and partitionState
+   */
+  List<Map<String, String>> select(Criteria criteria, Set<String> liveInstances) {
+    Matcher instanceMatcher = new Matcher(criteria.getInstanceName());
+    Matcher resourceMatcher = new Matcher(criteria.getResource());
+    Matcher partitionMatcher = new Matcher(criteria.getPartition());
+    Matcher stateMatcher = new Matcher(criteria.getPartitionState());
+
+    Set<Map<String, String>> selected = new LinkedHashSet<Map<String, String>>();
+    for (String resource : resourceMatcher.select(_resources)) {
+      Map<String, Map<String, Set<String>>> partitions = _resources.get(resource)._partitions;
+      for (String partition : partitionMatcher.select(partitions)) {
+        Map<String, Set<String>> states = partitions.get(partition);
+        for (String state : stateMatcher.select(states)) {
+          for (String instance : instanceMatcher.select(states.get(state))) {
+            if (!liveInstances.contains(instance)) {
+              continue;
+            }
+            Map<String, String> row = new HashMap<String, String>();
+            row.put(INSTANCE_NAME, instanceMatcher.project(instance));
+            row.put(RESOURCE_NAME, resourceMatcher.project(resource));
+            row.put(PARTITION_NAME, partitionMatcher.project(partition));
+            row.put(PARTITION_STATE, stateMatcher.project(state));
+            selected.add(row);
+          }
+        }
+      }
+    }
+    return new ArrayList<Map<String, String>>(selected);
+  }
+
+  /**
+   * Matches one criteria field with SQL LIKE semantics, '%' matching any sequence of characters
+   */
+  static class Matcher {
+    final String _expression;
+    final boolean _selected;
+    final Pattern _pattern;
+
+    Matcher(String expression) {
+      _selected = expression != null && !expression.equals("");
+      _expression = _selected ? expression : "%";
+      _pattern = _expression.indexOf('%') < 0 ? null : toPattern(_expression);
+    }
+
+    static Pattern toPattern(String expression) {
+      StringBuilder regex = new StringBuilder();
+      int start = 0;
+      int index;
+      while ((index = expression.indexOf('%', start)) >= 0) {
+        if (index > start) {
+          regex.append(Pattern.quote(expression.substring(start, index)));
+        }
+        regex.append(".*");
+        start = index + 1;
+      }
+      if (start < expression.length()) {
+        regex.append(Pattern.quote(expression.substring(start)));
+      }
+      return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    boolean matches(String value) {
+      return _pattern == null ? _expression.equals(value) : _pattern.matcher(value).matches();
+    }
+
+    /**
+     * @return keys of the map that match, looked up directly if the expression has no wildcard
+     */
+    Collection<String> select(Map<String, ?> map) {
+      if (_pattern == null) {
+        return map.containsKey(_expression) ? Collections.singletonList(_expression) : Collections
+            .<String> emptyList();
+      }
+      return select(map.keySet());
+    }
+
+    Collection<String> select(Set<String> values) {
+      if (_pattern == null) {
+        return values.contains(_expression) ? Collections.singletonList(_expression)
+            : Collections.<String> emptyList();
+      }
+      if (_expression.equals("%")) {
+        return values;
+      }
+      List<String> matched = new ArrayList<String>();
+      for (String value : values) {
+        if (matches(value)) {
+          matched.add(value);
+        }
+      }
+      return matched;
+    }
+
+    String project(String value) {
+      return _selected ? value : "";
+    }
+  }
+}
@@ -32,8 +32,10 @@ import org.apache.helix.model.ConfigScope;
 import org.apache.helix.model.builder.ConfigScopeBuilder;
 import org.apache.helix.Criteria;
 import org.apache.helix.HelixDataAccessor;
+import org.apache.helix.HelixException;
 import org.apache.helix.HelixManager;
 import org.apache.helix.InstanceType;
+import org.apache.helix.PropertyKey;
 import org.apache.helix.PropertyKey.Builder;
 import org.apache.helix.messaging.handling.AsyncCallbackService;
 import org.apache.helix.messaging.handling.HelixTaskExecutor;
@@ -43,6 +45,8 @@ import org.apache.helix.model.Message;
 import org.apache.helix.model.Message.MessageType;
 import org.apache.log4j.Logger;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 public class DefaultMessagingService implements ClusterMessagingService {
   private final HelixManager _manager;
   private final CriteriaEvaluator _evaluator;
@@ -93,12 +97,29 @@ public class DefaultMessagingService implements ClusterMessagingService {
       }
       callbackOnReply.setTimeout(totalTimeout);
       correlationId = UUID.randomUUID().toString();
+      List<Message> messagesSent = new ArrayList<Message>();
       for (List<Message> messages : generateMessage.values()) {
-        callbackOnReply.setMessagesSent(messages);
+        messagesSent.addAll(messages);
       }
+      callbackOnReply.setMessagesSent(messagesSent);
+
+      // drop the callback from the registry once it times out
+      final String timeoutCorrelationId = correlationId;
+      callbackOnReply._timeoutListener = new Runnable() {
+        @Override
+        public void run() {
+          _asyncCallbackService.unregisterAsyncCallback(timeoutCorrelationId);
+        }
+      };
       _asyncCallbackService.registerAsyncCallback(correlationId, callbackOnReply);
     }
 
+    HelixDataAccessor accessor = _manager.getHelixDataAccessor();
+    Builder keyBuilder = accessor.keyBuilder();
+
+    // write all messages in one async batch
+    List<PropertyKey> keys = new ArrayList<PropertyKey>();
+    List<Message> messages = new ArrayList<Message>();
     for (InstanceType receiverType : generateMessage.keySet()) {
       List<Message> list = generateMessage.get(receiverType);
       for (Message tempMessage : list) {
@@ -109,19 +130,32 @@ public class DefaultMessagingService implements ClusterMessagingService {
           tempMessage.setCorrelationId(correlationId);
         }
 
-        HelixDataAccessor accessor = _manager.getHelixDataAccessor();
-        Builder keyBuilder = accessor.keyBuilder();
-
+        PropertyKey key;
         if (receiverType == InstanceType.CONTROLLER) {
-          // _manager.getDataAccessor().setProperty(PropertyType.MESSAGES_CONTROLLER,
-          // tempMessage,
-          // tempMessage.getId());
-          accessor.setProperty(keyBuilder.controllerMessage(tempMessage.getId()), tempMessage);
+          key = keyBuilder.controllerMessage(tempMessage.getId());
+        } else if (receiverType == InstanceType.PARTICIPANT) {
+          key = keyBuilder.message(tempMessage.getTgtName(), tempMessage.getId());
+        } else {
+          continue;
         }
 
-        if (receiverType == InstanceType.PARTICIPANT) {
-          accessor.setProperty(keyBuilder.message(tempMessage.getTgtName(), tempMessage.getId()),
-              tempMessage);
+        // the batch write skips the check setProperty does, so validate before writing any
+        if (!tempMessage.isValid()) {
+          throw new HelixException("The ZNRecord for " + key.getType() + " is not valid.");
+        }
+        keys.add(key);
+        messages.add(tempMessage);
+      }
+    }
+
+    if (keys.size() > 0) {
+      boolean[] success = accessor.setChildren(keys, messages);
+      if (success != null) {
+        for (int i = 0; i < success.length; i++) {
+          if (!success[i]) {
+            _logger.error("Fail to send message " + messages.get(i).getId() + " to "
+                + messages.get(i).getTgtName());
+          }
         }
       }
     }
@@ -316,4 +350,17 @@ public class DefaultMessagingService implements ClusterMessagingService {
       int timeOut) {
     return sendAndWait(recipientCriteria, message, asyncCallback, timeOut, 0);
   }
+
+  @Override
+  public ListenableFuture<List<Message>> sendAsync(Criteria recipientCriteria, Message message,
+      int timeOut, int retryCount) {
+    AsyncReplyFuture future = new AsyncReplyFuture();
+    int messagesSent =
+        send(recipientCriteria, message, future.getCallback(), timeOut, retryCount);
+    if (messagesSent == 0) {
+      _logger.warn("No messages sent. For Criteria:" + recipientCriteria);
+      future.complete(false);
+    }
+    return future;
+  }
 }
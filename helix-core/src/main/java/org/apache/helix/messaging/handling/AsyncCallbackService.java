@@ -53,6 +53,19 @@ public class AsyncCallbackService implements MessageHandlerFactory {
     _callbackMap.put(correlationId, callback);
   }
 
+  /**
+   * Remove the callback of a correlation id, e.g. after it timed out
+   * @param correlationId
+   * @return the callback removed, or null if none was registered
+   */
+  public AsyncCallback unregisterAsyncCallback(String correlationId) {
+    AsyncCallback callback = _callbackMap.remove(correlationId);
+    if (callback != null) {
+      _logger.info("unregistered correlation id " + correlationId);
+    }
+    return callback;
+  }
+
   void verifyMessage(Message message) {
     if (!message.getMsgType().toString().equalsIgnoreCase(MessageType.TASK_REPLY.toString())) {
       String errorMsg =
@@ -114,11 +127,18 @@ public class AsyncCallbackService implements MessageHandlerFactory {
           + _correlationId);
 
       AsyncCallback callback = _callbackMap.get(_correlationId);
+      if (callback == null) {
+        // removed since the handler was created, e.g. timed out
+        _logger.warn("Callback of correlation id " + _correlationId
+            + " no longer registered, ignore reply " + _message.getMsgId());
+        result.setSuccess(true);
+        return result;
+      }
       synchronized (callback) {
         callback.onReply(_message);
         if (callback.isDone()) {
           _logger.info("Removing finished callback, correlationid:" + _correlationId);
-          _callbackMap.remove(_correlationId);
+          _callbackMap.remove(_correlationId, callback);
         }
       }
       result.setSuccess(true);
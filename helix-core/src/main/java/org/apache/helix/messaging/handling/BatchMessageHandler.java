@@ -24,25 +24,34 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.helix.ConfigAccessor;
 import org.apache.helix.HelixDataAccessor;
 import org.apache.helix.HelixException;
 import org.apache.helix.HelixManager;
 import org.apache.helix.NotificationContext;
 import org.apache.helix.NotificationContext.MapKey;
 import org.apache.helix.PropertyKey;
+import org.apache.helix.model.ConfigScope;
 import org.apache.helix.model.CurrentState;
 import org.apache.helix.model.Message;
 import org.apache.helix.model.Message.Attributes;
+import org.apache.helix.model.builder.ConfigScopeBuilder;
 import org.apache.log4j.Logger;
 
 public class BatchMessageHandler extends MessageHandler {
   private static Logger LOG = Logger.getLogger(BatchMessageHandler.class);
 
+  /**
+   * resource config: number of sub-messages of one batch message that may run at once
+   */
+  public static final String BATCH_MESSAGE_PARALLELISM = "batchMessageParallelism";
+
   final MessageHandlerFactory _msgHandlerFty;
   final TaskExecutor _executor;
   final List<Message> _subMessages;
@@ -108,15 +117,52 @@ public class BatchMessageHandler extends MessageHandler {
 
     if (csUpdateMap != null) {
       Map<PropertyKey, CurrentState> csUpdate = mergeCurStateUpdate(csUpdateMap);
+      updateCurrentStates(accessor, csUpdate);
+    }
+  }
+
+  /**
+   * Write the merged current-state updates of all sub-messages in one batch
+   */
+  void updateCurrentStates(HelixDataAccessor accessor, Map<PropertyKey, CurrentState> csUpdate) {
+    if (csUpdate.isEmpty()) {
+      return;
+    }
+
+    List<PropertyKey> keys = new ArrayList<PropertyKey>(csUpdate.keySet());
+    List<CurrentState> values = new ArrayList<CurrentState>();
+    for (PropertyKey key : keys) {
+      values.add(csUpdate.get(key));
+    }
+    boolean[] success = accessor.updateProperty(keys, values);
+    for (int i = 0; i < keys.size(); i++) {
+      if (success == null || i >= success.length || !success[i]) {
+        LOG.error("Fail to update current-state: " + keys.get(i));
+      }
+    }
+  }
 
-      // TODO: change to use asyncSet
-      for (PropertyKey key : csUpdate.keySet()) {
-        // logger.info("updateCS: " + key);
-        // System.out.println("\tupdateCS: " + key.getPath() + ", " +
-        // curStateMap.get(key));
-        accessor.updateProperty(key, csUpdate.get(key));
+  /**
+   * @return number of sub-messages that may run at once, from the resource config
+   */
+  int getParallelism() {
+    int parallelism = TaskExecutor.DEFAULT_PARALLEL_TASKS;
+    HelixManager manager = _notificationContext.getManager();
+    ConfigAccessor configAccessor = manager == null ? null : manager.getConfigAccessor();
+    if (configAccessor != null) {
+      ConfigScope scope =
+          new ConfigScopeBuilder().forCluster(manager.getClusterName())
+              .forResource(_message.getResourceName()).build();
+      String parallelismStr = configAccessor.get(scope, BATCH_MESSAGE_PARALLELISM);
+      try {
+        if (parallelismStr != null) {
+          parallelism = Integer.parseInt(parallelismStr);
+        }
+      } catch (Exception e) {
+        LOG.error("Invalid config " + BATCH_MESSAGE_PARALLELISM + ": " + parallelismStr, e);
       }
     }
+    return Math.max(1, parallelism);
   }
 
   // will not return until all sub-message executions are done
@@ -130,25 +176,18 @@ public class BatchMessageHandler extends MessageHandler {
       try {
         preHandleMessage();
 
-        int exeBatchSize = 1; // TODO: getExeBatchSize from msg
-        List<String> partitionKeys = _message.getPartitionNames();
-        for (int i = 0; i < partitionKeys.size(); i += exeBatchSize) {
-          if (i + exeBatchSize <= partitionKeys.size()) {
-            List<Message> msgs = _subMessages.subList(i, i + exeBatchSize);
-            List<MessageHandler> handlers = _subMessageHandlers.subList(i, i + exeBatchSize);
-            HelixBatchMessageTask batchTask =
-                new HelixBatchMessageTask(_message, msgs, handlers, _notificationContext);
-            batchTasks.add(batchTask);
-
-          } else {
-            List<Message> msgs = _subMessages.subList(i, i + partitionKeys.size());
-            List<MessageHandler> handlers =
-                _subMessageHandlers.subList(i, i + partitionKeys.size());
-
-            HelixBatchMessageTask batchTask =
-                new HelixBatchMessageTask(_message, msgs, handlers, _notificationContext);
-            batchTasks.add(batchTask);
-          }
+        // split sub-messages into at most parallelism tasks, each task handles its
+        // sub-messages one after another
+        int subMsgCount = _subMessages.size();
+        int parallelism = getParallelism();
+        int exeBatchSize = Math.max(1, (subMsgCount + parallelism - 1) / parallelism);
+        for (int i = 0; i < subMsgCount; i += exeBatchSize) {
+          int end = Math.min(i + exeBatchSize, subMsgCount);
+          List<Message> msgs = _subMessages.subList(i, end);
+          List<MessageHandler> handlers = _subMessageHandlers.subList(i, end);
+          HelixBatchMessageTask batchTask =
+              new HelixBatchMessageTask(_message, msgs, handlers, _notificationContext);
+          batchTasks.add(batchTask);
         }
 
         // invokeAll() is blocking call
@@ -166,31 +205,57 @@ public class BatchMessageHandler extends MessageHandler {
         // return result;
       }
 
-      // combine sub-results to result
+      // combine sub-results to result, reporting the result of each partition
       if (futures != null) {
         boolean isBatchTaskSucceed = true;
+        result = new HelixTaskResult();
 
         for (int i = 0; i < futures.size(); i++) {
           Future<HelixTaskResult> future = futures.get(i);
-          MessageTask subTask = batchTasks.get(i);
+          HelixBatchMessageTask subTask = (HelixBatchMessageTask) batchTasks.get(i);
+          HelixTaskResult subTaskResult = null;
           try {
-            HelixTaskResult subTaskResult = future.get();
-            if (!subTaskResult.isSuccess()) {
-              isBatchTaskSucceed = false;
-            }
+            subTaskResult = future.get();
           } catch (InterruptedException e) {
-            isBatchTaskSucceed = false;
             LOG.error("interrupted in executing batch-msg: " + _message.getId() + ", sub-msg: "
                 + subTask.getTaskId(), e);
           } catch (ExecutionException e) {
-            isBatchTaskSucceed = false;
             LOG.error(
                 "fail to execute batch-msg: " + _message.getId() + ", sub-msg: "
                     + subTask.getTaskId(), e);
+          } catch (CancellationException e) {
+            LOG.error("timeout in executing batch-msg: " + _message.getId() + ", sub-msg: "
+                + subTask.getTaskId(), e);
+          }
+
+          if (subTaskResult != null) {
+            result.getTaskResultMap().putAll(subTaskResult.getTaskResultMap());
+          }
+          if (subTaskResult == null || !subTaskResult.isSuccess()) {
+            isBatchTaskSucceed = false;
+            if (subTaskResult != null && subTaskResult.getMessage() != null) {
+              result.setMessage(subTaskResult.getMessage());
+            }
+            // partitions of a task that did not finish are failed
+            for (Message subMsg : subTask._subMsgs) {
+              if (!result.getTaskResultMap().containsKey(subMsg.getPartitionName())) {
+                result.getTaskResultMap().put(subMsg.getPartitionName(), "false");
+              }
+            }
           }
         }
-        result = new HelixTaskResult();
         result.setSuccess(isBatchTaskSucceed);
+
+        if (!isBatchTaskSucceed) {
+          List<String> failedPartitions = new ArrayList<String>();
+          for (Message subMsg : _subMessages) {
+            if (!"true".equals(result.getTaskResultMap().get(subMsg.getPartitionName()))) {
+              failedPartitions.add(subMsg.getPartitionName());
+            }
+          }
+          LOG.error("batch-msg: " + _message.getId() + " failed on " + failedPartitions.size()
+              + " of " + _subMessages.size() + " partitions: " + failedPartitions);
+        }
       }
 
       // pass task-result to post-handle-msg
@@ -0,0 +1,358 @@
+package org.apache.helix.messaging.handling;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.helix.model.Message;
+import org.apache.log4j.Logger;
+
+/**
+ * Executor that runs the messages of each partition in FIFO order and shares its worker
+ * threads fairly between resources. Resources with runnable work take turns on the
+ * workers; a resource with weight w may start up to w tasks per turn, and no resource
+ * runs more tasks at once than its concurrency cap. Messages without a partition are not
+ * ordered against each other.
+ */
+public class FairMessageExecutor extends AbstractExecutorService {
+  private static final Logger LOG = Logger.getLogger(FairMessageExecutor.class);
+
+  // how long an idle worker waits before re-checking for shutdown
+  private static final long IDLE_POLL_MS = 100;
+
+  /**
+   * tasks of one partition, at most one of which runs at any time
+   */
+  static class PartitionQueue {
+    final String _partition;
+    final Queue<Runnable> _tasks = new LinkedList<Runnable>();
+    boolean _running = false;
+    boolean _ready = false;
+
+    PartitionQueue(String partition) {
+      _partition = partition;
+    }
+  }
+
+  /**
+   * partitions of one resource; all state is guarded by the resource queue's monitor
+   */
+  static class ResourceQueue {
+    final String _resource;
+    final Map<String, PartitionQueue> _partitions = new HashMap<String, PartitionQueue>();
+    final Queue<PartitionQueue> _readyPartitions = new LinkedList<PartitionQueue>();
+    int _running = 0;
+    int _maxConcurrency;
+    int _weight;
+    int _credits;
+    boolean _scheduled = false;
+
+    ResourceQueue(String resource, int maxConcurrency, int weight) {
+      _resource = resource;
+      _maxConcurrency = maxConcurrency;
+      _weight = weight;
+      _credits = weight;
+    }
+
+    boolean canDispatch() {
+      return !_readyPartitions.isEmpty() && _running < _maxConcurrency;
+    }
+  }
+
+  /**
+   * future of a task, remembering the queues it was submitted to
+   */
+  static class QueuedTask<T> extends FutureTask<T> {
+    final String _resource;
+    final String _partition;
+
+    QueuedTask(Callable<T> callable, String resource, String partition) {
+      super(callable);
+      _resource = resource;
+      _partition = partition;
+    }
+
+    QueuedTask(Runnable runnable, T value) {
+      super(runnable, value);
+      _resource = "";
+      _partition = null;
+    }
+  }
+
+  private final int _poolSize;
+  private final ExecutorService _workers;
+  private final ConcurrentMap<String, ResourceQueue> _resources =
+      new ConcurrentHashMap<String, ResourceQueue>();
+  private final LinkedBlockingDeque<ResourceQueue> _readyResources =
+      new LinkedBlockingDeque<ResourceQueue>();
+  private final AtomicInteger _pendingCount = new AtomicInteger(0);
+  private volatile boolean _shutdown = false;
+
+  public FairMessageExecutor(int poolSize) {
+    _poolSize = poolSize;
+    _workers = Executors.newFixedThreadPool(poolSize);
+    for (int i = 0; i < poolSize; i++) {
+      _workers.execute(new Runnable() {
+        @Override
+        public void run() {
+          runWorker();
+        }
+      });
+    }
+  }
+
+  /**
+   * Set the number of tasks of a resource that may run at once and its share of the
+   * workers relative to other resources
+   * @param resource
+   * @param maxConcurrency
+   *          concurrency cap, non-positive for the pool size
+   * @param weight
+   *          tasks the resource may start per turn, at least 1
+   */
+  public void setResourceConfig(String resource, int maxConcurrency, int weight) {
+    ResourceQueue queue = getResourceQueue(resource);
+    synchronized (queue) {
+      queue._maxConcurrency = maxConcurrency > 0 ? maxConcurrency : _poolSize;
+      queue._weight = Math.max(1, weight);
+      queue._credits = Math.min(queue._credits, queue._weight);
+      scheduleIfReady(queue);
+    }
+  }
+
+  @Override
+  protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+    if (callable instanceof MessageTask) {
+      Message message = ((MessageTask) callable).getMessage();
+      String resource = message.getResourceName();
+      return new QueuedTask<T>(callable, resource == null ? "" : resource,
+          message.getPartitionName());
+    }
+    return new QueuedTask<T>(callable, "", null);
+  }
+
+  @Override
+  protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+    return new QueuedTask<T>(runnable, value);
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    if (_shutdown) {
+      throw new RejectedExecutionException("Executor is shut down");
+    }
+
+    String resource = "";
+    String partition = null;
+    if (command instanceof QueuedTask) {
+      resource = ((QueuedTask<?>) command)._resource;
+      partition = ((QueuedTask<?>) command)._partition;
+    }
+
+    ResourceQueue queue = getResourceQueue(resource);
+    _pendingCount.incrementAndGet();
+    synchronized (queue) {
+      PartitionQueue partitionQueue;
+      if (partition == null) {
+        // not ordered, give the task its own queue
+        partitionQueue = new PartitionQueue(null);
+      } else {
+        partitionQueue = queue._partitions.get(partition);
+        if (partitionQueue == null) {
+          partitionQueue = new PartitionQueue(partition);
+          queue._partitions.put(partition, partitionQueue);
+        }
+      }
+      partitionQueue._tasks.add(command);
+      if (!partitionQueue._running && !partitionQueue._ready) {
+        partitionQueue._ready = true;
+        queue._readyPartitions.add(partitionQueue);
+      }
+      scheduleIfReady(queue);
+    }
+  }
+
+  private ResourceQueue getResourceQueue(String resource) {
+    ResourceQueue queue = _resources.get(resource);
+    if (queue == null) {
+      queue = new ResourceQueue(resource, _poolSize, 1);
+      ResourceQueue existing = _resources.putIfAbsent(resource, queue);
+      if (existing != null) {
+        queue = existing;
+      }
+    }
+    return queue;
+  }
+
+  /**
+   * Put the resource at the end of the ready list if it has work it may start. Must be
+   * called holding the resource queue's monitor.
+   */
+  private void scheduleIfReady(ResourceQueue queue) {
+    if (!queue._scheduled && queue.canDispatch()) {
+      queue._scheduled = true;
+      _readyResources.addLast(queue);
+    }
+  }
+
+  private void runWorker() {
+    while (true) {
+      ResourceQueue queue;
+      try {
+        queue = _readyResources.pollFirst(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        if (_workers.isShutdown()) {
+          return;
+        }
+        // interrupt left over from cancelling a task
+        continue;
+      }
+      if (queue == null) {
+        if (_shutdown && _pendingCount.get() == 0) {
+          return;
+        }
+        continue;
+      }
+
+      PartitionQueue partitionQueue;
+      Runnable task;
+      synchronized (queue) {
+        queue._scheduled = false;
+        if (!queue.canDispatch()) {
+          continue;
+        }
+        partitionQueue = queue._readyPartitions.poll();
+        partitionQueue._ready = false;
+        partitionQueue._running = true;
+        task = partitionQueue._tasks.poll();
+        queue._running++;
+
+        // stay at the head of the ready list until the resource used up its turn
+        queue._credits--;
+        if (queue.canDispatch()) {
+          queue._scheduled = true;
+          if (queue._credits > 0) {
+            _readyResources.addFirst(queue);
+          } else {
+            queue._credits = queue._weight;
+            _readyResources.addLast(queue);
+          }
+        } else if (queue._credits <= 0) {
+          queue._credits = queue._weight;
+        }
+      }
+      _pendingCount.decrementAndGet();
+
+      try {
+        task.run();
+      } catch (Throwable t) {
+        LOG.error("Exception in task of resource: " + queue._resource + ", partition: "
+            + partitionQueue._partition, t);
+      } finally {
+        synchronized (queue) {
+          queue._running--;
+          partitionQueue._running = false;
+          if (!partitionQueue._tasks.isEmpty()) {
+            partitionQueue._ready = true;
+            queue._readyPartitions.add(partitionQueue);
+          } else if (partitionQueue._partition != null) {
+            queue._partitions.remove(partitionQueue._partition);
+          }
+          scheduleIfReady(queue);
+        }
+      }
+
+      // clear the interrupt of a cancelled task so it does not leak into the next one
+      if (Thread.interrupted() && _workers.isShutdown()) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return number of tasks submitted but not started yet
+   */
+  public int getPendingCount() {
+    return _pendingCount.get();
+  }
+
+  @Override
+  public void shutdown() {
+    _shutdown = true;
+    _workers.shutdown();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    _shutdown = true;
+    List<Runnable> tasksLeft = new ArrayList<Runnable>();
+    for (ResourceQueue queue : _resources.values()) {
+      synchronized (queue) {
+        for (PartitionQueue partitionQueue : queue._readyPartitions) {
+          tasksLeft.addAll(partitionQueue._tasks);
+          _pendingCount.addAndGet(-partitionQueue._tasks.size());
+          partitionQueue._tasks.clear();
+          partitionQueue._ready = false;
+        }
+        queue._readyPartitions.clear();
+        for (PartitionQueue partitionQueue : queue._partitions.values()) {
+          tasksLeft.addAll(partitionQueue._tasks);
+          _pendingCount.addAndGet(-partitionQueue._tasks.size());
+          partitionQueue._tasks.clear();
+        }
+      }
+    }
+    _readyResources.clear();
+    _workers.shutdownNow();
+    return tasksLeft;
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return _shutdown;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return _workers.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return _workers.awaitTermination(timeout, unit);
+  }
+}
@@ -42,41 +42,62 @@ public class HelixBatchMessageTask implements MessageTask {
     _handlers = handlers;
   }
 
+  /**
+   * Run the sub-message handlers one after another. A failing handler does not stop the
+   * others; the result map of the returned task result holds "true" or "false" for the
+   * partition of each sub-message.
+   */
   @Override
   public HelixTaskResult call() throws Exception {
-    HelixTaskResult taskResult = null;
+    HelixTaskResult taskResult = new HelixTaskResult();
 
     long start = System.currentTimeMillis();
     LOG.info("taskId:" + getTaskId() + " handling task begin, at: " + start);
 
     boolean isSucceed = true;
-    try {
-      for (MessageHandler handler : _handlers) {
-        if (handler != null) {
-          HelixTaskResult subTaskResult = handler.handleMessage();
-          // if any fails, return false
-          if (!subTaskResult.isSuccess()) {
-            // System.err.println("\t[dbg]error handling message: " + handler._message);
-            isSucceed = false;
-          }
+    for (int i = 0; i < _handlers.size(); i++) {
+      MessageHandler handler = _handlers.get(i);
+      if (handler == null) {
+        continue;
+      }
+
+      String partitionName = _subMsgs.get(i).getPartitionName();
+      boolean isSubTaskSucceed = false;
+      try {
+        HelixTaskResult subTaskResult = handler.handleMessage();
+        isSubTaskSucceed = subTaskResult.isSuccess();
+        if (!isSubTaskSucceed) {
+          taskResult.setMessage(subTaskResult.getMessage());
         }
+      } catch (InterruptedException e) {
+        LOG.error("Interrupted while executing task: " + getTaskId() + ", partition: "
+            + partitionName, e);
+        taskResult.setException(e);
+        taskResult.setInterrupted(true);
+        Thread.currentThread().interrupt();
+      } catch (Exception e) {
+        String errorMessage =
+            "Exception while executing task: " + getTaskId() + ", partition: " + partitionName;
+        LOG.error(errorMessage, e);
+        taskResult.setException(e);
+        taskResult.setMessage(e.getMessage());
       }
-    } catch (Exception e) {
-      String errorMessage = "Exception while executing task: " + getTaskId();
-      LOG.error(errorMessage, e);
 
-      taskResult = new HelixTaskResult();
-      taskResult.setException(e);
-      taskResult.setMessage(e.getMessage());
+      taskResult.getTaskResultMap().put(partitionName, Boolean.toString(isSubTaskSucceed));
+      // if any fails, return false
+      isSucceed &= isSubTaskSucceed;
 
-      return taskResult;
+      if (Thread.currentThread().isInterrupted()) {
+        // leave the remaining partitions unreported, they have not been started
+        isSucceed = false;
+        break;
+      }
     }
 
     if (isSucceed) {
       LOG.info("task: " + getTaskId() + " completed sucessfully");
     }
 
-    taskResult = new HelixTaskResult();
     taskResult.setSuccess(isSucceed);
     return taskResult;
   }
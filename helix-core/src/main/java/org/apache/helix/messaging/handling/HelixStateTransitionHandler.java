@@ -69,10 +69,17 @@ public class HelixStateTransitionHandler extends MessageHandler {
   public HelixStateTransitionHandler(StateModelFactory<? extends StateModel> stateModelFactory,
       StateModel stateModel, Message message, NotificationContext context,
       CurrentState currentStateDelta) {
+    this(stateModelFactory, stateModel, message, context, currentStateDelta,
+        new StateModelParser());
+  }
+
+  public HelixStateTransitionHandler(StateModelFactory<? extends StateModel> stateModelFactory,
+      StateModel stateModel, Message message, NotificationContext context,
+      CurrentState currentStateDelta, StateModelParser transitionMethodFinder) {
     super(message, context);
     _stateModel = stateModel;
     _statusUpdateUtil = new StatusUpdateUtil();
-    _transitionMethodFinder = new StateModelParser();
+    _transitionMethodFinder = transitionMethodFinder;
     _currentStateDelta = currentStateDelta;
     _manager = _notificationContext.getManager();
     _stateModelFactory = stateModelFactory;
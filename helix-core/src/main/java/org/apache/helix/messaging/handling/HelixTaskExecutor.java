@@ -34,6 +34,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.helix.BaseDataAccessor;
 import org.apache.helix.ConfigAccessor;
 import org.apache.helix.model.ConfigScope;
 import org.apache.helix.model.builder.ConfigScopeBuilder;
@@ -47,11 +48,13 @@ import org.apache.helix.NotificationContext.MapKey;
 import org.apache.helix.PropertyKey;
 import org.apache.helix.NotificationContext.Type;
 import org.apache.helix.PropertyKey.Builder;
+import org.apache.helix.ZNRecord;
 import org.apache.helix.model.CurrentState;
 import org.apache.helix.model.Message;
 import org.apache.helix.model.Message.MessageState;
 import org.apache.helix.model.Message.MessageType;
 import org.apache.helix.monitoring.ParticipantMonitor;
+import org.apache.helix.monitoring.mbeans.MessageHandlingMonitor;
 import org.apache.helix.participant.HelixStateMachineEngine;
 import org.apache.helix.util.StatusUpdateUtil;
 import org.apache.log4j.Logger;
@@ -68,6 +71,28 @@ public class HelixTaskExecutor implements MessageListener, TaskExecutor {
   private final ParticipantMonitor _monitor;
   public static final String MAX_THREADS = "maxThreads";
 
+  /**
+   * system property that switches state transitions to a FairMessageExecutor, which keeps
+   * transitions of a partition in order and shares the threads fairly between resources
+   */
+  public static final String FAIR_SCHEDULING = "helixmanager.taskExecutor.fairScheduling";
+  // cluster config: default concurrency cap of each resource under fair scheduling
+  public static final String PER_RESOURCE_MAX_THREADS = "perResourceMaxThreads";
+  // resource config: tasks a resource may start per turn under fair scheduling
+  public static final String SCHEDULING_WEIGHT = "schedulingWeight";
+
+  /**
+   * system property for the number of threads that run sub-messages of batch messages
+   */
+  public static final String BATCH_MESSAGE_THREADS =
+      "helixmanager.taskExecutor.batchMessageThreads";
+
+  private final boolean _fairScheduling;
+
+  // runs sub-messages of batch messages, so that a batch message never waits for
+  // threads of the pool it runs in
+  private ExecutorService _batchMessageExecutor = null;
+
   final ConcurrentHashMap<String, MessageHandlerFactory> _handlerFactoryMap =
       new ConcurrentHashMap<String, MessageHandlerFactory>();
 
@@ -85,6 +110,7 @@ public class HelixTaskExecutor implements MessageListener, TaskExecutor {
     _executorMap = new ConcurrentHashMap<String, ExecutorService>();
 
     _lock = new Object();
+    _fairScheduling = Boolean.getBoolean(FAIR_SCHEDULING);
     _statusUpdateUtil = new StatusUpdateUtil();
     _monitor = new ParticipantMonitor();
 
@@ -108,7 +134,12 @@ public class HelixTaskExecutor implements MessageListener, TaskExecutor {
 
       }
       _handlerFactoryMap.put(type, factory);
-      ExecutorService executorSvc = Executors.newFixedThreadPool(threadpoolSize);
+      ExecutorService executorSvc;
+      if (_fairScheduling && type.equals(MessageType.STATE_TRANSITION.toString())) {
+        executorSvc = new FairMessageExecutor(threadpoolSize);
+      } else {
+        executorSvc = Executors.newFixedThreadPool(threadpoolSize);
+      }
       _executorMap.put(type, executorSvc);
 
       LOG.info("Added msg-factory for type: " + type + ", threadpool size " + threadpoolSize);
@@ -130,21 +161,32 @@ public class HelixTaskExecutor implements MessageListener, TaskExecutor {
     if (!_resourceThreadpoolSizeMap.containsKey(resourceName)) {
       int threadpoolSize = -1;
       ConfigAccessor configAccessor = manager.getConfigAccessor();
+      ConfigScope scope = null;
       if (configAccessor != null) {
-        ConfigScope scope =
+        scope =
             new ConfigScopeBuilder().forCluster(manager.getClusterName()).forResource(resourceName)
                 .build();
+        threadpoolSize = getIntConfig(configAccessor, scope, MAX_THREADS, -1);
+      }
 
-        String threadpoolSizeStr = configAccessor.get(scope, MAX_THREADS);
-        try {
-          if (threadpoolSizeStr != null) {
-            threadpoolSize = Integer.parseInt(threadpoolSizeStr);
+      ExecutorService executorSvc = _executorMap.get(MessageType.STATE_TRANSITION.toString());
+      if (executorSvc instanceof FairMessageExecutor) {
+        // cap and weight the resource in the shared executor instead of giving it a pool
+        int weight = 1;
+        if (configAccessor != null) {
+          if (threadpoolSize <= 0) {
+            ConfigScope clusterScope =
+                new ConfigScopeBuilder().forCluster(manager.getClusterName()).build();
+            threadpoolSize =
+                getIntConfig(configAccessor, clusterScope, PER_RESOURCE_MAX_THREADS, -1);
           }
-        } catch (Exception e) {
-          LOG.error("", e);
+          weight = getIntConfig(configAccessor, scope, SCHEDULING_WEIGHT, 1);
         }
-      }
-      if (threadpoolSize > 0) {
+        ((FairMessageExecutor) executorSvc).setResourceConfig(resourceName, threadpoolSize,
+            weight);
+        LOG.info("Set fair scheduling config for resource: " + resourceName + ", maxThreads: "
+            + threadpoolSize + ", weight: " + weight);
+      } else if (threadpoolSize > 0) {
         String key = MessageType.STATE_TRANSITION.toString() + "." + resourceName;
         _executorMap.put(key, Executors.newFixedThreadPool(threadpoolSize));
         LOG.info("Added per resource threadpool for resource: " + resourceName + " with size: "
@@ -154,6 +196,19 @@ public class HelixTaskExecutor implements MessageListener, TaskExecutor {
     }
   }
 
+  private static int getIntConfig(ConfigAccessor configAccessor, ConfigScope scope, String key,
+      int defaultValue) {
+    String valueStr = configAccessor.get(scope, key);
+    try {
+      if (valueStr != null) {
+        return Integer.parseInt(valueStr);
+      }
+    } catch (Exception e) {
+      LOG.error("Invalid config " + key + ": " + valueStr, e);
+    }
+    return defaultValue;
+  }
+
   /**
    * Find the executor service for the message. A message can have a per-statemodelfactory
    * executor service, or per-message type executor service.
@@ -181,25 +236,26 @@ public class HelixTaskExecutor implements MessageListener, TaskExecutor {
       return null;
     }
 
-    // check all tasks use the same executor-service
-    ExecutorService exeSvc = findExecutorServiceForMsg(tasks.get(0).getMessage());
-    for (int i = 1; i < tasks.size(); i++) {
-      MessageTask task = tasks.get(i);
-      ExecutorService curExeSvc = findExecutorServiceForMsg(task.getMessage());
-      if (curExeSvc != exeSvc) {
-        LOG.error("Fail to invoke all tasks because they are not using the same executor-service");
-        return null;
-      }
-    }
-
     // TODO: check if any of the task has already been scheduled
 
     // this is a blocking call
-    List<Future<HelixTaskResult>> futures = exeSvc.invokeAll(tasks, timeout, unit);
+    List<Future<HelixTaskResult>> futures =
+        getBatchMessageExecutor().invokeAll(tasks, timeout, unit);
 
     return futures;
   }
 
+  private ExecutorService getBatchMessageExecutor() {
+    synchronized (_lock) {
+      if (_batchMessageExecutor == null) {
+        int threadpoolSize = Integer.getInteger(BATCH_MESSAGE_THREADS, DEFAULT_PARALLEL_TASKS);
+        _batchMessageExecutor = Executors.newFixedThreadPool(threadpoolSize);
+        LOG.info("Added batch message threadpool, size: " + threadpoolSize);
+      }
+      return _batchMessageExecutor;
+    }
+  }
+
   @Override
   public boolean cancelTimeoutTask(MessageTask task) {
     synchronized (_lock) {
@@ -382,6 +438,9 @@ public class HelixTaskExecutor implements MessageListener, TaskExecutor {
     // clear task-map, all tasks should be terminated by now
     _taskMap.clear();
 
+    // per resource executors are gone, re-read resource configs for the new ones
+    _resourceThreadpoolSizeMap.clear();
+
   }
 
   @Override
@@ -400,6 +459,8 @@ public class HelixTaskExecutor implements MessageListener, TaskExecutor {
       return;
     }
 
+    long startTime = System.currentTimeMillis();
+
     // sort message by creation timestamp, so message created earlier is processed first
     Collections.sort(messages, Message.CREATE_TIME_COMPARATOR);
 
@@ -413,20 +474,24 @@ public class HelixTaskExecutor implements MessageListener, TaskExecutor {
     // message read
     List<Message> readMsgs = new ArrayList<Message>();
 
+    // messages to remove without handling them
+    List<PropertyKey> discardMsgKeys = new ArrayList<PropertyKey>();
+
     String sessionId = manager.getSessionId();
-    List<String> curResourceNames =
-        accessor.getChildNames(keyBuilder.currentStates(instanceName, sessionId));
+    Set<String> curResourceNames =
+        new HashSet<String>(accessor.getChildNames(keyBuilder.currentStates(instanceName,
+            sessionId)));
     List<PropertyKey> createCurStateKeys = new ArrayList<PropertyKey>();
     List<CurrentState> metaCurStates = new ArrayList<CurrentState>();
-    Set<String> createCurStateNames = new HashSet<String>();
 
+    // classify all messages first, then touch zookeeper once per kind of update
     for (Message message : messages) {
       // nop messages are simply removed. It is used to trigger onMessage() in
       // situations such as register a new message handler factory
       if (message.getMsgType().equalsIgnoreCase(MessageType.NO_OP.toString())) {
         LOG.info("Dropping NO-OP message. mid: " + message.getId() + ", from: "
             + message.getMsgSrc());
-        accessor.removeProperty(message.getKey(keyBuilder, instanceName));
+        discardMsgKeys.add(message.getKey(keyBuilder, instanceName));
         continue;
       }
 
@@ -439,7 +504,7 @@ public class HelixTaskExecutor implements MessageListener, TaskExecutor {
                 + ", tgtSessionId in message: " + tgtSessionId + ", messageId: "
                 + message.getMsgId();
         LOG.warn(warningMessage);
-        accessor.removeProperty(message.getKey(keyBuilder, instanceName));
+        discardMsgKeys.add(message.getKey(keyBuilder, instanceName));
         _statusUpdateUtil.logWarning(message, HelixStateMachineEngine.class, warningMessage,
             accessor);
         continue;
@@ -472,7 +537,7 @@ public class HelixTaskExecutor implements MessageListener, TaskExecutor {
         _statusUpdateUtil.logError(message, HelixStateMachineEngine.class, e, error, accessor);
 
         message.setMsgState(MessageState.UNPROCESSABLE);
-        accessor.removeProperty(message.getKey(keyBuilder, instanceName));
+        discardMsgKeys.add(message.getKey(keyBuilder, instanceName));
         LOG.error("Message cannot be processed: " + message.getRecord(), e);
 
         continue;
@@ -492,8 +557,7 @@ public class HelixTaskExecutor implements MessageListener, TaskExecutor {
       if (!message.isControlerMsg()
           && message.getMsgType().equals(Message.MessageType.STATE_TRANSITION.toString())) {
         String resourceName = message.getResourceName();
-        if (!curResourceNames.contains(resourceName) && !createCurStateNames.contains(resourceName)) {
-          createCurStateNames.add(resourceName);
+        if (curResourceNames.add(resourceName)) {
           createCurStateKeys.add(keyBuilder.currentState(instanceName, sessionId, resourceName));
 
           CurrentState metaCurState = new CurrentState(resourceName);
@@ -512,6 +576,13 @@ public class HelixTaskExecutor implements MessageListener, TaskExecutor {
         }
       }
     }
+    long classifyEndTime = System.currentTimeMillis();
+
+    // batch remove discarded messages
+    if (discardMsgKeys.size() > 0) {
+      removeMessages(accessor, discardMsgKeys);
+    }
+    long discardEndTime = System.currentTimeMillis();
 
     // batch create curState meta
     if (createCurStateKeys.size() > 0) {
@@ -521,16 +592,56 @@ public class HelixTaskExecutor implements MessageListener, TaskExecutor {
         LOG.error("fail to create cur-state znodes for messages: " + readMsgs, e);
       }
     }
+    long createCurStateEndTime = System.currentTimeMillis();
 
     // update message state to READ in batch and schedule all read messages
+    long updateMsgStateEndTime = createCurStateEndTime;
     if (readMsgs.size() > 0) {
       updateMessageState(readMsgs, accessor, instanceName);
+      updateMsgStateEndTime = System.currentTimeMillis();
 
       for (MessageHandler handler : handlers) {
         HelixTask task = new HelixTask(handler._message, changeContext, handler, this);
         scheduleTask(task);
       }
     }
+    long endTime = System.currentTimeMillis();
+
+    MessageHandlingMonitor monitor = _monitor.getMessageHandlingMonitor(instanceName);
+    monitor.addMessages(messages.size(), readMsgs.size(), discardMsgKeys.size());
+    monitor.addOnMessage(endTime - startTime, classifyEndTime - startTime, discardEndTime
+        - classifyEndTime, createCurStateEndTime - discardEndTime, updateMsgStateEndTime
+        - createCurStateEndTime, endTime - updateMsgStateEndTime);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("onMessage handled " + messages.size() + " messages, read: " + readMsgs.size()
+          + ", discarded: " + discardMsgKeys.size() + ", took " + (endTime - startTime) + "ms");
+    }
+  }
+
+  /**
+   * Remove messages with one asynchronous multi-remove if the accessor supports it
+   */
+  private void removeMessages(HelixDataAccessor accessor, List<PropertyKey> msgKeys) {
+    BaseDataAccessor<ZNRecord> baseAccessor = accessor.getBaseDataAccessor();
+    if (baseAccessor == null) {
+      for (PropertyKey msgKey : msgKeys) {
+        accessor.removeProperty(msgKey);
+      }
+      return;
+    }
+
+    List<String> paths = new ArrayList<String>();
+    for (PropertyKey msgKey : msgKeys) {
+      paths.add(msgKey.getPath());
+    }
+    boolean[] success = baseAccessor.remove(paths, 0);
+    if (success != null) {
+      for (int i = 0; i < success.length; i++) {
+        if (!success[i]) {
+          LOG.warn("Fail to remove message: " + paths.get(i));
+        }
+      }
+    }
   }
 
   public MessageHandler createMessageHandler(Message message, NotificationContext changeContext) {
@@ -573,6 +684,10 @@ public class HelixTaskExecutor implements MessageListener, TaskExecutor {
           LOG.error("Interrupted", e);
         }
       }
+      if (_batchMessageExecutor != null) {
+        _batchMessageExecutor.shutdownNow();
+        _batchMessageExecutor = null;
+      }
     }
     _monitor.shutDown();
     LOG.info("shutdown finished");
@@ -19,6 +19,7 @@ package org.apache.helix.model;
  * under the License.
  */
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -139,6 +140,14 @@ public class ClusterConstraints extends HelixProperty {
     return _constraints.get(constraintId);
   }
 
+  /**
+   * get all constraint-items
+   * @return unmodifiable map of constraint identifier to {@link ConstraintItem}
+   */
+  public Map<String, ConstraintItem> getConstraintItems() {
+    return Collections.unmodifiableMap(_constraints);
+  }
+
   /**
    * return a set of constraints that match the attribute pairs
    * @param attributes (constraint scope, constraint string) pairs
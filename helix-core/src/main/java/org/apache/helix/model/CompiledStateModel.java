@@ -0,0 +1,285 @@
+package org.apache.helix.model;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.helix.HelixDefinedState;
+
+/**
+ * Immutable form of a state model definition that works on state ordinals. The states of the
+ * priority list get ordinals 0..n-1 in priority order, followed by the helix-defined states and
+ * any other state used by a transition. Next states, transition priorities and state upper bounds
+ * are kept in int arrays indexed by ordinals.
+ */
+public class CompiledStateModel {
+  /**
+   * ordinal of a state unknown to the state model
+   */
+  public static final int NONE = -1;
+
+  /**
+   * upper bound of a state that has no bound
+   */
+  public static final int UNBOUNDED = -1;
+
+  // encoded dynamic upper bounds
+  private static final int ALL_INSTANCES = -2;
+  private static final int REPLICAS = -3;
+
+  private final List<String> _states;
+  private final Map<String, Integer> _ordinals;
+  private final int _priorityStateCount;
+  private final int _initialState;
+
+  // from * stateCount + to -> next state ordinal, or NONE
+  private final int[] _nextStates;
+
+  // from * stateCount + to -> index in the transition priority list, or Integer.MAX_VALUE
+  private final int[] _transitionPriorities;
+
+  // state -> upper bound, UNBOUNDED, ALL_INSTANCES or REPLICAS
+  private final int[] _upperBounds;
+
+  /**
+   * Compile a state model from its parts
+   * @param statesPriorityList states in priority order
+   * @param initialState
+   * @param stateTransitionTable from-state -> to-state -> next state
+   * @param stateTransitionPriorityList transitions in the form FROM-TO, highest priority first.
+   *          may be null
+   * @param statesCountMap state -> upper bound, a number, "N" or "R". may be null
+   */
+  public CompiledStateModel(List<String> statesPriorityList, String initialState,
+      Map<String, Map<String, String>> stateTransitionTable,
+      List<String> stateTransitionPriorityList, Map<String, String> statesCountMap) {
+    List<String> states = new ArrayList<String>();
+    _ordinals = new HashMap<String, Integer>();
+    if (statesPriorityList != null) {
+      for (String state : statesPriorityList) {
+        addState(states, state);
+      }
+    }
+    _priorityStateCount = states.size();
+    for (HelixDefinedState state : HelixDefinedState.values()) {
+      addState(states, state.toString());
+    }
+    addState(states, initialState);
+    if (stateTransitionTable != null) {
+      for (String from : stateTransitionTable.keySet()) {
+        addState(states, from);
+        Map<String, String> nextStates = stateTransitionTable.get(from);
+        if (nextStates != null) {
+          for (Map.Entry<String, String> entry : nextStates.entrySet()) {
+            addState(states, entry.getKey());
+            addState(states, entry.getValue());
+          }
+        }
+      }
+    }
+    List<String[]> transitions = new ArrayList<String[]>();
+    if (stateTransitionPriorityList != null) {
+      for (String transition : stateTransitionPriorityList) {
+        String[] fromTo = splitTransition(transition);
+        if (fromTo != null) {
+          addState(states, fromTo[0]);
+          addState(states, fromTo[1]);
+        }
+        transitions.add(fromTo);
+      }
+    }
+    _states = Collections.unmodifiableList(states);
+
+    int stateCount = states.size();
+    _initialState = getOrdinal(initialState);
+
+    _nextStates = new int[stateCount * stateCount];
+    Arrays.fill(_nextStates, NONE);
+    if (stateTransitionTable != null) {
+      for (String from : stateTransitionTable.keySet()) {
+        Map<String, String> nextStates = stateTransitionTable.get(from);
+        if (nextStates != null) {
+          for (Map.Entry<String, String> entry : nextStates.entrySet()) {
+            if (entry.getValue() != null) {
+              _nextStates[index(getOrdinal(from), getOrdinal(entry.getKey()))] =
+                  getOrdinal(entry.getValue());
+            }
+          }
+        }
+      }
+    }
+
+    _transitionPriorities = new int[stateCount * stateCount];
+    Arrays.fill(_transitionPriorities, Integer.MAX_VALUE);
+    for (int i = 0; i < transitions.size(); i++) {
+      String[] fromTo = transitions.get(i);
+      if (fromTo != null) {
+        _transitionPriorities[index(getOrdinal(fromTo[0]), getOrdinal(fromTo[1]))] = i;
+      }
+    }
+
+    _upperBounds = new int[stateCount];
+    Arrays.fill(_upperBounds, UNBOUNDED);
+    for (int state = 0; state < _priorityStateCount; state++) {
+      String count = statesCountMap == null ? null : statesCountMap.get(_states.get(state));
+      if ("N".equals(count)) {
+        _upperBounds[state] = ALL_INSTANCES;
+      } else if ("R".equals(count)) {
+        _upperBounds[state] = REPLICAS;
+      } else {
+        try {
+          _upperBounds[state] = Math.max(UNBOUNDED, Integer.parseInt(count));
+        } catch (Exception e) {
+          // no bound
+        }
+      }
+    }
+  }
+
+  private void addState(List<String> states, String state) {
+    if (state != null && !_ordinals.containsKey(state)) {
+      _ordinals.put(state, states.size());
+      states.add(state);
+    }
+  }
+
+  /**
+   * split FROM-TO at the first '-' where both sides are known states, or at the first '-'
+   */
+  private String[] splitTransition(String transition) {
+    if (transition == null) {
+      return null;
+    }
+    int first = transition.indexOf('-');
+    for (int i = first; i >= 0; i = transition.indexOf('-', i + 1)) {
+      String from = transition.substring(0, i);
+      String to = transition.substring(i + 1);
+      if (_ordinals.containsKey(from) && _ordinals.containsKey(to)) {
+        return new String[] {
+            from, to
+        };
+      }
+    }
+    if (first < 0) {
+      return null;
+    }
+    return new String[] {
+        transition.substring(0, first), transition.substring(first + 1)
+    };
+  }
+
+  private int index(int from, int to) {
+    return from * _states.size() + to;
+  }
+
+  /**
+   * @return number of states, ordinals are 0..getStateCount()-1
+   */
+  public int getStateCount() {
+    return _states.size();
+  }
+
+  /**
+   * @return number of states in the priority list, which have ordinals 0..n-1
+   */
+  public int getPriorityStateCount() {
+    return _priorityStateCount;
+  }
+
+  /**
+   * @return states in ordinal order
+   */
+  public List<String> getStates() {
+    return _states;
+  }
+
+  /**
+   * @param state
+   * @return ordinal of the state, or {@link #NONE} if unknown
+   */
+  public int getOrdinal(String state) {
+    Integer ordinal = state == null ? null : _ordinals.get(state);
+    return ordinal == null ? NONE : ordinal;
+  }
+
+  /**
+   * @param ordinal
+   * @return state of the ordinal, or null for {@link #NONE}
+   */
+  public String getState(int ordinal) {
+    return ordinal == NONE ? null : _states.get(ordinal);
+  }
+
+  /**
+   * @return ordinal of the initial state
+   */
+  public int getInitialState() {
+    return _initialState;
+  }
+
+  /**
+   * @param from
+   * @param to
+   * @return ordinal of the intermediate state to reach to from from, or {@link #NONE}
+   */
+  public int getNextState(int from, int to) {
+    if (from == NONE || to == NONE) {
+      return NONE;
+    }
+    return _nextStates[index(from, to)];
+  }
+
+  /**
+   * @param from
+   * @param to
+   * @return priority of the transition, lower is higher priority, Integer.MAX_VALUE if the
+   *         transition is not in the priority list
+   */
+  public int getTransitionPriority(int from, int to) {
+    if (from == NONE || to == NONE) {
+      return Integer.MAX_VALUE;
+    }
+    return _transitionPriorities[index(from, to)];
+  }
+
+  /**
+   * @param state
+   * @param liveInstanceCount used for states bounded by "N"
+   * @param replicas used for states bounded by "R", {@link #UNBOUNDED} if unknown
+   * @return maximum number of replicas in the state, or {@link #UNBOUNDED}
+   */
+  public int getUpperBound(int state, int liveInstanceCount, int replicas) {
+    if (state == NONE) {
+      return UNBOUNDED;
+    }
+    int upperBound = _upperBounds[state];
+    if (upperBound == ALL_INSTANCES) {
+      return liveInstanceCount;
+    } else if (upperBound == REPLICAS) {
+      return Math.max(UNBOUNDED, replicas);
+    }
+    return upperBound;
+  }
+}
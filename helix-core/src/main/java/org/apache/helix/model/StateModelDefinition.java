@@ -74,6 +74,11 @@ public class StateModelDefinition extends HelixProperty {
    */
   private final Map<String, Map<String, String>> _stateTransitionTable;
 
+  /**
+   * the state model compiled to state ordinals, built once all transitions are added
+   */
+  private final CompiledStateModel _compiledStateModel;
+
   /**
    * Instantiate from a pre-populated record
    * @param record ZNRecord representing a state model definition
@@ -118,6 +123,10 @@ public class StateModelDefinition extends HelixProperty {
     addDefaultTransition(HelixDefinedState.ERROR.toString(), _initialState, _initialState);
     addDefaultTransition(_initialState, HelixDefinedState.DROPPED.toString(),
         HelixDefinedState.DROPPED.toString());
+
+    _compiledStateModel =
+        new CompiledStateModel(_statesPriorityList, _initialState, _stateTransitionTable,
+            _stateTransitionPriorityList, _statesCountMap);
   }
 
   /**
@@ -160,11 +169,16 @@ public class StateModelDefinition extends HelixProperty {
    * @return the intermediate state
    */
   public String getNextStateForTransition(String fromState, String toState) {
-    Map<String, String> map = _stateTransitionTable.get(fromState);
-    if (map != null) {
-      return map.get(toState);
-    }
-    return null;
+    return _compiledStateModel.getState(_compiledStateModel.getNextState(
+        _compiledStateModel.getOrdinal(fromState), _compiledStateModel.getOrdinal(toState)));
+  }
+
+  /**
+   * Get the state model compiled to state ordinals
+   * @return compiled state model
+   */
+  public CompiledStateModel getCompiledStateModel() {
+    return _compiledStateModel;
   }
 
   /**
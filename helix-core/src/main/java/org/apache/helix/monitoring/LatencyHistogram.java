@@ -0,0 +1,237 @@
+package org.apache.helix.monitoring;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-bucketed histogram of non-negative values. Every power of two is split into
+ * 16 linear sub-buckets, so a reported percentile is within 1/16 of the recorded value.
+ * Recording is lock-free and does not allocate; snapshots copy the buckets and can be
+ * taken either over everything recorded since the last reset or over the interval since
+ * the previous interval snapshot. Monitors report window snapshots, interval snapshots
+ * taken at most once per reporting window, so their attributes track recent latencies.
+ */
+public class LatencyHistogram {
+  public static final String WINDOW_MS = "helixmanager.latencyMonitor.windowMs";
+  public static final long DEFAULT_WINDOW_MS = 60 * 1000;
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray _counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong _sum = new AtomicLong(0);
+  private final AtomicLong _max = new AtomicLong(0);
+  private final AtomicLong _min = new AtomicLong(Long.MAX_VALUE);
+
+  // bucket counts at the previous interval snapshot, guarded by this
+  private long[] _intervalCounts = new long[BUCKET_COUNT];
+  private long _intervalSum = 0;
+
+  // interval snapshot of the last reporting window, guarded by this
+  private Snapshot _window = null;
+  private long _windowStartTime = 0;
+
+  /**
+   * @return length of the reporting window of latency monitors, from system property
+   */
+  public static long getDefaultWindowMs() {
+    return Long.getLong(WINDOW_MS, DEFAULT_WINDOW_MS);
+  }
+
+  /**
+   * Immutable view of the histogram
+   */
+  public static class Snapshot {
+    private final long[] _counts;
+    private final long _count;
+    private final long _sum;
+    private final long _max;
+    private final long _min;
+
+    Snapshot(long[] counts, long sum, long max, long min) {
+      _counts = counts;
+      long count = 0;
+      for (long c : counts) {
+        count += c;
+      }
+      _count = count;
+      _sum = sum;
+      _max = max;
+      _min = min;
+    }
+
+    public long getCount() {
+      return _count;
+    }
+
+    public long getSum() {
+      return _sum;
+    }
+
+    public double getMean() {
+      return _count == 0 ? 0 : (double) _sum / _count;
+    }
+
+    public long getMax() {
+      return _count == 0 ? 0 : _max;
+    }
+
+    public long getMin() {
+      return _count == 0 ? 0 : _min;
+    }
+
+    /**
+     * @param percentile between 0 and 100, e.g. 99.9
+     * @return upper bound of the bucket holding the percentile, capped at max
+     */
+    public long getPercentile(double percentile) {
+      if (_count == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(_count * Math.min(100.0, Math.max(0.0, percentile)) / 100);
+      rank = Math.max(1, rank);
+      long seen = 0;
+      for (int i = 0; i < _counts.length; i++) {
+        seen += _counts[i];
+        if (seen >= rank) {
+          return Math.min(bucketUpperBound(i), getMax());
+        }
+      }
+      return getMax();
+    }
+  }
+
+  /**
+   * Record a value, negative values are recorded as 0
+   */
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    _counts.incrementAndGet(bucketIndex(value));
+    _sum.addAndGet(value);
+
+    long max = _max.get();
+    while (value > max && !_max.compareAndSet(max, value)) {
+      max = _max.get();
+    }
+    long min = _min.get();
+    while (value < min && !_min.compareAndSet(min, value)) {
+      min = _min.get();
+    }
+  }
+
+  /**
+   * @return snapshot of everything recorded since creation or the last reset
+   */
+  public Snapshot getSnapshot() {
+    long[] counts = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts[i] = _counts.get(i);
+    }
+    return new Snapshot(counts, _sum.get(), _max.get(), _min.get());
+  }
+
+  /**
+   * @return snapshot of the values recorded since the previous interval snapshot; max and
+   *         min are the bounds of the buckets holding the largest and smallest values
+   */
+  public synchronized Snapshot getIntervalSnapshot() {
+    long[] counts = new long[BUCKET_COUNT];
+    long max = 0;
+    long min = Long.MAX_VALUE;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      long total = _counts.get(i);
+      counts[i] = Math.max(0, total - _intervalCounts[i]);
+      _intervalCounts[i] = total;
+      if (counts[i] > 0) {
+        max = bucketUpperBound(i);
+        min = Math.min(min, bucketLowerBound(i));
+      }
+    }
+    long sum = _sum.get();
+    long intervalSum = sum - _intervalSum;
+    _intervalSum = sum;
+    return new Snapshot(counts, intervalSum, Math.min(max, _max.get()), min);
+  }
+
+  /**
+   * Get the values recorded in the last reporting window. A new interval snapshot is taken
+   * if the previous one is older than the window, so interval snapshots must not be taken
+   * by other callers of the same histogram.
+   * @param windowMs length of the reporting window, 0 to take a new snapshot on every call
+   * @return snapshot of the last reporting window
+   */
+  public synchronized Snapshot getWindowSnapshot(long windowMs) {
+    long now = System.currentTimeMillis();
+    if (_window == null || now - _windowStartTime >= windowMs) {
+      _window = getIntervalSnapshot();
+      _windowStartTime = now;
+    }
+    return _window;
+  }
+
+  /**
+   * Clear all recorded values. Values recorded concurrently with a reset may be lost.
+   */
+  public synchronized void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      _counts.set(i, 0);
+      _intervalCounts[i] = 0;
+    }
+    _sum.set(0);
+    _intervalSum = 0;
+    _window = null;
+    _windowStartTime = 0;
+    _max.set(0);
+    _min.set(Long.MAX_VALUE);
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  static long bucketLowerBound(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+    long subBucket = index % SUB_BUCKET_COUNT;
+    return (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+  }
+
+  static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+    long upper = bucketLowerBound(index) + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    // the last bucket ends at Long.MAX_VALUE
+    return upper < 0 ? Long.MAX_VALUE : upper;
+  }
+}
@@ -27,6 +27,7 @@ import javax.management.MBeanServer;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 
+import org.apache.helix.monitoring.mbeans.MessageHandlingMonitor;
 import org.apache.helix.monitoring.mbeans.StateTransitionStatMonitor;
 import org.apache.log4j.Logger;
 
@@ -36,6 +37,8 @@ public class ParticipantMonitor {
   private static final Logger LOG = Logger.getLogger(ParticipantMonitor.class);
 
   private MBeanServer _beanServer;
+  private MessageHandlingMonitor _messageHandlingMonitor = null;
+  private ObjectName _messageHandlingMonitorName = null;
 
   public ParticipantMonitor() {
     try {
@@ -71,6 +74,25 @@ public class ParticipantMonitor {
     }
   }
 
+  /**
+   * Get the monitor of message handling on the instance, registering it on first use
+   * @param instanceName
+   * @return message handling monitor
+   */
+  public synchronized MessageHandlingMonitor getMessageHandlingMonitor(String instanceName) {
+    if (_messageHandlingMonitor == null) {
+      _messageHandlingMonitor = new MessageHandlingMonitor();
+      try {
+        _messageHandlingMonitorName =
+            getObjectName("Type=MessageHandling,Instance=" + ObjectName.quote(instanceName));
+        register(_messageHandlingMonitor, _messageHandlingMonitorName);
+      } catch (Exception e) {
+        LOG.warn("fail to register message handling monitor for " + instanceName, e);
+      }
+    }
+    return _messageHandlingMonitor;
+  }
+
   private ObjectName getObjectName(String name) throws MalformedObjectNameException {
     LOG.info("Registering bean: " + name);
     return new ObjectName("CLMParticipantReport:" + name);
@@ -107,5 +129,19 @@ public class ParticipantMonitor {
     }
     _monitorMap.clear();
 
+    synchronized (this) {
+      if (_messageHandlingMonitorName != null) {
+        try {
+          if (_beanServer.isRegistered(_messageHandlingMonitorName)) {
+            _beanServer.unregisterMBean(_messageHandlingMonitorName);
+          }
+        } catch (Exception e) {
+          LOG.warn("fail to unregister " + _messageHandlingMonitorName, e);
+        }
+      }
+      _messageHandlingMonitor = null;
+      _messageHandlingMonitorName = null;
+    }
+
   }
 }
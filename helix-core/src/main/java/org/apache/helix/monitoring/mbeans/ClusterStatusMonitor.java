@@ -50,6 +50,11 @@ public class ClusterStatusMonitor implements ClusterStatusMonitorMBean {
   private int _numOfDisabledInstances = 0;
   private int _numOfDisabledPartitions = 0;
 
+  private long _eventQueueSize = 0;
+  private long _totalEventCount = 0;
+  private long _coalescedEventCount = 0;
+  private long _leadershipAcquisitionLatency = 0;
+
   private final ConcurrentHashMap<String, ResourceMonitor> _resourceMbeanMap =
       new ConcurrentHashMap<String, ResourceMonitor>();
 
@@ -118,6 +123,34 @@ public class ClusterStatusMonitor implements ClusterStatusMonitorMBean {
     return msgQueueSizes.toString();
   }
 
+  @Override
+  public long getEventQueueSizeGauge() {
+    return _eventQueueSize;
+  }
+
+  @Override
+  public long getTotalEventCounter() {
+    return _totalEventCount;
+  }
+
+  @Override
+  public long getCoalescedEventCounter() {
+    return _coalescedEventCount;
+  }
+
+  @Override
+  public double getEventCoalesceRatioGauge() {
+    if (_totalEventCount == 0) {
+      return 0;
+    }
+    return (double) _coalescedEventCount / _totalEventCount;
+  }
+
+  @Override
+  public long getLeadershipAcquisitionLatencyGauge() {
+    return _leadershipAcquisitionLatency;
+  }
+
   private void register(Object bean, ObjectName name) {
     try {
       if (_beanServer.isRegistered(name)) {
@@ -154,6 +187,16 @@ public class ClusterStatusMonitor implements ClusterStatusMonitorMBean {
     _numOfDisabledPartitions = disabledPartitions;
   }
 
+  public void setEventQueueCounters(int queueSize, long totalEvents, long coalescedEvents) {
+    _eventQueueSize = queueSize;
+    _totalEventCount = totalEvents;
+    _coalescedEventCount = coalescedEvents;
+  }
+
+  public void setLeadershipAcquisitionLatency(long latency) {
+    _leadershipAcquisitionLatency = latency;
+  }
+
   public void onExternalViewChange(ExternalView externalView, IdealState idealState) {
     try {
       String resourceName = externalView.getId();
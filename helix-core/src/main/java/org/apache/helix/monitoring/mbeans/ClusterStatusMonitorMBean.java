@@ -43,4 +43,35 @@ public interface ClusterStatusMonitorMBean extends SensorNameProvider {
    * @return
    */
   public String getMessageQueueSizes();
+
+  /**
+   * Number of events waiting in the controller event queue
+   * @return
+   */
+  public long getEventQueueSizeGauge();
+
+  /**
+   * Total number of events put into the controller event queue
+   * @return
+   */
+  public long getTotalEventCounter();
+
+  /**
+   * Number of events merged into an already pending event of the same type
+   * @return
+   */
+  public long getCoalescedEventCounter();
+
+  /**
+   * Ratio of coalesced events to total events
+   * @return
+   */
+  public double getEventCoalesceRatioGauge();
+
+  /**
+   * Time in ms from the start of the last leadership acquisition of this controller to the end
+   * of its first pipeline run as leader
+   * @return
+   */
+  public long getLeadershipAcquisitionLatencyGauge();
 }
@@ -20,26 +20,51 @@ package org.apache.helix.monitoring.mbeans;
  */
 
 import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
-import org.apache.helix.monitoring.StatCollector;
+import org.apache.helix.monitoring.LatencyHistogram;
 import org.apache.log4j.Logger;
 
+/**
+ * Latencies of a controller pipeline stage. Latency attributes report the values recorded
+ * during the last reporting window, not since the monitor was created: on read, a new
+ * window snapshot is taken if the previous one is older than the window length.
+ */
 public class HelixStageLatencyMonitor implements HelixStageLatencyMonitorMBean {
   private static final Logger LOG = Logger.getLogger(HelixStageLatencyMonitor.class);
 
-  private final StatCollector _stgLatency;
+  public static final String WINDOW_MS = "helixcontroller.stageLatencyMonitor.windowMs";
+
+  private final LatencyHistogram _stgLatency;
+  private final LatencyHistogram _batchWriteLatency;
+  private final AtomicLong _writeCounter = new AtomicLong(0);
+  private final AtomicLong _failedWriteCounter = new AtomicLong(0);
   private final MBeanServer _beanServer;
   private final String _clusterName;
   private final String _stageName;
   private final ObjectName _objectName;
 
+  private final long _windowMs;
+
   public HelixStageLatencyMonitor(String clusterName, String stageName) throws Exception {
+    this(clusterName, stageName, Long.getLong(WINDOW_MS, LatencyHistogram.getDefaultWindowMs()));
+  }
+
+  /**
+   * @param clusterName
+   * @param stageName
+   * @param windowMs length of the window latency attributes are reported over
+   */
+  public HelixStageLatencyMonitor(String clusterName, String stageName, long windowMs)
+      throws Exception {
     _clusterName = clusterName;
     _stageName = stageName;
-    _stgLatency = new StatCollector();
+    _windowMs = windowMs;
+    _stgLatency = new LatencyHistogram();
+    _batchWriteLatency = new LatencyHistogram();
     _beanServer = ManagementFactory.getPlatformMBeanServer();
     _objectName =
         new ObjectName("StageLatencyMonitor: " + "cluster=" + _clusterName + ",stage=" + _stageName);
@@ -72,27 +97,111 @@ public class HelixStageLatencyMonitor implements HelixStageLatencyMonitorMBean {
   }
 
   public void addStgLatency(long time) {
-    _stgLatency.addData(time);
+    _stgLatency.record(time);
+  }
+
+  /**
+   * Record a batch of zookeeper writes done by the stage
+   * @param latency time taken by the whole batch
+   * @param writeCount number of writes in the batch
+   * @param failedCount number of writes that failed
+   */
+  public void addBatchWrite(long latency, int writeCount, int failedCount) {
+    _batchWriteLatency.record(latency);
+    _writeCounter.addAndGet(writeCount);
+    _failedWriteCounter.addAndGet(failedCount);
   }
 
   public void reset() {
     _stgLatency.reset();
+    _batchWriteLatency.reset();
+    _writeCounter.set(0);
+    _failedWriteCounter.set(0);
     unregister(_objectName);
   }
 
+  /**
+   * @return stage latencies recorded in the last reporting window
+   */
+  public LatencyHistogram.Snapshot getStgLatencyWindow() {
+    return _stgLatency.getWindowSnapshot(_windowMs);
+  }
+
+  /**
+   * @return batch write latencies recorded in the last reporting window
+   */
+  public LatencyHistogram.Snapshot getBatchWriteLatencyWindow() {
+    return _batchWriteLatency.getWindowSnapshot(_windowMs);
+  }
+
   @Override
   public long getMaxStgLatency() {
-    return (long) _stgLatency.getMax();
+    return getStgLatencyWindow().getMax();
   }
 
   @Override
   public long getMeanStgLatency() {
-    return (long) _stgLatency.getMean();
+    return (long) getStgLatencyWindow().getMean();
   }
 
   @Override
   public long get95StgLatency() {
-    return (long) _stgLatency.getPercentile(95);
+    return getStgLatencyWindow().getPercentile(95);
+  }
+
+  @Override
+  public long get50StgLatency() {
+    return getStgLatencyWindow().getPercentile(50);
+  }
+
+  @Override
+  public long get99StgLatency() {
+    return getStgLatencyWindow().getPercentile(99);
+  }
+
+  @Override
+  public long get999StgLatency() {
+    return getStgLatencyWindow().getPercentile(99.9);
+  }
+
+  @Override
+  public long getMaxBatchWriteLatency() {
+    return getBatchWriteLatencyWindow().getMax();
+  }
+
+  @Override
+  public long getMeanBatchWriteLatency() {
+    return (long) getBatchWriteLatencyWindow().getMean();
+  }
+
+  @Override
+  public long get95BatchWriteLatency() {
+    return getBatchWriteLatencyWindow().getPercentile(95);
+  }
+
+  @Override
+  public long get50BatchWriteLatency() {
+    return getBatchWriteLatencyWindow().getPercentile(50);
+  }
+
+  @Override
+  public long get99BatchWriteLatency() {
+    return getBatchWriteLatencyWindow().getPercentile(99);
+  }
+
+  @Override
+  public long get999BatchWriteLatency() {
+    return getBatchWriteLatencyWindow().getPercentile(99.9);
+  }
+
+  @Override
+  public long getTotalWriteCounter() {
+    return _writeCounter.get();
+  }
+
+  @Override
+  public long getFailedWriteCounter() {
+    return _failedWriteCounter.get();
   }
 
 }
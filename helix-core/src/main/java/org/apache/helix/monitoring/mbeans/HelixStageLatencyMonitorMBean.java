@@ -25,4 +25,26 @@ public interface HelixStageLatencyMonitorMBean {
   public long getMeanStgLatency();
 
   public long get95StgLatency();
+
+  public long get50StgLatency();
+
+  public long get99StgLatency();
+
+  public long get999StgLatency();
+
+  public long getMaxBatchWriteLatency();
+
+  public long getMeanBatchWriteLatency();
+
+  public long get95BatchWriteLatency();
+
+  public long get50BatchWriteLatency();
+
+  public long get99BatchWriteLatency();
+
+  public long get999BatchWriteLatency();
+
+  public long getTotalWriteCounter();
+
+  public long getFailedWriteCounter();
 }
@@ -0,0 +1,148 @@
+package org.apache.helix.monitoring.mbeans;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.helix.monitoring.LatencyHistogram;
+
+/**
+ * Latency of the steps a participant takes to handle a batch of messages in onMessage.
+ * Latency attributes report the values recorded during the last reporting window, see
+ * {@link LatencyHistogram#WINDOW_MS}.
+ */
+public class MessageHandlingMonitor implements MessageHandlingMonitorMBean {
+  private final LatencyHistogram _onMessageLatency = new LatencyHistogram();
+  private final LatencyHistogram _classifyLatency = new LatencyHistogram();
+  private final LatencyHistogram _discardLatency = new LatencyHistogram();
+  private final LatencyHistogram _createCurStateLatency = new LatencyHistogram();
+  private final LatencyHistogram _updateMsgStateLatency = new LatencyHistogram();
+  private final LatencyHistogram _scheduleLatency = new LatencyHistogram();
+  private final AtomicLong _totalMessageCounter = new AtomicLong(0);
+  private final AtomicLong _readMessageCounter = new AtomicLong(0);
+  private final AtomicLong _discardedMessageCounter = new AtomicLong(0);
+  private final long _windowMs;
+
+  public MessageHandlingMonitor() {
+    this(LatencyHistogram.getDefaultWindowMs());
+  }
+
+  /**
+   * @param windowMs length of the window latency attributes are reported over
+   */
+  public MessageHandlingMonitor(long windowMs) {
+    _windowMs = windowMs;
+  }
+
+  /**
+   * Record the latencies of one onMessage call, in milliseconds
+   */
+  public void addOnMessage(long total, long classify, long discard,
+      long createCurState, long updateMsgState, long schedule) {
+    _onMessageLatency.record(total);
+    _classifyLatency.record(classify);
+    _discardLatency.record(discard);
+    _createCurStateLatency.record(createCurState);
+    _updateMsgStateLatency.record(updateMsgState);
+    _scheduleLatency.record(schedule);
+  }
+
+  /**
+   * Record the messages seen in one onMessage call
+   * @param total messages passed to onMessage
+   * @param read messages read and scheduled
+   * @param discarded messages removed without being handled
+   */
+  public void addMessages(int total, int read, int discarded) {
+    _totalMessageCounter.addAndGet(total);
+    _readMessageCounter.addAndGet(read);
+    _discardedMessageCounter.addAndGet(discarded);
+  }
+
+  @Override
+  public long getMaxOnMessageLatency() {
+    return _onMessageLatency.getWindowSnapshot(_windowMs).getMax();
+  }
+
+  @Override
+  public long getMeanOnMessageLatency() {
+    return (long) _onMessageLatency.getWindowSnapshot(_windowMs).getMean();
+  }
+
+  @Override
+  public long get95OnMessageLatency() {
+    return _onMessageLatency.getWindowSnapshot(_windowMs).getPercentile(95);
+  }
+
+  @Override
+  public long get50OnMessageLatency() {
+    return _onMessageLatency.getWindowSnapshot(_windowMs).getPercentile(50);
+  }
+
+  @Override
+  public long get99OnMessageLatency() {
+    return _onMessageLatency.getWindowSnapshot(_windowMs).getPercentile(99);
+  }
+
+  @Override
+  public long get999OnMessageLatency() {
+    return _onMessageLatency.getWindowSnapshot(_windowMs).getPercentile(99.9);
+  }
+
+  @Override
+  public long getMeanClassifyLatency() {
+    return (long) _classifyLatency.getWindowSnapshot(_windowMs).getMean();
+  }
+
+  @Override
+  public long getMeanDiscardLatency() {
+    return (long) _discardLatency.getWindowSnapshot(_windowMs).getMean();
+  }
+
+  @Override
+  public long getMeanCreateCurStateLatency() {
+    return (long) _createCurStateLatency.getWindowSnapshot(_windowMs).getMean();
+  }
+
+  @Override
+  public long getMeanUpdateMsgStateLatency() {
+    return (long) _updateMsgStateLatency.getWindowSnapshot(_windowMs).getMean();
+  }
+
+  @Override
+  public long getMeanScheduleLatency() {
+    return (long) _scheduleLatency.getWindowSnapshot(_windowMs).getMean();
+  }
+
+  @Override
+  public long getTotalMessageCounter() {
+    return _totalMessageCounter.get();
+  }
+
+  @Override
+  public long getReadMessageCounter() {
+    return _readMessageCounter.get();
+  }
+
+  @Override
+  public long getDiscardedMessageCounter() {
+    return _discardedMessageCounter.get();
+  }
+}
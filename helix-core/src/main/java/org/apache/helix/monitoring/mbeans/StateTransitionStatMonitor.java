@@ -21,32 +21,47 @@ package org.apache.helix.monitoring.mbeans;
 
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
-import org.apache.helix.monitoring.StatCollector;
+import org.apache.helix.monitoring.LatencyHistogram;
 import org.apache.helix.monitoring.StateTransitionContext;
 import org.apache.helix.monitoring.StateTransitionDataPoint;
 
+/**
+ * Counts and latencies of one state transition. Latency attributes report the values
+ * recorded during the last reporting window, see {@link LatencyHistogram#WINDOW_MS}.
+ */
 public class StateTransitionStatMonitor implements StateTransitionStatMonitorMBean {
   public enum LATENCY_TYPE {
     TOTAL,
     EXECUTION
   };
 
-  private static final int DEFAULT_WINDOW_SIZE = 4000;
-  private long _numDataPoints;
-  private long _successCount;
+  private final AtomicLong _numDataPoints = new AtomicLong(0);
+  private final AtomicLong _successCount = new AtomicLong(0);
   private TimeUnit _unit;
+  private final long _windowMs;
 
-  private ConcurrentHashMap<LATENCY_TYPE, StatCollector> _monitorMap =
-      new ConcurrentHashMap<LATENCY_TYPE, StatCollector>();
+  private ConcurrentHashMap<LATENCY_TYPE, LatencyHistogram> _monitorMap =
+      new ConcurrentHashMap<LATENCY_TYPE, LatencyHistogram>();
 
   StateTransitionContext _context;
 
   public StateTransitionStatMonitor(StateTransitionContext context, TimeUnit unit) {
+    this(context, unit, LatencyHistogram.getDefaultWindowMs());
+  }
+
+  /**
+   * @param context
+   * @param unit
+   * @param windowMs length of the window latency attributes are reported over
+   */
+  public StateTransitionStatMonitor(StateTransitionContext context, TimeUnit unit,
+      long windowMs) {
     _context = context;
-    _monitorMap.put(LATENCY_TYPE.TOTAL, new StatCollector());
-    _monitorMap.put(LATENCY_TYPE.EXECUTION, new StatCollector());
+    _windowMs = windowMs;
+    _monitorMap.put(LATENCY_TYPE.TOTAL, new LatencyHistogram());
+    _monitorMap.put(LATENCY_TYPE.EXECUTION, new LatencyHistogram());
     reset();
   }
 
@@ -60,84 +75,118 @@ public class StateTransitionStatMonitor implements StateTransitionStatMonitorMBe
   }
 
   public void addDataPoint(StateTransitionDataPoint data) {
-    _numDataPoints++;
+    _numDataPoints.incrementAndGet();
     if (data.getSuccess()) {
-      _successCount++;
+      _successCount.incrementAndGet();
     }
     // should we count only the transition time for successful transitions?
     addLatency(LATENCY_TYPE.TOTAL, data.getTotalDelay());
     addLatency(LATENCY_TYPE.EXECUTION, data.getExecutionDelay());
   }
 
-  void addLatency(LATENCY_TYPE type, double latency) {
+  void addLatency(LATENCY_TYPE type, long latency) {
     assert (_monitorMap.containsKey(type));
-    _monitorMap.get(type).addData(latency);
+    _monitorMap.get(type).record(latency);
   }
 
   public long getNumDataPoints() {
-    return _numDataPoints;
+    return _numDataPoints.get();
   }
 
   public void reset() {
-    _numDataPoints = 0;
-    _successCount = 0;
-    for (StatCollector monitor : _monitorMap.values()) {
+    _numDataPoints.set(0);
+    _successCount.set(0);
+    for (LatencyHistogram monitor : _monitorMap.values()) {
       monitor.reset();
     }
   }
 
+  private LatencyHistogram.Snapshot getSnapshot(LATENCY_TYPE type) {
+    return _monitorMap.get(type).getWindowSnapshot(_windowMs);
+  }
+
   @Override
   public long getTotalStateTransitionGauge() {
-    return _numDataPoints;
+    return _numDataPoints.get();
   }
 
   @Override
   public long getTotalFailedTransitionGauge() {
-    return _numDataPoints - _successCount;
+    return _numDataPoints.get() - _successCount.get();
   }
 
   @Override
   public long getTotalSuccessTransitionGauge() {
-    return _successCount;
+    return _successCount.get();
   }
 
   @Override
   public double getMeanTransitionLatency() {
-    return _monitorMap.get(LATENCY_TYPE.TOTAL).getMean();
+    return getSnapshot(LATENCY_TYPE.TOTAL).getMean();
   }
 
   @Override
   public double getMaxTransitionLatency() {
-    return _monitorMap.get(LATENCY_TYPE.TOTAL).getMax();
+    return getSnapshot(LATENCY_TYPE.TOTAL).getMax();
   }
 
   @Override
   public double getMinTransitionLatency() {
-    return _monitorMap.get(LATENCY_TYPE.TOTAL).getMin();
+    return getSnapshot(LATENCY_TYPE.TOTAL).getMin();
   }
 
   @Override
   public double getPercentileTransitionLatency(int percentage) {
-    return _monitorMap.get(LATENCY_TYPE.TOTAL).getPercentile(percentage);
+    return getSnapshot(LATENCY_TYPE.TOTAL).getPercentile(percentage);
+  }
+
+  @Override
+  public long get50TransitionLatency() {
+    return getSnapshot(LATENCY_TYPE.TOTAL).getPercentile(50);
+  }
+
+  @Override
+  public long get99TransitionLatency() {
+    return getSnapshot(LATENCY_TYPE.TOTAL).getPercentile(99);
+  }
+
+  @Override
+  public long get999TransitionLatency() {
+    return getSnapshot(LATENCY_TYPE.TOTAL).getPercentile(99.9);
   }
 
   @Override
   public double getMeanTransitionExecuteLatency() {
-    return _monitorMap.get(LATENCY_TYPE.EXECUTION).getMean();
+    return getSnapshot(LATENCY_TYPE.EXECUTION).getMean();
   }
 
   @Override
   public double getMaxTransitionExecuteLatency() {
-    return _monitorMap.get(LATENCY_TYPE.EXECUTION).getMax();
+    return getSnapshot(LATENCY_TYPE.EXECUTION).getMax();
   }
 
   @Override
   public double getMinTransitionExecuteLatency() {
-    return _monitorMap.get(LATENCY_TYPE.EXECUTION).getMin();
+    return getSnapshot(LATENCY_TYPE.EXECUTION).getMin();
   }
 
   @Override
   public double getPercentileTransitionExecuteLatency(int percentage) {
-    return _monitorMap.get(LATENCY_TYPE.EXECUTION).getPercentile(percentage);
+    return getSnapshot(LATENCY_TYPE.EXECUTION).getPercentile(percentage);
+  }
+
+  @Override
+  public long get50TransitionExecuteLatency() {
+    return getSnapshot(LATENCY_TYPE.EXECUTION).getPercentile(50);
+  }
+
+  @Override
+  public long get99TransitionExecuteLatency() {
+    return getSnapshot(LATENCY_TYPE.EXECUTION).getPercentile(99);
+  }
+
+  @Override
+  public long get999TransitionExecuteLatency() {
+    return getSnapshot(LATENCY_TYPE.EXECUTION).getPercentile(99.9);
   }
 }
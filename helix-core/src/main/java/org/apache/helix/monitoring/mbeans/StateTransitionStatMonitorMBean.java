@@ -34,6 +34,12 @@ public interface StateTransitionStatMonitorMBean {
 
   double getPercentileTransitionLatency(int percentage);
 
+  long get50TransitionLatency();
+
+  long get99TransitionLatency();
+
+  long get999TransitionLatency();
+
   double getMeanTransitionExecuteLatency();
 
   double getMaxTransitionExecuteLatency();
@@ -42,5 +48,11 @@ public interface StateTransitionStatMonitorMBean {
 
   double getPercentileTransitionExecuteLatency(int percentage);
 
+  long get50TransitionExecuteLatency();
+
+  long get99TransitionExecuteLatency();
+
+  long get999TransitionExecuteLatency();
+
   void reset();
 }
@@ -99,7 +99,11 @@ public class DistClusterControllerElection implements ControllerChangeListener {
 
         if (_leader != null) {
           _leader.disconnect();
+          _leader = null;
         }
+
+        // stop the event thread of the controller, it is restarted by the next event
+        _controller.shutdown();
       }
 
     } catch (Exception e) {
@@ -98,4 +98,9 @@ public class GenericLeaderStandbyModel extends StateModel {
   public void onBecomeOfflineFromStandby(Message message, NotificationContext context) {
     LOG.info("Become OFFLINE from STANDBY");
   }
+
+  @Transition(to = "DROPPED", from = "OFFLINE")
+  public void onBecomeDroppedFromOffline(Message message, NotificationContext context) {
+    LOG.info("Become DROPPED from OFFLINE");
+  }
 }
@@ -19,6 +19,7 @@ package org.apache.helix.participant;
  * under the License.
  */
 
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -104,11 +105,58 @@ public class HelixStateMachineEngine implements StateMachineEngine {
       return false;
     }
 
+    validateStateModelFactory(stateModelName, factory);
     _stateModelFactoryMap.get(stateModelName).put(factoryName, factory);
     sendNopMessage();
     return true;
   }
 
+  /**
+   * Resolve the transition methods of the factory's state model up front and fail the
+   * registration if it has no handler for a transition of the state model definition.
+   * Skipped if not connected; transitions without a handler are then reported when the
+   * first state model is created.
+   */
+  private void validateStateModelFactory(String stateModelName,
+      StateModelFactory<? extends StateModel> factory) {
+    Class<? extends StateModel> stateModelClass = StateModelParser.getStateModelClass(factory);
+    if (stateModelClass == null || !_manager.isConnected()) {
+      return;
+    }
+
+    StateModelDefinition stateModelDef = null;
+    try {
+      stateModelDef = getStateModelDef(stateModelName);
+    } catch (Exception e) {
+      logger.warn("Fail to read state model definition " + stateModelName
+          + ", skip validating state model factory " + factory, e);
+    }
+    if (stateModelDef == null) {
+      return;
+    }
+
+    List<String> missingTransitions =
+        _stateModelParser.validateTransitions(stateModelClass, stateModelDef);
+    if (!missingTransitions.isEmpty()) {
+      throw new HelixException("State model " + stateModelClass.getName()
+          + " has no handler for transitions " + missingTransitions + " of state model "
+          + stateModelName);
+    }
+  }
+
+  private StateModelDefinition getStateModelDef(String stateModelName) {
+    StateModelDefinition stateModelDef = _stateModelDefs.get(stateModelName);
+    if (stateModelDef == null) {
+      HelixDataAccessor accessor = _manager.getHelixDataAccessor();
+      Builder keyBuilder = accessor.keyBuilder();
+      stateModelDef = accessor.getProperty(keyBuilder.stateModelDef(stateModelName));
+      if (stateModelDef != null) {
+        _stateModelDefs.put(stateModelName, stateModelDef);
+      }
+    }
+    return stateModelDef;
+  }
+
   // TODO: duplicated code in DefaultMessagingService
   private void sendNopMessage() {
     if (_manager.isConnected()) {
@@ -191,25 +239,20 @@ public class HelixStateMachineEngine implements StateMachineEngine {
     }
 
     // check if the state model definition exists and cache it
-    if (!_stateModelDefs.containsKey(stateModelName)) {
-      HelixDataAccessor accessor = _manager.getHelixDataAccessor();
-      Builder keyBuilder = accessor.keyBuilder();
-      StateModelDefinition stateModelDef =
-          accessor.getProperty(keyBuilder.stateModelDef(stateModelName));
-      if (stateModelDef == null) {
-        throw new HelixException("fail to create msg-handler because stateModelDef for "
-            + stateModelName + " does NOT exist");
-      }
-      _stateModelDefs.put(stateModelName, stateModelDef);
+    StateModelDefinition stateModelDef = getStateModelDef(stateModelName);
+    if (stateModelDef == null) {
+      throw new HelixException("fail to create msg-handler because stateModelDef for "
+          + stateModelName + " does NOT exist");
     }
 
     if (message.getBatchMessageMode() == false) {
       // create currentStateDelta for this partition
-      String initState = _stateModelDefs.get(message.getStateModelDef()).getInitialState();
+      String initState = stateModelDef.getInitialState();
       StateModel stateModel = stateModelFactory.getStateModel(partitionKey);
       if (stateModel == null) {
         stateModel = stateModelFactory.createAndAddStateModel(partitionKey);
         stateModel.updateState(initState);
+        _stateModelParser.validateTransitions(stateModel.getClass(), stateModelDef);
       }
 
       // TODO: move currentStateDelta to StateTransitionMsgHandler
@@ -223,7 +266,7 @@ public class HelixStateMachineEngine implements StateMachineEngine {
           : stateModel.getCurrentState());
 
       return new HelixStateTransitionHandler(stateModelFactory, stateModel, message, context,
-          currentStateDelta);
+          currentStateDelta, _stateModelParser);
     } else {
       BatchMessageWrapper wrapper = stateModelFactory.getBatchMessageWrapper(resourceName);
       if (wrapper == null) {
@@ -20,18 +20,91 @@ package org.apache.helix.participant.statemachine;
  */
 
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.helix.NotificationContext;
 import org.apache.helix.model.Message;
+import org.apache.helix.model.StateModelDefinition;
+import org.apache.log4j.Logger;
 
 /**
  * Finds the method in stateModel to generate
  */
 public class StateModelParser {
+  private static Logger LOG = Logger.getLogger(StateModelParser.class);
 
+  private static final Class<?>[] TRANSITION_PARAM_TYPES = new Class<?>[] {
+      Message.class, NotificationContext.class
+  };
+
+  /**
+   * resolved transition method, method is null if the state model has no handler
+   */
+  static class TransitionMethod {
+    final Method _method;
+
+    TransitionMethod(Method method) {
+      _method = method;
+    }
+  }
+
+  // state model class -> "from-to" -> method, owned by this parser so the cached classes can be
+  // unloaded once the parser is gone
+  private final ConcurrentMap<Class<?>, ConcurrentMap<String, TransitionMethod>> _transitionTables =
+      new ConcurrentHashMap<Class<?>, ConcurrentMap<String, TransitionMethod>>();
+
+  // "class|state model definition" -> transitions without a handler
+  private final ConcurrentMap<String, List<String>> _missingTransitions =
+      new ConcurrentHashMap<String, List<String>>();
+
+  /**
+   * Find the method handling a transition. Methods taking (Message, NotificationContext)
+   * are resolved once per state model class and transition and then served from a cache.
+   */
   public Method getMethodForTransition(Class<? extends StateModel> clazz, String fromState,
       String toState, Class<?>[] paramTypes) {
+    if (!Arrays.equals(paramTypes, TRANSITION_PARAM_TYPES)) {
+      return resolveMethodForTransition(clazz, fromState, toState, paramTypes);
+    }
+
+    ConcurrentMap<String, TransitionMethod> table = _transitionTables.get(clazz);
+    if (table == null) {
+      table = new ConcurrentHashMap<String, TransitionMethod>();
+      ConcurrentMap<String, TransitionMethod> existing =
+          _transitionTables.putIfAbsent(clazz, table);
+      if (existing != null) {
+        table = existing;
+      }
+    }
+
+    String key = fromState + "-" + toState;
+    TransitionMethod transitionMethod = table.get(key);
+    if (transitionMethod == null) {
+      Method method = resolveMethodForTransition(clazz, fromState, toState, paramTypes);
+      if (method != null) {
+        try {
+          // skip the access check on every invocation
+          method.setAccessible(true);
+        } catch (SecurityException e) {
+          LOG.warn("Fail to make " + method + " accessible", e);
+        }
+      }
+      transitionMethod = new TransitionMethod(method);
+      table.putIfAbsent(key, transitionMethod);
+    }
+    return transitionMethod._method;
+  }
+
+  private Method resolveMethodForTransition(Class<? extends StateModel> clazz, String fromState,
+      String toState, Class<?>[] paramTypes) {
     Method method = getMethodForTransitionUsingAnnotation(clazz, fromState, toState, paramTypes);
     if (method == null) {
       method = getMethodForTransitionByConvention(clazz, fromState, toState, paramTypes);
@@ -39,6 +112,71 @@ public class StateModelParser {
     return method;
   }
 
+  /**
+   * Resolve the methods of all transitions of a state model definition, so that later
+   * lookups hit the cache, and report transitions the state model cannot handle. The
+   * result is computed once per state model class and state model definition.
+   * @param clazz
+   * @param stateModelDef
+   * @return transitions in the form FROM-TO without a handler method
+   */
+  public List<String> validateTransitions(Class<? extends StateModel> clazz,
+      StateModelDefinition stateModelDef) {
+    String validatedKey = clazz.getName() + "|" + stateModelDef.getId();
+    List<String> missingTransitions = _missingTransitions.get(validatedKey);
+    if (missingTransitions != null) {
+      return missingTransitions;
+    }
+
+    missingTransitions = new ArrayList<String>();
+    List<String> transitions = stateModelDef.getStateTransitionPriorityList();
+    if (transitions != null) {
+      for (String transition : transitions) {
+        String[] states = transition.split("-");
+        if (states.length != 2) {
+          continue;
+        }
+        if (getMethodForTransition(clazz, states[0], states[1], TRANSITION_PARAM_TYPES) == null) {
+          missingTransitions.add(transition);
+        }
+      }
+    }
+
+    missingTransitions = Collections.unmodifiableList(missingTransitions);
+    if (_missingTransitions.putIfAbsent(validatedKey, missingTransitions) == null
+        && !missingTransitions.isEmpty()) {
+      LOG.error("State model " + clazz.getName() + " has no handler for transitions "
+          + missingTransitions + " of state model definition " + stateModelDef.getId());
+    }
+    return missingTransitions;
+  }
+
+  /**
+   * Get the state model class a factory creates, if the factory class binds the type
+   * parameter of StateModelFactory to a concrete class
+   * @param factory
+   * @return state model class, or null if it cannot be determined
+   */
+  @SuppressWarnings("unchecked")
+  public static Class<? extends StateModel> getStateModelClass(
+      StateModelFactory<? extends StateModel> factory) {
+    Class<?> factoryClass = factory.getClass();
+    while (factoryClass != null && factoryClass != Object.class) {
+      Type type = factoryClass.getGenericSuperclass();
+      if (type instanceof ParameterizedType
+          && ((ParameterizedType) type).getRawType() == StateModelFactory.class) {
+        Type arg = ((ParameterizedType) type).getActualTypeArguments()[0];
+        if (arg instanceof Class && StateModel.class.isAssignableFrom((Class<?>) arg)
+            && !Modifier.isAbstract(((Class<?>) arg).getModifiers())) {
+          return (Class<? extends StateModel>) arg;
+        }
+        return null;
+      }
+      factoryClass = factoryClass.getSuperclass();
+    }
+    return null;
+  }
+
   /**
    * This class uses the method naming convention "onBecome" + toState + "From"
    * + fromState;
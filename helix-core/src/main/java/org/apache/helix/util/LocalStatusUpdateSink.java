@@ -0,0 +1,112 @@
+package org.apache.helix.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.helix.HelixDataAccessor;
+import org.apache.helix.HelixProperty;
+import org.apache.helix.PropertyKey;
+import org.apache.helix.PropertyType;
+import org.apache.log4j.Logger;
+
+/**
+ * Status update sink that keeps participant status updates and errors in a local
+ * StatusUpdateLog instead of zookeeper, one log per cluster and instance under the base
+ * directory. Controller status updates and errors are still written to the delegate sink
+ * since the controller and tools read them back from zookeeper, and so are the records of
+ * an instance whose log can not be opened, e.g. because another process owns it.
+ */
+public class LocalStatusUpdateSink implements StatusUpdateSink {
+  private static final Logger LOG = Logger.getLogger(LocalStatusUpdateSink.class);
+
+  private final File _baseDir;
+  private final StatusUpdateSink _delegate;
+
+  // log of each instance directory, null if the log could not be opened
+  private final Map<File, StatusUpdateLog> _logs = new HashMap<File, StatusUpdateLog>();
+
+  public LocalStatusUpdateSink(File baseDir, StatusUpdateSink delegate) {
+    _baseDir = baseDir;
+    _delegate = delegate;
+  }
+
+  @Override
+  public void write(HelixDataAccessor accessor, PropertyKey key, HelixProperty value,
+      boolean overwrite, boolean critical) {
+    PropertyType type = key.getType();
+    if (type != PropertyType.STATUSUPDATES && type != PropertyType.ERRORS) {
+      _delegate.write(accessor, key, value, overwrite, critical);
+      return;
+    }
+
+    // participant status update and error keys start with cluster and instance names
+    String[] params = key.getParams();
+    StatusUpdateLog log = getLog(params[0], params[1]);
+    if (log == null) {
+      _delegate.write(accessor, key, value, overwrite, critical);
+      return;
+    }
+
+    boolean written = false;
+    try {
+      written = log.append(key.getPath(), value.getRecord(), overwrite);
+    } catch (Exception e) {
+      LOG.error("Fail to write status update to local log: " + key.getPath(), e);
+    }
+    if (!written && critical) {
+      _delegate.write(accessor, key, value, overwrite, critical);
+    }
+  }
+
+  @Override
+  public void flush() {
+    synchronized (_logs) {
+      for (StatusUpdateLog log : _logs.values()) {
+        if (log != null) {
+          log.force();
+        }
+      }
+    }
+    _delegate.flush();
+  }
+
+  /**
+   * @return log of the instance, opened on first use, or null if it can not be opened
+   */
+  public StatusUpdateLog getLog(String clusterName, String instanceName) {
+    File dir = StatusUpdateLog.getInstanceDir(_baseDir, clusterName, instanceName);
+    synchronized (_logs) {
+      if (!_logs.containsKey(dir)) {
+        StatusUpdateLog log = null;
+        try {
+          log = new StatusUpdateLog(dir);
+        } catch (Exception e) {
+          LOG.error("Fail to open status update log: " + dir
+              + ", write status updates of " + instanceName + " to zookeeper", e);
+        }
+        _logs.put(dir, log);
+      }
+      return _logs.get(dir);
+    }
+  }
+}
@@ -0,0 +1,303 @@
+package org.apache.helix.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.helix.HelixDataAccessor;
+import org.apache.helix.HelixProperty;
+import org.apache.helix.PropertyKey;
+import org.apache.helix.ZNRecord;
+import org.apache.log4j.Logger;
+
+/**
+ * Bounded in-memory journal of status update and error records. Callers append records
+ * without blocking; a background flusher drains the journal and merges all pending
+ * records of the same znode into a single write. When the journal is full, callers appending
+ * error records flush the journal themselves and other records are dropped and counted.
+ */
+public class StatusUpdateJournal {
+  private static final Logger LOG = Logger.getLogger(StatusUpdateJournal.class);
+
+  public static final String ENABLED = "helixmanager.statusUpdateJournal.enabled";
+  public static final String CAPACITY = "helixmanager.statusUpdateJournal.capacity";
+  public static final String MAX_BATCH_SIZE = "helixmanager.statusUpdateJournal.maxBatchSize";
+  public static final int DEFAULT_CAPACITY = 10000;
+  public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+  // log a warning once for every so many dropped records
+  private static final int DROP_WARN_INTERVAL = 1000;
+  private static final long POLL_INTERVAL_MS = 1000;
+
+  static class Entry {
+    final HelixDataAccessor _accessor;
+    final PropertyKey _key;
+    final HelixProperty _value;
+    final boolean _overwrite;
+
+    Entry(HelixDataAccessor accessor, PropertyKey key, HelixProperty value, boolean overwrite) {
+      _accessor = accessor;
+      _key = key;
+      _value = value;
+      _overwrite = overwrite;
+    }
+  }
+
+  /**
+   * all records of one znode collected in a flush
+   */
+  static class PendingWrite {
+    final HelixDataAccessor _accessor;
+    final PropertyKey _key;
+    ZNRecord _record;
+    boolean _overwrite;
+    int _recordCount;
+
+    PendingWrite(Entry entry) {
+      _accessor = entry._accessor;
+      _key = entry._key;
+      add(entry);
+    }
+
+    void add(Entry entry) {
+      _recordCount++;
+      // copy the record since callers may share it between status update and error
+      if (entry._overwrite || _record == null) {
+        _record = new ZNRecord(entry._value.getRecord());
+        _overwrite |= entry._overwrite;
+      } else {
+        _record.merge(entry._value.getRecord());
+      }
+    }
+  }
+
+  private final BlockingQueue<Entry> _queue;
+  private final int _maxBatchSize;
+  private final Object _flushLock = new Object();
+  // wakes up the flusher when records are appended
+  private final Object _signal = new Object();
+  private Thread _flusher = null;
+
+  private final AtomicLong _appendedCount = new AtomicLong(0);
+  private final AtomicLong _droppedCount = new AtomicLong(0);
+  private final AtomicLong _writeCount = new AtomicLong(0);
+  private final AtomicLong _failedWriteCount = new AtomicLong(0);
+
+  public StatusUpdateJournal() {
+    this(Integer.getInteger(CAPACITY, DEFAULT_CAPACITY), Integer.getInteger(MAX_BATCH_SIZE,
+        DEFAULT_MAX_BATCH_SIZE));
+  }
+
+  public StatusUpdateJournal(int capacity, int maxBatchSize) {
+    _queue = new ArrayBlockingQueue<Entry>(capacity);
+    _maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * @return true unless the journal is disabled by system property
+   */
+  public static boolean isEnabled() {
+    return Boolean.parseBoolean(System.getProperty(ENABLED, "true"));
+  }
+
+  /**
+   * Add a record to the journal
+   * @param accessor
+   *          accessor used to write the record
+   * @param key
+   *          property key of the status update or error znode
+   * @param value
+   *          record to merge into the znode
+   * @param overwrite
+   *          true to replace the znode instead of merging into it
+   * @param critical
+   *          true if the record must be written even when the journal is full
+   */
+  public void append(HelixDataAccessor accessor, PropertyKey key, HelixProperty value,
+      boolean overwrite, boolean critical) {
+    Entry entry = new Entry(accessor, key, value, overwrite);
+    _appendedCount.incrementAndGet();
+    ensureFlusherStarted();
+
+    if (_queue.offer(entry)) {
+      synchronized (_signal) {
+        _signal.notify();
+      }
+      return;
+    }
+
+    if (critical) {
+      // write out the queued records first so records of the same znode stay in order
+      synchronized (_flushLock) {
+        while (!_queue.offer(entry)) {
+          if (flushBatch() == 0) {
+            write(new PendingWrite(entry));
+            return;
+          }
+        }
+      }
+    } else {
+      long dropped = _droppedCount.incrementAndGet();
+      if (dropped % DROP_WARN_INTERVAL == 1) {
+        LOG.warn("Status update journal is full, dropped " + dropped + " records so far, last: "
+            + key.getPath());
+      }
+    }
+  }
+
+  /**
+   * Write all pending records, waiting for any flush in progress
+   */
+  public void flush() {
+    while (flushBatch() > 0) {
+      // keep draining until the journal is empty
+    }
+  }
+
+  /**
+   * Drain and write one batch of records. Records are only taken from the journal while
+   * holding the flush lock, so writes of the same znode are issued in append order.
+   * @return number of records written
+   */
+  int flushBatch() {
+    synchronized (_flushLock) {
+      List<Entry> entries = new ArrayList<Entry>();
+      _queue.drainTo(entries, _maxBatchSize);
+      if (entries.isEmpty()) {
+        return 0;
+      }
+
+      // merge records by accessor and path, keeping the order in which paths first appeared
+      Map<HelixDataAccessor, Map<String, PendingWrite>> writes =
+          new LinkedHashMap<HelixDataAccessor, Map<String, PendingWrite>>();
+      for (Entry entry : entries) {
+        Map<String, PendingWrite> accessorWrites = writes.get(entry._accessor);
+        if (accessorWrites == null) {
+          accessorWrites = new LinkedHashMap<String, PendingWrite>();
+          writes.put(entry._accessor, accessorWrites);
+        }
+        String path = entry._key.getPath();
+        PendingWrite write = accessorWrites.get(path);
+        if (write == null) {
+          accessorWrites.put(path, new PendingWrite(entry));
+        } else {
+          write.add(entry);
+        }
+      }
+
+      for (Map<String, PendingWrite> accessorWrites : writes.values()) {
+        for (PendingWrite write : accessorWrites.values()) {
+          write(write);
+        }
+      }
+      return entries.size();
+    }
+  }
+
+  private void write(PendingWrite write) {
+    _writeCount.incrementAndGet();
+    try {
+      HelixProperty value = new HelixProperty(write._record);
+      boolean success;
+      if (write._overwrite) {
+        success = write._accessor.setProperty(write._key, value);
+      } else {
+        success = write._accessor.updateProperty(write._key, value);
+      }
+      if (!success) {
+        _failedWriteCount.incrementAndGet();
+      }
+    } catch (Exception e) {
+      _failedWriteCount.incrementAndGet();
+      LOG.error("Fail to write " + write._recordCount + " status updates to "
+          + write._key.getPath(), e);
+    }
+  }
+
+  private synchronized void ensureFlusherStarted() {
+    if (_flusher != null) {
+      return;
+    }
+    _flusher = new Thread("StatusUpdateJournalFlusher") {
+      @Override
+      public void run() {
+        while (!isInterrupted()) {
+          try {
+            synchronized (_signal) {
+              if (_queue.isEmpty()) {
+                _signal.wait(POLL_INTERVAL_MS);
+              }
+            }
+            // records that arrived while the previous batch was written are merged together
+            flushBatch();
+          } catch (InterruptedException e) {
+            LOG.info("Status update journal flusher interrupted");
+            return;
+          } catch (Exception e) {
+            LOG.error("Exception in status update journal flusher", e);
+          }
+        }
+      }
+    };
+    _flusher.setDaemon(true);
+    _flusher.start();
+  }
+
+  /**
+   * @return number of records appended since the journal was created
+   */
+  public long getAppendedCount() {
+    return _appendedCount.get();
+  }
+
+  /**
+   * @return number of records dropped because the journal was full
+   */
+  public long getDroppedCount() {
+    return _droppedCount.get();
+  }
+
+  /**
+   * @return number of znode writes issued, each covering one or more records
+   */
+  public long getWriteCount() {
+    return _writeCount.get();
+  }
+
+  /**
+   * @return number of znode writes that failed
+   */
+  public long getFailedWriteCount() {
+    return _failedWriteCount.get();
+  }
+
+  /**
+   * @return number of records waiting to be written
+   */
+  public int getPendingCount() {
+    return _queue.size();
+  }
+}
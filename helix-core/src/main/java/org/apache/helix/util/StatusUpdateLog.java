@@ -0,0 +1,288 @@
+package org.apache.helix.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.helix.HelixException;
+import org.apache.helix.ZNRecord;
+import org.apache.helix.manager.zk.ZNRecordBinarySerializer;
+import org.apache.log4j.Logger;
+
+/**
+ * Append-only log of status update records on local disk. The log is a sequence of
+ * fixed-size memory-mapped segment files named statusUpdates.{seq}.log; when a segment is
+ * full the next one is started and the oldest segments beyond the configured count are
+ * deleted. Each entry is laid out as:
+ *
+ * <pre>
+ * int length | long timestamp | byte overwrite | int pathLength | path | record
+ * </pre>
+ *
+ * where length covers everything after itself and the record is encoded by
+ * ZNRecordBinarySerializer. The length is written last, so a zero length marks the end
+ * of the entries written so far. Use StatusUpdateLogReader to read the log.
+ * <p>
+ * A log directory is owned by a single writer: the log holds a file lock on the directory
+ * until it is closed, and fails to open a directory locked by another log. Participants
+ * keep one directory per cluster and instance under the base directory, see
+ * {@link #getInstanceDir(File, String, String)}.
+ */
+public class StatusUpdateLog {
+  private static final Logger LOG = Logger.getLogger(StatusUpdateLog.class);
+
+  public static final String LOG_DIR = "helixmanager.statusUpdateLog.dir";
+  public static final String SEGMENT_SIZE = "helixmanager.statusUpdateLog.segmentSize";
+  public static final String MAX_SEGMENTS = "helixmanager.statusUpdateLog.maxSegments";
+  public static final String DEFAULT_LOG_DIR = "statusUpdateLog";
+  public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+  public static final int DEFAULT_MAX_SEGMENTS = 8;
+
+  static final String SEGMENT_PREFIX = "statusUpdates.";
+  static final String SEGMENT_SUFFIX = ".log";
+  static final String LOCK_FILE = ".lock";
+  static final String CHARSET = "UTF-8";
+
+  // length, timestamp, overwrite flag and path length
+  static final int HEADER_SIZE = 4 + 8 + 1 + 4;
+
+  private static final ZNRecordBinarySerializer SERIALIZER = new ZNRecordBinarySerializer();
+
+  private final File _dir;
+  private final int _segmentSize;
+  private final int _maxSegments;
+
+  private final RandomAccessFile _lockFile;
+  private final FileLock _lock;
+
+  private long _segmentSeq;
+  private MappedByteBuffer _buffer = null;
+  private boolean _closed = false;
+
+  /**
+   * Open a log in the given directory, with segment size and count from system properties
+   */
+  public StatusUpdateLog(File dir) {
+    this(dir, Integer.getInteger(SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE), Integer.getInteger(
+        MAX_SEGMENTS, DEFAULT_MAX_SEGMENTS));
+  }
+
+  public StatusUpdateLog(File dir, int segmentSize, int maxSegments) {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new HelixException("Fail to create status update log directory: " + dir);
+    }
+    _dir = dir;
+    _segmentSize = segmentSize;
+    _maxSegments = maxSegments;
+
+    // lock the directory before reading the segment sequence, so no other writer shares it
+    FileLock lock = null;
+    RandomAccessFile lockFile = null;
+    try {
+      lockFile = new RandomAccessFile(new File(dir, LOCK_FILE), "rw");
+      lock = lockFile.getChannel().tryLock();
+    } catch (OverlappingFileLockException e) {
+      // locked by another log in this process
+    } catch (IOException e) {
+      closeQuietly(lockFile);
+      LOG.error("Fail to lock status update log directory: " + dir, e);
+      throw new HelixException(e);
+    }
+    if (lock == null) {
+      closeQuietly(lockFile);
+      throw new HelixException("Status update log directory is in use by another writer: "
+          + dir);
+    }
+    _lockFile = lockFile;
+    _lock = lock;
+
+    // never append to segments of a previous process
+    List<Long> segments = listSegments(dir);
+    _segmentSeq = segments.isEmpty() ? -1 : segments.get(segments.size() - 1);
+  }
+
+  /**
+   * @return base directory of the participant logs, from system property
+   */
+  public static File getDefaultBaseDir() {
+    return new File(System.getProperty(LOG_DIR, DEFAULT_LOG_DIR));
+  }
+
+  /**
+   * @return directory of the log of an instance under the base directory
+   */
+  public static File getInstanceDir(File baseDir, String clusterName, String instanceName) {
+    return new File(new File(baseDir, clusterName), instanceName);
+  }
+
+  public File getDir() {
+    return _dir;
+  }
+
+  /**
+   * Append a record to the log
+   * @param path
+   *          zookeeper path the record would have been written to
+   * @param record
+   * @param overwrite
+   *          true if the record replaces earlier records of the path
+   * @return true if the record was written, false if it does not fit in a segment or the
+   *         log is closed
+   */
+  public synchronized boolean append(String path, ZNRecord record, boolean overwrite) {
+    if (_closed) {
+      return false;
+    }
+    byte[] pathBytes = toBytes(path);
+    byte[] recordBytes = SERIALIZER.serialize(record);
+    int size = HEADER_SIZE + pathBytes.length + recordBytes.length;
+
+    // leave room for the zero length that terminates a segment
+    if (size + 4 > _segmentSize) {
+      LOG.warn("Status update of " + size + " bytes exceeds segment size " + _segmentSize
+          + ", skip writing it to the log. path: " + path);
+      return false;
+    }
+
+    if (_buffer == null || _buffer.remaining() < size + 4) {
+      rotate();
+    }
+
+    int start = _buffer.position();
+    _buffer.position(start + 4);
+    _buffer.putLong(System.currentTimeMillis());
+    _buffer.put((byte) (overwrite ? 1 : 0));
+    _buffer.putInt(pathBytes.length);
+    _buffer.put(pathBytes);
+    _buffer.put(recordBytes);
+    _buffer.putInt(start, size - 4);
+    return true;
+  }
+
+  /**
+   * Force the current segment to disk
+   */
+  public synchronized void force() {
+    if (_buffer != null) {
+      _buffer.force();
+    }
+  }
+
+  /**
+   * Force the current segment to disk and release the directory lock. The log must not be
+   * appended to afterwards.
+   */
+  public synchronized void close() {
+    if (_closed) {
+      return;
+    }
+    _closed = true;
+    force();
+    _buffer = null;
+    try {
+      _lock.release();
+    } catch (IOException e) {
+      LOG.warn("Fail to release status update log directory lock: " + _dir, e);
+    }
+    closeQuietly(_lockFile);
+  }
+
+  private void rotate() {
+    force();
+    _segmentSeq++;
+    File file = segmentFile(_dir, _segmentSeq);
+    RandomAccessFile raf = null;
+    try {
+      raf = new RandomAccessFile(file, "rw");
+      // the mapping stays valid after the file is closed
+      _buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, _segmentSize);
+    } catch (IOException e) {
+      _buffer = null;
+      LOG.error("Fail to create status update log segment: " + file, e);
+      throw new HelixException(e);
+    } finally {
+      closeQuietly(raf);
+    }
+    LOG.info("Start status update log segment: " + file);
+
+    List<Long> segments = listSegments(_dir);
+    for (int i = 0; i < segments.size() - _maxSegments; i++) {
+      File oldFile = segmentFile(_dir, segments.get(i));
+      if (!oldFile.delete()) {
+        LOG.warn("Fail to delete status update log segment: " + oldFile);
+      }
+    }
+  }
+
+  static File segmentFile(File dir, long seq) {
+    return new File(dir, SEGMENT_PREFIX + seq + SEGMENT_SUFFIX);
+  }
+
+  /**
+   * @return sequence numbers of the segments in the directory, in ascending order
+   */
+  static List<Long> listSegments(File dir) {
+    List<Long> segments = new ArrayList<Long>();
+    String[] names = dir.list();
+    if (names == null) {
+      return segments;
+    }
+    for (String name : names) {
+      if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+        try {
+          segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length()
+              - SEGMENT_SUFFIX.length())));
+        } catch (NumberFormatException e) {
+          // not a segment file
+        }
+      }
+    }
+    Collections.sort(segments);
+    return segments;
+  }
+
+  static byte[] toBytes(String str) {
+    try {
+      return str.getBytes(CHARSET);
+    } catch (UnsupportedEncodingException e) {
+      throw new HelixException(e);
+    }
+  }
+
+  static void closeQuietly(RandomAccessFile raf) {
+    if (raf != null) {
+      try {
+        raf.close();
+      } catch (IOException e) {
+        LOG.warn("Fail to close " + raf, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,200 @@
+package org.apache.helix.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.helix.HelixException;
+import org.apache.helix.ZNRecord;
+import org.apache.helix.manager.zk.ZNRecordBinarySerializer;
+import org.apache.log4j.Logger;
+
+/**
+ * Pages through a status update log written by StatusUpdateLog. A position in the log is
+ * the segment sequence number in the high 32 bits and the offset in the segment in the
+ * low 32 bits. Reading from position 0 starts at the oldest segment still on disk.
+ */
+public class StatusUpdateLogReader {
+  private static final Logger LOG = Logger.getLogger(StatusUpdateLogReader.class);
+
+  private static final ZNRecordBinarySerializer SERIALIZER = new ZNRecordBinarySerializer();
+
+  public static class Entry {
+    private final String _path;
+    private final long _timestamp;
+    private final boolean _overwrite;
+    private final ZNRecord _record;
+
+    public Entry(String path, long timestamp, boolean overwrite, ZNRecord record) {
+      _path = path;
+      _timestamp = timestamp;
+      _overwrite = overwrite;
+      _record = record;
+    }
+
+    public String getPath() {
+      return _path;
+    }
+
+    public long getTimestamp() {
+      return _timestamp;
+    }
+
+    public boolean isOverwrite() {
+      return _overwrite;
+    }
+
+    public ZNRecord getRecord() {
+      return _record;
+    }
+  }
+
+  public static class Page {
+    private final List<Entry> _entries;
+    private final long _nextPosition;
+
+    public Page(List<Entry> entries, long nextPosition) {
+      _entries = entries;
+      _nextPosition = nextPosition;
+    }
+
+    public List<Entry> getEntries() {
+      return _entries;
+    }
+
+    /**
+     * @return position to read the next page from
+     */
+    public long getNextPosition() {
+      return _nextPosition;
+    }
+  }
+
+  private final File _dir;
+
+  public StatusUpdateLogReader(File dir) {
+    _dir = dir;
+  }
+
+  /**
+   * Read entries whose path starts with the given prefix
+   * @param pathPrefix
+   *          prefix of the zookeeper paths to return, null for all entries
+   * @param position
+   *          position to start from, 0 for the start of the log
+   * @param maxEntries
+   *          maximum number of entries to return
+   * @return page of entries and the position after the last entry scanned
+   */
+  public Page read(String pathPrefix, long position, int maxEntries) {
+    List<Entry> entries = new ArrayList<Entry>();
+    List<Long> segments = StatusUpdateLog.listSegments(_dir);
+    if (segments.isEmpty()) {
+      return new Page(entries, position);
+    }
+
+    long seq = position >>> 32;
+    int offset = (int) position;
+    if (seq < segments.get(0)) {
+      // the segment was rotated away, resume from the oldest one left
+      seq = segments.get(0);
+      offset = 0;
+    }
+
+    for (long segmentSeq : segments) {
+      if (segmentSeq < seq) {
+        continue;
+      }
+      if (segmentSeq > seq) {
+        seq = segmentSeq;
+        offset = 0;
+      }
+
+      MappedByteBuffer buffer = map(StatusUpdateLog.segmentFile(_dir, seq));
+      if (buffer == null) {
+        continue;
+      }
+      offset = readSegment(buffer, offset, pathPrefix, maxEntries, entries);
+      if (entries.size() >= maxEntries) {
+        break;
+      }
+    }
+    return new Page(entries, (seq << 32) | offset);
+  }
+
+  /**
+   * Read entries from a segment into the list
+   * @return offset after the last entry read
+   */
+  private int readSegment(MappedByteBuffer buffer, int offset, String pathPrefix,
+      int maxEntries, List<Entry> entries) {
+    while (entries.size() < maxEntries && offset + 4 <= buffer.limit()) {
+      int length = buffer.getInt(offset);
+      if (length <= 0 || offset + 4 + length > buffer.limit()) {
+        // end of the entries written so far
+        break;
+      }
+
+      buffer.position(offset + 4);
+      long timestamp = buffer.getLong();
+      boolean overwrite = buffer.get() != 0;
+      byte[] pathBytes = new byte[buffer.getInt()];
+      buffer.get(pathBytes);
+      String path = toString(pathBytes);
+      if (pathPrefix == null || path.startsWith(pathPrefix)) {
+        byte[] recordBytes = new byte[offset + 4 + length - buffer.position()];
+        buffer.get(recordBytes);
+        entries.add(new Entry(path, timestamp, overwrite, (ZNRecord) SERIALIZER
+            .deserialize(recordBytes)));
+      }
+      offset += 4 + length;
+    }
+    return offset;
+  }
+
+  private static MappedByteBuffer map(File file) {
+    RandomAccessFile raf = null;
+    try {
+      raf = new RandomAccessFile(file, "r");
+      return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+    } catch (IOException e) {
+      // the segment may have been deleted by rotation
+      LOG.warn("Fail to read status update log segment: " + file, e);
+      return null;
+    } finally {
+      StatusUpdateLog.closeQuietly(raf);
+    }
+  }
+
+  private static String toString(byte[] bytes) {
+    try {
+      return new String(bytes, StatusUpdateLog.CHARSET);
+    } catch (UnsupportedEncodingException e) {
+      throw new HelixException(e);
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package org.apache.helix.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.helix.HelixDataAccessor;
+import org.apache.helix.HelixProperty;
+import org.apache.helix.PropertyKey;
+
+/**
+ * Destination of the status update and error records published by StatusUpdateUtil
+ */
+public interface StatusUpdateSink {
+  /**
+   * Write a status update or error record
+   * @param accessor
+   *          accessor of the cluster the record belongs to
+   * @param key
+   *          property key of the status update or error
+   * @param value
+   *          the record
+   * @param overwrite
+   *          true to replace the existing record, false to merge into it
+   * @param critical
+   *          true if the record must not be dropped under load
+   */
+  void write(HelixDataAccessor accessor, PropertyKey key, HelixProperty value, boolean overwrite,
+      boolean critical);
+
+  /**
+   * Make all records written so far durable
+   */
+  void flush();
+}
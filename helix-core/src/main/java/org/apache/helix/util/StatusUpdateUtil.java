@@ -32,6 +32,7 @@ import java.util.Map;
 import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.helix.HelixDataAccessor;
 import org.apache.helix.HelixProperty;
@@ -52,6 +53,80 @@ import org.apache.log4j.Logger;
 public class StatusUpdateUtil {
   static Logger _logger = Logger.getLogger(StatusUpdateUtil.class);
 
+  /**
+   * system property selecting the default status update sink: "zk", "local" or the name of
+   * a StatusUpdateSink class with a no-arg constructor
+   */
+  public static final String SINK = "helixmanager.statusUpdateSink";
+
+  private static final StatusUpdateJournal JOURNAL = new StatusUpdateJournal();
+  private static StatusUpdateSink _defaultSink = null;
+
+  private static final ThreadLocal<DateFormat> TIME_FORMAT = new ThreadLocal<DateFormat>() {
+    @Override
+    protected DateFormat initialValue() {
+      return new SimpleDateFormat("yyyyMMdd-HHmmss.SSSSSS");
+    }
+  };
+
+  // record ids only need to be unique within a status update znode
+  private static final String RECORD_ID_PREFIX = UUID.randomUUID().toString();
+  private static final AtomicLong RECORD_ID_SEQ = new AtomicLong(0);
+
+  private final StatusUpdateSink _sink;
+
+  public StatusUpdateUtil() {
+    this(getDefaultSink());
+  }
+
+  /**
+   * @param asyncWrite
+   *          true to write records through the shared status update journal, false to
+   *          write them synchronously
+   */
+  public StatusUpdateUtil(boolean asyncWrite) {
+    this(new ZkStatusUpdateSink(asyncWrite ? JOURNAL : null));
+  }
+
+  public StatusUpdateUtil(StatusUpdateSink sink) {
+    _sink = sink;
+  }
+
+  /**
+   * @return the journal shared by all asynchronous status update writers
+   */
+  public static StatusUpdateJournal getJournal() {
+    return JOURNAL;
+  }
+
+  /**
+   * @return the sink shared by all StatusUpdateUtil created with the default constructor
+   */
+  public static synchronized StatusUpdateSink getDefaultSink() {
+    if (_defaultSink == null) {
+      _defaultSink = createSink(System.getProperty(SINK, "zk"));
+    }
+    return _defaultSink;
+  }
+
+  static StatusUpdateSink createSink(String sinkName) {
+    StatusUpdateSink zkSink =
+        new ZkStatusUpdateSink(StatusUpdateJournal.isEnabled() ? JOURNAL : null);
+    if ("zk".equalsIgnoreCase(sinkName)) {
+      return zkSink;
+    }
+    try {
+      if ("local".equalsIgnoreCase(sinkName)) {
+        return new LocalStatusUpdateSink(StatusUpdateLog.getDefaultBaseDir(), zkSink);
+      }
+      return (StatusUpdateSink) Class.forName(sinkName).newInstance();
+    } catch (Exception e) {
+      _logger.error("Fail to create status update sink: " + sinkName
+          + ", write status updates to zookeeper", e);
+      return zkSink;
+    }
+  }
+
   public static class Transition implements Comparable<Transition> {
     private final String _msgID;
     private final long _timeStamp;
@@ -292,8 +367,7 @@ public class StatusUpdateUtil {
     contentMap.put("Class", classInfo.toString());
     contentMap.put("MSG_ID", message.getMsgId());
 
-    DateFormat formatter = new SimpleDateFormat("yyyyMMdd-HHmmss.SSSSSS");
-    String time = formatter.format(new Date());
+    String time = TIME_FORMAT.get().format(new Date());
 
     String id = String.format("%4s %26s ", level.toString(), time) + getRecordIdForMessage(message);
 
@@ -305,12 +379,16 @@ public class StatusUpdateUtil {
   String getRecordIdForMessage(Message message) {
     if (message.getMsgType().equals(MessageType.STATE_TRANSITION)) {
       return message.getPartitionName() + " Trans:" + message.getFromState().charAt(0) + "->"
-          + message.getToState().charAt(0) + "  " + UUID.randomUUID().toString();
+          + message.getToState().charAt(0) + "  " + nextRecordId();
     } else {
-      return message.getMsgType() + " " + UUID.randomUUID().toString();
+      return message.getMsgType() + " " + nextRecordId();
     }
   }
 
+  private static String nextRecordId() {
+    return RECORD_ID_PREFIX + "-" + RECORD_ID_SEQ.incrementAndGet();
+  }
+
   /**
    * Create a statusupdate that is related to a cluster manager message, then record it to
    * the zookeeper store.
@@ -387,9 +465,8 @@ public class StatusUpdateUtil {
     if (!_recordedMessages.containsKey(message.getMsgId())) {
       // TODO instanceName of a controller might be any string
       if (instanceName.equalsIgnoreCase("Controller")) {
-        accessor.updateProperty(
-            keyBuilder.controllerTaskStatus(statusUpdateSubPath, statusUpdateKey),
-            new StatusUpdate(createMessageLogRecord(message)));
+        write(accessor, keyBuilder.controllerTaskStatus(statusUpdateSubPath, statusUpdateKey),
+            new StatusUpdate(createMessageLogRecord(message)), false, false);
 
       } else {
 
@@ -405,16 +482,15 @@ public class StatusUpdateUtil {
           _logger.trace("StatusUpdate path:" + propertyKey.getPath() + ", updates:"
               + statusUpdateRecord);
         }
-        accessor.updateProperty(propertyKey, new StatusUpdate(statusUpdateRecord));
+        write(accessor, propertyKey, new StatusUpdate(statusUpdateRecord), false, false);
 
       }
       _recordedMessages.put(message.getMsgId(), message.getMsgId());
     }
 
     if (instanceName.equalsIgnoreCase("Controller")) {
-      accessor.updateProperty(
-          keyBuilder.controllerTaskStatus(statusUpdateSubPath, statusUpdateKey), new StatusUpdate(
-              record));
+      write(accessor, keyBuilder.controllerTaskStatus(statusUpdateSubPath, statusUpdateKey),
+          new StatusUpdate(record), false, Level.HELIX_ERROR == level);
     } else {
 
       PropertyKey propertyKey =
@@ -425,7 +501,7 @@ public class StatusUpdateUtil {
       if (_logger.isTraceEnabled()) {
         _logger.trace("StatusUpdate path:" + propertyKey.getPath() + ", updates:" + record);
       }
-      accessor.updateProperty(propertyKey, new StatusUpdate(record));
+      write(accessor, propertyKey, new StatusUpdate(record), false, Level.HELIX_ERROR == level);
     }
 
     // If the error level is ERROR, also write the record to "ERROR" ZNode
@@ -488,7 +564,8 @@ public class StatusUpdateUtil {
       // ../{sessionId}/{subPath}
       // accessor.setProperty(PropertyType.ERRORS_CONTROLLER, record,
       // statusUpdateSubPath);
-      accessor.setProperty(keyBuilder.controllerTaskError(statusUpdateSubPath), new Error(record));
+      write(accessor, keyBuilder.controllerTaskError(statusUpdateSubPath), new Error(record), true,
+          true);
     } else {
       // accessor.updateProperty(PropertyType.ERRORS,
       // record,
@@ -496,9 +573,21 @@ public class StatusUpdateUtil {
       // sessionId,
       // statusUpdateSubPath,
       // statusUpdateKey);
-      accessor.updateProperty(keyBuilder.stateTransitionError(instanceName, sessionId,
-          statusUpdateSubPath, statusUpdateKey), new Error(record));
+      write(accessor, keyBuilder.stateTransitionError(instanceName, sessionId,
+          statusUpdateSubPath, statusUpdateKey), new Error(record), false, true);
 
     }
   }
+
+  /**
+   * Write a record to the status update sink
+   * @param overwrite
+   *          true to set the znode, false to merge the record into it
+   * @param critical
+   *          true if the record must not be dropped under load
+   */
+  private void write(HelixDataAccessor accessor, PropertyKey key, HelixProperty value,
+      boolean overwrite, boolean critical) {
+    _sink.write(accessor, key, value, overwrite, critical);
+  }
 }
@@ -0,0 +1,59 @@
+package org.apache.helix.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.helix.HelixDataAccessor;
+import org.apache.helix.HelixProperty;
+import org.apache.helix.PropertyKey;
+
+/**
+ * Status update sink that stores records in zookeeper, either directly or through the
+ * shared status update journal
+ */
+public class ZkStatusUpdateSink implements StatusUpdateSink {
+  private final StatusUpdateJournal _journal;
+
+  /**
+   * @param journal
+   *          journal to buffer writes in, or null to write synchronously
+   */
+  public ZkStatusUpdateSink(StatusUpdateJournal journal) {
+    _journal = journal;
+  }
+
+  @Override
+  public void write(HelixDataAccessor accessor, PropertyKey key, HelixProperty value,
+      boolean overwrite, boolean critical) {
+    if (_journal != null) {
+      _journal.append(accessor, key, value, overwrite, critical);
+    } else if (overwrite) {
+      accessor.setProperty(key, value);
+    } else {
+      accessor.updateProperty(key, value);
+    }
+  }
+
+  @Override
+  public void flush() {
+    if (_journal != null) {
+      _journal.flush();
+    }
+  }
+}
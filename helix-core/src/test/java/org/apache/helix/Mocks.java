@@ -48,6 +48,8 @@ import org.apache.helix.store.zk.ZkHelixPropertyStore;
 import org.apache.zookeeper.data.Stat;
 import org.omg.CORBA._PolicyStub;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 public class Mocks {
   public static class MockBaseDataAccessor implements BaseDataAccessor<ZNRecord> {
     Map<String, ZNRecord> map = new HashMap<String, ZNRecord>();
@@ -94,6 +96,13 @@ public class Mocks {
       return null;
     }
 
+    @Override
+    public boolean[] setChildren(List<String> paths, List<ZNRecord> records,
+        int[] expectVersions, List<Stat> stats, int options) {
+      // TODO Auto-generated method stub
+      return null;
+    }
+
     @Override
     public boolean[] updateChildren(List<String> paths, List<DataUpdater<ZNRecord>> updaters,
         int options) {
@@ -518,6 +527,16 @@ public class Mocks {
     // return updateProperty(type, value.getRecord(), keys);
     // }
 
+    @Override
+    public <T extends HelixProperty> boolean[] updateProperty(List<PropertyKey> keys,
+        List<T> values) {
+      boolean[] success = new boolean[keys.size()];
+      for (int i = 0; i < keys.size(); i++) {
+        success[i] = updateProperty(keys.get(i), values.get(i));
+      }
+      return success;
+    }
+
     @Override
     public <T extends HelixProperty> boolean updateProperty(PropertyKey key, T value) {
       // String path = PropertyPathConfig.getPath(type, _clusterName,
@@ -757,6 +776,13 @@ public class Mocks {
       return 0;
     }
 
+    @Override
+    public ListenableFuture<List<Message>> sendAsync(Criteria receipientCriteria,
+        Message message, int timeOut, int retryCount) {
+      // TODO Auto-generated method stub
+      return null;
+    }
+
     @Override
     public Map<InstanceType, List<Message>> generateMessage(Criteria recipientCriteria,
         Message messageTemplate) {
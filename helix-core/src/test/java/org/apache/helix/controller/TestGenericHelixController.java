@@ -0,0 +1,71 @@
+package org.apache.helix.controller;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.helix.controller.pipeline.AbstractBaseStage;
+import org.apache.helix.controller.pipeline.Pipeline;
+import org.apache.helix.controller.pipeline.PipelineRegistry;
+import org.apache.helix.controller.stages.ClusterEvent;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestGenericHelixController {
+  static class ReleaseCountingStage extends AbstractBaseStage {
+    final AtomicInteger _releaseCount = new AtomicInteger(0);
+
+    @Override
+    public void process(ClusterEvent event) throws Exception {
+    }
+
+    @Override
+    public void release() {
+      _releaseCount.incrementAndGet();
+    }
+  }
+
+  @Test
+  public void testShutdownReleasesStages() {
+    ReleaseCountingStage sharedStage = new ReleaseCountingStage();
+    ReleaseCountingStage leaderStage = new ReleaseCountingStage();
+    ReleaseCountingStage standbyStage = new ReleaseCountingStage();
+
+    Pipeline leaderPipeline = new Pipeline();
+    leaderPipeline.addStage(sharedStage);
+    leaderPipeline.addStage(leaderStage);
+    Pipeline standbyPipeline = new Pipeline();
+    standbyPipeline.addStage(sharedStage);
+    standbyPipeline.addStage(standbyStage);
+
+    PipelineRegistry registry = new PipelineRegistry();
+    registry.register("idealStateChange", leaderPipeline);
+    registry.register("currentStateChange", leaderPipeline);
+    registry.registerStandby("idealStateChange", standbyPipeline);
+
+    GenericHelixController controller = new GenericHelixController(registry);
+    controller.shutdown();
+
+    // every stage is released exactly once, even if shared by several pipelines
+    Assert.assertEquals(sharedStage._releaseCount.get(), 1);
+    Assert.assertEquals(leaderStage._releaseCount.get(), 1);
+    Assert.assertEquals(standbyStage._releaseCount.get(), 1);
+  }
+}
@@ -0,0 +1,161 @@
+package org.apache.helix.controller.pipeline;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.helix.controller.stages.BestPossibleStateCalcStage;
+import org.apache.helix.controller.stages.ClusterEvent;
+import org.apache.helix.controller.stages.CurrentStateComputationStage;
+import org.apache.helix.controller.stages.ExternalViewComputeStage;
+import org.apache.helix.controller.stages.MessageGenerationPhase;
+import org.apache.helix.controller.stages.MessageSelectionStage;
+import org.apache.helix.controller.stages.MessageThrottleStage;
+import org.apache.helix.controller.stages.ReadClusterDataStage;
+import org.apache.helix.controller.stages.RebalanceIdealStateStage;
+import org.apache.helix.controller.stages.ResourceComputationStage;
+import org.apache.helix.controller.stages.ResourceFingerprintStage;
+import org.apache.helix.controller.stages.TaskAssignmentStage;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestPipelineExecutor {
+  /**
+   * stage that reads and writes the given attributes and records its run
+   */
+  static class RecordingStage extends AbstractBaseStage {
+    final String _name;
+    final String[] _inputs;
+    final String[] _outputs;
+    final List<String> _runs;
+    final boolean _fail;
+
+    RecordingStage(String name, String[] inputs, String[] outputs, List<String> runs,
+        boolean fail) {
+      _name = name;
+      _inputs = inputs;
+      _outputs = outputs;
+      _runs = runs;
+      _fail = fail;
+    }
+
+    @Override
+    public String[] getInputAttributes() {
+      return _inputs;
+    }
+
+    @Override
+    public String[] getOutputAttributes() {
+      return _outputs;
+    }
+
+    @Override
+    public void process(ClusterEvent event) throws Exception {
+      for (String input : _inputs) {
+        if (event.getAttribute(input) == null) {
+          throw new StageException(_name + " misses attribute: " + input);
+        }
+      }
+      if (_fail) {
+        throw new StageException(_name + " fails");
+      }
+      synchronized (_runs) {
+        _runs.add(_name);
+      }
+      for (String output : _outputs) {
+        event.addAttribute(output, _name);
+      }
+    }
+  }
+
+  @Test
+  public void testDefaultPipelineDependencies() {
+    List<Stage> stages =
+        Arrays.<Stage> asList(new ReadClusterDataStage(), new ResourceComputationStage(),
+            new CurrentStateComputationStage(), new ResourceFingerprintStage(),
+            new RebalanceIdealStateStage(), new BestPossibleStateCalcStage(1),
+            new MessageGenerationPhase(), new MessageSelectionStage(),
+            new MessageThrottleStage(), new TaskAssignmentStage(), new ExternalViewComputeStage());
+    List<List<Integer>> dependents = PipelineExecutor.computeDependents(stages);
+
+    // external view only waits for the rebalance of user-defined idealstates
+    int externalView = stages.size() - 1;
+    Assert.assertTrue(dependents.get(2).contains(externalView));
+    Assert.assertTrue(dependents.get(4).contains(externalView));
+    for (int i = 5; i < externalView; i++) {
+      Assert.assertFalse(dependents.get(i).contains(externalView), stages.get(i).getStageName());
+    }
+    // message stages stay in order
+    Assert.assertTrue(dependents.get(5).contains(6));
+    Assert.assertTrue(dependents.get(8).contains(9));
+  }
+
+  @Test
+  public void testExecute() throws Exception {
+    List<String> runs = new ArrayList<String>();
+    Pipeline pipeline = new Pipeline();
+    pipeline.addStage(new RecordingStage("a", new String[0], new String[] {
+      "A"
+    }, runs, false));
+    pipeline.addStage(new RecordingStage("b", new String[] {
+      "A"
+    }, new String[] {
+      "B"
+    }, runs, false));
+    pipeline.addStage(new RecordingStage("c", new String[] {
+      "A"
+    }, new String[] {
+      "C"
+    }, runs, false));
+    Pipeline pipeline2 = new Pipeline();
+    pipeline2.addStage(new RecordingStage("d", new String[] {
+        "B", "C"
+    }, new String[0], runs, false));
+
+    PipelineExecutor executor = new PipelineExecutor(2);
+    try {
+      executor.execute(Arrays.asList(pipeline, pipeline2), new ClusterEvent("testEvent"));
+      Assert.assertEquals(runs.size(), 4);
+      Assert.assertEquals(runs.get(0), "a");
+      Assert.assertEquals(runs.get(3), "d");
+
+      // a failed stage stops its dependents
+      runs.clear();
+      Pipeline failPipeline = new Pipeline();
+      failPipeline.addStage(new RecordingStage("e", new String[0], new String[] {
+        "E"
+      }, runs, true));
+      failPipeline.addStage(new RecordingStage("f", new String[] {
+        "E"
+      }, new String[0], runs, false));
+      try {
+        executor.execute(Arrays.asList(failPipeline), new ClusterEvent("testEvent"));
+        Assert.fail("should fail on stage e");
+      } catch (StageException e) {
+        // expected
+      }
+      Assert.assertTrue(runs.isEmpty());
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package org.apache.helix.controller.rebalancer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.helix.HelixManager;
+import org.apache.helix.Mocks;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestRebalancerRegistry {
+  @Test
+  public void testGetRebalancer() {
+    RebalancerRegistry registry = new RebalancerRegistry();
+    HelixManager manager = new Mocks.MockManager("TestRebalancerRegistry");
+    String className = SemiAutoRebalancer.class.getName();
+
+    // the same instance is reused while the manager doesn't change
+    Rebalancer rebalancer = registry.getRebalancer(className, manager);
+    Assert.assertTrue(rebalancer instanceof SemiAutoRebalancer);
+    Assert.assertSame(registry.getRebalancer(className, manager), rebalancer);
+    Assert.assertTrue(registry.getRebalancer(CustomRebalancer.class.getName(), manager)
+        instanceof CustomRebalancer);
+
+    // a new manager drops the cached instances
+    HelixManager newManager = new Mocks.MockManager("TestRebalancerRegistry");
+    Rebalancer newRebalancer = registry.getRebalancer(className, newManager);
+    Assert.assertNotNull(newRebalancer);
+    Assert.assertFalse(newRebalancer == rebalancer);
+
+    // so does clear()
+    registry.clear();
+    Rebalancer clearedRebalancer = registry.getRebalancer(className, newManager);
+    Assert.assertNotNull(clearedRebalancer);
+    Assert.assertFalse(clearedRebalancer == newRebalancer);
+
+    Assert.assertNull(registry.getRebalancer("org.apache.helix.NoSuchRebalancer", manager));
+  }
+}
@@ -20,6 +20,7 @@ package org.apache.helix.controller.stages;
  */
 
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.helix.controller.stages.AttributeName;
@@ -67,4 +68,55 @@ public class TestBestPossibleStateCalcStage extends BaseStageTest {
     System.out.println("END TestBestPossibleStateCalcStage at "
         + new Date(System.currentTimeMillis()));
   }
+
+  @Test
+  public void testParallelComputation() {
+    System.out.println("START TestBestPossibleStateCalcStage.testParallelComputation at "
+        + new Date(System.currentTimeMillis()));
+    int partitions = 10;
+    String[] resources = new String[8];
+    for (int i = 0; i < resources.length; i++) {
+      resources[i] = "TestDB" + i;
+    }
+    setupIdealState(5, resources, partitions, 3, RebalanceMode.SEMI_AUTO);
+    setupLiveInstances(5);
+    setupStateModel();
+
+    Map<String, Resource> resourceMap = new HashMap<String, Resource>();
+    for (String resourceName : resources) {
+      Resource resource = new Resource(resourceName);
+      resource.setStateModelDefRef("MasterSlave");
+      for (int p = 0; p < partitions; p++) {
+        resource.addPartition(resourceName + "_" + p);
+      }
+      resourceMap.put(resourceName, resource);
+    }
+    event.addAttribute(AttributeName.RESOURCES.toString(), resourceMap);
+    event.addAttribute(AttributeName.CURRENT_STATE.toString(), new CurrentStateOutput());
+    runStage(event, new ReadClusterDataStage());
+
+    BestPossibleStateCalcStage sequentialStage = new BestPossibleStateCalcStage(1);
+    runStage(event, sequentialStage);
+    BestPossibleStateOutput sequentialOutput =
+        event.getAttribute(AttributeName.BEST_POSSIBLE_STATE.toString());
+    sequentialStage.release();
+
+    BestPossibleStateCalcStage parallelStage = new BestPossibleStateCalcStage(4);
+    runStage(event, parallelStage);
+    BestPossibleStateOutput parallelOutput =
+        event.getAttribute(AttributeName.BEST_POSSIBLE_STATE.toString());
+    AssertJUnit.assertEquals(resources.length, parallelOutput.getStateMap().size());
+    AssertJUnit.assertEquals(sequentialOutput.getStateMap(), parallelOutput.getStateMap());
+
+    // a released stage recreates its thread pool on the next run
+    parallelStage.release();
+    runStage(event, parallelStage);
+    BestPossibleStateOutput rerunOutput =
+        event.getAttribute(AttributeName.BEST_POSSIBLE_STATE.toString());
+    AssertJUnit.assertEquals(sequentialOutput.getStateMap(), rerunOutput.getStateMap());
+    parallelStage.release();
+
+    System.out.println("END TestBestPossibleStateCalcStage.testParallelComputation at "
+        + new Date(System.currentTimeMillis()));
+  }
 }
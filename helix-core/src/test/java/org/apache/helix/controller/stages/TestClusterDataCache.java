@@ -0,0 +1,128 @@
+package org.apache.helix.controller.stages;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Collections;
+import java.util.Date;
+
+import org.apache.helix.HelixDataAccessor;
+import org.apache.helix.PropertyKey.Builder;
+import org.apache.helix.TestHelper;
+import org.apache.helix.ZNRecord;
+import org.apache.helix.ZkUnitTestBase;
+import org.apache.helix.manager.zk.ZKHelixDataAccessor;
+import org.apache.helix.Mocks.MockAccessor;
+import org.apache.helix.manager.zk.ZkBaseDataAccessor;
+import org.apache.helix.model.IdealState;
+import org.apache.helix.model.InstanceConfig;
+import org.apache.helix.model.LiveInstance;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestClusterDataCache extends ZkUnitTestBase {
+  @Test
+  public void testIncrementalRefresh() throws Exception {
+    String className = TestHelper.getTestClassName();
+    String methodName = TestHelper.getTestMethodName();
+    String clusterName = className + "_" + methodName;
+
+    System.out.println("START " + clusterName + " at " + new Date(System.currentTimeMillis()));
+
+    TestHelper.setupCluster(clusterName, ZK_ADDR, 12918, "localhost", "TestDB", 2, 10, 5, 3,
+        "MasterSlave", true);
+
+    HelixDataAccessor accessor =
+        new ZKHelixDataAccessor(clusterName, new ZkBaseDataAccessor<ZNRecord>(_gZkClient));
+    Builder keyBuilder = accessor.keyBuilder();
+
+    ClusterDataCache cache = new ClusterDataCache(true);
+    cache.refresh(accessor);
+    IdealState idealState0 = cache.getIdealState("TestDB0");
+    IdealState idealState1 = cache.getIdealState("TestDB1");
+    Assert.assertNotNull(idealState0);
+    Assert.assertNotNull(idealState1);
+    Assert.assertEquals(cache.getInstanceConfigMap().size(), 5);
+
+    // refresh without change should reuse all records
+    cache.refresh(accessor);
+    Assert.assertSame(cache.getIdealState("TestDB0"), idealState0);
+    Assert.assertSame(cache.getIdealState("TestDB1"), idealState1);
+
+    // only the changed idealstate should be re-fetched
+    IdealState newIdealState = accessor.getProperty(keyBuilder.idealStates("TestDB1"));
+    newIdealState.getRecord().setSimpleField("testKey", "testValue");
+    accessor.setProperty(keyBuilder.idealStates("TestDB1"), newIdealState);
+
+    cache.refresh(accessor);
+    Assert.assertSame(cache.getIdealState("TestDB0"), idealState0);
+    Assert.assertNotSame(cache.getIdealState("TestDB1"), idealState1);
+    Assert.assertEquals(cache.getIdealState("TestDB1").getRecord().getSimpleField("testKey"),
+        "testValue");
+
+    // removed idealstate should be dropped
+    accessor.removeProperty(keyBuilder.idealStates("TestDB0"));
+    cache.refresh(accessor);
+    Assert.assertNull(cache.getIdealState("TestDB0"));
+    Assert.assertEquals(cache.getIdealStates().size(), 1);
+
+    System.out.println("END " + clusterName + " at " + new Date(System.currentTimeMillis()));
+  }
+
+  @Test
+  public void testIndexes() {
+    MockAccessor accessor = new MockAccessor();
+    Builder keyBuilder = accessor.keyBuilder();
+    for (int i = 0; i < 4; i++) {
+      String instance = "localhost_" + (12918 + i);
+      InstanceConfig config = new InstanceConfig(instance);
+      if (i % 2 == 0) {
+        config.addTag("tagA");
+      }
+      accessor.setProperty(keyBuilder.instanceConfig(instance), config);
+      if (i < 3) {
+        LiveInstance liveInstance = new LiveInstance(instance);
+        liveInstance.setSessionId("session_" + i);
+        accessor.setProperty(keyBuilder.liveInstance(instance), liveInstance);
+      }
+    }
+    InstanceConfig config = accessor.getProperty(keyBuilder.instanceConfig("localhost_12918"));
+    config.setInstanceEnabled(false);
+    accessor.setProperty(keyBuilder.instanceConfig("localhost_12918"), config);
+    config = accessor.getProperty(keyBuilder.instanceConfig("localhost_12919"));
+    config.setInstanceEnabledForPartition("TestDB_0", false);
+    accessor.setProperty(keyBuilder.instanceConfig("localhost_12919"), config);
+
+    ClusterDataCache cache = new ClusterDataCache();
+    cache.refresh(accessor);
+
+    Assert.assertEquals(cache.getDisabledInstances(), Collections.singleton("localhost_12918"));
+    Assert.assertEquals(cache.getDisabledInstancesForPartition("TestDB_0"),
+        TestHelper.setOf("localhost_12918", "localhost_12919"));
+    Assert.assertEquals(cache.getDisabledInstancesForPartition("TestDB_1"),
+        Collections.singleton("localhost_12918"));
+    Assert.assertEquals(cache.getInstancesWithTag("tagA"),
+        TestHelper.setOf("localhost_12918", "localhost_12920"));
+    Assert.assertTrue(cache.getInstancesWithTag("tagB").isEmpty());
+    Assert.assertEquals(cache.getSessionIdMap().get("localhost_12920"), "session_2");
+    Assert.assertNull(cache.getSessionIdMap().get("localhost_12921"));
+    Assert.assertEquals(cache.getEnabledLiveInstances(),
+        TestHelper.setOf("localhost_12919", "localhost_12920"));
+  }
+}
@@ -0,0 +1,48 @@
+package org.apache.helix.controller.stages;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestClusterEventBlockingQueue {
+  @Test
+  public void testCoalesceEvents() throws Exception {
+    ClusterEventBlockingQueue queue = new ClusterEventBlockingQueue();
+
+    ClusterEvent event = new ClusterEvent("currentStateChange");
+    event.addAttribute("instanceName", "localhost_12918");
+    queue.put(event);
+    queue.put(new ClusterEvent("idealStateChange"));
+    event = new ClusterEvent("currentStateChange");
+    event.addAttribute("instanceName", "localhost_12919");
+    queue.put(event);
+
+    Assert.assertEquals(queue.size(), 2);
+    Assert.assertEquals(queue.getEnqueuedCount(), 3);
+    Assert.assertEquals(queue.getCoalescedCount(), 1);
+
+    // coalesced event moves behind events queued before it
+    Assert.assertEquals(queue.take().getName(), "idealStateChange");
+    // and the latest event replaces the pending one
+    Assert.assertSame(queue.take(), event);
+    Assert.assertEquals(queue.size(), 0);
+  }
+}
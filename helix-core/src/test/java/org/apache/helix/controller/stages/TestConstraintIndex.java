@@ -0,0 +1,158 @@
+package org.apache.helix.controller.stages;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.helix.TestHelper;
+import org.apache.helix.ZNRecord;
+import org.apache.helix.model.ClusterConstraints;
+import org.apache.helix.model.ClusterConstraints.ConstraintAttribute;
+import org.apache.helix.model.ClusterConstraints.ConstraintType;
+import org.apache.helix.model.ConstraintItem;
+import org.apache.helix.model.Message;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestConstraintIndex {
+  @Test
+  public void testMatchesBruteForce() {
+    ZNRecord record = new ZNRecord(ConstraintType.MESSAGE_CONSTRAINT.toString());
+    // never selected
+    addConstraint(record, "constraint0", "ANY", "MESSAGE_TYPE", "STATE_TRANSITION");
+    // exact items
+    addConstraint(record, "constraint1", "50", "MESSAGE_TYPE", "STATE_TRANSITION",
+        "TRANSITION", "OFFLINE-SLAVE");
+    addConstraint(record, "constraint2", "3", "MESSAGE_TYPE", "STATE_TRANSITION", "TRANSITION",
+        "OFFLINE-SLAVE", "INSTANCE", "localhost_0", "RESOURCE", "TestDB");
+    addConstraint(record, "constraint3", "2", "RESOURCE", "MyDB");
+    // wildcard items
+    addConstraint(record, "constraint4", "10", "MESSAGE_TYPE", "STATE_TRANSITION",
+        "TRANSITION", "OFFLINE-SLAVE", "INSTANCE", ".*", "RESOURCE", ".*");
+    addConstraint(record, "constraint5", "4", "MESSAGE_TYPE", "STATE_TRANSITION", "TRANSITION",
+        ".*-MASTER", "RESOURCE", "TestDB[0-9]");
+    addConstraint(record, "constraint6", "5", "INSTANCE", ".*");
+    // mixed items
+    addConstraint(record, "constraint7", "2", "MESSAGE_TYPE", "STATE_TRANSITION", "TRANSITION",
+        "OFFLINE-SLAVE", "INSTANCE", ".*", "RESOURCE", "TestDB");
+    addConstraint(record, "constraint8", "1", "MESSAGE_TYPE", "STATE_TRANSITION", "TRANSITION",
+        "OFFLINE-SLAVE", "INSTANCE", "localhost_1", "RESOURCE", ".*");
+    addConstraint(record, "constraint9", "6", "MESSAGE_TYPE", "STATE_TRANSITION", "INSTANCE",
+        "localhost_[02]");
+    addConstraint(record, "constraint10", "6", "INSTANCE", "localhost_2");
+    ClusterConstraints constraints = new ClusterConstraints(record);
+
+    String[] resources = new String[] {
+        "TestDB", "TestDB1", "MyDB"
+    };
+    String[][] transitions = new String[][] {
+        {
+            "OFFLINE", "SLAVE"
+        }, {
+            "SLAVE", "MASTER"
+        }, {
+            "MASTER", "SLAVE"
+        }
+    };
+    List<Message> messages = new ArrayList<Message>();
+    for (int p = 0; p < 3; p++) {
+      for (String resource : resources) {
+        for (String[] transition : transitions) {
+          for (int i = 0; i < 4; i++) {
+            messages.add(TestHelper.createMessage("msg_" + messages.size(), transition[0],
+                transition[1], "localhost_" + i, resource, resource + "_" + p));
+          }
+        }
+      }
+    }
+
+    ConstraintIndex index = new ConstraintIndex(constraints);
+    MessageThrottleStage stage = new MessageThrottleStage();
+    // run twice to match with memoized attribute values as well
+    for (int run = 0; run < 2; run++) {
+      index.startRun();
+      Map<ConstraintIndex.CounterKey, int[]> counters =
+          new HashMap<ConstraintIndex.CounterKey, int[]>();
+      Map<String, Integer> bruteForceCounters = new HashMap<String, Integer>();
+
+      // the first messages are counted as pending, the others may be throttled
+      for (int i = 0; i < messages.size(); i++) {
+        Message message = messages.get(i);
+        boolean needThrottle = i >= messages.size() / 4;
+        boolean throttled = index.throttle(message, counters, needThrottle);
+        boolean expected =
+            bruteForceThrottle(stage, constraints, message, bruteForceCounters, needThrottle);
+        Assert.assertEquals(throttled, expected, "run " + run + ", message " + message.getId());
+      }
+    }
+    Assert.assertTrue(index.getMemoizedValueCount() > 0);
+
+    // too many memoized values are dropped at the start of the next run
+    for (int i = 0; i <= ConstraintIndex.MAX_MEMOIZED_VALUES; i++) {
+      index.throttle(TestHelper.createMessage("msg", "OFFLINE", "SLAVE", "localhost_0",
+          "TestDB_" + i, "TestDB_" + i + "_0"), new HashMap<ConstraintIndex.CounterKey, int[]>(),
+          true);
+    }
+    int count = index.getMemoizedValueCount();
+    Assert.assertTrue(count > ConstraintIndex.MAX_MEMOIZED_VALUES);
+    index.startRun();
+    Assert.assertTrue(index.getMemoizedValueCount() < count - ConstraintIndex.MAX_MEMOIZED_VALUES);
+  }
+
+  /**
+   * throttle a message by matching every constraint item against it
+   */
+  private static boolean bruteForceThrottle(MessageThrottleStage stage,
+      ClusterConstraints constraints, Message message, Map<String, Integer> counters,
+      boolean needThrottle) {
+    Map<ConstraintAttribute, String> msgAttr = ClusterConstraints.toConstraintAttributes(message);
+    Set<ConstraintItem> matches = constraints.match(msgAttr);
+    matches = stage.selectConstraints(matches, msgAttr);
+
+    boolean throttled = false;
+    for (ConstraintItem item : matches) {
+      String key = item.filter(msgAttr).toString();
+      if (!counters.containsKey(key)) {
+        counters.put(key, stage.valueOf(item.getConstraintValue()));
+      }
+      int value = counters.get(key) - 1;
+      counters.put(key, value);
+      if (needThrottle && value < 0) {
+        throttled = true;
+      }
+    }
+    return throttled;
+  }
+
+  private static void addConstraint(ZNRecord record, String constraintId, String value,
+      String... attributes) {
+    Map<String, String> constraint = new TreeMap<String, String>();
+    for (int i = 0; i < attributes.length; i += 2) {
+      constraint.put(attributes[i], attributes[i + 1]);
+    }
+    constraint.put("CONSTRAINT_VALUE", value);
+    record.setMapField(constraintId, constraint);
+  }
+}
@@ -0,0 +1,91 @@
+package org.apache.helix.controller.stages;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.helix.model.Partition;
+import org.apache.helix.model.StateModelDefinition;
+import org.apache.helix.tools.StateModelConfigGenerator;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestCurrentStateOutput {
+  @Test
+  public void testStateMaps() {
+    CurrentStateOutput output = new CurrentStateOutput();
+    output.setStateModelDefinition(new StateModelDefinition(
+        StateModelConfigGenerator.generateConfigForMasterSlave()));
+    output.setResourceStateModelDef("TestDB", "MasterSlave");
+    output.setBucketSize("TestDB", 2);
+
+    Partition partition = new Partition("TestDB_0");
+    // more replicas than the initial capacity of a partition
+    Map<String, String> expected = new HashMap<String, String>();
+    for (int i = 0; i < 5; i++) {
+      String instance = "localhost_" + (12918 + i);
+      String state = i == 0 ? "MASTER" : "SLAVE";
+      output.setCurrentState("TestDB", partition, instance, state);
+      expected.put(instance, state);
+    }
+    output.setPendingState("TestDB", partition, "localhost_12919", "MASTER");
+    output.setPendingState("TestDB", partition, "localhost_12923", "ERROR");
+
+    Assert.assertEquals(output.getBucketSize("TestDB"), 2);
+    Assert.assertEquals(output.getCurrentStateMap("TestDB", partition), expected);
+    Assert.assertEquals(output.getCurrentState("TestDB", partition, "localhost_12918"), "MASTER");
+    Assert.assertEquals(output.getCurrentState("TestDB", partition, "localhost_12919"), "SLAVE");
+
+    Map<String, String> pendingStateMap = output.getPendingStateMap("TestDB", partition);
+    Assert.assertEquals(pendingStateMap.size(), 2);
+    Assert.assertEquals(pendingStateMap.get("localhost_12919"), "MASTER");
+    Assert.assertEquals(pendingStateMap.get("localhost_12923"), "ERROR");
+    Assert.assertFalse(pendingStateMap.containsKey("localhost_12918"));
+    Assert.assertNull(output.getPendingState("TestDB", partition, "localhost_12918"));
+
+    // overwrite a state
+    output.setCurrentState("TestDB", partition, "localhost_12918", "SLAVE");
+    Assert.assertEquals(output.getCurrentState("TestDB", partition, "localhost_12918"), "SLAVE");
+
+    // unknown resource, partition or instance
+    Assert.assertTrue(output.getCurrentStateMap("MyDB", partition).isEmpty());
+    Assert.assertTrue(output.getCurrentStateMap("TestDB", new Partition("TestDB_1")).isEmpty());
+    Assert.assertNull(output.getCurrentState("TestDB", partition, "localhost_12999"));
+    Assert.assertEquals(output.getBucketSize("MyDB"), 0);
+  }
+
+  @Test
+  public void testStateOrdinals() {
+    StateOrdinals ordinals =
+        new StateOrdinals(new StateModelDefinition(
+            StateModelConfigGenerator.generateConfigForMasterSlave()));
+    // states of the definition are numbered in priority order
+    Assert.assertEquals(ordinals.getOrdinal("MASTER"), 0);
+    Assert.assertEquals(ordinals.getOrdinal("SLAVE"), 1);
+    Assert.assertEquals(ordinals.getOrdinal("NOT_A_STATE"), StateOrdinals.NONE);
+
+    int size = ordinals.size();
+    byte ordinal = ordinals.getOrAddOrdinal("NOT_A_STATE");
+    Assert.assertEquals(ordinal, size);
+    Assert.assertEquals(ordinals.getState(ordinal), "NOT_A_STATE");
+    Assert.assertNull(ordinals.getState(StateOrdinals.NONE));
+  }
+}
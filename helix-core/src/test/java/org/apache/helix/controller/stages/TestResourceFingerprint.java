@@ -0,0 +1,59 @@
+package org.apache.helix.controller.stages;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.helix.model.IdealState;
+import org.apache.helix.model.LiveInstance;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestResourceFingerprint {
+  @Test
+  public void testEquals() {
+    IdealState idealState = new IdealState("TestDB");
+    LiveInstance liveInstance = new LiveInstance("localhost_12918");
+
+    ResourceFingerprint fingerprint1 = new ResourceFingerprint();
+    fingerprint1.addInput(idealState);
+    fingerprint1.addInput(liveInstance);
+    fingerprint1.addInput(null);
+
+    ResourceFingerprint fingerprint2 = new ResourceFingerprint();
+    fingerprint2.addInput(idealState);
+    fingerprint2.addInput(liveInstance);
+    fingerprint2.addInput(null);
+    Assert.assertEquals(fingerprint1, fingerprint2);
+    Assert.assertEquals(fingerprint1.hashCode(), fingerprint2.hashCode());
+
+    // equal content but different objects means the znode has been re-read
+    ResourceFingerprint fingerprint3 = new ResourceFingerprint();
+    fingerprint3.addInput(new IdealState("TestDB"));
+    fingerprint3.addInput(liveInstance);
+    fingerprint3.addInput(null);
+    Assert.assertFalse(fingerprint1.equals(fingerprint3));
+
+    // different order
+    ResourceFingerprint fingerprint4 = new ResourceFingerprint();
+    fingerprint4.addInput(liveInstance);
+    fingerprint4.addInput(idealState);
+    fingerprint4.addInput(null);
+    Assert.assertFalse(fingerprint1.equals(fingerprint4));
+  }
+}
@@ -0,0 +1,159 @@
+package org.apache.helix.controller.stages;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.helix.HelixProperty;
+import org.apache.helix.Mocks;
+import org.apache.helix.PropertyKey;
+import org.apache.helix.PropertyKey.Builder;
+import org.apache.helix.TestHelper;
+import org.apache.helix.controller.pipeline.Pipeline;
+import org.apache.helix.model.Message;
+import org.apache.helix.model.Partition;
+import org.apache.helix.model.Resource;
+import org.apache.helix.monitoring.LatencyHistogram;
+import org.apache.helix.monitoring.mbeans.HelixStageLatencyMonitor;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestTaskAssignmentStage extends BaseStageTest {
+  /**
+   * Accessor that records each createChildren batch and fails the writes of chosen messages
+   */
+  static class BatchAccessor extends Mocks.MockAccessor {
+    final List<List<PropertyKey>> _createChildrenBatches = new ArrayList<List<PropertyKey>>();
+    final Set<String> _failMsgIds = new HashSet<String>();
+
+    BatchAccessor(String clusterName) {
+      super(clusterName);
+    }
+
+    @Override
+    public <T extends HelixProperty> boolean[] createChildren(List<PropertyKey> keys,
+        List<T> children) {
+      _createChildrenBatches.add(new ArrayList<PropertyKey>(keys));
+      boolean[] success = new boolean[keys.size()];
+      for (int i = 0; i < keys.size(); i++) {
+        if (!_failMsgIds.contains(children.get(i).getId())) {
+          success[i] = setProperty(keys.get(i), children.get(i));
+        }
+      }
+      return success;
+    }
+  }
+
+  @Test
+  public void testBatchSendMessages() throws Exception {
+    String clusterName = "CLUSTER_" + TestHelper.getTestClassName();
+    BatchAccessor batchAccessor = new BatchAccessor(clusterName);
+    accessor = batchAccessor;
+    manager = new DummyClusterManager(clusterName, batchAccessor);
+    Builder keyBuilder = accessor.keyBuilder();
+
+    int nInstances = 2;
+    setupLiveInstances(nInstances);
+    Map<String, Resource> resourceMap = getResourceMap();
+    Resource resource = resourceMap.get("testResourceName");
+
+    MessageThrottleStageOutput throttleOutput = new MessageThrottleStageOutput();
+    List<Message> messages = new ArrayList<Message>();
+    int i = 0;
+    for (Partition partition : resource.getPartitions()) {
+      Message msg =
+          TestHelper.createMessage("msg_" + i, "OFFLINE", "SLAVE", "localhost_" + (i % nInstances),
+              resource.getResourceName(), partition.getPartitionName());
+      messages.add(msg);
+      List<Message> partitionMsgs = new ArrayList<Message>();
+      partitionMsgs.add(msg);
+      throttleOutput.addMessages(resource.getResourceName(), partition, partitionMsgs);
+      i++;
+    }
+    batchAccessor._failMsgIds.add(messages.get(0).getId());
+
+    TaskAssignmentStage stage = new TaskAssignmentStage();
+    HelixStageLatencyMonitor monitor =
+        new HelixStageLatencyMonitor(clusterName, stage.getStageName(),
+            LatencyHistogram.DEFAULT_WINDOW_MS);
+    Map<String, HelixStageLatencyMonitor> monitorMap =
+        new HashMap<String, HelixStageLatencyMonitor>();
+    monitorMap.put(stage.getStageName(), monitor);
+
+    event.addAttribute("helixmanager", manager);
+    event.addAttribute(AttributeName.RESOURCES.toString(), resourceMap);
+    event.addAttribute(AttributeName.MESSAGES_THROTTLE.toString(), throttleOutput);
+    event.addAttribute("HelixStageLatencyMonitorMap", monitorMap);
+
+    Pipeline pipeline = new Pipeline();
+    pipeline.addStage(new ReadClusterDataStage());
+    pipeline.addStage(stage);
+    pipeline.handle(event);
+
+    // all messages are written in one batch
+    Assert.assertEquals(batchAccessor._createChildrenBatches.size(), 1);
+    List<PropertyKey> batch = batchAccessor._createChildrenBatches.get(0);
+    Assert.assertEquals(batch.size(), messages.size());
+    for (int j = 0; j < messages.size(); j++) {
+      Message msg = messages.get(j);
+      Assert.assertEquals(batch.get(j).getPath(), keyBuilder.message(msg.getTgtName(), msg.getId())
+          .getPath());
+    }
+
+    // the failed message is not written, the others are
+    for (Message msg : messages) {
+      Message written = accessor.getProperty(keyBuilder.message(msg.getTgtName(), msg.getId()));
+      Assert.assertEquals(written == null, batchAccessor._failMsgIds.contains(msg.getId()));
+    }
+
+    // the pipeline records the stage latency and the stage records the batch write
+    Assert.assertEquals(monitor.getStgLatencyWindow().getCount(), 1);
+    Assert.assertEquals(monitor.getBatchWriteLatencyWindow().getCount(), 1);
+    Assert.assertEquals(monitor.getTotalWriteCounter(), messages.size());
+    Assert.assertEquals(monitor.getFailedWriteCounter(), 1);
+
+    MBeanServer beanServer = ManagementFactory.getPlatformMBeanServer();
+    ObjectName objectName =
+        new ObjectName("StageLatencyMonitor: cluster=" + clusterName + ",stage="
+            + stage.getStageName());
+    Assert.assertEquals(beanServer.getAttribute(objectName, "TotalWriteCounter"),
+        (long) messages.size());
+    Assert.assertEquals(beanServer.getAttribute(objectName, "FailedWriteCounter"), 1L);
+
+    // nothing to send, nothing written or recorded
+    event.addAttribute(AttributeName.MESSAGES_THROTTLE.toString(),
+        new MessageThrottleStageOutput());
+    pipeline.handle(event);
+    Assert.assertEquals(batchAccessor._createChildrenBatches.size(), 1);
+    Assert.assertEquals(monitor.getTotalWriteCounter(), messages.size());
+
+    monitor.reset();
+    Assert.assertFalse(beanServer.isRegistered(objectName));
+  }
+}
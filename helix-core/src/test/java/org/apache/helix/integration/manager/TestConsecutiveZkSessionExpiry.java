@@ -235,15 +235,20 @@ public class TestConsecutiveZkSessionExpiry extends ZkUnitTestBase {
     Assert.assertNotNull(leader);
     Assert.assertEquals(leader.getId(), "localhost_12919");
 
-    // check localhost_12918 has 2 handlers: message and data-accessor
+    // check localhost_12918 has no leader handlers, but keeps watching cluster data
     LOG.debug("handlers: " + TestHelper.printHandlers(distributedControllers[0]));
     List<CallbackHandler> handlers = distributedControllers[0].getHandlers();
-    Assert
-        .assertEquals(
-            handlers.size(),
-            2,
-            "Distributed controller should have 2 handlers (message and data-accessor) after lose leadership, but was "
-                + handlers.size());
+    boolean watchLiveInstances = false;
+    for (CallbackHandler handler : handlers) {
+      Assert.assertFalse(handler.getPath().equals(keyBuilder.controller().getPath()),
+          "Distributed controller should not listen on controller after lose leadership");
+      Assert.assertFalse(handler.getPath().equals(keyBuilder.controllerMessages().getPath()),
+          "Distributed controller should not listen on controller messages after lose leadership");
+      if (handler.getPath().equals(keyBuilder.liveInstances().getPath())) {
+        watchLiveInstances = true;
+      }
+    }
+    Assert.assertTrue(watchLiveInstances, "Standby controller should listen on live instances");
 
     // clean up
     distributedControllers[1].disconnect();
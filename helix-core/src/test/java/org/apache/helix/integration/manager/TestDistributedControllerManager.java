@@ -135,17 +135,22 @@ public class TestDistributedControllerManager extends ZkIntegrationTestBase {
     Assert.assertNotNull(leader);
     Assert.assertEquals(leader.getId(), newController.getInstanceName());
 
-    // check expired-controller has 2 handlers: message and data-accessor
+    // check expired-controller has no leader handlers, but keeps watching cluster data
     LOG.debug(expireController.getInstanceName() + " handlers: "
         + TestHelper.printHandlers(expireController));
 
     List<CallbackHandler> handlers = expireController.getHandlers();
-    Assert
-        .assertEquals(
-            handlers.size(),
-            2,
-            "Distributed controller should have 2 handlers (message and data-accessor) after lose leadership, but was "
-                + handlers.size());
+    boolean watchLiveInstances = false;
+    for (CallbackHandler handler : handlers) {
+      Assert.assertFalse(handler.getPath().equals(keyBuilder.controller().getPath()),
+          "Distributed controller should not listen on controller after lose leadership");
+      Assert.assertFalse(handler.getPath().equals(keyBuilder.controllerMessages().getPath()),
+          "Distributed controller should not listen on controller messages after lose leadership");
+      if (handler.getPath().equals(keyBuilder.liveInstances().getPath())) {
+        watchLiveInstances = true;
+      }
+    }
+    Assert.assertTrue(watchLiveInstances, "Standby controller should listen on live instances");
   }
 
   @Test
@@ -0,0 +1,154 @@
+package org.apache.helix.integration.manager;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.helix.PropertyKey;
+import org.apache.helix.TestHelper;
+import org.apache.helix.ZNRecord;
+import org.apache.helix.integration.ZkIntegrationTestBase;
+import org.apache.helix.manager.zk.CallbackHandler;
+import org.apache.helix.manager.zk.ZKHelixDataAccessor;
+import org.apache.helix.manager.zk.ZkBaseDataAccessor;
+import org.apache.helix.mock.participant.MockMSModelFactory;
+import org.apache.helix.model.LiveInstance;
+import org.apache.helix.tools.ClusterStateVerifier;
+import org.apache.helix.tools.ClusterStateVerifier.BestPossAndExtViewZkVerifier;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestWarmStandbyController extends ZkIntegrationTestBase {
+
+  @Test
+  public void testStandbyTakesOverWithWarmCache() throws Exception {
+    String className = TestHelper.getTestClassName();
+    String methodName = TestHelper.getTestMethodName();
+    String clusterName = className + "_" + methodName;
+    int n = 2;
+
+    System.out.println("START " + clusterName + " at " + new Date(System.currentTimeMillis()));
+
+    TestHelper.setupCluster(clusterName, ZK_ADDR, 12918, // participant port
+        "localhost", // participant name prefix
+        "TestDB", // resource name prefix
+        1, // resources
+        4, // partitions per resource
+        n, // number of nodes
+        2, // replicas
+        "MasterSlave", true); // do rebalance
+
+    ClusterDistributedController[] distributedControllers = new ClusterDistributedController[n];
+    for (int i = 0; i < n; i++) {
+      String controllerName = "localhost_" + (12918 + i);
+      distributedControllers[i] =
+          new ClusterDistributedController(ZK_ADDR, clusterName, controllerName);
+      distributedControllers[i].getStateMachineEngine().registerStateModelFactory("MasterSlave",
+          new MockMSModelFactory());
+      distributedControllers[i].connect();
+    }
+
+    boolean result =
+        ClusterStateVerifier.verifyByZkCallback(new BestPossAndExtViewZkVerifier(ZK_ADDR,
+            clusterName));
+    Assert.assertTrue(result);
+
+    ZKHelixDataAccessor accessor =
+        new ZKHelixDataAccessor(clusterName, new ZkBaseDataAccessor<ZNRecord>(_gZkClient));
+    PropertyKey.Builder keyBuilder = accessor.keyBuilder();
+    LiveInstance leader = accessor.getProperty(keyBuilder.controllerLeader());
+    Assert.assertNotNull(leader);
+    int leaderIdx = leader.getId().equals(distributedControllers[0].getInstanceName()) ? 0 : 1;
+    ClusterDistributedController standby = distributedControllers[1 - leaderIdx];
+
+    // the standby already watches the cluster data the controller pipelines read
+    String[] standbyPaths = new String[] {
+        keyBuilder.idealStates().getPath(), keyBuilder.liveInstances().getPath(),
+        keyBuilder.instanceConfigs().getPath()
+    };
+    Map<String, CallbackHandler> standbyHandlers = getHandlers(standby, standbyPaths);
+    Assert.assertEquals(standbyHandlers.size(), standbyPaths.length,
+        "Standby controller should watch: " + standbyHandlers.keySet());
+
+    // kill the leader, the standby takes over and rebalances the partitions it led
+    distributedControllers[leaderIdx].disconnect();
+    result =
+        ClusterStateVerifier.verifyByZkCallback(new BestPossAndExtViewZkVerifier(ZK_ADDR,
+            clusterName));
+    Assert.assertTrue(result);
+    leader = accessor.getProperty(keyBuilder.controllerLeader());
+    Assert.assertNotNull(leader);
+    Assert.assertEquals(leader.getId(), standby.getInstanceName());
+
+    // the new leader reuses the standby handlers, so no new INIT callback was sent
+    Map<String, CallbackHandler> leaderHandlers = getHandlers(standby, standbyPaths);
+    for (String path : standbyPaths) {
+      Assert.assertSame(leaderHandlers.get(path), standbyHandlers.get(path),
+          "Handler on " + path + " should be reused after taking leadership");
+    }
+
+    // the first leader run reports the leadership acquisition latency
+    MBeanServer beanServer = ManagementFactory.getPlatformMBeanServer();
+    ObjectName clusterStatus = new ObjectName("ClusterStatus: cluster=" + clusterName);
+    long latency = 0;
+    for (int i = 0; i < 100 && latency <= 0; i++) {
+      if (beanServer.isRegistered(clusterStatus)) {
+        latency =
+            (Long) beanServer.getAttribute(clusterStatus, "LeadershipAcquisitionLatencyGauge");
+      }
+      if (latency <= 0) {
+        Thread.sleep(100);
+      }
+    }
+    Assert.assertTrue(latency > 0, "Leadership acquisition latency was not reported");
+
+    // clean up
+    standby.disconnect();
+    Assert.assertNull(accessor.getProperty(keyBuilder.controllerLeader()));
+
+    System.out.println("END " + clusterName + " at " + new Date(System.currentTimeMillis()));
+  }
+
+  /**
+   * @return the handler on each of the given paths, checking there is at most one per path
+   */
+  private static Map<String, CallbackHandler> getHandlers(ClusterDistributedController controller,
+      String[] paths) {
+    Map<String, CallbackHandler> handlers = new HashMap<String, CallbackHandler>();
+    List<CallbackHandler> allHandlers = controller.getHandlers();
+    synchronized (allHandlers) {
+      for (CallbackHandler handler : allHandlers) {
+        for (String path : paths) {
+          if (handler.getPath().equals(path)) {
+            Assert.assertNull(handlers.put(path, handler), "Duplicate handlers on " + path);
+          }
+        }
+      }
+    }
+    return handlers;
+  }
+}
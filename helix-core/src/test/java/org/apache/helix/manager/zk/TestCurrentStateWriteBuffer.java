@@ -0,0 +1,138 @@
+package org.apache.helix.manager.zk;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.helix.AccessOption;
+import org.apache.helix.BaseDataAccessor;
+import org.apache.helix.TestHelper;
+import org.apache.helix.ZNRecord;
+import org.apache.helix.ZkUnitTestBase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestCurrentStateWriteBuffer extends ZkUnitTestBase {
+
+  @Test
+  public void testCoalescedWrites() throws Exception {
+    String className = TestHelper.getTestClassName();
+    String methodName = TestHelper.getTestMethodName();
+    String testName = className + "_" + methodName;
+
+    System.out.println("START " + testName + " at " + new Date(System.currentTimeMillis()));
+
+    BaseDataAccessor<ZNRecord> accessor = new ZkBaseDataAccessor<ZNRecord>(_gZkClient);
+    final CurrentStateWriteBuffer buffer = new CurrentStateWriteBuffer(accessor, 50, 1000);
+    final String[] paths = new String[] {
+        String.format("/%s/%s", testName, "TestDB0"),
+        String.format("/%s/%s", testName, "TestDB1")
+    };
+
+    // 200 partitions moving from OFFLINE to SLAVE on 20 threads
+    ExecutorService pool = Executors.newFixedThreadPool(20);
+    List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+    for (int i = 0; i < 200; i++) {
+      final String path = paths[i % 2];
+      final String partition = "TestDB" + (i % 2) + "_" + (i / 2);
+      futures.add(pool.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          ZNRecord delta = new ZNRecord(path.substring(path.lastIndexOf('/') + 1));
+          delta.setMapField(partition, new TreeMap<String, String>());
+          delta.getMapField(partition).put("CURRENT_STATE", "SLAVE");
+          return buffer.commit(AccessOption.PERSISTENT, path, delta);
+        }
+      }));
+    }
+    for (Future<Boolean> future : futures) {
+      Assert.assertTrue(future.get());
+    }
+    pool.shutdown();
+
+    for (String path : paths) {
+      ZNRecord record = _gZkClient.readData(path);
+      Assert.assertEquals(record.getMapFields().size(), 100);
+      for (String partition : record.getMapFields().keySet()) {
+        Assert.assertEquals(record.getMapField(partition).get("CURRENT_STATE"), "SLAVE");
+      }
+    }
+    Assert.assertEquals(buffer.getCommitCount(), 200);
+    Assert.assertTrue(buffer.getWriteCount() < 200, "writes: " + buffer.getWriteCount());
+
+    // updates of a partition are applied in commit order
+    for (String state : new String[] {
+        "MASTER", "SLAVE", "OFFLINE"
+    }) {
+      ZNRecord delta = new ZNRecord("TestDB0");
+      delta.setMapField("TestDB0_0", new TreeMap<String, String>());
+      delta.getMapField("TestDB0_0").put("CURRENT_STATE", state);
+      Assert.assertTrue(buffer.commit(AccessOption.PERSISTENT, paths[0], delta));
+    }
+    ZNRecord record = _gZkClient.readData(paths[0]);
+    Assert.assertEquals(record.getMapField("TestDB0_0").get("CURRENT_STATE"), "OFFLINE");
+
+    System.out.println("END " + testName + " at " + new Date(System.currentTimeMillis()));
+  }
+
+  @Test
+  public void testGroupCommit() throws Exception {
+    String className = TestHelper.getTestClassName();
+    String methodName = TestHelper.getTestMethodName();
+    String testName = className + "_" + methodName;
+
+    System.out.println("START " + testName + " at " + new Date(System.currentTimeMillis()));
+
+    BaseDataAccessor<ZNRecord> accessor = new ZkBaseDataAccessor<ZNRecord>(_gZkClient);
+    // without a window, an update is written as soon as no other write is in progress
+    CurrentStateWriteBuffer buffer = new CurrentStateWriteBuffer(accessor, 0, 1000);
+    String path = String.format("/%s/%s", testName, "TestDB0");
+
+    ZNRecord delta = new ZNRecord("TestDB0");
+    delta.setMapField("TestDB0_0", new TreeMap<String, String>());
+    delta.getMapField("TestDB0_0").put("CURRENT_STATE", "SLAVE");
+    Assert.assertTrue(buffer.commit(AccessOption.PERSISTENT, path, delta));
+    Assert.assertEquals(buffer.getWriteCount(), 1);
+
+    // an interrupted commit still waits for its update and reports the outcome
+    delta = new ZNRecord("TestDB0");
+    delta.setMapField("TestDB0_0", new TreeMap<String, String>());
+    delta.getMapField("TestDB0_0").put("CURRENT_STATE", "MASTER");
+    Thread.currentThread().interrupt();
+    try {
+      Assert.assertTrue(buffer.commit(AccessOption.PERSISTENT, path, delta));
+      Assert.assertTrue(Thread.currentThread().isInterrupted());
+    } finally {
+      Thread.interrupted();
+    }
+    ZNRecord record = _gZkClient.readData(path);
+    Assert.assertEquals(record.getMapField("TestDB0_0").get("CURRENT_STATE"), "MASTER");
+    Assert.assertEquals(buffer.getWriteCount(), 2);
+
+    System.out.println("END " + testName + " at " + new Date(System.currentTimeMillis()));
+  }
+}
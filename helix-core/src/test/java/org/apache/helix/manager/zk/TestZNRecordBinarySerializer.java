@@ -0,0 +1,101 @@
+package org.apache.helix.manager.zk;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.helix.ZNRecord;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestZNRecordBinarySerializer {
+  private static ZNRecord createRecord() {
+    ZNRecord record = new ZNRecord("TestDB");
+    record.setSimpleField("NUM_PARTITIONS", "2");
+    record.setListField("TestDB_0", Arrays.asList("localhost_12918", "localhost_12919"));
+    record.setListField("TestDB_1", new ArrayList<String>());
+    Map<String, String> map = new HashMap<String, String>();
+    map.put("localhost_12918", "MASTER");
+    map.put("localhost_12919", "SLAVE");
+    record.setMapField("TestDB_0", map);
+    record.setMapField("TestDB_1", new HashMap<String, String>());
+    record.setRawPayload(new byte[] {
+        1, 2, 3
+    });
+    return record;
+  }
+
+  @Test
+  public void testSerializeDeserialize() {
+    ZNRecord record = createRecord();
+    record.setSimpleField("NULL_VALUE", null);
+    ZNRecordBinarySerializer serializer = new ZNRecordBinarySerializer();
+    byte[] bytes = serializer.serialize(record);
+    Assert.assertTrue(ZNRecordBinarySerializer.isBinary(bytes));
+
+    ZNRecord result = (ZNRecord) serializer.deserialize(bytes);
+    Assert.assertEquals(result.getId(), record.getId());
+    Assert.assertEquals(result, record);
+    Assert.assertNull(result.getSimpleField("NULL_VALUE"));
+    Assert.assertEquals(result.getRawPayload(), record.getRawPayload());
+
+    // binary is smaller than json
+    Assert.assertTrue(bytes.length < new ZNRecordSerializer().serialize(record).length);
+  }
+
+  @Test
+  public void testCompatibleWithJson() {
+    ZNRecord record = createRecord();
+    ZNRecordBinarySerializer binarySerializer = new ZNRecordBinarySerializer();
+    ZNRecordStreamingSerializer streamingSerializer = new ZNRecordStreamingSerializer();
+    ZNRecordSerializer jsonSerializer = new ZNRecordSerializer(false);
+
+    // json serializers read binary data
+    byte[] bytes = binarySerializer.serialize(record);
+    Assert.assertEquals(streamingSerializer.deserialize(bytes), record);
+    Assert.assertEquals(jsonSerializer.deserialize(bytes), record);
+
+    // binary serializer reads json data
+    ZNRecord result = (ZNRecord) binarySerializer.deserialize(streamingSerializer.serialize(record));
+    Assert.assertEquals(result, record);
+    result = (ZNRecord) binarySerializer.deserialize(jsonSerializer.serialize(record));
+    Assert.assertEquals(result, record);
+  }
+
+  @Test
+  public void testVarInt() {
+    int[] values = new int[] {
+        0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE
+    };
+    for (int value : values) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ZNRecordBinarySerializer.writeVarInt(out, value);
+      int[] pos = new int[] {
+        0
+      };
+      Assert.assertEquals(ZNRecordBinarySerializer.readVarInt(out.toByteArray(), pos), value);
+      Assert.assertEquals(pos[0], out.size());
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package org.apache.helix.manager.zk;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.TreeMap;
+
+import org.apache.helix.ZNRecord;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestZNRecordStreamingSerializer {
+  private static ZNRecord createRecord(int numPartitions) {
+    ZNRecord record = new ZNRecord("TestDB");
+    for (int i = 0; i < numPartitions; i++) {
+      String partition = "TestDB_" + i;
+      record.setMapField(partition, new TreeMap<String, String>());
+      record.getMapField(partition).put("localhost_12918", "MASTER");
+      record.getMapField(partition).put("localhost_12919", "SLAVE");
+    }
+    return record;
+  }
+
+  @Test
+  public void testCompressAboveThreshold() {
+    ZNRecord record = createRecord(1000);
+    ZNRecordStreamingSerializer uncompressed = new ZNRecordStreamingSerializer(Integer.MAX_VALUE);
+    ZNRecordStreamingSerializer compressed = new ZNRecordStreamingSerializer(1024);
+
+    byte[] jsonBytes = uncompressed.serialize(record);
+    Assert.assertFalse(ZNRecordStreamingSerializer.isCompressed(jsonBytes));
+    byte[] gzipBytes = compressed.serialize(record);
+    Assert.assertTrue(ZNRecordStreamingSerializer.isCompressed(gzipBytes));
+    Assert.assertTrue(gzipBytes.length < jsonBytes.length);
+
+    // small record is not compressed
+    Assert.assertFalse(ZNRecordStreamingSerializer.isCompressed(compressed
+        .serialize(createRecord(1))));
+
+    // compressed and uncompressed records are read by all serializers
+    Assert.assertEquals(uncompressed.deserialize(gzipBytes), record);
+    Assert.assertEquals(compressed.deserialize(jsonBytes), record);
+    Assert.assertEquals(new ZNRecordSerializer().deserialize(gzipBytes), record);
+    Assert.assertEquals(new ZNRecordBinarySerializer().deserialize(gzipBytes), record);
+  }
+
+  @Test
+  public void testCompressLargeRecord() {
+    // json of this record is larger than the size limit, but compressed it fits
+    ZNRecord record = createRecord(20000);
+    ZNRecordStreamingSerializer serializer = new ZNRecordStreamingSerializer();
+    byte[] bytes = serializer.serialize(record);
+    Assert.assertTrue(ZNRecordStreamingSerializer.isCompressed(bytes));
+    Assert.assertTrue(bytes.length < ZNRecord.SIZE_LIMIT);
+    Assert.assertEquals(serializer.deserialize(bytes), record);
+  }
+}
@@ -123,6 +123,54 @@ public class TestZkBaseDataAccessor extends ZkUnitTestBase {
     System.out.println("END " + testName + " at " + new Date(System.currentTimeMillis()));
   }
 
+  @Test
+  public void testAsyncSetWithVersion() {
+    String className = TestHelper.getTestClassName();
+    String methodName = TestHelper.getTestMethodName();
+    String testName = className + "_" + methodName;
+
+    System.out.println("START " + testName + " at " + new Date(System.currentTimeMillis()));
+
+    BaseDataAccessor<ZNRecord> accessor = new ZkBaseDataAccessor<ZNRecord>(_gZkClient);
+    List<String> paths = new ArrayList<String>();
+    List<ZNRecord> records = new ArrayList<ZNRecord>();
+    for (int i = 0; i < 2; i++) {
+      String msgId = "msg_" + i;
+      paths.add(String.format("/%s/%s", testName, msgId));
+      records.add(new ZNRecord(msgId));
+    }
+
+    // set with expected version -1 creates the nodes
+    List<Stat> stats = new ArrayList<Stat>();
+    boolean[] success =
+        accessor.setChildren(paths, records, new int[] {
+            -1, -1
+        }, stats, AccessOption.PERSISTENT);
+    Assert.assertTrue(success[0]);
+    Assert.assertTrue(success[1]);
+    Assert.assertEquals(stats.get(0).getVersion(), 0);
+
+    // set with matching version succeeds, with mismatching version fails
+    success = accessor.setChildren(paths, records, new int[] {
+        0, 1
+    }, stats, AccessOption.PERSISTENT);
+    Assert.assertTrue(success[0]);
+    Assert.assertFalse(success[1]);
+    Assert.assertEquals(stats.get(0).getVersion(), 1);
+    Assert.assertNull(stats.get(1));
+    Assert.assertEquals(accessor.getStat(paths.get(1), 0).getVersion(), 0);
+
+    // set with expected version other than -1 does not create the node
+    accessor.remove(paths.get(1), 0);
+    success = accessor.setChildren(paths.subList(1, 2), records.subList(1, 2), new int[] {
+      0
+    }, null, AccessOption.PERSISTENT);
+    Assert.assertFalse(success[0]);
+    Assert.assertFalse(accessor.exists(paths.get(1), 0));
+
+    System.out.println("END " + testName + " at " + new Date(System.currentTimeMillis()));
+  }
+
   @Test
   public void testSyncDoSet() {
     String className = TestHelper.getTestClassName();
@@ -23,8 +23,12 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.helix.messaging.AsyncCallback;
+import org.apache.helix.messaging.AsyncReplyFuture;
 import org.apache.helix.model.Message;
 import org.testng.AssertJUnit;
 import org.testng.annotations.Test;
@@ -108,6 +112,106 @@ public class TestAsyncCallback {
     System.out.println("END TestAsyncCallback at " + new Date(System.currentTimeMillis()));
   }
 
+  @Test()
+  public void testAsyncReplyFuture() throws Exception {
+    int nMsgs = 3;
+    List<Message> messageSent = new ArrayList<Message>();
+    for (int i = 0; i < nMsgs; i++) {
+      messageSent.add(new Message("Test", UUID.randomUUID().toString()));
+    }
+
+    // completes once all messages are replied
+    AsyncReplyFuture future = new AsyncReplyFuture();
+    final CountDownLatch listenerCalled = new CountDownLatch(1);
+    future.addListener(new Runnable() {
+      @Override
+      public void run() {
+        listenerCalled.countDown();
+      }
+    }, Executors.newSingleThreadExecutor());
+    AsyncCallback callback = future.getCallback();
+    callback.setMessagesSent(messageSent);
+    callback.setTimeout(10000);
+    callback.startTimer();
+    for (int i = 0; i < nMsgs; i++) {
+      AssertJUnit.assertFalse(future.isDone());
+      callback.onReply(new Message("TestReply", UUID.randomUUID().toString()));
+    }
+    AssertJUnit.assertEquals(future.get(1, TimeUnit.SECONDS).size(), nMsgs);
+    AssertJUnit.assertFalse(future.isTimedOut());
+    AssertJUnit.assertTrue(listenerCalled.await(1, TimeUnit.SECONDS));
+
+    // completes with the replies received so far on timeout
+    future = new AsyncReplyFuture();
+    callback = future.getCallback();
+    callback.setMessagesSent(messageSent);
+    callback.setTimeout(200);
+    callback.startTimer();
+    callback.onReply(new Message("TestReply", UUID.randomUUID().toString()));
+    AssertJUnit.assertEquals(future.get(5, TimeUnit.SECONDS).size(), 1);
+    AssertJUnit.assertTrue(future.isTimedOut());
+    AssertJUnit.assertTrue(callback.isTimedOut());
+  }
+
+  @Test()
+  public void testSlowTimeOutHandler() throws Exception {
+    List<Message> messageSent = new ArrayList<Message>();
+    messageSent.add(new Message("Test", UUID.randomUUID().toString()));
+
+    // the first callback blocks in onTimeOut until released
+    final CountDownLatch slowEntered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AsyncCallback slowCallback = new AsyncCallback() {
+      @Override
+      public void onTimeOut() {
+        slowEntered.countDown();
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      @Override
+      public void onReplyMessage(Message message) {
+      }
+    };
+    slowCallback.setMessagesSent(messageSent);
+    slowCallback.setTimeout(100);
+    slowCallback.startTimer();
+    AssertJUnit.assertTrue(slowEntered.await(5, TimeUnit.SECONDS));
+
+    // other timeouts still fire while it is blocked
+    final CountDownLatch otherTimedOut = new CountDownLatch(1);
+    AsyncCallback otherCallback = new AsyncCallback() {
+      @Override
+      public void onTimeOut() {
+        otherTimedOut.countDown();
+      }
+
+      @Override
+      public void onReplyMessage(Message message) {
+      }
+    };
+    otherCallback.setMessagesSent(messageSent);
+    otherCallback.setTimeout(100);
+    otherCallback.startTimer();
+    AssertJUnit.assertTrue(otherTimedOut.await(5, TimeUnit.SECONDS));
+
+    // and the callback lock is not held while onTimeOut runs
+    Thread replier = new Thread() {
+      @Override
+      public void run() {
+        slowCallback.onReply(new Message("TestReply", UUID.randomUUID().toString()));
+      }
+    };
+    replier.start();
+    replier.join(5000);
+    AssertJUnit.assertFalse(replier.isAlive());
+    AssertJUnit.assertTrue(slowCallback.isTimedOut());
+    release.countDown();
+  }
+
   void sleep(int time) {
     try {
       Thread.sleep(time);
@@ -0,0 +1,152 @@
+package org.apache.helix.messaging;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.helix.Criteria;
+import org.apache.helix.HelixManager;
+import org.apache.helix.InstanceType;
+import org.apache.helix.Mocks;
+import org.apache.helix.model.ExternalView;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestCriteriaIndex {
+  private static List<ExternalView> createExternalViews() {
+    List<ExternalView> views = new ArrayList<ExternalView>();
+    for (String db : new String[] {
+        "TestDB", "MyDB"
+    }) {
+      ExternalView view = new ExternalView(db);
+      for (int p = 0; p < 4; p++) {
+        String partition = db + "_" + p;
+        view.setState(partition, "localhost_" + (12918 + p % 3), "MASTER");
+        view.setState(partition, "localhost_" + (12918 + (p + 1) % 3), "SLAVE");
+      }
+      views.add(view);
+    }
+    return views;
+  }
+
+  private static Criteria createCriteria(String instance, String resource, String partition,
+      String state) {
+    Criteria criteria = new Criteria();
+    criteria.setRecipientInstanceType(InstanceType.PARTICIPANT);
+    criteria.setInstanceName(instance);
+    criteria.setResource(resource);
+    criteria.setPartition(partition);
+    criteria.setPartitionState(state);
+    return criteria;
+  }
+
+  @Test
+  public void testSelect() {
+    CriteriaIndex index = CriteriaIndex.build(createExternalViews(), null);
+    Set<String> liveInstances =
+        new HashSet<String>(Arrays.asList("localhost_12918", "localhost_12919", "localhost_12920"));
+
+    // literal lookup
+    List<Map<String, String>> rows =
+        index.select(createCriteria("%", "TestDB", "TestDB_1", "MASTER"), liveInstances);
+    Assert.assertEquals(rows.size(), 1);
+    Assert.assertEquals(rows.get(0).get(CriteriaIndex.INSTANCE_NAME), "localhost_12919");
+    Assert.assertEquals(rows.get(0).get(CriteriaIndex.RESOURCE_NAME), "TestDB");
+    Assert.assertEquals(rows.get(0).get(CriteriaIndex.PARTITION_NAME), "TestDB_1");
+    Assert.assertEquals(rows.get(0).get(CriteriaIndex.PARTITION_STATE), "MASTER");
+
+    // wildcards
+    rows = index.select(createCriteria("%", "%DB", "%", "SLAVE"), liveInstances);
+    Assert.assertEquals(rows.size(), 8);
+    rows = index.select(createCriteria("localhost_1291%", "Test%", "TestDB_%", ""), liveInstances);
+    Assert.assertEquals(rows.size(), 6);
+
+    // fields not in the criteria are returned empty and rows are distinct
+    rows = index.select(createCriteria("localhost_12918", "", "", ""), liveInstances);
+    Assert.assertEquals(rows.size(), 1);
+    Assert.assertEquals(rows.get(0).get(CriteriaIndex.INSTANCE_NAME), "localhost_12918");
+    Assert.assertEquals(rows.get(0).get(CriteriaIndex.RESOURCE_NAME), "");
+    Assert.assertEquals(rows.get(0).get(CriteriaIndex.PARTITION_NAME), "");
+    Assert.assertEquals(rows.get(0).get(CriteriaIndex.PARTITION_STATE), "");
+
+    // only live instances are selected
+    liveInstances.remove("localhost_12919");
+    rows = index.select(createCriteria("%", "TestDB", "TestDB_1", ""), liveInstances);
+    Assert.assertEquals(rows.size(), 1);
+    Assert.assertEquals(rows.get(0).get(CriteriaIndex.INSTANCE_NAME), "localhost_12920");
+
+    rows = index.select(createCriteria("%", "NoSuchDB", "%", ""), liveInstances);
+    Assert.assertTrue(rows.isEmpty());
+  }
+
+  @Test
+  public void testMatcher() {
+    CriteriaIndex.Matcher matcher = new CriteriaIndex.Matcher("a%b.c%");
+    Assert.assertTrue(matcher.matches("ab.c"));
+    Assert.assertTrue(matcher.matches("axyzb.cdef"));
+    Assert.assertFalse(matcher.matches("axyzbxc"));
+    Assert.assertFalse(matcher.matches("Ab.c"));
+
+    matcher = new CriteriaIndex.Matcher("TestDB_1");
+    Assert.assertTrue(matcher.matches("TestDB_1"));
+    Assert.assertFalse(matcher.matches("TestDBx1"));
+  }
+
+  @Test
+  public void testWatchEnabledByInstanceType() {
+    String watchEnabled = System.getProperty(CriteriaEvaluator.WATCH_ENABLED);
+    try {
+      System.clearProperty(CriteriaEvaluator.WATCH_ENABLED);
+      CriteriaEvaluator evaluator = new CriteriaEvaluator();
+      Assert.assertTrue(evaluator.isWatchEnabled(createManager(InstanceType.CONTROLLER)));
+      Assert.assertTrue(evaluator.isWatchEnabled(createManager(InstanceType.SPECTATOR)));
+      Assert.assertFalse(evaluator.isWatchEnabled(createManager(InstanceType.PARTICIPANT)));
+      Assert.assertFalse(evaluator.isWatchEnabled(null));
+
+      // an explicit setting applies to every manager
+      System.setProperty(CriteriaEvaluator.WATCH_ENABLED, "true");
+      evaluator = new CriteriaEvaluator();
+      Assert.assertTrue(evaluator.isWatchEnabled(createManager(InstanceType.PARTICIPANT)));
+      System.setProperty(CriteriaEvaluator.WATCH_ENABLED, "false");
+      evaluator = new CriteriaEvaluator();
+      Assert.assertFalse(evaluator.isWatchEnabled(createManager(InstanceType.SPECTATOR)));
+    } finally {
+      if (watchEnabled == null) {
+        System.clearProperty(CriteriaEvaluator.WATCH_ENABLED);
+      } else {
+        System.setProperty(CriteriaEvaluator.WATCH_ENABLED, watchEnabled);
+      }
+    }
+  }
+
+  private static HelixManager createManager(final InstanceType type) {
+    return new Mocks.MockManager() {
+      @Override
+      public InstanceType getInstanceType() {
+        return type;
+      }
+    };
+  }
+}
@@ -25,6 +25,7 @@ import java.util.UUID;
 
 import org.apache.helix.Criteria;
 import org.apache.helix.HelixDataAccessor;
+import org.apache.helix.HelixException;
 import org.apache.helix.HelixManager;
 import org.apache.helix.HelixProperty;
 import org.apache.helix.InstanceType;
@@ -40,12 +41,16 @@ import org.apache.helix.messaging.handling.MessageHandlerFactory;
 import org.apache.helix.model.ExternalView;
 import org.apache.helix.model.LiveInstance.LiveInstanceProperty;
 import org.apache.helix.model.Message;
+import org.apache.helix.model.Message.MessageType;
 import org.testng.AssertJUnit;
 import org.testng.annotations.Test;
 
 public class TestDefaultMessagingService {
   class MockHelixManager extends Mocks.MockManager {
     class MockDataAccessor extends Mocks.MockAccessor {
+      final List<List<PropertyKey>> _setChildrenBatches = new ArrayList<List<PropertyKey>>();
+      // number of writes to fail at the start of the next batch
+      int _failWrites = 0;
 
       @Override
       public <T extends HelixProperty> T getProperty(PropertyKey key) {
@@ -72,9 +77,21 @@ public class TestDefaultMessagingService {
 
         return result;
       }
+
+      @Override
+      public <T extends HelixProperty> boolean[] setChildren(List<PropertyKey> keys,
+          List<T> children) {
+        _setChildrenBatches.add(new ArrayList<PropertyKey>(keys));
+        boolean[] success = new boolean[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+          success[i] = i >= _failWrites;
+        }
+        _failWrites = 0;
+        return success;
+      }
     }
 
-    HelixDataAccessor _accessor = new MockDataAccessor();
+    MockDataAccessor _accessor = new MockDataAccessor();
     ZNRecord _externalView;
     List<String> _instances;
     List<ZNRecord> _liveInstances;
@@ -210,4 +227,47 @@ public class TestDefaultMessagingService {
     recipientCriteria.setPartition("%");
     AssertJUnit.assertEquals(1, svc.send(recipientCriteria, template));
   }
+
+  @Test()
+  public void testBatchSend() {
+    MockHelixManager manager = new MockHelixManager();
+    DefaultMessagingService svc = new DefaultMessagingService(manager);
+    TestMessageHandlerFactory factory = new TestMessageHandlerFactory();
+    svc.registerMessageHandlerFactory(factory.getMessageType(), factory);
+    List<List<PropertyKey>> batches = manager._accessor._setChildrenBatches;
+
+    Criteria recipientCriteria = new Criteria();
+    recipientCriteria.setRecipientInstanceType(InstanceType.PARTICIPANT);
+    recipientCriteria.setSelfExcluded(false);
+    recipientCriteria.setInstanceName("%");
+    recipientCriteria.setResource("DB");
+    recipientCriteria.setPartition("%");
+
+    Message template = new Message(factory.getMessageType(), UUID.randomUUID().toString());
+    AssertJUnit.assertEquals(200, svc.send(recipientCriteria, template));
+
+    // all messages go out in one batch
+    AssertJUnit.assertEquals(1, batches.size());
+    List<PropertyKey> batch = batches.get(0);
+    AssertJUnit.assertEquals(200, batch.size());
+    for (PropertyKey key : batch) {
+      AssertJUnit.assertEquals(PropertyType.MESSAGES, key.getType());
+    }
+
+    // a failed write does not stop the others in the batch
+    manager._accessor._failWrites = 1;
+    AssertJUnit.assertEquals(200, svc.send(recipientCriteria, template));
+    AssertJUnit.assertEquals(2, batches.size());
+    AssertJUnit.assertEquals(200, batches.get(1).size());
+
+    // an invalid message fails the send before anything is written
+    Message invalid = new Message(MessageType.STATE_TRANSITION, UUID.randomUUID().toString());
+    try {
+      svc.send(recipientCriteria, invalid);
+      AssertJUnit.fail("Should fail to send an invalid state transition message");
+    } catch (HelixException e) {
+      // OK
+    }
+    AssertJUnit.assertEquals(2, batches.size());
+  }
 }
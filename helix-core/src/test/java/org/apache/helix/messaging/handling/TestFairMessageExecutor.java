@@ -0,0 +1,143 @@
+package org.apache.helix.messaging.handling;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.helix.NotificationContext;
+import org.apache.helix.model.Message;
+import org.apache.helix.model.Message.MessageType;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestFairMessageExecutor {
+  static class TestTask implements MessageTask {
+    final Message _message;
+    final int _seq;
+    final long _sleepMs;
+    final Map<String, List<Integer>> _executed;
+    final Map<String, AtomicInteger> _running;
+    final Map<String, Integer> _maxRunning;
+
+    TestTask(String resource, String partition, int seq, long sleepMs,
+        Map<String, List<Integer>> executed, Map<String, AtomicInteger> running,
+        Map<String, Integer> maxRunning) {
+      _message = new Message(MessageType.STATE_TRANSITION, resource + "_" + partition + "_" + seq);
+      _message.setResourceName(resource);
+      _message.setPartitionName(partition);
+      _seq = seq;
+      _sleepMs = sleepMs;
+      _executed = executed;
+      _running = running;
+      _maxRunning = maxRunning;
+    }
+
+    @Override
+    public HelixTaskResult call() throws Exception {
+      String resource = _message.getResourceName();
+      int running = _running.get(resource).incrementAndGet();
+      synchronized (_maxRunning) {
+        Integer max = _maxRunning.get(resource);
+        if (max == null || running > max) {
+          _maxRunning.put(resource, running);
+        }
+      }
+      _executed.get(_message.getPartitionName()).add(_seq);
+      Thread.sleep(_sleepMs);
+      _running.get(resource).decrementAndGet();
+
+      HelixTaskResult result = new HelixTaskResult();
+      result.setSuccess(true);
+      return result;
+    }
+
+    @Override
+    public String getTaskId() {
+      return _message.getId();
+    }
+
+    @Override
+    public Message getMessage() {
+      return _message;
+    }
+
+    @Override
+    public NotificationContext getNotificationContext() {
+      return null;
+    }
+
+    @Override
+    public void onTimeout() {
+    }
+  }
+
+  @Test
+  public void testPartitionOrderAndResourceCap() throws Exception {
+    FairMessageExecutor executor = new FairMessageExecutor(8);
+    executor.setResourceConfig("BigDB", 2, 1);
+
+    Map<String, List<Integer>> executed = new ConcurrentHashMap<String, List<Integer>>();
+    Map<String, AtomicInteger> running = new ConcurrentHashMap<String, AtomicInteger>();
+    Map<String, Integer> maxRunning = new ConcurrentHashMap<String, Integer>();
+    running.put("BigDB", new AtomicInteger(0));
+    running.put("SmallDB", new AtomicInteger(0));
+
+    List<Future<HelixTaskResult>> futures = new ArrayList<Future<HelixTaskResult>>();
+    for (int p = 0; p < 4; p++) {
+      executed.put("BigDB_" + p, Collections.synchronizedList(new ArrayList<Integer>()));
+      for (int i = 0; i < 5; i++) {
+        futures.add(executor.submit(new TestTask("BigDB", "BigDB_" + p, i, 20, executed, running,
+            maxRunning)));
+      }
+    }
+    executed.put("SmallDB_0", Collections.synchronizedList(new ArrayList<Integer>()));
+    for (int i = 0; i < 5; i++) {
+      futures.add(executor.submit(new TestTask("SmallDB", "SmallDB_0", i, 1, executed, running,
+          maxRunning)));
+    }
+
+    for (Future<HelixTaskResult> future : futures) {
+      Assert.assertTrue(future.get(10, TimeUnit.SECONDS).isSuccess());
+    }
+
+    // transitions of each partition run one at a time in submission order
+    for (List<Integer> seqs : executed.values()) {
+      Assert.assertEquals(seqs.size(), 5);
+      for (int i = 0; i < 5; i++) {
+        Assert.assertEquals(seqs.get(i).intValue(), i);
+      }
+    }
+
+    // the big resource never exceeds its cap, the small one is never blocked by it
+    Assert.assertTrue(maxRunning.get("BigDB") <= 2, "BigDB ran " + maxRunning.get("BigDB"));
+    Assert.assertEquals(maxRunning.get("SmallDB").intValue(), 1);
+    Assert.assertEquals(executor.getPendingCount(), 0);
+
+    executor.shutdown();
+    Assert.assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,80 @@
+package org.apache.helix.messaging.handling;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.helix.NotificationContext;
+import org.apache.helix.model.Message;
+import org.apache.helix.model.Message.MessageType;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestHelixBatchMessageTask {
+  static class TestHandler extends MessageHandler {
+    final boolean _fail;
+
+    TestHandler(Message message, boolean fail) {
+      super(message, null);
+      _fail = fail;
+    }
+
+    @Override
+    public HelixTaskResult handleMessage() throws InterruptedException {
+      if (_fail) {
+        throw new RuntimeException("fail to handle " + _message.getPartitionName());
+      }
+      HelixTaskResult result = new HelixTaskResult();
+      result.setSuccess(true);
+      return result;
+    }
+
+    @Override
+    public void onError(Exception e, ErrorCode code, ErrorType type) {
+    }
+  }
+
+  @Test
+  public void testPartialSuccess() throws Exception {
+    Message batchMsg = new Message(MessageType.STATE_TRANSITION, "batchMsg");
+    batchMsg.setResourceName("TestDB");
+
+    List<Message> subMsgs = new ArrayList<Message>();
+    List<MessageHandler> handlers = new ArrayList<MessageHandler>();
+    for (int i = 0; i < 3; i++) {
+      Message subMsg = new Message(MessageType.STATE_TRANSITION, "subMsg_" + i);
+      subMsg.setResourceName("TestDB");
+      subMsg.setPartitionName("TestDB_" + i);
+      subMsgs.add(subMsg);
+      handlers.add(new TestHandler(subMsg, i == 1));
+    }
+
+    HelixBatchMessageTask task =
+        new HelixBatchMessageTask(batchMsg, subMsgs, handlers, new NotificationContext(null));
+    HelixTaskResult result = task.call();
+
+    // a failing partition does not stop the others
+    Assert.assertFalse(result.isSuccess());
+    Assert.assertEquals(result.getTaskResultMap().get("TestDB_0"), "true");
+    Assert.assertEquals(result.getTaskResultMap().get("TestDB_1"), "false");
+    Assert.assertEquals(result.getTaskResultMap().get("TestDB_2"), "true");
+  }
+}
@@ -20,21 +20,32 @@ package org.apache.helix.messaging.handling;
  */
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 
+import org.apache.helix.BaseDataAccessor;
+import org.apache.helix.HelixDataAccessor;
 import org.apache.helix.HelixException;
 import org.apache.helix.HelixManager;
+import org.apache.helix.HelixProperty;
 import org.apache.helix.Mocks;
 import org.apache.helix.NotificationContext;
+import org.apache.helix.PropertyKey;
+import org.apache.helix.ZNRecord;
 import org.apache.helix.messaging.handling.HelixTaskExecutor;
 import org.apache.helix.messaging.handling.HelixTaskResult;
 import org.apache.helix.messaging.handling.MessageHandler;
 import org.apache.helix.messaging.handling.MessageHandlerFactory;
 import org.apache.helix.model.Message;
 import org.apache.helix.model.Message.MessageState;
+import org.apache.helix.model.Message.MessageType;
+import org.apache.helix.monitoring.mbeans.MessageHandlingMonitor;
 import org.testng.Assert;
 import org.testng.AssertJUnit;
 import org.testng.annotations.Test;
@@ -47,6 +58,62 @@ public class TestHelixTaskExecutor {
     }
   }
 
+  /**
+   * Base accessor that keeps message records by path and counts multi-removes
+   */
+  static class BatchBaseDataAccessor extends Mocks.MockBaseDataAccessor {
+    final Map<String, ZNRecord> _records = new HashMap<String, ZNRecord>();
+    final Set<String> _failRemovePaths = new HashSet<String>();
+    final List<List<String>> _removeBatches = new ArrayList<List<String>>();
+
+    @Override
+    public boolean[] remove(List<String> paths, int options) {
+      _removeBatches.add(new ArrayList<String>(paths));
+      boolean[] success = new boolean[paths.size()];
+      for (int i = 0; i < paths.size(); i++) {
+        String path = paths.get(i);
+        if (!_failRemovePaths.contains(path)) {
+          success[i] = _records.remove(path) != null;
+        }
+      }
+      return success;
+    }
+  }
+
+  /**
+   * Accessor that writes messages through a batch base accessor and counts multi-sets
+   */
+  static class BatchAccessor extends Mocks.MockAccessor {
+    final BatchBaseDataAccessor _baseAccessor = new BatchBaseDataAccessor();
+    final List<List<PropertyKey>> _setChildrenBatches = new ArrayList<List<PropertyKey>>();
+
+    @Override
+    public <T extends HelixProperty> boolean[] setChildren(List<PropertyKey> keys,
+        List<T> children) {
+      _setChildrenBatches.add(new ArrayList<PropertyKey>(keys));
+      boolean[] success = new boolean[keys.size()];
+      for (int i = 0; i < keys.size(); i++) {
+        _baseAccessor._records.put(keys.get(i).getPath(), children.get(i).getRecord());
+        success[i] = true;
+      }
+      return success;
+    }
+
+    @Override
+    public BaseDataAccessor<ZNRecord> getBaseDataAccessor() {
+      return _baseAccessor;
+    }
+  }
+
+  public static class BatchClusterManager extends MockClusterManager {
+    final BatchAccessor _batchAccessor = new BatchAccessor();
+
+    @Override
+    public HelixDataAccessor getHelixDataAccessor() {
+      return _batchAccessor;
+    }
+  }
+
   class TestMessageHandlerFactory implements MessageHandlerFactory {
     int _handlersCreated = 0;
     ConcurrentHashMap<String, String> _processedMsgIds = new ConcurrentHashMap<String, String>();
@@ -232,6 +299,99 @@ public class TestHelixTaskExecutor {
     System.out.println("END TestCMTaskExecutor.testNormalMsgExecution()");
   }
 
+  @Test()
+  public void testBatchMessageStateUpdateAndRemove() throws InterruptedException {
+    String instanceName = "someInstance";
+    HelixTaskExecutor executor = new HelixTaskExecutor();
+    BatchClusterManager manager = new BatchClusterManager();
+    BatchAccessor accessor = manager._batchAccessor;
+    BatchBaseDataAccessor baseAccessor = accessor._baseAccessor;
+    PropertyKey.Builder keyBuilder = accessor.keyBuilder();
+
+    TestMessageHandlerFactory factory = new TestMessageHandlerFactory();
+    executor.registerMessageHandlerFactory(factory.getMessageType(), factory);
+
+    NotificationContext changeContext = new NotificationContext(manager);
+    List<Message> readMsgs = new ArrayList<Message>();
+    List<Message> discardMsgs = new ArrayList<Message>();
+
+    int nReadMsgs = 4;
+    for (int i = 0; i < nReadMsgs; i++) {
+      Message msg = new Message(factory.getMessageType(), UUID.randomUUID().toString());
+      msg.setTgtSessionId(manager.getSessionId());
+      readMsgs.add(msg);
+    }
+
+    int nStaleMsgs = 3;
+    for (int i = 0; i < nStaleMsgs; i++) {
+      Message msg = new Message(factory.getMessageType(), UUID.randomUUID().toString());
+      msg.setTgtSessionId("some other session id");
+      discardMsgs.add(msg);
+    }
+    Message nopMsg = new Message(MessageType.NO_OP, UUID.randomUUID().toString());
+    nopMsg.setTgtSessionId(manager.getSessionId());
+    discardMsgs.add(nopMsg);
+
+    // no factory registered for this type, so it stays NEW
+    Message unknownMsg = new Message("UnknownMessageType", UUID.randomUUID().toString());
+    unknownMsg.setTgtSessionId(manager.getSessionId());
+
+    List<Message> msgList = new ArrayList<Message>();
+    msgList.addAll(readMsgs);
+    msgList.addAll(discardMsgs);
+    msgList.add(unknownMsg);
+    for (Message msg : msgList) {
+      msg.setTgtName("Localhost_1123");
+      msg.setSrcName("127.101.1.23_2234");
+      baseAccessor._records.put(msg.getKey(keyBuilder, instanceName).getPath(), msg.getRecord());
+    }
+
+    // fail removing one of the stale messages
+    String failPath = discardMsgs.get(0).getKey(keyBuilder, instanceName).getPath();
+    baseAccessor._failRemovePaths.add(failPath);
+
+    executor.onMessage(instanceName, msgList, changeContext);
+
+    // all read messages are marked READ in one multi-set
+    Assert.assertEquals(accessor._setChildrenBatches.size(), 1);
+    Assert.assertEquals(accessor._setChildrenBatches.get(0).size(), nReadMsgs);
+    for (Message msg : readMsgs) {
+      ZNRecord record = baseAccessor._records.get(msg.getKey(keyBuilder, instanceName).getPath());
+      Assert.assertNotNull(record);
+      Assert.assertEquals(new Message(record).getMsgState(), MessageState.READ);
+    }
+
+    // all discarded messages are removed in one multi-remove, except the failed one
+    Assert.assertEquals(baseAccessor._removeBatches.size(), 1);
+    Assert.assertEquals(baseAccessor._removeBatches.get(0).size(), discardMsgs.size());
+    for (Message msg : discardMsgs) {
+      String path = msg.getKey(keyBuilder, instanceName).getPath();
+      Assert.assertTrue(baseAccessor._removeBatches.get(0).contains(path));
+      Assert.assertEquals(baseAccessor._records.containsKey(path), path.equals(failPath));
+    }
+
+    ZNRecord unknownRecord =
+        baseAccessor._records.get(unknownMsg.getKey(keyBuilder, instanceName).getPath());
+    Assert.assertNotNull(unknownRecord);
+    Assert.assertEquals(new Message(unknownRecord).getMsgState(), MessageState.NEW);
+
+    MessageHandlingMonitor monitor =
+        executor.getParticipantMonitor().getMessageHandlingMonitor(instanceName);
+    Assert.assertEquals(monitor.getTotalMessageCounter(), msgList.size());
+    Assert.assertEquals(monitor.getReadMessageCounter(), nReadMsgs);
+    Assert.assertEquals(monitor.getDiscardedMessageCounter(), discardMsgs.size());
+
+    Thread.sleep(1000);
+    Assert.assertEquals(factory._processedMsgIds.size(), nReadMsgs);
+    Assert.assertEquals(factory._handlersCreated, nReadMsgs);
+
+    // a second call only adds to the counters
+    executor.onMessage(instanceName, msgList, changeContext);
+    Assert.assertEquals(monitor.getTotalMessageCounter(), 2 * msgList.size());
+    Assert.assertEquals(monitor.getReadMessageCounter(), nReadMsgs);
+    Assert.assertEquals(accessor._setChildrenBatches.size(), 1);
+  }
+
   @Test()
   public void testUnknownTypeMsgExecution() throws InterruptedException {
     HelixTaskExecutor executor = new HelixTaskExecutor();
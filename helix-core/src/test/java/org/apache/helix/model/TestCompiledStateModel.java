@@ -0,0 +1,69 @@
+package org.apache.helix.model;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.helix.tools.StateModelConfigGenerator;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestCompiledStateModel {
+  @Test
+  public void testMasterSlave() {
+    StateModelDefinition stateModelDef =
+        new StateModelDefinition(StateModelConfigGenerator.generateConfigForMasterSlave());
+    CompiledStateModel stateModel = stateModelDef.getCompiledStateModel();
+
+    // states of the priority list come first, in priority order
+    Assert.assertEquals(stateModel.getPriorityStateCount(), 5);
+    Assert.assertEquals(stateModel.getStates().subList(0, 5),
+        stateModelDef.getStatesPriorityList());
+    Assert.assertEquals(stateModel.getState(stateModel.getInitialState()), "OFFLINE");
+    Assert.assertEquals(stateModel.getOrdinal("NOT_A_STATE"), CompiledStateModel.NONE);
+
+    // next states, including the default transitions of helix-defined states
+    int master = stateModel.getOrdinal("MASTER");
+    int slave = stateModel.getOrdinal("SLAVE");
+    int offline = stateModel.getOrdinal("OFFLINE");
+    int dropped = stateModel.getOrdinal("DROPPED");
+    int error = stateModel.getOrdinal("ERROR");
+    Assert.assertEquals(stateModel.getNextState(offline, master), slave);
+    Assert.assertEquals(stateModel.getNextState(master, dropped), slave);
+    Assert.assertEquals(stateModel.getNextState(error, dropped), dropped);
+    Assert.assertEquals(stateModel.getNextState(error, offline), offline);
+    Assert.assertEquals(stateModel.getNextState(error, master), CompiledStateModel.NONE);
+    Assert.assertEquals(stateModel.getNextState(CompiledStateModel.NONE, master),
+        CompiledStateModel.NONE);
+    Assert.assertEquals(stateModelDef.getNextStateForTransition("OFFLINE", "MASTER"), "SLAVE");
+    Assert.assertNull(stateModelDef.getNextStateForTransition("OFFLINE", "NOT_A_STATE"));
+
+    // transition priorities
+    Assert.assertEquals(stateModel.getTransitionPriority(master, slave), 0);
+    Assert.assertEquals(stateModel.getTransitionPriority(slave, master), 1);
+    Assert.assertEquals(stateModel.getTransitionPriority(offline, dropped), 4);
+    Assert.assertEquals(stateModel.getTransitionPriority(error, offline), Integer.MAX_VALUE);
+
+    // upper bounds
+    Assert.assertEquals(stateModel.getUpperBound(master, 10, 3), 1);
+    Assert.assertEquals(stateModel.getUpperBound(slave, 10, 3), 3);
+    Assert.assertEquals(stateModel.getUpperBound(slave, 10, CompiledStateModel.UNBOUNDED),
+        CompiledStateModel.UNBOUNDED);
+    Assert.assertEquals(stateModel.getUpperBound(offline, 10, 3), CompiledStateModel.UNBOUNDED);
+  }
+}
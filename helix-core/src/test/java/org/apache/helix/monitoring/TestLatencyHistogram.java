@@ -0,0 +1,122 @@
+package org.apache.helix.monitoring;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.helix.monitoring.LatencyHistogram.Snapshot;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestLatencyHistogram {
+  @Test
+  public void testConcurrentRecord() throws Exception {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final int nThreads = 8;
+    final int nPoints = 10000;
+
+    // each thread records every nThreads-th value of 1..nPoints
+    Thread[] threads = new Thread[nThreads];
+    for (int i = 0; i < nThreads; i++) {
+      final int start = i + 1;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int v = start; v <= nPoints; v += nThreads) {
+            histogram.record(v);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Snapshot snapshot = histogram.getSnapshot();
+    Assert.assertEquals(snapshot.getCount(), nPoints);
+    Assert.assertEquals(snapshot.getSum(), (long) nPoints * (nPoints + 1) / 2);
+    Assert.assertEquals(snapshot.getMax(), nPoints);
+    Assert.assertEquals(snapshot.getMin(), 1);
+    assertWithin(snapshot.getPercentile(50), 5000);
+    assertWithin(snapshot.getPercentile(99), 9900);
+    assertWithin(snapshot.getPercentile(99.9), 9990);
+    Assert.assertEquals(snapshot.getPercentile(100), nPoints);
+
+    // interval snapshots only see values recorded since the previous one
+    Assert.assertEquals(histogram.getIntervalSnapshot().getCount(), nPoints);
+    for (int i = 0; i < 10; i++) {
+      histogram.record(5);
+    }
+    Snapshot interval = histogram.getIntervalSnapshot();
+    Assert.assertEquals(interval.getCount(), 10);
+    Assert.assertEquals(interval.getPercentile(50), 5);
+    Assert.assertEquals(interval.getMean(), 5.0);
+    Assert.assertEquals(histogram.getIntervalSnapshot().getCount(), 0);
+
+    histogram.reset();
+    snapshot = histogram.getSnapshot();
+    Assert.assertEquals(snapshot.getCount(), 0);
+    Assert.assertEquals(snapshot.getMax(), 0);
+    Assert.assertEquals(snapshot.getMin(), 0);
+    Assert.assertEquals(snapshot.getPercentile(99), 0);
+  }
+
+  @Test
+  public void testWindowSnapshot() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(10);
+    histogram.record(20);
+    Snapshot window = histogram.getWindowSnapshot(60 * 1000);
+    Assert.assertEquals(window.getCount(), 2);
+    Assert.assertEquals(window.getMax(), 20);
+
+    // within the window the same snapshot is reported
+    histogram.record(1000);
+    Assert.assertSame(histogram.getWindowSnapshot(60 * 1000), window);
+
+    // a new window only sees values recorded since the previous one
+    window = histogram.getWindowSnapshot(0);
+    Assert.assertEquals(window.getCount(), 1);
+    assertWithin(window.getMax(), 1000);
+    Assert.assertEquals(histogram.getWindowSnapshot(0).getCount(), 0);
+    Assert.assertEquals(histogram.getSnapshot().getCount(), 3);
+
+    histogram.record(5);
+    histogram.reset();
+    Assert.assertEquals(histogram.getWindowSnapshot(60 * 1000).getCount(), 0);
+  }
+
+  @Test
+  public void testBuckets() {
+    long[] values = new long[] {
+        0, 1, 15, 16, 17, 31, 32, 1000, 123456789L, Long.MAX_VALUE
+    };
+    for (long value : values) {
+      int index = LatencyHistogram.bucketIndex(value);
+      Assert.assertTrue(LatencyHistogram.bucketLowerBound(index) <= value);
+      Assert.assertTrue(LatencyHistogram.bucketUpperBound(index) >= value);
+    }
+  }
+
+  // log buckets report a value at most 1/16 above the exact one
+  private static void assertWithin(long actual, long expected) {
+    Assert.assertTrue(actual >= expected && actual <= expected + expected / 16, "expected "
+        + expected + " but was " + actual);
+  }
+}
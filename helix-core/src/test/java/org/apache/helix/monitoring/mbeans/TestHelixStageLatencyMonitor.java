@@ -0,0 +1,68 @@
+package org.apache.helix.monitoring.mbeans;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestHelixStageLatencyMonitor {
+  @Test
+  public void testReportingWindow() throws Exception {
+    String clusterName = "TestHelixStageLatencyMonitor_cluster";
+    MBeanServer beanServer = ManagementFactory.getPlatformMBeanServer();
+    ObjectName objectName =
+        new ObjectName("StageLatencyMonitor: cluster=" + clusterName + ",stage=TestStage");
+
+    HelixStageLatencyMonitor monitor =
+        new HelixStageLatencyMonitor(clusterName, "TestStage", 60 * 1000);
+    Assert.assertTrue(beanServer.isRegistered(objectName));
+    monitor.addStgLatency(10);
+    monitor.addStgLatency(20);
+    monitor.addBatchWrite(5, 3, 1);
+    Assert.assertEquals(monitor.getMaxStgLatency(), 20);
+    Assert.assertEquals(monitor.getMeanStgLatency(), 15);
+    Assert.assertEquals(monitor.getMaxBatchWriteLatency(), 5);
+    Assert.assertEquals(monitor.getTotalWriteCounter(), 3);
+    Assert.assertEquals(monitor.getFailedWriteCounter(), 1);
+
+    // values recorded after the window snapshot are reported in the next window
+    monitor.addStgLatency(1000);
+    Assert.assertEquals(monitor.getMaxStgLatency(), 20);
+    Assert.assertEquals(beanServer.getAttribute(objectName, "MaxStgLatency"), 20L);
+
+    monitor.reset();
+    Assert.assertFalse(beanServer.isRegistered(objectName));
+
+    // without a window, every read reports the values recorded since the previous read
+    monitor = new HelixStageLatencyMonitor(clusterName, "TestStage", 0);
+    monitor.addStgLatency(10);
+    monitor.addStgLatency(20);
+    Assert.assertEquals(monitor.getMaxStgLatency(), 20);
+    Assert.assertEquals(monitor.getMaxStgLatency(), 0);
+    monitor.addStgLatency(1000);
+    Assert.assertEquals(monitor.get99StgLatency(), 1000);
+    monitor.reset();
+  }
+}
@@ -0,0 +1,62 @@
+package org.apache.helix.monitoring.mbeans;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.helix.monitoring.StateTransitionContext;
+import org.apache.helix.monitoring.StateTransitionDataPoint;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestStateTransitionStatMonitor {
+  @Test
+  public void testReportingWindow() {
+    StateTransitionContext context =
+        new StateTransitionContext("TestCluster", "localhost_12918", "TestDB", "OFFLINE-SLAVE");
+    StateTransitionStatMonitor monitor =
+        new StateTransitionStatMonitor(context, TimeUnit.MILLISECONDS, 0);
+    monitor.addDataPoint(new StateTransitionDataPoint(1000, 900, true));
+    monitor.addDataPoint(new StateTransitionDataPoint(10, 5, false));
+    Assert.assertEquals(monitor.getTotalStateTransitionGauge(), 2);
+    Assert.assertEquals(monitor.getTotalFailedTransitionGauge(), 1);
+    Assert.assertEquals(monitor.get50TransitionLatency(), 10);
+
+    // latencies decay once the window has passed, counters do not
+    monitor.addDataPoint(new StateTransitionDataPoint(20, 5, true));
+    Assert.assertEquals(monitor.getMaxTransitionLatency(), 20.0);
+    Assert.assertEquals(monitor.getMaxTransitionLatency(), 0.0);
+    Assert.assertEquals(monitor.getMaxTransitionExecuteLatency(), 900.0);
+    Assert.assertEquals(monitor.getTotalStateTransitionGauge(), 3);
+  }
+
+  @Test
+  public void testMessageHandlingWindow() {
+    MessageHandlingMonitor monitor = new MessageHandlingMonitor(0);
+    monitor.addOnMessage(100, 10, 10, 10, 10, 60);
+    monitor.addMessages(5, 4, 1);
+    Assert.assertEquals(monitor.getMaxOnMessageLatency(), 100);
+
+    monitor.addOnMessage(20, 5, 5, 5, 5, 0);
+    Assert.assertEquals(monitor.getMaxOnMessageLatency(), 20);
+    Assert.assertEquals(monitor.getMaxOnMessageLatency(), 0);
+    Assert.assertEquals(monitor.getTotalMessageCounter(), 5);
+  }
+}
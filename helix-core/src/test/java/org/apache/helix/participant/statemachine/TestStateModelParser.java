@@ -20,9 +20,17 @@ package org.apache.helix.participant.statemachine;
  */
 
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
 
+import org.apache.helix.HelixDataAccessor;
+import org.apache.helix.HelixException;
+import org.apache.helix.HelixManager;
+import org.apache.helix.Mocks;
 import org.apache.helix.NotificationContext;
 import org.apache.helix.model.Message;
+import org.apache.helix.model.StateModelDefinition;
+import org.apache.helix.participant.HelixStateMachineEngine;
 import org.apache.log4j.Logger;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -118,4 +126,81 @@ public class TestStateModelParser {
     Assert.assertEquals(method.getName(), "onBecomeDroppedFromError");
 
   }
+
+  @Test
+  public void testCachedTransitionAndValidation() {
+    StateModelParser parser = new StateModelParser();
+    Class<?>[] paramTypes = new Class[] {
+        Message.class, NotificationContext.class
+    };
+
+    Method method =
+        parser.getMethodForTransition(StateModelUsingAnnotation.class, "OFFLINE", "SLAVE",
+            paramTypes);
+    Assert.assertNotNull(method);
+    Assert.assertSame(parser.getMethodForTransition(StateModelUsingAnnotation.class, "OFFLINE",
+        "SLAVE", paramTypes), method);
+    Assert.assertNull(parser.getMethodForTransition(StateModelUsingAnnotation.class, "SLAVE",
+        "MASTER", paramTypes));
+
+    StateModelDefinition stateModelDef =
+        new StateModelDefinition.Builder("TestParserMasterSlave").initialState("OFFLINE")
+            .addState("MASTER").addState("SLAVE").addState("OFFLINE")
+            .addTransition("OFFLINE", "SLAVE").addTransition("SLAVE", "MASTER").build();
+    List<String> missingTransitions =
+        parser.validateTransitions(StateModelUsingAnnotation.class, stateModelDef);
+    Assert.assertEquals(missingTransitions, Arrays.asList("SLAVE-MASTER"));
+
+    StateModelFactory<StateModelUsingNameConvention> factory =
+        new StateModelFactory<StateModelUsingNameConvention>() {
+          @Override
+          public StateModelUsingNameConvention createNewStateModel(String partitionName) {
+            return new StateModelUsingNameConvention();
+          }
+        };
+    Assert.assertEquals(StateModelParser.getStateModelClass(factory),
+        StateModelUsingNameConvention.class);
+
+    // the concrete class is not known if the factory is bound to an abstract class
+    StateModelFactory<StateModel> abstractFactory = new StateModelFactory<StateModel>() {
+      @Override
+      public StateModel createNewStateModel(String partitionName) {
+        return new StateModelUsingNameConvention();
+      }
+    };
+    Assert.assertNull(StateModelParser.getStateModelClass(abstractFactory));
+  }
+
+  @Test
+  public void testRegisterFactoryWithMissingTransition() {
+    StateModelDefinition stateModelDef =
+        new StateModelDefinition.Builder("TestParserMasterSlave").initialState("OFFLINE")
+            .addState("MASTER").addState("SLAVE").addState("OFFLINE")
+            .addTransition("OFFLINE", "SLAVE").addTransition("SLAVE", "MASTER").build();
+    HelixManager manager = new Mocks.MockManager() {
+      @Override
+      public boolean isConnected() {
+        return true;
+      }
+    };
+    HelixDataAccessor accessor = manager.getHelixDataAccessor();
+    accessor.setProperty(accessor.keyBuilder().stateModelDef(stateModelDef.getId()),
+        stateModelDef);
+    HelixStateMachineEngine engine = new HelixStateMachineEngine(manager);
+
+    StateModelFactory<StateModelUsingNameConvention> factory =
+        new StateModelFactory<StateModelUsingNameConvention>() {
+          @Override
+          public StateModelUsingNameConvention createNewStateModel(String partitionName) {
+            return new StateModelUsingNameConvention();
+          }
+        };
+    try {
+      engine.registerStateModelFactory(stateModelDef.getId(), factory);
+      Assert.fail("Registering a state model without transition handlers should fail");
+    } catch (HelixException e) {
+      // expected
+    }
+    Assert.assertNull(engine.getStateModelFactory(stateModelDef.getId()));
+  }
 }
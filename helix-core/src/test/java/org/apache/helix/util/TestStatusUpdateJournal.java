@@ -0,0 +1,119 @@
+package org.apache.helix.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Date;
+import java.util.TreeMap;
+
+import org.apache.helix.PropertyKey;
+import org.apache.helix.PropertyKey.Builder;
+import org.apache.helix.TestHelper;
+import org.apache.helix.ZNRecord;
+import org.apache.helix.ZkUnitTestBase;
+import org.apache.helix.manager.zk.ZKHelixDataAccessor;
+import org.apache.helix.manager.zk.ZkBaseDataAccessor;
+import org.apache.helix.model.Error;
+import org.apache.helix.model.StatusUpdate;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestStatusUpdateJournal extends ZkUnitTestBase {
+
+  @Test
+  public void testMergeAndFlush() throws Exception {
+    String className = TestHelper.getTestClassName();
+    String methodName = TestHelper.getTestMethodName();
+    String clusterName = className + "_" + methodName;
+    System.out.println("START " + clusterName + " at " + new Date(System.currentTimeMillis()));
+
+    TestHelper.setupEmptyCluster(_gZkClient, clusterName);
+    ZKHelixDataAccessor accessor =
+        new ZKHelixDataAccessor(clusterName, new ZkBaseDataAccessor<ZNRecord>(_gZkClient));
+    Builder keyBuilder = accessor.keyBuilder();
+
+    StatusUpdateJournal journal = new StatusUpdateJournal(100, 10);
+    PropertyKey statusKey =
+        keyBuilder.stateTransitionStatus("localhost_12918", "session_0", "TestDB", "TestDB_0");
+    PropertyKey errorKey = keyBuilder.controllerTaskError("TestDB");
+
+    int recordCount = 25;
+    for (int i = 0; i < recordCount; i++) {
+      ZNRecord record = new ZNRecord("session_0__TestDB");
+      record.setMapField("record_" + i, new TreeMap<String, String>());
+      record.getMapField("record_" + i).put("INDEX", "" + i);
+      journal.append(accessor, statusKey, new StatusUpdate(record), false, false);
+    }
+
+    // a later overwrite replaces the earlier record
+    ZNRecord error = new ZNRecord("TestDB");
+    error.setSimpleField("ERROR", "first");
+    journal.append(accessor, errorKey, new Error(error), true, true);
+    error = new ZNRecord("TestDB");
+    error.setSimpleField("ERROR", "second");
+    journal.append(accessor, errorKey, new Error(error), true, true);
+
+    journal.flush();
+    Assert.assertEquals(journal.getPendingCount(), 0);
+    Assert.assertEquals(journal.getAppendedCount(), recordCount + 2);
+    Assert.assertEquals(journal.getDroppedCount(), 0);
+    Assert.assertTrue(journal.getWriteCount() <= recordCount + 2);
+
+    ZNRecord statusUpdate = accessor.getProperty(statusKey).getRecord();
+    Assert.assertEquals(statusUpdate.getMapFields().size(), recordCount);
+    for (int i = 0; i < recordCount; i++) {
+      Assert.assertEquals(statusUpdate.getMapField("record_" + i).get("INDEX"), "" + i);
+    }
+
+    ZNRecord errorRecord = accessor.getProperty(errorKey).getRecord();
+    Assert.assertEquals(errorRecord.getSimpleField("ERROR"), "second");
+
+    System.out.println("END " + clusterName + " at " + new Date(System.currentTimeMillis()));
+  }
+
+  @Test
+  public void testCriticalRecordsKeepOrderWhenFull() throws Exception {
+    String className = TestHelper.getTestClassName();
+    String methodName = TestHelper.getTestMethodName();
+    String clusterName = className + "_" + methodName;
+    System.out.println("START " + clusterName + " at " + new Date(System.currentTimeMillis()));
+
+    TestHelper.setupEmptyCluster(_gZkClient, clusterName);
+    ZKHelixDataAccessor accessor =
+        new ZKHelixDataAccessor(clusterName, new ZkBaseDataAccessor<ZNRecord>(_gZkClient));
+    PropertyKey errorKey = accessor.keyBuilder().controllerTaskError("TestDB");
+
+    // appending to a full journal flushes the queued records before the new one
+    StatusUpdateJournal journal = new StatusUpdateJournal(2, 10);
+    int recordCount = 10;
+    for (int i = 0; i < recordCount; i++) {
+      ZNRecord error = new ZNRecord("TestDB");
+      error.setSimpleField("ERROR", "" + i);
+      journal.append(accessor, errorKey, new Error(error), true, true);
+    }
+
+    journal.flush();
+    Assert.assertEquals(journal.getPendingCount(), 0);
+    Assert.assertEquals(journal.getDroppedCount(), 0);
+    ZNRecord errorRecord = accessor.getProperty(errorKey).getRecord();
+    Assert.assertEquals(errorRecord.getSimpleField("ERROR"), "" + (recordCount - 1));
+
+    System.out.println("END " + clusterName + " at " + new Date(System.currentTimeMillis()));
+  }
+}
@@ -0,0 +1,144 @@
+package org.apache.helix.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.apache.helix.HelixException;
+import org.apache.helix.ZNRecord;
+import org.apache.helix.util.StatusUpdateLogReader.Entry;
+import org.apache.helix.util.StatusUpdateLogReader.Page;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestStatusUpdateLog {
+
+  @Test
+  public void testAppendAndRead() throws Exception {
+    File dir = File.createTempFile("TestStatusUpdateLog", "");
+    Assert.assertTrue(dir.delete());
+
+    try {
+      // small segments so that the log rotates
+      StatusUpdateLog log = new StatusUpdateLog(dir, 4096, 100);
+      int recordCount = 100;
+      for (int i = 0; i < recordCount; i++) {
+        String instanceName = "localhost_" + (12918 + i % 2);
+        ZNRecord record = new ZNRecord("session_0__TestDB");
+        record.setMapField("record_" + i, new TreeMap<String, String>());
+        record.getMapField("record_" + i).put("INDEX", "" + i);
+        String path =
+            "/TestCluster/INSTANCES/" + instanceName + "/STATUSUPDATES/session_0/TestDB/TestDB_0";
+        Assert.assertTrue(log.append(path, record, false));
+      }
+      log.force();
+      Assert.assertTrue(StatusUpdateLog.listSegments(dir).size() > 1);
+
+      // page through the records of one instance
+      StatusUpdateLogReader reader = new StatusUpdateLogReader(dir);
+      List<Entry> entries = new ArrayList<Entry>();
+      long position = 0;
+      while (true) {
+        Page page = reader.read("/TestCluster/INSTANCES/localhost_12918/", position, 7);
+        if (page.getEntries().isEmpty()) {
+          Assert.assertEquals(page.getNextPosition(), position);
+          break;
+        }
+        entries.addAll(page.getEntries());
+        position = page.getNextPosition();
+      }
+
+      Assert.assertEquals(entries.size(), recordCount / 2);
+      for (int i = 0; i < entries.size(); i++) {
+        ZNRecord record = entries.get(i).getRecord();
+        Assert.assertEquals(record.getMapField("record_" + (2 * i)).get("INDEX"), "" + (2 * i));
+        Assert.assertFalse(entries.get(i).isOverwrite());
+      }
+
+      // records that do not fit in a segment are rejected
+      ZNRecord largeRecord = new ZNRecord("large");
+      largeRecord.setSimpleField("value", new String(new char[8192]).replace('\0', 'x'));
+      Assert.assertFalse(log.append("/TestCluster/INSTANCES/localhost_12918/ERRORS", largeRecord,
+          true));
+      log.close();
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testInstanceDirLock() throws Exception {
+    File baseDir = File.createTempFile("TestStatusUpdateLog", "");
+    Assert.assertTrue(baseDir.delete());
+
+    try {
+      LocalStatusUpdateSink sink = new LocalStatusUpdateSink(baseDir, new ZkStatusUpdateSink(null));
+      StatusUpdateLog log0 = sink.getLog("TestCluster", "localhost_12918");
+      StatusUpdateLog log1 = sink.getLog("TestCluster", "localhost_12919");
+      Assert.assertNotNull(log0);
+      Assert.assertNotNull(log1);
+      Assert.assertSame(sink.getLog("TestCluster", "localhost_12918"), log0);
+      Assert.assertEquals(log0.getDir(),
+          StatusUpdateLog.getInstanceDir(baseDir, "TestCluster", "localhost_12918"));
+      Assert.assertFalse(log0.getDir().equals(log1.getDir()));
+
+      // another writer can not open a directory while the log holds it
+      try {
+        new StatusUpdateLog(log0.getDir(), 4096, 100);
+        Assert.fail("Should fail to open a locked status update log directory");
+      } catch (HelixException e) {
+        // OK
+      }
+
+      // a sink that can not open the log does not write to it
+      LocalStatusUpdateSink otherSink =
+          new LocalStatusUpdateSink(baseDir, new ZkStatusUpdateSink(null));
+      Assert.assertNull(otherSink.getLog("TestCluster", "localhost_12918"));
+
+      // records of both instances are written, and the directory can be reopened after close
+      Assert.assertTrue(log0.append("/TestCluster/INSTANCES/localhost_12918/ERRORS",
+          new ZNRecord("error"), true));
+      log0.close();
+      Assert.assertFalse(log0.append("/TestCluster/INSTANCES/localhost_12918/ERRORS",
+          new ZNRecord("error"), true));
+      StatusUpdateLog reopened = new StatusUpdateLog(log0.getDir(), 4096, 100);
+      Assert.assertEquals(StatusUpdateLog.listSegments(log0.getDir()).size(), 1);
+      Assert.assertEquals(new StatusUpdateLogReader(log0.getDir()).read(null, 0, 10)
+          .getEntries().size(), 1);
+      reopened.close();
+      log1.close();
+    } finally {
+      delete(baseDir);
+    }
+  }
+
+  private static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File child : files) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}